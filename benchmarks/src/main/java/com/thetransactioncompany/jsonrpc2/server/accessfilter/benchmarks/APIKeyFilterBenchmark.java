@@ -0,0 +1,163 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyBinding;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.NamedParamAPIKeyExtractor;
+
+
+/**
+ * Benchmarks the API key filter with key maps of increasing size, with and
+ * without the keys bound to a client certificate principal.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APIKeyFilterBenchmark {
+
+
+	@Param({"1", "1000", "100000"})
+	public int keys;
+
+
+	private APIKeyFilter filter;
+
+
+	private APIKeyFilter boundFilter;
+	
+	
+	private MessageContext ctx;
+	
+	
+	private MessageContext otherCtx;
+
+
+	private JSONRPC2Request allowedRequest;
+
+
+	private JSONRPC2Request deniedMethodRequest;
+
+
+	private JSONRPC2Request unknownKeyRequest;
+
+
+	private JSONRPC2Request missingKeyRequest;
+
+
+	private JSONRPC2Request exemptedRequest;
+
+
+	@Setup
+	public void setUp()
+		throws LDAPException {
+
+		filter = new APIKeyFilter();
+		filter.init(Fixtures.apiKeyMap(keys), Fixtures.exemptedMethods());
+
+		APIKeyBinding binding = new APIKeyBinding(Collections.singleton(new DN(Fixtures.CLIENT_PRINCIPAL)),
+		                                          Collections.<String>emptySet());
+		
+		Map<APIKey,APIKeyBinding> bindings = new HashMap<APIKey,APIKeyBinding>();
+		
+		for (APIKey key: Fixtures.apiKeyMap(keys).keySet())
+			bindings.put(key, binding);
+		
+		boundFilter = new APIKeyFilter();
+		boundFilter.init(Fixtures.apiKeyMap(keys),
+		                 Fixtures.exemptedMethods(),
+		                 new NamedParamAPIKeyExtractor(APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME),
+		                 false,
+		                 0,
+		                 bindings);
+		
+		ctx = Fixtures.context(Fixtures.ip(0), true, Fixtures.CLIENT_PRINCIPAL);
+		otherCtx = Fixtures.context(Fixtures.ip(0), true, Fixtures.OTHER_PRINCIPAL);
+
+		// Key 0 is allowed methods 0, 1 and 2
+		allowedRequest = Fixtures.request(Fixtures.METHODS[2], Fixtures.apiKey(0));
+		deniedMethodRequest = Fixtures.request(Fixtures.METHODS[3], Fixtures.apiKey(0));
+		unknownKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.UNKNOWN_API_KEY);
+		missingKeyRequest = Fixtures.request(Fixtures.METHODS[0], null);
+		exemptedRequest = Fixtures.request(Fixtures.METHODS[6], null);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return filter.filter(allowedRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowExempted() {
+
+		return filter.filter(exemptedRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyMethod() {
+
+		return filter.filter(deniedMethodRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyUnknownKey() {
+
+		return filter.filter(unknownKeyRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyMissingKey() {
+
+		return filter.filter(missingKeyRequest, ctx);
+	}
+	
+	
+	@Benchmark
+	public AccessFilterResult allowBound() {
+		
+		return boundFilter.filter(allowedRequest, ctx);
+	}
+	
+	
+	@Benchmark
+	public AccessFilterResult denyBoundPrincipal() {
+		
+		return boundFilter.filter(allowedRequest, otherCtx);
+	}
+}
@@ -0,0 +1,84 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyMapDiff;
+
+
+/**
+ * Benchmarks the update of an API key filter holding one million keys, when
+ * a single key changes. The update runs on the reloading thread, requests
+ * only see the final atomic swap.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class APIKeyFilterUpdateBenchmark {
+
+
+	private static final int KEYS = 1000000;
+
+
+	private APIKeyFilter filter;
+
+
+	private Map<APIKey,Set<String>> mapA;
+
+
+	private Map<APIKey,Set<String>> mapB;
+
+
+	private boolean toggle;
+
+
+	@Setup
+	public void setUp() {
+
+		Set<String> methods = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(Fixtures.METHODS)));
+
+		mapA = new HashMap<APIKey,Set<String>>();
+
+		for (int i=0; i < KEYS; i++)
+			mapA.put(new APIKey(Fixtures.apiKey(i)), methods);
+
+		mapB = new HashMap<APIKey,Set<String>>(mapA);
+		mapB.put(new APIKey(Fixtures.apiKey(0)), Collections.singleton(Fixtures.METHODS[0]));
+
+		filter = new APIKeyFilter();
+		filter.init(mapA, new HashSet<String>());
+	}
+
+
+	@Benchmark
+	public APIKeyMapDiff updateOneKey() {
+
+		toggle = ! toggle;
+
+		return filter.update(toggle ? mapB : mapA);
+	}
+}
@@ -0,0 +1,123 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyFilter;
+
+
+/**
+ * Benchmarks the API key filter with hashed keys against plain keys. The
+ * repeat caller case hits the verified key cache, the rotating callers case
+ * cycles through more distinct keys than the cache holds.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APIKeyHashingBenchmark {
+
+
+	/**
+	 * The number of distinct rotating callers, twice the default verified
+	 * key cache size.
+	 */
+	private static final int CALLERS = 2 * APIKeyFilter.DEFAULT_VERIFIED_KEY_CACHE_SIZE;
+
+
+	@Param({"plain", "hashed", "hashedNoCache"})
+	public String keys;
+
+
+	private APIKeyFilter filter;
+
+
+	private MessageContext ctx;
+
+
+	private JSONRPC2Request allowedRequest;
+
+
+	private JSONRPC2Request unknownKeyRequest;
+
+
+	private JSONRPC2Request[] rotatingRequests;
+
+
+	private int next;
+
+
+	@Setup
+	public void setUp() {
+
+		filter = new APIKeyFilter();
+
+		if (keys.equals("plain")) {
+			filter.init(Fixtures.apiKeyMap(CALLERS), Fixtures.exemptedMethods());
+		}
+		else {
+			filter.init(Fixtures.hashedAPIKeyMap(CALLERS),
+			            Fixtures.exemptedMethods(),
+			            APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME,
+			            true,
+			            keys.equals("hashed") ? APIKeyFilter.DEFAULT_VERIFIED_KEY_CACHE_SIZE : 0);
+		}
+
+		ctx = Fixtures.context(Fixtures.ip(0), true, null);
+
+		// Key n is allowed methods n, n + 1 and n + 2
+		allowedRequest = Fixtures.request(Fixtures.METHODS[2], Fixtures.apiKey(0));
+		unknownKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.UNKNOWN_API_KEY);
+
+		rotatingRequests = new JSONRPC2Request[CALLERS];
+
+		for (int i=0; i < CALLERS; i++)
+			rotatingRequests[i] = Fixtures.request(Fixtures.METHODS[i % 6], Fixtures.apiKey(i));
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowRepeatCaller() {
+
+		return filter.filter(allowedRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowRotatingCallers() {
+
+		JSONRPC2Request request = rotatingRequests[next];
+
+		next = (next + 1) % CALLERS;
+
+		return filter.filter(request, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyUnknownKey() {
+
+		return filter.filter(unknownKeyRequest, ctx);
+	}
+}
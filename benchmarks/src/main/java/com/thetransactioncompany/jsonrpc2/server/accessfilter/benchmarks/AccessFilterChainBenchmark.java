@@ -0,0 +1,122 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterChain;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.HTTPSFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.HostFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.X509ClientCertFilter;
+
+
+/**
+ * Benchmarks a hand-assembled access filter chain, measuring the overhead 
+ * of the chain itself and the early exit on denial.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessFilterChainBenchmark {
+
+
+	private AccessFilterChain chain;
+
+
+	private AccessFilterChain emptyChain;
+
+
+	private JSONRPC2Request allowedRequest;
+
+
+	private JSONRPC2Request deniedKeyRequest;
+
+
+	private MessageContext allowedCtx;
+
+
+	private MessageContext deniedHostCtx;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		HostFilter hostFilter = new HostFilter();
+		hostFilter.init(Fixtures.hostWhitelist(1000));
+
+		HTTPSFilter httpsFilter = new HTTPSFilter();
+		httpsFilter.init(true);
+
+		X509ClientCertFilter certFilter = new X509ClientCertFilter();
+		certFilter.init(true, new DN(Fixtures.CLIENT_PRINCIPAL));
+
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(Fixtures.apiKeyMap(1000), Fixtures.exemptedMethods());
+
+		chain = new AccessFilterChain();
+		chain.add(hostFilter);
+		chain.add(httpsFilter);
+		chain.add(certFilter);
+		chain.add(apiKeyFilter);
+
+		emptyChain = new AccessFilterChain();
+
+		allowedRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(0));
+		deniedKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.UNKNOWN_API_KEY);
+
+		allowedCtx = Fixtures.context(Fixtures.ip(10), true, Fixtures.CLIENT_PRINCIPAL);
+		deniedHostCtx = Fixtures.context(Fixtures.DENIED_IP, true, Fixtures.CLIENT_PRINCIPAL);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return chain.filter(allowedRequest, allowedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyFirst() {
+
+		return chain.filter(allowedRequest, deniedHostCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyLast() {
+
+		return chain.filter(deniedKeyRequest, allowedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult empty() {
+
+		return emptyChain.filter(allowedRequest, allowedCtx);
+	}
+}
@@ -0,0 +1,33 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs all access filter benchmarks, reporting throughput, average time and
+ * (through the GC profiler) the allocation rate per operation.
+ *
+ * <p>An optional argument selects the benchmarks by regular expression, 
+ * e.g. "HostFilter".
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class BenchmarkRunner {
+
+
+	public static void main(final String[] args)
+		throws RunnerException {
+
+		Options opts = new OptionsBuilder()
+			.include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+			.addProfiler(GCProfiler.class)
+			.build();
+
+		new Runner(opts).run();
+	}
+}
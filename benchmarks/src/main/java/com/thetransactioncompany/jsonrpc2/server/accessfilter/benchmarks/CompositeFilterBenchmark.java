@@ -0,0 +1,114 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.CompositeFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.CompositeFilterConfiguration;
+
+
+/**
+ * Benchmarks the complete composite filter, configured from properties, with
+ * host whitelists and API key maps of increasing size.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeFilterBenchmark {
+
+
+	@Param({"1", "1000", "100000"})
+	public int size;
+
+
+	private CompositeFilter filter;
+
+
+	private JSONRPC2Request allowedRequest;
+
+
+	private JSONRPC2Request deniedKeyRequest;
+
+
+	private MessageContext allowedCtx;
+
+
+	private MessageContext deniedHostCtx;
+
+
+	private MessageContext plainCtx;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(Fixtures.compositeConfig(size, size)));
+
+		allowedRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(0));
+		deniedKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.UNKNOWN_API_KEY);
+
+		allowedCtx = Fixtures.context(Fixtures.ip(size - 1), true, Fixtures.CLIENT_PRINCIPAL);
+		deniedHostCtx = Fixtures.context(Fixtures.DENIED_IP, true, Fixtures.CLIENT_PRINCIPAL);
+		plainCtx = Fixtures.context(Fixtures.ip(size - 1), false, null);
+	}
+
+
+	@TearDown
+	public void tearDown() {
+
+		filter.shutdown();
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return filter.filter(allowedRequest, allowedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyHost() {
+
+		return filter.filter(allowedRequest, deniedHostCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyHTTPS() {
+
+		return filter.filter(allowedRequest, plainCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyAPIKey() {
+
+		return filter.filter(deniedKeyRequest, allowedCtx);
+	}
+}
@@ -0,0 +1,254 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+
+
+/**
+ * Shared benchmark fixtures: deterministic host whitelists, API key maps,
+ * JSON-RPC 2.0 requests and message contexts.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class Fixtures {
+
+
+	/**
+	 * The methods of the simulated web service.
+	 */
+	static final String[] METHODS = {
+		"sso.login", "sso.logout", "sso.getSession", "sso.listUsers",
+		"sso.userCount", "sso.sessionCount", "ws.getName", "ws.getVersion"
+	};
+
+
+	/**
+	 * The exempted methods.
+	 */
+	static final String EXEMPTED_METHODS = "ws.getName ws.getVersion";
+
+
+	/**
+	 * The allowed client certificate principal.
+	 */
+	static final String CLIENT_PRINCIPAL = "cn=John Doe,ou=people,dc=company,dc=org";
+
+
+	/**
+	 * A client certificate principal which is not allowed.
+	 */
+	static final String OTHER_PRINCIPAL = "cn=Mallory,ou=people,dc=company,dc=org";
+
+
+	/**
+	 * An IP address which is never in the generated whitelists.
+	 */
+	static final String DENIED_IP = "192.0.2.1";
+
+
+	/**
+	 * An API key which is never in the generated key maps.
+	 */
+	static final String UNKNOWN_API_KEY = "00000000-0000-0000-0000-000000000000";
+
+
+	/**
+	 * Returns the n-th whitelisted IPv4 address, in the 10.0.0.0/8 block.
+	 *
+	 * @param n The index.
+	 *
+	 * @return The IPv4 address.
+	 */
+	static String ip(final int n) {
+
+		return "10." + ((n >> 16) & 0xff) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff);
+	}
+
+
+	/**
+	 * Returns a whitelist of the specified number of IPv4 addresses.
+	 *
+	 * @param size The whitelist size.
+	 *
+	 * @return The space-separated whitelist.
+	 */
+	static String hostWhitelist(final int size) {
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i=0; i < size; i++) {
+
+			if (i > 0)
+				sb.append(' ');
+
+			sb.append(ip(i));
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Returns the n-th API key, in UUID format.
+	 *
+	 * @param n The index.
+	 *
+	 * @return The API key.
+	 */
+	static String apiKey(final int n) {
+
+		return String.format("%08x-b881-41f8-8138-bea52b6e1b9c", n);
+	}
+
+
+	/**
+	 * Returns an API key map of the specified size. Each key is allowed 
+	 * three of the service methods.
+	 *
+	 * @param size The number of keys.
+	 *
+	 * @return The API key map.
+	 */
+	static Map<APIKey,Set<String>> apiKeyMap(final int size) {
+
+		Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+
+		for (int i=0; i < size; i++) {
+
+			Set<String> methods = new HashSet<String>();
+
+			for (int j=0; j < 3; j++)
+				methods.add(METHODS[(i + j) % 6]);
+
+			map.put(new APIKey(apiKey(i)), methods);
+		}
+
+		return map;
+	}
+
+
+	/**
+	 * Returns an API key map of the specified size keyed by the SHA-256
+	 * digests of the API keys, otherwise as {@link #apiKeyMap}.
+	 *
+	 * @param size The number of keys.
+	 *
+	 * @return The hashed API key map.
+	 */
+	static Map<APIKey,Set<String>> hashedAPIKeyMap(final int size) {
+		
+		Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+		
+		for (Map.Entry<APIKey,Set<String>> en: apiKeyMap(size).entrySet())
+			map.put(new APIKey(en.getKey().getSHA256Digest()), en.getValue());
+		
+		return map;
+	}
+	
+	
+	/**
+	 * Returns the exempted methods.
+	 *
+	 * @return The exempted methods.
+	 */
+	static Set<String> exemptedMethods() {
+
+		Set<String> methods = new HashSet<String>();
+
+		for (String m: EXEMPTED_METHODS.split(" "))
+			methods.add(m);
+
+		return methods;
+	}
+
+
+	/**
+	 * Returns a JSON-RPC 2.0 request with named parameters, including an
+	 * API key and some typical payload.
+	 *
+	 * @param method The method name.
+	 * @param apiKey The API key, {@code null} to omit.
+	 *
+	 * @return The request.
+	 */
+	static JSONRPC2Request request(final String method, final String apiKey) {
+
+		Map<String,Object> params = new HashMap<String,Object>();
+
+		if (apiKey != null)
+			params.put("apiKey", apiKey);
+
+		params.put("username", "alice");
+		params.put("password", "secret");
+		params.put("rememberMe", Boolean.TRUE);
+
+		return new JSONRPC2Request(method, params, 1);
+	}
+
+
+	/**
+	 * Returns a message context for the specified client.
+	 *
+	 * @param ip        The client IP address.
+	 * @param secure    {@code true} for HTTPS.
+	 * @param principal The client certificate principal, {@code null} if
+	 *                  none.
+	 *
+	 * @return The message context.
+	 */
+	static MessageContext context(final String ip, final boolean secure, final String principal) {
+
+		return new MessageContext(null, ip, secure, principal);
+	}
+
+
+	/**
+	 * Returns composite filter configuration properties with the specified
+	 * numbers of allowed hosts and API keys.
+	 *
+	 * @param hosts The number of allowed hosts.
+	 * @param keys  The number of API keys.
+	 *
+	 * @return The configuration properties.
+	 */
+	static Properties compositeConfig(final int hosts, final int keys) {
+
+		Properties props = new Properties();
+		props.setProperty("access.https.require", "true");
+		props.setProperty("access.https.requireClientCert", "true");
+		props.setProperty("access.https.clientCertPrincipal", CLIENT_PRINCIPAL);
+		props.setProperty("access.hosts.allow", hostWhitelist(hosts));
+		props.setProperty("access.apiKeys.require", "true");
+		props.setProperty("access.apiKeys.exemptedMethods", EXEMPTED_METHODS);
+
+		for (Map.Entry<APIKey,Set<String>> en: apiKeyMap(keys).entrySet()) {
+
+			StringBuilder sb = new StringBuilder();
+
+			for (String m: en.getValue()) {
+				sb.append(m);
+				sb.append(' ');
+			}
+
+			props.setProperty("access.apiKeys.map." + en.getKey(), sb.toString().trim());
+		}
+
+		return props;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private Fixtures() { }
+}
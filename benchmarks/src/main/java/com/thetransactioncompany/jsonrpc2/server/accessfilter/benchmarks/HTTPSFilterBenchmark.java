@@ -0,0 +1,76 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.HTTPSFilter;
+
+
+/**
+ * Benchmarks the HTTPS filter.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HTTPSFilterBenchmark {
+
+
+	private HTTPSFilter filter;
+
+
+	private JSONRPC2Request request;
+
+
+	private MessageContext secureCtx;
+
+
+	private MessageContext plainCtx;
+
+
+	@Setup
+	public void setUp() {
+
+		filter = new HTTPSFilter();
+		filter.init(true);
+
+		request = Fixtures.request("sso.login", null);
+
+		secureCtx = Fixtures.context(Fixtures.ip(0), true, null);
+		plainCtx = Fixtures.context(Fixtures.ip(0), false, null);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return filter.filter(request, secureCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult deny() {
+
+		return filter.filter(request, plainCtx);
+	}
+}
@@ -0,0 +1,83 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.HostFilter;
+
+
+/**
+ * Benchmarks the host filter with whitelists of increasing size.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostFilterBenchmark {
+
+
+	@Param({"1", "1000", "100000"})
+	public int hosts;
+
+
+	private HostFilter filter;
+
+
+	private JSONRPC2Request request;
+
+
+	private MessageContext allowedCtx;
+
+
+	private MessageContext deniedCtx;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		filter = new HostFilter();
+		filter.init(Fixtures.hostWhitelist(hosts));
+
+		request = Fixtures.request("sso.login", null);
+
+		// The last whitelisted IP
+		allowedCtx = Fixtures.context(Fixtures.ip(hosts - 1), true, null);
+		deniedCtx = Fixtures.context(Fixtures.DENIED_IP, true, null);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return filter.filter(request, allowedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult deny() {
+
+		return filter.filter(request, deniedCtx);
+	}
+}
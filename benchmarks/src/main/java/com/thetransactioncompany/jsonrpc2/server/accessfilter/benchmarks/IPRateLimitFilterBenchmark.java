@@ -0,0 +1,124 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.IPRateLimitFilter;
+
+
+/**
+ * Benchmarks the client IP rate limit filter with four threads, for a set
+ * of IPv4 and IPv6 clients fitting the counter table, and for a spray of
+ * addresses many times the table capacity, which forces evictions.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class IPRateLimitFilterBenchmark {
+
+
+	private static final int CLIENTS = 10000;
+
+
+	private static final int SPRAY = 1 << 20;
+
+
+	@State(Scope.Thread)
+	public static class Caller {
+
+
+		private int next;
+
+
+		MessageContext nextContext(final MessageContext[] contexts) {
+
+			MessageContext ctx = contexts[next];
+
+			next = (next + 1) % contexts.length;
+
+			return ctx;
+		}
+	}
+
+
+	private IPRateLimitFilter filter;
+
+
+	private IPRateLimitFilter smallFilter;
+
+
+	private MessageContext[] ipv4Clients;
+
+
+	private MessageContext[] ipv6Clients;
+
+
+	private MessageContext[] spray;
+
+
+	@Setup
+	public void setUp() {
+
+		filter = new IPRateLimitFilter();
+		filter.init(Integer.MAX_VALUE, 60000L, CLIENTS * 2);
+
+		smallFilter = new IPRateLimitFilter();
+		smallFilter.init(Integer.MAX_VALUE, 60000L, 1024);
+
+		ipv4Clients = new MessageContext[CLIENTS];
+		ipv6Clients = new MessageContext[CLIENTS];
+
+		for (int i=0; i < CLIENTS; i++) {
+			ipv4Clients[i] = Fixtures.context(Fixtures.ip(i), true, null);
+			// Distinct /64 prefixes, which are counted apart
+			ipv6Clients[i] = Fixtures.context("2001:db8:" + Integer.toHexString(i) + "::1", true, null);
+		}
+
+		spray = new MessageContext[SPRAY];
+
+		for (int i=0; i < SPRAY; i++)
+			spray[i] = Fixtures.context(Fixtures.ip(i), true, null);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult ipv4(final Caller caller) {
+
+		return filter.check(caller.nextContext(ipv4Clients));
+	}
+
+
+	@Benchmark
+	public AccessFilterResult ipv6(final Caller caller) {
+
+		return filter.check(caller.nextContext(ipv6Clients));
+	}
+
+
+	@Benchmark
+	public AccessFilterResult sprayWithEviction(final Caller caller) {
+
+		return smallFilter.check(caller.nextContext(spray));
+	}
+}
@@ -0,0 +1,110 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.MappedKeyIndex;
+
+
+/**
+ * Benchmarks lookups in a memory-mapped index of one million API keys, for
+ * known keys and for unknown keys rejected by the Bloom filter, and the
+ * opening of the index.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedKeyIndexBenchmark {
+
+
+	private static final int KEYS = 1000000;
+
+
+	private File file;
+
+
+	private MappedKeyIndex index;
+
+
+	private int i;
+
+
+	@Setup
+	public void setUp()
+		throws IOException {
+
+		Set<String> methods = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(Fixtures.METHODS)));
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+
+		for (int k=0; k < KEYS; k++)
+			keyMap.put(new APIKey(Fixtures.apiKey(k)), methods);
+
+		file = File.createTempFile("api-keys", ".idx");
+		file.deleteOnExit();
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		index = MappedKeyIndex.open(file);
+	}
+
+
+	@TearDown
+	public void tearDown() {
+
+		file.delete();
+	}
+
+
+	@Benchmark
+	public int lookupKnown() {
+
+		i = (i + 1) % KEYS;
+
+		return index.lookup(Fixtures.apiKey(i));
+	}
+
+
+	@Benchmark
+	public int lookupUnknown() {
+
+		i = (i + 1) % KEYS;
+
+		return index.lookup(Fixtures.apiKey(KEYS + i));
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public MappedKeyIndex open()
+		throws IOException {
+
+		return MappedKeyIndex.open(file);
+	}
+}
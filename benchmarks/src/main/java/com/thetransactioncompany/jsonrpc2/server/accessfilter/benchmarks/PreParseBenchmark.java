@@ -0,0 +1,108 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKeyFilter;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.PreParseFilter;
+
+
+/**
+ * Benchmarks rejecting a request with an unknown API key from its raw body
+ * with the pre-parse filter, against parsing the body and then filtering
+ * it. The API key is the last parameter, after a payload array of the
+ * specified number of items, so that the scanner must pass the payload.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreParseBenchmark {
+
+
+	@Param({"0", "100", "10000"})
+	public int payloadItems;
+
+
+	private APIKeyFilter apiKeyFilter;
+
+
+	private PreParseFilter preParseFilter;
+
+
+	private MessageContext ctx;
+
+
+	private byte[] body;
+
+
+	@Setup
+	public void setUp() {
+
+		apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(Fixtures.apiKeyMap(1000), Fixtures.exemptedMethods());
+
+		preParseFilter = new PreParseFilter(null, apiKeyFilter);
+
+		ctx = Fixtures.context(Fixtures.ip(0), true, null);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"");
+		sb.append(Fixtures.METHODS[0]);
+		sb.append("\",\"params\":{\"payload\":[");
+
+		for (int i=0; i < payloadItems; i++) {
+
+			if (i > 0)
+				sb.append(',');
+
+			sb.append("{\"item\":").append(i).append(",\"name\":\"item-").append(i).append("\"}");
+		}
+
+		sb.append("],\"apiKey\":\"");
+		sb.append(Fixtures.UNKNOWN_API_KEY);
+		sb.append("\"}}");
+
+		body = sb.toString().getBytes(Charset.forName("UTF-8"));
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyPreParse() {
+
+		return preParseFilter.filter(body, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyAfterParse()
+		throws JSONRPC2ParseException {
+
+		JSONRPC2Request request = JSONRPC2Request.parse(new String(body, Charset.forName("UTF-8")));
+
+		return apiKeyFilter.filter(request, ctx);
+	}
+}
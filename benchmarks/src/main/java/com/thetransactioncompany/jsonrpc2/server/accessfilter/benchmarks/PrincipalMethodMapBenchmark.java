@@ -0,0 +1,102 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.PrincipalMethodMap;
+
+
+/**
+ * Benchmarks principal method map lookups across ten thousand exact DNs and
+ * a hundred DN suffixes.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrincipalMethodMapBenchmark {
+
+
+	private static final int PRINCIPALS = 10000;
+
+
+	private static final int SUFFIXES = 100;
+
+
+	private PrincipalMethodMap map;
+
+
+	private DN exactDN;
+
+
+	private DN suffixDN;
+
+
+	private DN unknownDN;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		Set<String> methods = Collections.singleton(Fixtures.METHODS[0]);
+
+		Map<DN,Set<String>> principals = new HashMap<DN,Set<String>>();
+
+		for (int i=0; i < PRINCIPALS; i++)
+			principals.put(new DN("cn=client" + i + ",ou=clients,o=Acme"), methods);
+
+		Map<DN,Set<String>> suffixes = new HashMap<DN,Set<String>>();
+
+		for (int i=0; i < SUFFIXES; i++)
+			suffixes.put(new DN("ou=partner" + i + ",ou=Partners,o=Acme"), methods);
+
+		map = new PrincipalMethodMap(principals, suffixes);
+
+		exactDN = new DN("cn=client" + (PRINCIPALS / 2) + ",ou=clients,o=Acme");
+		suffixDN = new DN("cn=host,ou=partner" + (SUFFIXES / 2) + ",ou=Partners,o=Acme");
+		unknownDN = new DN("cn=host,ou=other,o=Acme");
+	}
+
+
+	@Benchmark
+	public boolean exact() {
+
+		return map.allows(exactDN, Fixtures.METHODS[0]);
+	}
+
+
+	@Benchmark
+	public boolean suffix() {
+
+		return map.allows(suffixDN, Fixtures.METHODS[0]);
+	}
+
+
+	@Benchmark
+	public boolean unknown() {
+
+		return map.allows(unknownDN, Fixtures.METHODS[0]);
+	}
+}
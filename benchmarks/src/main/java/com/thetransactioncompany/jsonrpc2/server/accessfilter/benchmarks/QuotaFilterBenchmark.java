@@ -0,0 +1,127 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.Quota;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.QuotaFilter;
+
+
+/**
+ * Benchmarks the quota filter with four threads counting calls in the
+ * memory-mapped counter file, for one shared API key and spread over many
+ * keys.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class QuotaFilterBenchmark {
+
+
+	private static final int KEYS = 10000;
+
+
+	@State(Scope.Thread)
+	public static class Caller {
+
+
+		private int next;
+
+
+		JSONRPC2Request nextRequest(final JSONRPC2Request[] requests) {
+
+			JSONRPC2Request request = requests[next];
+
+			next = (next + 1) % requests.length;
+
+			return request;
+		}
+	}
+
+
+	private File file;
+
+
+	private QuotaFilter filter;
+
+
+	private MessageContext ctx;
+
+
+	private JSONRPC2Request sharedKeyRequest;
+
+
+	private JSONRPC2Request[] requests;
+
+
+	@Setup
+	public void setUp()
+		throws IOException {
+
+		file = File.createTempFile("quota-benchmark", ".dat");
+		file.delete();
+
+		filter = new QuotaFilter();
+		filter.init(file, new Quota(Quota.UNLIMITED, Quota.UNLIMITED), new HashMap<APIKey,Quota>());
+
+		ctx = Fixtures.context(Fixtures.ip(0), true, null);
+
+		sharedKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(0));
+
+		requests = new JSONRPC2Request[KEYS];
+
+		for (int i=0; i < KEYS; i++)
+			requests[i] = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(i));
+	}
+
+
+	@TearDown
+	public void tearDown()
+		throws IOException {
+
+		filter.close();
+		file.delete();
+	}
+
+
+	@Benchmark
+	public AccessFilterResult countSharedKey() {
+
+		return filter.filter(sharedKeyRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult countManyKeys(final Caller caller) {
+
+		return filter.filter(caller.nextRequest(requests), ctx);
+	}
+}
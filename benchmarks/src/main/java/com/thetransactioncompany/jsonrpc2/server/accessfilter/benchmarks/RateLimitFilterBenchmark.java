@@ -0,0 +1,124 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.APIKey;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.RateLimit;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.RateLimitFilter;
+
+
+/**
+ * Benchmarks the rate limit filter with four threads, all hitting the
+ * bucket of one API key, and spread over the buckets of many keys. The
+ * rate is high enough for requests to be allowed, the denial path is
+ * measured with an exhausted bucket.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RateLimitFilterBenchmark {
+
+
+	private static final int KEYS = 10000;
+
+
+	@State(Scope.Thread)
+	public static class Caller {
+
+
+		private int next;
+
+
+		JSONRPC2Request nextRequest(final JSONRPC2Request[] requests) {
+
+			JSONRPC2Request request = requests[next];
+
+			next = (next + 1) % requests.length;
+
+			return request;
+		}
+	}
+
+
+	private RateLimitFilter filter;
+
+
+	private RateLimitFilter exhaustedFilter;
+
+
+	private MessageContext ctx;
+
+
+	private JSONRPC2Request sharedKeyRequest;
+
+
+	private JSONRPC2Request[] requests;
+
+
+	@Setup
+	public void setUp() {
+
+		filter = new RateLimitFilter();
+		filter.init(new RateLimit(1.0e9, RateLimit.MAX_BURST), new HashMap<APIKey,RateLimit>());
+
+		exhaustedFilter = new RateLimitFilter();
+		exhaustedFilter.init(new RateLimit(1.0e-6, 1), new HashMap<APIKey,RateLimit>());
+
+		ctx = Fixtures.context(Fixtures.ip(0), true, null);
+
+		sharedKeyRequest = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(0));
+
+		requests = new JSONRPC2Request[KEYS];
+
+		for (int i=0; i < KEYS; i++)
+			requests[i] = Fixtures.request(Fixtures.METHODS[0], Fixtures.apiKey(i));
+
+		exhaustedFilter.filter(sharedKeyRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowSharedKey() {
+
+		return filter.filter(sharedKeyRequest, ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowManyKeys(final Caller caller) {
+
+		return filter.filter(caller.nextRequest(requests), ctx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyExhausted() {
+
+		return exhaustedFilter.filter(sharedKeyRequest, ctx);
+	}
+}
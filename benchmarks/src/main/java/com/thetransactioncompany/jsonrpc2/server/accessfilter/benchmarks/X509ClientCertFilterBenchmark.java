@@ -0,0 +1,111 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.AccessFilterResult;
+import com.thetransactioncompany.jsonrpc2.server.accessfilter.X509ClientCertFilter;
+
+
+/**
+ * Benchmarks the X.509 client certificate filter with a required principal,
+ * with the default parsed DN cache and with caching disabled.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class X509ClientCertFilterBenchmark {
+
+
+	private X509ClientCertFilter filter;
+	
+	
+	private X509ClientCertFilter uncachedFilter;
+
+
+	private JSONRPC2Request request;
+
+
+	private MessageContext allowedCtx;
+
+
+	private MessageContext deniedCtx;
+
+
+	private MessageContext noCertCtx;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		filter = new X509ClientCertFilter();
+		filter.init(true, new DN(Fixtures.CLIENT_PRINCIPAL));
+		
+		uncachedFilter = new X509ClientCertFilter();
+		uncachedFilter.init(true, new DN(Fixtures.CLIENT_PRINCIPAL), 0);
+
+		request = Fixtures.request("sso.login", null);
+
+		allowedCtx = Fixtures.context(Fixtures.ip(0), true, Fixtures.CLIENT_PRINCIPAL);
+		deniedCtx = Fixtures.context(Fixtures.ip(0), true, Fixtures.OTHER_PRINCIPAL);
+		noCertCtx = Fixtures.context(Fixtures.ip(0), true, null);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allow() {
+
+		return filter.filter(request, allowedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult denyPrincipal() {
+
+		return filter.filter(request, deniedCtx);
+	}
+
+
+	@Benchmark
+	public AccessFilterResult allowUncached() {
+		
+		return uncachedFilter.filter(request, allowedCtx);
+	}
+	
+	
+	@Benchmark
+	public AccessFilterResult denyPrincipalUncached() {
+		
+		return uncachedFilter.filter(request, deniedCtx);
+	}
+	
+	
+	@Benchmark
+	public AccessFilterResult denyNoCert() {
+
+		return filter.filter(request, noCertCtx);
+	}
+}
@@ -7,6 +7,10 @@ import java.util.UUID;
 /**
  * Immutable API key.
  *
+ * <p>API keys are compared as plain strings, not in constant time. For
+ * timing-safe verification use the hashed API key mode of
+ * {@link APIKeyFilter}.
+ *
  * @author Vladimir Dzhuvinov
  */
 public final class APIKey {
@@ -44,6 +48,19 @@ public final class APIKey {
 	}
 	
 	
+	/**
+	 * Returns the SHA-256 digest of this API key, for use in a hashed API
+	 * key map.
+	 *
+	 * @return The SHA-256 digest of the UTF-8 encoded API key value, as a
+	 *         lower case hexadecimal string.
+	 */
+	public String getSHA256Digest() {
+		
+		return APIKeyDigest.toHex(APIKeyDigest.sha256(value));
+	}
+	
+	
 	/**
 	 * Overrides {@code Object.hashCode()}.
 	 *
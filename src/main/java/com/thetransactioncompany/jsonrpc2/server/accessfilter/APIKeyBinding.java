@@ -0,0 +1,206 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.Principal;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Immutable binding of an API key to one or more X.509 client certificates,
+ * by principal (subject DN) or by SHA-256 fingerprint. A bound API key is
+ * accepted only from a client presenting a matching certificate, so a stolen
+ * key can't be used from another client.
+ *
+ * <p>The binding of a key is compiled into its index entry in
+ * {@link APIKeyFilter}, so it is fetched by the same lookup as the allowed
+ * methods of the key.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class APIKeyBinding {
+
+
+	/**
+	 * The bound principal DNs.
+	 */
+	private final Set<DN> principals;
+
+
+	/**
+	 * The bound principal DNs, normalised.
+	 */
+	private final Set<String> normalizedPrincipals;
+
+
+	/**
+	 * The bound certificate fingerprints, as lower case hexadecimal
+	 * strings.
+	 */
+	private final Set<String> fingerprints;
+
+
+	/**
+	 * Creates a new API key binding.
+	 *
+	 * @param principals   The bound client certificate principal DNs,
+	 *                     empty if none. Must not be {@code null}.
+	 * @param fingerprints The bound hexadecimal SHA-256 client certificate
+	 *                     fingerprints, with optional colons between the
+	 *                     bytes, empty if none. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, both
+	 *                                  sets are empty or a fingerprint is
+	 *                                  invalid.
+	 */
+	public APIKeyBinding(final Set<DN> principals, final Set<String> fingerprints) {
+
+		if (principals == null || fingerprints == null)
+			throw new IllegalArgumentException("The bound principals and fingerprints must not be null");
+
+		if (principals.isEmpty() && fingerprints.isEmpty())
+			throw new IllegalArgumentException("The API key binding must have a principal or a fingerprint");
+
+		Set<String> normalized = new HashSet<String>(principals.size() * 4 / 3 + 1);
+
+		for (DN dn: principals)
+			normalized.add(dn.toNormalizedString());
+
+		Set<String> parsed = new HashSet<String>(fingerprints.size() * 4 / 3 + 1);
+
+		for (String fingerprint: fingerprints) {
+
+			String hex = X509CertPinningFilter.parseFingerprint(fingerprint);
+
+			if (hex == null)
+				throw new IllegalArgumentException("Invalid SHA-256 certificate fingerprint: " + fingerprint);
+
+			parsed.add(hex);
+		}
+
+		this.principals = Collections.unmodifiableSet(new HashSet<DN>(principals));
+		this.normalizedPrincipals = normalized;
+		this.fingerprints = Collections.unmodifiableSet(parsed);
+	}
+
+
+	/**
+	 * Gets the bound client certificate principals.
+	 *
+	 * @return The principal DNs, empty set if none.
+	 */
+	public Set<DN> getPrincipals() {
+
+		return principals;
+	}
+
+
+	/**
+	 * Gets the bound client certificate fingerprints.
+	 *
+	 * @return The lower case hexadecimal SHA-256 fingerprints, empty set
+	 *         if none.
+	 */
+	public Set<String> getFingerprints() {
+
+		return fingerprints;
+	}
+
+
+	/**
+	 * Returns {@code true} if the client of the specified message context
+	 * presents a certificate matching this binding. The principals are
+	 * matched first, the leaf certificate of the
+	 * {@link X509CertPinningFilter#CERTIFICATE_ATTRIBUTE servlet request
+	 * chain} is fingerprinted only if no principal matches.
+	 *
+	 * @param messageCtx       The message context. Must not be
+	 *                         {@code null}.
+	 * @param dnCache          The cache of parsed principal DNs. Must
+	 *                         not be {@code null}.
+	 * @param fingerprintCache The cache of certificate fingerprints.
+	 *                         Must not be {@code null}.
+	 *
+	 * @return {@code true} if the client certificate matches, else
+	 *         {@code false}.
+	 */
+	boolean matches(final MessageContext messageCtx,
+	                final DNCache dnCache,
+	                final FingerprintCache fingerprintCache) {
+
+		if (! normalizedPrincipals.isEmpty() && messageCtx.getPrincipals() != null) {
+
+			for (Principal principal: messageCtx.getPrincipals()) {
+
+				if (principal == null || principal.getName() == null)
+					continue;
+
+				DN dn = dnCache.get(principal.getName());
+
+				if (dn != null && normalizedPrincipals.contains(dn.toNormalizedString()))
+					return true;
+			}
+		}
+
+		if (fingerprints.isEmpty())
+			return false;
+
+		final HttpServletRequest httpRequest = messageCtx.getHttpServletRequest();
+
+		if (httpRequest == null)
+			return false;
+
+		final Object attribute = httpRequest.getAttribute(X509CertPinningFilter.CERTIFICATE_ATTRIBUTE);
+
+		if (! (attribute instanceof X509Certificate[]) || ((X509Certificate[])attribute).length == 0)
+			return false;
+
+		final X509Certificate leaf = ((X509Certificate[])attribute)[0];
+
+		if (leaf == null)
+			return false;
+
+		final String fingerprint = fingerprintCache.get(leaf);
+
+		return fingerprint != null && fingerprints.contains(fingerprint);
+	}
+
+
+	/**
+	 * Overrides {@code Object.hashCode()}.
+	 *
+	 * @return The object hash code.
+	 */
+	public int hashCode() {
+
+		return normalizedPrincipals.hashCode() ^ fingerprints.hashCode();
+	}
+
+
+	/**
+	 * Overrides {@code Object.equals()}.
+	 *
+	 * @param object The object to compare to.
+	 *
+	 * @return {@code true} if the objects bind the same principals and
+	 *         fingerprints, otherwise {@code false}.
+	 */
+	public boolean equals(final Object object) {
+
+		if (! (object instanceof APIKeyBinding))
+			return false;
+
+		APIKeyBinding other = (APIKeyBinding)object;
+
+		return normalizedPrincipals.equals(other.normalizedPrincipals) &&
+		       fingerprints.equals(other.fingerprints);
+	}
+}
@@ -0,0 +1,188 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.nio.charset.Charset;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * SHA-256 digest and constant-time comparison utilities for API keys.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class APIKeyDigest {
+
+
+	/**
+	 * The digest length, in bytes.
+	 */
+	static final int LENGTH = 32;
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The hexadecimal digits.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+	/**
+	 * Per-thread SHA-256 message digest, as creating one is expensive and
+	 * instances are not thread-safe.
+	 */
+	private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+
+		protected MessageDigest initialValue() {
+
+			try {
+				return MessageDigest.getInstance("SHA-256");
+
+			} catch (NoSuchAlgorithmException e) {
+
+				// Every Java platform must support SHA-256
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	};
+
+
+	/**
+	 * Computes the SHA-256 digest of the specified API key value.
+	 *
+	 * @param value The API key value, UTF-8 encoded for hashing. Must not
+	 *              be {@code null}.
+	 *
+	 * @return The digest.
+	 */
+	static byte[] sha256(final String value) {
+
+		return SHA256.get().digest(value.getBytes(UTF8));
+	}
+	
+	
+	/**
+	 * Computes the SHA-256 digest of the specified bytes.
+	 *
+	 * @param value The bytes. Must not be {@code null}.
+	 *
+	 * @return The digest.
+	 */
+	static byte[] sha256(final byte[] value) {
+		
+		return SHA256.get().digest(value);
+	}
+
+
+	/**
+	 * Returns the lower case hexadecimal representation of the specified
+	 * digest.
+	 *
+	 * @param digest The digest. Must not be {@code null}.
+	 *
+	 * @return The hexadecimal string.
+	 */
+	static String toHex(final byte[] digest) {
+
+		char[] chars = new char[digest.length * 2];
+
+		for (int i=0; i < digest.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+
+	/**
+	 * Parses the specified hexadecimal SHA-256 digest, in upper or lower
+	 * case.
+	 *
+	 * @param hex The hexadecimal string. May be {@code null}.
+	 *
+	 * @return The digest, {@code null} if the string is not a valid
+	 *         hexadecimal SHA-256 digest.
+	 */
+	static byte[] parseHex(final String hex) {
+
+		if (hex == null || hex.length() != LENGTH * 2)
+			return null;
+
+		byte[] digest = new byte[LENGTH];
+
+		for (int i=0; i < LENGTH; i++) {
+
+			int hi = Character.digit(hex.charAt(i * 2), 16);
+			int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+
+			if (hi < 0 || lo < 0)
+				return null;
+
+			digest[i] = (byte)((hi << 4) | lo);
+		}
+
+		return digest;
+	}
+
+
+	/**
+	 * Compares the specified digests in constant time, independent of the
+	 * position of the first difference.
+	 *
+	 * @param a The first digest. Must not be {@code null}.
+	 * @param b The second digest. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the digests are equal, else {@code false}.
+	 */
+	static boolean constantTimeEquals(final byte[] a, final byte[] b) {
+
+		if (a.length != b.length)
+			return false;
+
+		int diff = 0;
+
+		for (int i=0; i < a.length; i++)
+			diff |= a[i] ^ b[i];
+
+		return diff == 0;
+	}
+
+
+	/**
+	 * Compares the specified strings in time depending only on the length
+	 * of the second string, independent of the position of the first
+	 * difference.
+	 *
+	 * @param secret The secret string. Must not be {@code null}.
+	 * @param input  The input string. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the strings are equal, else {@code false}.
+	 */
+	static boolean constantTimeEquals(final String secret, final String input) {
+
+		final int secretLength = secret.length();
+
+		if (secretLength == 0)
+			return input.isEmpty();
+
+		int diff = secretLength ^ input.length();
+
+		for (int i=0; i < input.length(); i++)
+			diff |= input.charAt(i) ^ secret.charAt(i % secretLength);
+
+		return diff == 0;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private APIKeyDigest() { }
+}
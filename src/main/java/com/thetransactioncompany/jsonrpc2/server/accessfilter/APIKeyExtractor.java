@@ -0,0 +1,31 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Extracts the API key of a JSON-RPC 2.0 request, used by 
+ * {@link APIKeyFilter}. Implementations must be thread-safe and should not
+ * throw exceptions for malformed requests, but return {@code null} instead.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface APIKeyExtractor {
+
+
+	/**
+	 * Extracts the API key of the specified JSON-RPC 2.0 request.
+	 *
+	 * @param request    The JSON-RPC 2.0 request. Must not be 
+	 *                   {@code null}.
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *                   Must not be {@code null}.
+	 *
+	 * @return The API key, {@code null} if not found.
+	 */
+	public String extract(final JSONRPC2Request request,
+	                      final MessageContext messageCtx);
+}
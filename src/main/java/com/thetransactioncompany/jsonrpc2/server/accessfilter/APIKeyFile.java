@@ -0,0 +1,155 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Parser of API key files. Each line of the file specifies an API key and
+ * the JSON-RPC 2.0 methods it is allowed access to, separated by spaces.
+ * A method name may also be a glob pattern, see {@link APIKeyFilter}. Blank
+ * lines and lines starting with '#' are ignored.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * # Single sign-on clients
+ * f70defbe-b881-41f8-8138-bea52b6e1b9c=sso.login sso.logout sso.getSession
+ * 08d1e641-b1c1-4d88-8796-e47c06430efb=sso.proxiedLogin sso.proxiedLogout
+ * 2b0e8f5c-7f1d-4b8e-9c55-64a9d3f7e0a1=billing.* *.get
+ * </pre>
+ *
+ * <p>The file must be UTF-8 encoded.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class APIKeyFile {
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private APIKeyFile() {
+
+		// Nothing to do
+	}
+
+
+	/**
+	 * Loads the API key map from the specified file. API keys with
+	 * identical methods share the same unmodifiable set instance.
+	 *
+	 * @param file   The API key file. Must not be {@code null}.
+	 * @param hashed If {@code true} the API keys must be hexadecimal
+	 *               SHA-256 digests.
+	 *
+	 * @return The unmodifiable API key map, empty if the file specifies no
+	 *         keys.
+	 *
+	 * @throws IOException If the file couldn't be read or has an invalid
+	 *                     line.
+	 */
+	public static Map<APIKey,Set<String>> load(final File file, final boolean hashed)
+		throws IOException {
+
+		if (file == null)
+			throw new IllegalArgumentException("The API key file must not be null");
+
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+
+		try {
+			return parse(new BufferedReader(reader), file.getPath(), hashed);
+
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * Parses an API key map.
+	 *
+	 * @param reader The reader. Must not be {@code null}.
+	 * @param name   The file name, for error messages.
+	 * @param hashed If {@code true} the API keys must be hexadecimal
+	 *               SHA-256 digests.
+	 *
+	 * @return The unmodifiable API key map.
+	 *
+	 * @throws IOException If reading failed or a line is invalid.
+	 */
+	private static Map<APIKey,Set<String>> parse(final BufferedReader reader,
+	                                             final String name,
+	                                             final boolean hashed)
+		throws IOException {
+
+		Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+
+		// Shared method sets, typically there are far fewer distinct
+		// method sets than API keys
+		Map<Set<String>,Set<String>> sharedSets = new HashMap<Set<String>,Set<String>>();
+
+		int lineNumber = 0;
+
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+
+			lineNumber++;
+
+			line = line.trim();
+
+			if (line.isEmpty() || line.charAt(0) == '#')
+				continue;
+
+			final int sep = line.indexOf('=');
+
+			String keyString = sep > 0 ? line.substring(0, sep).trim() : "";
+			String methodsString = sep > 0 ? line.substring(sep + 1).trim() : "";
+
+			if (keyString.isEmpty() || methodsString.isEmpty())
+				throw new IOException("Invalid API key entry at line " + lineNumber + " of " + name);
+
+			if (hashed && APIKeyDigest.parseHex(keyString) == null)
+				throw new IOException("Invalid SHA-256 API key digest at line " + lineNumber + " of " + name);
+
+			Set<String> methods = new HashSet<String>();
+
+			for (String method: methodsString.split("\\s+"))
+				methods.add(method);
+
+			Set<String> shared = sharedSets.get(methods);
+
+			if (shared == null) {
+
+				// Check the patterns compile
+				try {
+					MethodPermissions.compile(methods, new MethodSymbolTable(methods.size()), true);
+
+				} catch (IllegalArgumentException e) {
+
+					throw new IOException("Invalid API key method patterns at line " + lineNumber + " of " + name + ": " + e.getMessage());
+				}
+
+				shared = Collections.unmodifiableSet(methods);
+				sharedSets.put(methods, shared);
+			}
+
+			if (map.put(new APIKey(keyString), shared) != null)
+				throw new IOException("Duplicate API key at line " + lineNumber + " of " + name);
+		}
+
+		return Collections.unmodifiableMap(map);
+	}
+}
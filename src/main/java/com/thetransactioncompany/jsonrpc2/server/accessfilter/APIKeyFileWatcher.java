@@ -0,0 +1,322 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Watches an {@link APIKeyFile API key file} and applies its changes to an
+ * {@link APIKeyFilter}. The file's directory is watched with a
+ * {@code WatchService}; on a change the file is parsed on the watcher
+ * thread and the {@link APIKeyFilter#update difference} to the current keys
+ * is published to the filter atomically, so requests never wait for the
+ * reload.
+ *
+ * <p>Bursts of change events, as caused by editors and copy tools, are
+ * coalesced by waiting for the file to settle before reloading. If the file
+ * is invalid or missing the current keys remain in effect. To replace the
+ * file without exposing a partly written one, write a temporary file in
+ * the same directory and rename it.
+ *
+ * <p>The watcher thread must be {@link #stop stopped} when no longer used.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class APIKeyFileWatcher {
+
+
+	/**
+	 * The default time to wait for the file to settle after a change
+	 * event, in milliseconds.
+	 */
+	public static final long DEFAULT_SETTLE_TIME = 100L;
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger log = LogManager.getLogger("MAIN");
+
+
+	/**
+	 * The watched file.
+	 */
+	private final File file;
+
+
+	/**
+	 * The API key filter to update.
+	 */
+	private final APIKeyFilter filter;
+
+
+	/**
+	 * The time to wait for the file to settle, in milliseconds.
+	 */
+	private final long settleTime;
+
+
+	/**
+	 * The watch service, {@code null} if not started.
+	 */
+	private WatchService watchService;
+
+
+	/**
+	 * The watcher thread, {@code null} if not started.
+	 */
+	private Thread thread;
+
+
+	/**
+	 * Creates a new API key file watcher.
+	 *
+	 * @param file   The API key file. Must not be {@code null}.
+	 * @param filter The initialised API key filter to update. Must not be
+	 *               {@code null}.
+	 */
+	public APIKeyFileWatcher(final File file, final APIKeyFilter filter) {
+
+		this(file, filter, DEFAULT_SETTLE_TIME);
+	}
+
+
+	/**
+	 * Creates a new API key file watcher.
+	 *
+	 * @param file       The API key file. Must not be {@code null}.
+	 * @param filter     The initialised API key filter to update. Must
+	 *                   not be {@code null}.
+	 * @param settleTime The time to wait for the file to settle after a
+	 *                   change event, in milliseconds. Must not be
+	 *                   negative.
+	 */
+	public APIKeyFileWatcher(final File file, final APIKeyFilter filter, final long settleTime) {
+
+		if (file == null)
+			throw new IllegalArgumentException("The API key file must not be null");
+
+		if (filter == null)
+			throw new IllegalArgumentException("The API key filter must not be null");
+
+		if (settleTime < 0L)
+			throw new IllegalArgumentException("The settle time must not be negative");
+
+		this.file = file.getAbsoluteFile();
+		this.filter = filter;
+		this.settleTime = settleTime;
+	}
+
+
+	/**
+	 * Gets the watched file.
+	 *
+	 * @return The API key file.
+	 */
+	public File getFile() {
+
+		return file;
+	}
+
+
+	/**
+	 * Reloads the API key file and applies the changes to the filter.
+	 *
+	 * @return The applied difference, empty if the keys are unchanged.
+	 *
+	 * @throws IOException              If the file couldn't be read or is
+	 *                                  invalid.
+	 * @throws IllegalArgumentException If the keys couldn't be applied to
+	 *                                  the filter.
+	 */
+	public APIKeyMapDiff reload()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = APIKeyFile.load(file, filter.hasHashedKeys());
+
+		return filter.update(keyMap);
+	}
+
+
+	/**
+	 * Starts watching the API key file. A previously started watcher
+	 * thread is stopped.
+	 *
+	 * @throws IOException If the file's directory couldn't be watched.
+	 */
+	public synchronized void start()
+		throws IOException {
+
+		stop();
+
+		final WatchService ws = FileSystems.getDefault().newWatchService();
+
+		try {
+			file.getParentFile().toPath().register(ws,
+			                                       StandardWatchEventKinds.ENTRY_CREATE,
+			                                       StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+
+			ws.close();
+			throw e;
+		}
+
+		watchService = ws;
+
+		thread = new Thread(new Runnable() {
+
+			public void run() {
+
+				watch(ws);
+			}
+
+		}, "APIKeyFile-watcher");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Stops watching the API key file, if started.
+	 */
+	public synchronized void stop() {
+
+		if (watchService == null)
+			return;
+
+		try {
+			watchService.close();
+
+		} catch (IOException e) {
+
+			log.warn("Couldn't close API key file watch service: " + e.getMessage());
+		}
+
+		thread.interrupt();
+
+		watchService = null;
+		thread = null;
+	}
+
+
+	/**
+	 * Returns {@code true} if the API key file is being watched.
+	 *
+	 * @return {@code true} if started, else {@code false}.
+	 */
+	public synchronized boolean isStarted() {
+
+		return watchService != null;
+	}
+
+
+	/**
+	 * Waits for changes of the API key file and reloads it, until the
+	 * watch service is closed.
+	 *
+	 * @param ws The watch service.
+	 */
+	private void watch(final WatchService ws) {
+
+		final Path fileName = file.toPath().getFileName();
+
+		try {
+			while (true) {
+
+				WatchKey key = ws.take();
+
+				boolean changed = pollEvents(key, fileName);
+
+				// Let the writer finish, then drain the events
+				// caused by the rest of the write
+				while (changed) {
+
+					Thread.sleep(settleTime);
+
+					key = ws.poll();
+
+					if (key == null)
+						break;
+
+					pollEvents(key, fileName);
+				}
+
+				if (changed)
+					reloadAndLog();
+			}
+
+		} catch (ClosedWatchServiceException e) {
+
+			// Stopped
+
+		} catch (InterruptedException e) {
+
+			// Stopped
+		}
+	}
+
+
+	/**
+	 * Retrieves the pending events of the specified watch key and resets
+	 * it.
+	 *
+	 * @param key      The watch key.
+	 * @param fileName The name of the watched file.
+	 *
+	 * @return {@code true} if an event concerns the watched file.
+	 */
+	private static boolean pollEvents(final WatchKey key, final Path fileName) {
+
+		boolean found = false;
+
+		for (WatchEvent<?> event: key.pollEvents()) {
+
+			// Also reload on overflow, events may have been lost
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context()))
+				found = true;
+		}
+
+		key.reset();
+
+		return found;
+	}
+
+
+	/**
+	 * Reloads the API key file and logs the outcome. On failure the
+	 * current keys remain in effect.
+	 */
+	private void reloadAndLog() {
+
+		final long start = System.nanoTime();
+
+		try {
+			APIKeyMapDiff diff = reload();
+
+			if (log.isInfoEnabled() && ! diff.isEmpty())
+				log.info("Reloaded API key file " + file + ": " + diff + " in " + (System.nanoTime() - start) / 1000000L + " ms");
+
+		} catch (IOException e) {
+
+			log.warn("Couldn't reload API key file, keeping current keys: " + e.getMessage());
+
+		} catch (IllegalArgumentException e) {
+
+			log.warn("Couldn't apply API key file, keeping current keys: " + e.getMessage());
+		}
+	}
+}
@@ -1,14 +1,18 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletRequest;
+
 import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
-import com.thetransactioncompany.jsonrpc2.util.NamedParamsRetriever;
-
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 
 
@@ -17,9 +21,60 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
  * request methods. An API key may be given access to zero, more or any 
  * (indicated by asterisk) methods.
  *
- * <p>The filtered JSON-RPC 2.0 request must have named parameters and the API
- * key must be passed in a designated {@link #DEFAULT_API_KEY_PARAMETER_NAME 
- * string parameter}.
+ * <p>The allowed methods may also be specified as glob patterns, where an
+ * asterisk matches any sequence of characters and a question mark any single
+ * character, for example "billing.*" or "*.get". The patterns of each key 
+ * are compiled into a single automaton, so a request is matched in one pass
+ * over its method name.
+ *
+ * <p>By default the filtered JSON-RPC 2.0 request must have named parameters
+ * and the API key must be passed in a designated 
+ * {@link #DEFAULT_API_KEY_PARAMETER_NAME string parameter}. Other key 
+ * locations, such as a positional parameter or an HTTP header, are set with 
+ * an {@link APIKeyExtractor}. Keys passed in an HTTP header can be 
+ * {@link #check checked} before the JSON body is parsed.
+ *
+ * <p>The API key map is indexed at initialisation, later changes to the 
+ * passed map are not reflected in the filter. The method names are interned 
+ * into integer IDs and the allowed methods of each key are compiled into a
+ * bitset, shared between keys with identical methods. Checking a request 
+ * takes one method name lookup and one API key lookup.
+ *
+ * <p>The API key map may alternatively be keyed by the 
+ * {@link APIKey#getSHA256Digest SHA-256 digests} of the API keys, so that the
+ * keys are not kept in the clear in memory and configuration. The presented
+ * keys are then hashed and compared to the configured digests in constant 
+ * time. A bounded cache of recently verified keys spares repeat callers the 
+ * SHA-256 hashing. The cache doesn't hold the keys either, it is keyed by a 
+ * SipHash of each key with a random secret, which is much cheaper to compute.
+ *
+ * <p>The API key map can be {@link #update updated} while the filter is in
+ * use, for example from an {@link APIKeyFileWatcher}. Only the difference to
+ * the current map is compiled, into a copy of the index which then replaces
+ * the current one atomically, so requests are not blocked by the update.
+ * Once the keys removed or changed by updates outnumber the current keys
+ * the index is compiled afresh, dropping the method sets no longer used.
+ *
+ * <p>Instead of an in-memory map the API keys may be looked up in an
+ * {@link APIKeyStore}, such as a {@link JDBCAPIKeyStore database}, for key
+ * sets too large to hold in memory. The lookups go through a bounded cache
+ * with a time to live for known and for unknown keys; concurrent lookups of
+ * the same key are made only once. Requests are denied with
+ * {@link AccessDeniedError#API_KEY_STORE_UNAVAILABLE} if the store fails or
+ * a concurrent lookup of the same key doesn't complete in time.
+ *
+ * <p>Very large read-only key sets may also be served from a prebuilt
+ * {@link MappedKeyIndex memory-mapped index}, which needs neither a store
+ * nor a cache.
+ *
+ * <p>API keys in a map may be {@link APIKeyBinding bound} to client X.509
+ * certificates, by principal DN or by fingerprint, so that a stolen key
+ * can't be used from another client. The binding is compiled into the index
+ * entry of the key, so it is fetched by the same lookup as the allowed 
+ * methods. Every bound key must be in the map; hashed keys are matched by
+ * digest, regardless of the case of the hexadecimal digits. Requests with a
+ * bound key from a client without a matching certificate are denied with
+ * {@link AccessDeniedError#API_KEY_CLIENT_CERT_MISMATCH}.
  *
  * @author Vladimir Dzhuvinov
  */
@@ -27,9 +82,175 @@ public class APIKeyFilter implements AccessFilter {
 
 
 	/**
-	 * Map of API keys to their allowed JSON-RPC 2.0 methods.
+	 * Immutable snapshot of the API key map and its index, replaced as a
+	 * whole on update.
+	 */
+	private static final class KeyTable {
+		
+		
+		/**
+		 * Map of API keys to their allowed JSON-RPC 2.0 methods.
+		 */
+		final Map<APIKey,Set<String>> keyMap;
+		
+		
+		/**
+		 * Index of the API key values to their allowed JSON-RPC 2.0 
+		 * methods, {@code null} if the keys are hashed.
+		 */
+		final Map<String,MethodPermissions> keyIndex;
+		
+		
+		/**
+		 * Index of the API key SHA-256 digests to their allowed 
+		 * JSON-RPC 2.0 methods, {@code null} if the keys are not 
+		 * hashed.
+		 */
+		final HashedKeyIndex hashedKeyIndex;
+		
+		
+		/**
+		 * Cache of recently verified API keys, keyed by a keyed hash 
+		 * of the keys, {@code null} if the keys are not hashed or 
+		 * caching is disabled.
+		 */
+		final VerifiedKeyCache verifiedKeys;
+		
+		
+		/**
+		 * The IDs of the JSON-RPC 2.0 method names.
+		 */
+		final MethodSymbolTable methodSymbols;
+		
+		
+		/**
+		 * The exempted JSON-RPC 2.0 methods, as method IDs.
+		 */
+		final MethodPermissions exemptedMethodIDs;
+		
+		
+		/**
+		 * The compiled permissions of each distinct method set.
+		 */
+		final Map<Set<String>,MethodPermissions> compiled;
+		
+		
+		/**
+		 * The API key store lookups, {@code null} if the keys are 
+		 * indexed in memory.
+		 */
+		final APIKeyStoreCache storeCache;
+		
+		
+		/**
+		 * The memory-mapped API key index, {@code null} if the keys 
+		 * are indexed otherwise.
+		 */
+		final MappedKeyIndex mappedKeyIndex;
+		
+		
+		/**
+		 * The compiled permissions of the mapped index method sets, by
+		 * method set ID, {@code null} if there is no mapped index.
+		 */
+		final MethodPermissions[] mappedPermissions;
+		
+		
+		/**
+		 * The number of keys removed or changed by updates since the 
+		 * method sets were last compiled afresh. Their compiled method
+		 * sets and method IDs may be left unused.
+		 */
+		final int retired;
+		
+		
+		/**
+		 * Creates a new key table.
+		 *
+		 * @param keyMap            The API key map.
+		 * @param keyIndex          The API key value index, 
+		 *                          {@code null} if the keys are hashed.
+		 * @param hashedKeyIndex    The API key digest index, 
+		 *                          {@code null} if the keys are not 
+		 *                          hashed.
+		 * @param verifiedKeys      The verified API key cache, 
+		 *                          {@code null} if none.
+		 * @param methodSymbols     The method IDs.
+		 * @param exemptedMethodIDs The exempted method IDs.
+		 * @param compiled          The compiled method sets.
+		 * @param storeCache        The API key store lookups, 
+		 *                          {@code null} if none.
+		 * @param mappedKeyIndex    The memory-mapped API key index,
+		 *                          {@code null} if none.
+		 * @param mappedPermissions The compiled mapped index method 
+		 *                          sets, {@code null} if none.
+		 * @param retired           The number of keys removed or 
+		 *                          changed since the method sets were 
+		 *                          last compiled afresh.
+		 */
+		KeyTable(final Map<APIKey,Set<String>> keyMap,
+		         final Map<String,MethodPermissions> keyIndex,
+		         final HashedKeyIndex hashedKeyIndex,
+		         final VerifiedKeyCache verifiedKeys,
+		         final MethodSymbolTable methodSymbols,
+		         final MethodPermissions exemptedMethodIDs,
+		         final Map<Set<String>,MethodPermissions> compiled,
+		         final APIKeyStoreCache storeCache,
+		         final MappedKeyIndex mappedKeyIndex,
+		         final MethodPermissions[] mappedPermissions,
+		         final int retired) {
+			
+			this.keyMap = keyMap;
+			this.keyIndex = keyIndex;
+			this.hashedKeyIndex = hashedKeyIndex;
+			this.verifiedKeys = verifiedKeys;
+			this.methodSymbols = methodSymbols;
+			this.exemptedMethodIDs = exemptedMethodIDs;
+			this.compiled = compiled;
+			this.storeCache = storeCache;
+			this.mappedKeyIndex = mappedKeyIndex;
+			this.mappedPermissions = mappedPermissions;
+			this.retired = retired;
+		}
+	}
+	
+	
+	/**
+	 * The current key table.
+	 */
+	private volatile KeyTable table;
+	
+	
+	/**
+	 * {@code true} if the API key map is keyed by SHA-256 digests.
+	 */
+	private boolean hashedKeys;
+	
+	
+	/**
+	 * The capacity of the verified API key cache.
+	 */
+	private int verifiedKeyCacheSize;
+	
+	
+	/**
+	 * The client certificate bindings of the API keys, empty if none.
+	 */
+	private Map<APIKey,APIKeyBinding> bindings;
+	
+	
+	/**
+	 * The cache of parsed client principal DNs for checking the bindings,
+	 * {@code null} if there are no bindings.
+	 */
+	private DNCache dnCache;
+	
+	
+	/**
+	 * The cache of client certificate fingerprints for checking the 
+	 * bindings, {@code null} if there are no bindings.
 	 */
-	private Map<APIKey,Set<String>> keyMap;
+	private FingerprintCache fingerprintCache;
 	
 	
 	/**
@@ -39,11 +260,18 @@ public class APIKeyFilter implements AccessFilter {
 	
 	
 	/**
-	 * The JSON-RPC 2.0 parameter used to pass the API key.
+	 * The JSON-RPC 2.0 parameter used to pass the API key, {@code null} if
+	 * the API key is extracted otherwise.
 	 */
 	private String apiKeyParamName;
 	
 	
+	/**
+	 * The API key extractor.
+	 */
+	private APIKeyExtractor apiKeyExtractor;
+	
+	
 	/**
 	 * The default name of the JSON-RPC 2.0 parameter used to pass the API
 	 * key.
@@ -51,6 +279,40 @@ public class APIKeyFilter implements AccessFilter {
 	public static final String DEFAULT_API_KEY_PARAMETER_NAME = "apiKey";
 	
 	
+	/**
+	 * The default capacity of the verified API key cache when the keys are
+	 * hashed.
+	 */
+	public static final int DEFAULT_VERIFIED_KEY_CACHE_SIZE = 4096;
+	
+	
+	/**
+	 * The default capacity of the API key store lookup cache.
+	 */
+	public static final int DEFAULT_STORE_CACHE_SIZE = 65536;
+	
+	
+	/**
+	 * The default time to live of known API keys in the store lookup 
+	 * cache, in milliseconds.
+	 */
+	public static final long DEFAULT_STORE_CACHE_TTL = 60000L;
+	
+	
+	/**
+	 * The default time to live of unknown API keys in the store lookup 
+	 * cache, in milliseconds.
+	 */
+	public static final long DEFAULT_STORE_NEGATIVE_CACHE_TTL = 5000L;
+	
+	
+	/**
+	 * The default maximum time to wait for a concurrent store lookup of 
+	 * the same API key, in milliseconds.
+	 */
+	public static final long DEFAULT_STORE_TIMEOUT = 5000L;
+	
+	
 	/**
 	 * Initialises this API key filter. The name of the JSON-RPC 2.0 
 	 * parameter used to pass the API key is set to 
@@ -59,7 +321,9 @@ public class APIKeyFilter implements AccessFilter {
 	 * @param keyMap          Map of API keys to their allowed JSON-RPC 2.0
 	 *                        methods. If a method name is set to "*" 
 	 *                        (asterisk) then any method is allowed for the
-	 *                        API key. Must not be {@code null}.
+	 *                        API key. Method names with asterisks or 
+	 *                        question marks are glob patterns. Must not be
+	 *                        {@code null}.
 	 * @param exemptedMethods Exempted JSON-RPC 2.0 methods for which an API
 	 *                        key is not required. Must not be {@code null}.
 	 */
@@ -76,41 +340,777 @@ public class APIKeyFilter implements AccessFilter {
 	 * @param keyMap          Map of API keys to their allowed JSON-RPC 2.0
 	 *                        methods. If a method name is set to "*" 
 	 *                        (asterisk) then any method is allowed for the
-	 *                        API key. Must not be {@code null}.
+	 *                        API key. Method names with asterisks or 
+	 *                        question marks are glob patterns. Must not be
+	 *                        {@code null}.
 	 * @param exemptedMethods Exempted JSON-RPC 2.0 methods for which an API
 	 *                        key is not required. Must not be {@code null}.
 	 * @param apiKeyParamName The name of the JSON-RPC 2.0 parameter used to
 	 *                        pass the API key. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or 
+	 *                                  the method patterns of a key are
+	 *                                  too complex.
 	 */
 	public void init(final Map<APIKey,Set<String>> keyMap,
 	                 final Set<String> exemptedMethods,
 			 final String apiKeyParamName) {
 	
+		init(keyMap, exemptedMethods, apiKeyParamName, false, 0);
+	}
+	
+	
+	/**
+	 * Initialises this API key filter.
+	 *
+	 * @param keyMap               Map of API keys to their allowed 
+	 *                             JSON-RPC 2.0 methods. If a method name
+	 *                             is set to "*" (asterisk) then any 
+	 *                             method is allowed for the API key. 
+	 *                             Method names with asterisks or question
+	 *                             marks are glob patterns. Must not be
+	 *                             {@code null}.
+	 * @param exemptedMethods      Exempted JSON-RPC 2.0 methods for which
+	 *                             an API key is not required. Must not be
+	 *                             {@code null}.
+	 * @param apiKeyParamName      The name of the JSON-RPC 2.0 parameter 
+	 *                             used to pass the API key. Must not be 
+	 *                             {@code null}.
+	 * @param hashedKeys           If {@code true} the API key map values 
+	 *                             are hexadecimal SHA-256 digests of the 
+	 *                             API keys.
+	 * @param verifiedKeyCacheSize The capacity of the cache of verified 
+	 *                             API keys if the keys are hashed, zero to
+	 *                             disable caching.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, an
+	 *                                  API key is not a valid SHA-256 
+	 *                                  digest, or the method patterns of
+	 *                                  a key are too complex.
+	 */
+	public void init(final Map<APIKey,Set<String>> keyMap,
+	                 final Set<String> exemptedMethods,
+	                 final String apiKeyParamName,
+	                 final boolean hashedKeys,
+	                 final int verifiedKeyCacheSize) {
+		
+		if (apiKeyParamName == null)
+			throw new IllegalArgumentException("The API key parameter name must not be null");
+		
+		init(keyMap, exemptedMethods, new NamedParamAPIKeyExtractor(apiKeyParamName),
+		     hashedKeys, verifiedKeyCacheSize);
+	}
+	
+	
+	/**
+	 * Initialises this API key filter.
+	 *
+	 * @param keyMap               Map of API keys to their allowed 
+	 *                             JSON-RPC 2.0 methods. If a method name
+	 *                             is set to "*" (asterisk) then any 
+	 *                             method is allowed for the API key. 
+	 *                             Method names with asterisks or question
+	 *                             marks are glob patterns. Must not be
+	 *                             {@code null}.
+	 * @param exemptedMethods      Exempted JSON-RPC 2.0 methods for which
+	 *                             an API key is not required. Must not be
+	 *                             {@code null}.
+	 * @param apiKeyExtractor      The extractor of the API key from the 
+	 *                             JSON-RPC 2.0 request. Must not be 
+	 *                             {@code null}.
+	 * @param hashedKeys           If {@code true} the API key map values 
+	 *                             are hexadecimal SHA-256 digests of the 
+	 *                             API keys.
+	 * @param verifiedKeyCacheSize The capacity of the cache of verified 
+	 *                             API keys if the keys are hashed, zero to
+	 *                             disable caching.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, an
+	 *                                  API key is not a valid SHA-256 
+	 *                                  digest, or the method patterns of
+	 *                                  a key are too complex.
+	 */
+	public void init(final Map<APIKey,Set<String>> keyMap,
+	                 final Set<String> exemptedMethods,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final boolean hashedKeys,
+	                 final int verifiedKeyCacheSize) {
+		
+		init(keyMap, exemptedMethods, apiKeyExtractor, hashedKeys, verifiedKeyCacheSize, 
+		     Collections.<APIKey,APIKeyBinding>emptyMap());
+	}
+	
+	
+	/**
+	 * Initialises this API key filter.
+	 *
+	 * @param keyMap               Map of API keys to their allowed 
+	 *                             JSON-RPC 2.0 methods. If a method name
+	 *                             is set to "*" (asterisk) then any 
+	 *                             method is allowed for the API key. 
+	 *                             Method names with asterisks or question
+	 *                             marks are glob patterns. Must not be
+	 *                             {@code null}.
+	 * @param exemptedMethods      Exempted JSON-RPC 2.0 methods for which
+	 *                             an API key is not required. Must not be
+	 *                             {@code null}.
+	 * @param apiKeyExtractor      The extractor of the API key from the 
+	 *                             JSON-RPC 2.0 request. Must not be 
+	 *                             {@code null}.
+	 * @param hashedKeys           If {@code true} the API key map values 
+	 *                             are hexadecimal SHA-256 digests of the 
+	 *                             API keys.
+	 * @param verifiedKeyCacheSize The capacity of the cache of verified 
+	 *                             API keys if the keys are hashed, zero to
+	 *                             disable caching.
+	 * @param bindings             The client certificate bindings of the
+	 *                             API keys, keyed as the API key map, 
+	 *                             empty if none. Must not be 
+	 *                             {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, an
+	 *                                  API key is not a valid SHA-256 
+	 *                                  digest, the method patterns of a
+	 *                                  key are too complex, or a binding
+	 *                                  refers to a key not in the map.
+	 */
+	public synchronized void init(final Map<APIKey,Set<String>> keyMap,
+	                              final Set<String> exemptedMethods,
+	                              final APIKeyExtractor apiKeyExtractor,
+	                              final boolean hashedKeys,
+	                              final int verifiedKeyCacheSize,
+	                              final Map<APIKey,APIKeyBinding> bindings) {
+		
 		if (keyMap == null)
 			throw new IllegalArgumentException("The API key map must not be null");
 		
-		this.keyMap = keyMap;
+		if (exemptedMethods == null)
+			throw new IllegalArgumentException("The exempted methods must not be null");
+		
+		if (verifiedKeyCacheSize < 0)
+			throw new IllegalArgumentException("The verified key cache size must not be negative");
+		
+		if (apiKeyExtractor == null)
+			throw new IllegalArgumentException("The API key extractor must not be null");
+		
+		if (bindings == null)
+			throw new IllegalArgumentException("The API key bindings must not be null");
+		
+		Map<APIKey,APIKeyBinding> normalisedBindings = new HashMap<APIKey,APIKeyBinding>();
+		
+		for (Map.Entry<APIKey,APIKeyBinding> en: bindings.entrySet()) {
+			
+			if (normalisedBindings.put(bindingKey(en.getKey(), hashedKeys), en.getValue()) != null)
+				throw new IllegalArgumentException("Duplicate API key binding for digest: " + en.getKey());
+		}
+		
+		checkBindings(normalisedBindings, keyMap, hashedKeys);
+		
+		// Build aside, a failed re-init leaves the current state intact
+		KeyTable newTable = build(keyMap, 
+		                          exemptedMethods, 
+		                          normalisedBindings, 
+		                          hashedKeys, 
+		                          createVerifiedKeyCache(hashedKeys, verifiedKeyCacheSize));
+		
+		this.bindings = Collections.unmodifiableMap(normalisedBindings);
+		this.hashedKeys = hashedKeys;
+		this.exemptedMethods = exemptedMethods;
+		this.verifiedKeyCacheSize = verifiedKeyCacheSize;
+		this.apiKeyExtractor = apiKeyExtractor;
+		
+		if (normalisedBindings.isEmpty()) {
+			dnCache = null;
+			fingerprintCache = null;
+		} else {
+			dnCache = new DNCache(X509ClientCertFilter.DEFAULT_DN_CACHE_SIZE);
+			fingerprintCache = new FingerprintCache(X509CertPinningFilter.DEFAULT_CACHE_SIZE);
+		}
+		
+		if (apiKeyExtractor instanceof NamedParamAPIKeyExtractor)
+			apiKeyParamName = ((NamedParamAPIKeyExtractor)apiKeyExtractor).getParameterName();
+		else
+			apiKeyParamName = null;
+		
+		table = newTable;
+	}
+	
+	
+	/**
+	 * Initialises this API key filter to look up the API keys in the 
+	 * specified store, waiting for concurrent lookups of the same API key 
+	 * for the {@link #DEFAULT_STORE_TIMEOUT default time}.
+	 *
+	 * @param store            The API key store. Must not be 
+	 *                         {@code null}.
+	 * @param exemptedMethods  Exempted JSON-RPC 2.0 methods for which an 
+	 *                         API key is not required. Must not be 
+	 *                         {@code null}.
+	 * @param apiKeyExtractor  The extractor of the API key from the 
+	 *                         JSON-RPC 2.0 request. Must not be 
+	 *                         {@code null}.
+	 * @param cacheSize        The capacity of the lookup cache, zero to 
+	 *                         disable caching.
+	 * @param cacheTTL         The time to live of known API keys in the 
+	 *                         lookup cache, in milliseconds. Must not be
+	 *                         negative.
+	 * @param negativeCacheTTL The time to live of unknown API keys in the
+	 *                         lookup cache, in milliseconds, zero to 
+	 *                         disable negative caching. Must not be 
+	 *                         negative.
+	 *
+	 * @throws IllegalArgumentException If a null or negative argument is
+	 *                                  passed.
+	 */
+	public void init(final APIKeyStore store,
+	                 final Set<String> exemptedMethods,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final int cacheSize,
+	                 final long cacheTTL,
+	                 final long negativeCacheTTL) {
+		
+		init(store, 
+		     exemptedMethods, 
+		     apiKeyExtractor, 
+		     cacheSize, 
+		     cacheTTL, 
+		     negativeCacheTTL, 
+		     DEFAULT_STORE_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Initialises this API key filter to look up the API keys in the 
+	 * specified store.
+	 *
+	 * @param store            The API key store. Must not be 
+	 *                         {@code null}.
+	 * @param exemptedMethods  Exempted JSON-RPC 2.0 methods for which an 
+	 *                         API key is not required. Must not be 
+	 *                         {@code null}.
+	 * @param apiKeyExtractor  The extractor of the API key from the 
+	 *                         JSON-RPC 2.0 request. Must not be 
+	 *                         {@code null}.
+	 * @param cacheSize        The capacity of the lookup cache, zero to 
+	 *                         disable caching.
+	 * @param cacheTTL         The time to live of known API keys in the 
+	 *                         lookup cache, in milliseconds. Must not be
+	 *                         negative.
+	 * @param negativeCacheTTL The time to live of unknown API keys in the
+	 *                         lookup cache, in milliseconds, zero to 
+	 *                         disable negative caching. Must not be 
+	 *                         negative.
+	 * @param storeTimeout     The maximum time to wait for a concurrent 
+	 *                         lookup of the same API key, in 
+	 *                         milliseconds. Must not be negative.
+	 *
+	 * @throws IllegalArgumentException If a null or negative argument is
+	 *                                  passed.
+	 */
+	public synchronized void init(final APIKeyStore store,
+	                              final Set<String> exemptedMethods,
+	                              final APIKeyExtractor apiKeyExtractor,
+	                              final int cacheSize,
+	                              final long cacheTTL,
+	                              final long negativeCacheTTL,
+	                              final long storeTimeout) {
+		
+		if (store == null)
+			throw new IllegalArgumentException("The API key store must not be null");
 		
 		if (exemptedMethods == null)
 			throw new IllegalArgumentException("The exempted methods must not be null");
 		
+		if (apiKeyExtractor == null)
+			throw new IllegalArgumentException("The API key extractor must not be null");
+		
+		if (cacheSize < 0 || cacheTTL < 0L || negativeCacheTTL < 0L)
+			throw new IllegalArgumentException("The cache size and times to live must not be negative");
+		
+		if (storeTimeout < 0L)
+			throw new IllegalArgumentException("The store timeout must not be negative");
+		
+		MethodSymbolTable methodSymbols = new MethodSymbolTable(exemptedMethods.size());
+		
+		MethodPermissions exemptedMethodIDs = MethodPermissions.compile(exemptedMethods, methodSymbols, false);
+		
 		this.exemptedMethods = exemptedMethods;
+		this.hashedKeys = false;
+		this.verifiedKeyCacheSize = 0;
+		this.apiKeyExtractor = apiKeyExtractor;
+		this.bindings = Collections.emptyMap();
+		this.dnCache = null;
+		this.fingerprintCache = null;
 		
-		if (apiKeyParamName == null)
-			throw new IllegalArgumentException("The API key parameter name must not be null");
+		if (apiKeyExtractor instanceof NamedParamAPIKeyExtractor)
+			apiKeyParamName = ((NamedParamAPIKeyExtractor)apiKeyExtractor).getParameterName();
+		else
+			apiKeyParamName = null;
+		
+		table = new KeyTable(Collections.<APIKey,Set<String>>emptyMap(), 
+		                     null, 
+		                     null, 
+		                     null, 
+		                     methodSymbols, 
+		                     exemptedMethodIDs, 
+		                     null, 
+		                     new APIKeyStoreCache(store, cacheSize, cacheTTL, negativeCacheTTL, storeTimeout), 
+		                     null, 
+		                     null, 
+		                     0);
+	}
+	
+	
+	/**
+	 * Initialises this API key filter to look up the API keys in the 
+	 * specified memory-mapped index. The method sets of the index are 
+	 * compiled here, so lookups need no cache.
+	 *
+	 * @param index           The API key index. Must not be 
+	 *                        {@code null}.
+	 * @param exemptedMethods Exempted JSON-RPC 2.0 methods for which an 
+	 *                        API key is not required. Must not be 
+	 *                        {@code null}.
+	 * @param apiKeyExtractor The extractor of the API key from the 
+	 *                        JSON-RPC 2.0 request. Must not be 
+	 *                        {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the method patterns of a method 
+	 *                                  set are too complex.
+	 */
+	public synchronized void init(final MappedKeyIndex index,
+	                              final Set<String> exemptedMethods,
+	                              final APIKeyExtractor apiKeyExtractor) {
+		
+		if (index == null)
+			throw new IllegalArgumentException("The API key index must not be null");
+		
+		if (exemptedMethods == null)
+			throw new IllegalArgumentException("The exempted methods must not be null");
+		
+		if (apiKeyExtractor == null)
+			throw new IllegalArgumentException("The API key extractor must not be null");
+		
+		MethodSymbolTable methodSymbols = new MethodSymbolTable(exemptedMethods.size());
+		
+		MethodPermissions exemptedMethodIDs = MethodPermissions.compile(exemptedMethods, methodSymbols, false);
+		
+		MethodPermissions[] mappedPermissions = new MethodPermissions[index.getMethodSetCount()];
+		
+		for (int i=0; i < mappedPermissions.length; i++)
+			mappedPermissions[i] = MethodPermissions.compile(index.getMethodSet(i), methodSymbols, true);
+		
+		this.exemptedMethods = exemptedMethods;
+		this.hashedKeys = false;
+		this.verifiedKeyCacheSize = 0;
+		this.apiKeyExtractor = apiKeyExtractor;
+		this.bindings = Collections.emptyMap();
+		this.dnCache = null;
+		this.fingerprintCache = null;
+		
+		if (apiKeyExtractor instanceof NamedParamAPIKeyExtractor)
+			apiKeyParamName = ((NamedParamAPIKeyExtractor)apiKeyExtractor).getParameterName();
+		else
+			apiKeyParamName = null;
+		
+		table = new KeyTable(Collections.<APIKey,Set<String>>emptyMap(), 
+		                     null, 
+		                     null, 
+		                     null, 
+		                     methodSymbols, 
+		                     exemptedMethodIDs, 
+		                     null, 
+		                     null, 
+		                     index, 
+		                     mappedPermissions, 
+		                     0);
+	}
+	
+	
+	/**
+	 * Updates the API key map of this filter, which must be initialised.
+	 * The difference to the current map is compiled into a copy of the 
+	 * current index, which then replaces it atomically; concurrent 
+	 * requests are checked against either the previous or the updated 
+	 * map. If the update fails the current map remains in effect.
+	 *
+	 * @param keyMap The new map of API keys to their allowed JSON-RPC 2.0
+	 *               methods, as for {@link #init}. Must not be 
+	 *               {@code null}.
+	 *
+	 * @return The difference between the previous and the new API key 
+	 *         map.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, an
+	 *                                  API key is not a valid SHA-256 
+	 *                                  digest, the method patterns of a
+	 *                                  key are too complex, or a bound 
+	 *                                  key is not in the new map.
+	 * @throws IllegalStateException    If the API keys are looked up in
+	 *                                  a store or a mapped index.
+	 */
+	public synchronized APIKeyMapDiff update(final Map<APIKey,Set<String>> keyMap) {
+		
+		if (keyMap == null)
+			throw new IllegalArgumentException("The API key map must not be null");
+		
+		final KeyTable current = table;
+		
+		if (current.storeCache != null)
+			throw new IllegalStateException("The API keys are looked up in a store");
+		
+		if (current.mappedKeyIndex != null)
+			throw new IllegalStateException("The API keys are looked up in a mapped index");
+		
+		APIKeyMapDiff diff = APIKeyMapDiff.compute(current.keyMap, keyMap);
+		
+		if (diff.isEmpty())
+			return diff;
+		
+		if (! diff.getRemoved().isEmpty())
+			checkBindings(bindings, keyMap, hashedKeys);
+		
+		final int retired = current.retired + diff.getRemoved().size() + diff.getChanged().size();
+		
+		// Compile afresh once the keys retired since outnumber the 
+		// current ones, dropping the unused method sets and IDs; the 
+		// cost is amortised over the updates
+		if (retired > keyMap.size()) {
+			
+			table = build(keyMap, 
+			              exemptedMethods, 
+			              bindings, 
+			              hashedKeys, 
+			              createVerifiedKeyCache(hashedKeys, verifiedKeyCacheSize));
+			
+			return diff;
+		}
+		
+		// Copies keep the method IDs, so the compiled permissions of 
+		// unchanged keys remain valid
+		MethodSymbolTable methodSymbols = new MethodSymbolTable(current.methodSymbols);
+		
+		Map<Set<String>,MethodPermissions> compiled = new HashMap<Set<String>,MethodPermissions>(current.compiled);
+		
+		Map<String,MethodPermissions> keyIndex = null;
+		HashedKeyIndex hashedKeyIndex = null;
+		
+		if (current.keyIndex != null)
+			keyIndex = new HashMap<String,MethodPermissions>(current.keyIndex);
+		else
+			hashedKeyIndex = new HashedKeyIndex(current.hashedKeyIndex);
+		
+		for (APIKey key: diff.getRemoved()) {
+			
+			if (keyIndex != null) {
+				keyIndex.remove(key.toString());
+				continue;
+			}
+			
+			byte[] digest = APIKeyDigest.parseHex(key.toString());
+			
+			if (digest != null)
+				hashedKeyIndex.remove(digest);
+		}
 		
-		this.apiKeyParamName = apiKeyParamName;
+		for (Map.Entry<APIKey,Set<String>> en: diff.getAdded().entrySet())
+			index(en.getKey(), bind(en.getKey(), compile(en.getValue(), compiled, methodSymbols), bindings, hashedKeys), keyIndex, hashedKeyIndex);
+		
+		for (Map.Entry<APIKey,Set<String>> en: diff.getChanged().entrySet())
+			index(en.getKey(), bind(en.getKey(), compile(en.getValue(), compiled, methodSymbols), bindings, hashedKeys), keyIndex, hashedKeyIndex);
+		
+		// Added keys don't invalidate the verified keys
+		VerifiedKeyCache verifiedKeys = current.verifiedKeys;
+		
+		if (! diff.getRemoved().isEmpty() || ! diff.getChanged().isEmpty())
+			verifiedKeys = createVerifiedKeyCache(hashedKeys, verifiedKeyCacheSize);
+		
+		table = new KeyTable(keyMap, 
+		                     keyIndex, 
+		                     hashedKeyIndex, 
+		                     verifiedKeys, 
+		                     methodSymbols, 
+		                     current.exemptedMethodIDs, 
+		                     compiled, 
+		                     null, 
+		                     null, 
+		                     null, 
+		                     retired);
+		
+		return diff;
+	}
+	
+	
+	/**
+	 * Builds a key table for the specified API key map, compiling each 
+	 * distinct method set once.
+	 *
+	 * @param keyMap          The API key map.
+	 * @param exemptedMethods The exempted JSON-RPC 2.0 methods.
+	 * @param bindings        The API key bindings, by binding key.
+	 * @param hashedKeys      {@code true} if the API keys are SHA-256 
+	 *                        digests.
+	 * @param verifiedKeys    The verified API key cache, {@code null} if
+	 *                        none.
+	 *
+	 * @return The key table.
+	 *
+	 * @throws IllegalArgumentException If an API key is not a valid 
+	 *                                  SHA-256 digest or the method 
+	 *                                  patterns of a key are too 
+	 *                                  complex.
+	 */
+	private static KeyTable build(final Map<APIKey,Set<String>> keyMap,
+	                              final Set<String> exemptedMethods,
+	                              final Map<APIKey,APIKeyBinding> bindings,
+	                              final boolean hashedKeys,
+	                              final VerifiedKeyCache verifiedKeys) {
+		
+		MethodSymbolTable methodSymbols = new MethodSymbolTable(exemptedMethods.size());
+		
+		MethodPermissions exemptedMethodIDs = MethodPermissions.compile(exemptedMethods, methodSymbols, false);
+		
+		// Index by plain string value, so that keys can be looked up
+		// without wrapping them in APIKey, or by digest
+		Map<String,MethodPermissions> keyIndex = null;
+		HashedKeyIndex hashedKeyIndex = null;
+		
+		if (hashedKeys)
+			hashedKeyIndex = new HashedKeyIndex(keyMap.size());
+		else
+			keyIndex = new HashMap<String,MethodPermissions>(keyMap.size() * 4 / 3 + 1);
+		
+		Map<Set<String>,MethodPermissions> compiled = new HashMap<Set<String>,MethodPermissions>();
+		
+		for (Map.Entry<APIKey,Set<String>> en: keyMap.entrySet()) {
+			
+			index(en.getKey(), 
+			      bind(en.getKey(), 
+			           compile(en.getValue(), compiled, methodSymbols), 
+			           bindings, 
+			           hashedKeys), 
+			      keyIndex, 
+			      hashedKeyIndex);
+		}
+		
+		return new KeyTable(keyMap, 
+		                    keyIndex, 
+		                    hashedKeyIndex, 
+		                    verifiedKeys, 
+		                    methodSymbols, 
+		                    exemptedMethodIDs, 
+		                    compiled, 
+		                    null, 
+		                    null, 
+		                    null, 
+		                    0);
+	}
+	
+	
+	/**
+	 * Compiles the specified method set, or returns the compiled 
+	 * permissions of an equal set.
+	 *
+	 * @param methods  The allowed methods.
+	 * @param compiled The compiled method sets, updated.
+	 * @param symbols  The method IDs, updated.
+	 *
+	 * @return The method permissions.
+	 */
+	private static MethodPermissions compile(final Set<String> methods,
+	                                         final Map<Set<String>,MethodPermissions> compiled,
+	                                         final MethodSymbolTable symbols) {
+		
+		MethodPermissions permissions = compiled.get(methods);
+		
+		if (permissions == null) {
+			permissions = MethodPermissions.compile(methods, symbols, true);
+			compiled.put(methods, permissions);
+		}
+		
+		return permissions;
+	}
+	
+	
+	/**
+	 * Attaches the client certificate binding of the specified API key, if
+	 * any, to its compiled permissions.
+	 *
+	 * @param key         The API key.
+	 * @param permissions The compiled method permissions, shared between 
+	 *                    keys with identical methods.
+	 * @param bindings    The API key bindings, by binding key.
+	 * @param hashedKeys  {@code true} if the API key is a SHA-256 
+	 *                    digest.
+	 *
+	 * @return The permissions of the API key.
+	 */
+	private static MethodPermissions bind(final APIKey key, 
+	                                      final MethodPermissions permissions,
+	                                      final Map<APIKey,APIKeyBinding> bindings,
+	                                      final boolean hashedKeys) {
+		
+		final APIKeyBinding binding = bindings.get(bindingKey(key, hashedKeys));
+		
+		return binding != null ? permissions.bind(binding) : permissions;
+	}
+	
+	
+	/**
+	 * Returns the specified API key as keyed in the bindings. Digests are
+	 * parsed regardless of case, so they are normalised to lower case.
+	 *
+	 * @param key        The API key.
+	 * @param hashedKeys {@code true} if the API key is a SHA-256 digest.
+	 *
+	 * @return The binding key.
+	 */
+	private static APIKey bindingKey(final APIKey key, final boolean hashedKeys) {
+		
+		return hashedKeys ? new APIKey(key.toString().toLowerCase(Locale.ROOT)) : key;
+	}
+	
+	
+	/**
+	 * Checks that the specified bindings refer only to keys in the 
+	 * specified API key map.
+	 *
+	 * @param bindings   The API key bindings, by binding key.
+	 * @param keyMap     The API key map.
+	 * @param hashedKeys {@code true} if the API keys are SHA-256 
+	 *                   digests.
+	 *
+	 * @throws IllegalArgumentException If a binding refers to a key not
+	 *                                  in the map.
+	 */
+	private static void checkBindings(final Map<APIKey,APIKeyBinding> bindings,
+	                                  final Map<APIKey,Set<String>> keyMap,
+	                                  final boolean hashedKeys) {
+		
+		if (bindings.isEmpty())
+			return;
+		
+		Set<APIKey> keys = keyMap.keySet();
+		
+		if (hashedKeys) {
+			
+			keys = new HashSet<APIKey>(keyMap.size() * 4 / 3 + 1);
+			
+			for (APIKey key: keyMap.keySet())
+				keys.add(bindingKey(key, true));
+		}
+		
+		for (APIKey key: bindings.keySet()) {
+			
+			// Don't reveal plain keys in the message
+			if (! keys.contains(key))
+				throw new IllegalArgumentException("An API key binding refers to a key not in the API key map" + 
+				                                   (hashedKeys ? ": " + key : ""));
+		}
+	}
+	
+	
+	/**
+	 * Adds or replaces the specified API key in the index.
+	 *
+	 * @param key            The API key.
+	 * @param permissions    The method permissions.
+	 * @param keyIndex       The API key value index, {@code null} if the
+	 *                       keys are hashed.
+	 * @param hashedKeyIndex The API key digest index, {@code null} if the
+	 *                       keys are not hashed.
+	 *
+	 * @throws IllegalArgumentException If the API key is not a valid 
+	 *                                  SHA-256 digest.
+	 */
+	private static void index(final APIKey key,
+	                          final MethodPermissions permissions,
+	                          final Map<String,MethodPermissions> keyIndex,
+	                          final HashedKeyIndex hashedKeyIndex) {
+		
+		if (keyIndex != null) {
+			keyIndex.put(key.toString(), permissions);
+			return;
+		}
+		
+		byte[] digest = APIKeyDigest.parseHex(key.toString());
+		
+		if (digest == null)
+			throw new IllegalArgumentException("Invalid SHA-256 API key digest: " + key);
+		
+		hashedKeyIndex.put(digest, permissions);
+	}
+	
+	
+	/**
+	 * Creates an empty verified API key cache.
+	 *
+	 * @param hashedKeys           {@code true} if the API keys are 
+	 *                             hashed.
+	 * @param verifiedKeyCacheSize The cache capacity, zero if caching is
+	 *                             disabled.
+	 *
+	 * @return The cache, {@code null} if the keys are not hashed or 
+	 *         caching is disabled.
+	 */
+	private static VerifiedKeyCache createVerifiedKeyCache(final boolean hashedKeys, 
+	                                                       final int verifiedKeyCacheSize) {
+		
+		if (! hashedKeys || verifiedKeyCacheSize == 0)
+			return null;
+		
+		return new VerifiedKeyCache(verifiedKeyCacheSize);
 	}
 	
 	
 	/**
 	 * Gets the configured API key map.
 	 *
-	 * @return The API key map.
+	 * @return The API key map, empty if the API keys are looked up in a
+	 *         store or a mapped index.
 	 */
 	public Map<APIKey,Set<String>> getAPIKeyMap() {
 	
-		return keyMap;
+		return table.keyMap;
+	}
+	
+	
+	/**
+	 * Gets the API key store.
+	 *
+	 * @return The API key store, {@code null} if the API keys are not 
+	 *         looked up in a store.
+	 */
+	public APIKeyStore getAPIKeyStore() {
+		
+		final APIKeyStoreCache storeCache = table.storeCache;
+		
+		return storeCache != null ? storeCache.getStore() : null;
+	}
+	
+	
+	/**
+	 * Gets the memory-mapped API key index.
+	 *
+	 * @return The API key index, {@code null} if the API keys are 
+	 *         indexed otherwise.
+	 */
+	public MappedKeyIndex getMappedKeyIndex() {
+		
+		return table.mappedKeyIndex;
+	}
+	
+	
+	/**
+	 * Gets the client certificate bindings of the API keys.
+	 *
+	 * @return The API key bindings, empty if none. Hashed keys are 
+	 *         lower case.
+	 */
+	public Map<APIKey,APIKeyBinding> getBindings() {
+		
+		return bindings;
 	}
 	
 	
@@ -130,55 +1130,276 @@ public class APIKeyFilter implements AccessFilter {
 	 * Gets name of the JSON-RPC 2.0 parameter used to pass the API key.
 	 *
 	 * @return The name of the JSON-RPC 2.0 parameter used to pass the API
-	 *         key.
+	 *         key, {@code null} if the API key is not passed in a named
+	 *         parameter.
 	 */
 	public String getAPIKeyParameterName() {
 	
 		return apiKeyParamName;
 	}
+	
+	
+	/**
+	 * Gets the extractor of the API key from the JSON-RPC 2.0 request.
+	 *
+	 * @return The API key extractor.
+	 */
+	public APIKeyExtractor getAPIKeyExtractor() {
+		
+		return apiKeyExtractor;
+	}
 
 
+	/**
+	 * Returns {@code true} if the API key map is keyed by SHA-256 digests
+	 * of the API keys.
+	 *
+	 * @return {@code true} if the API keys are hashed, else 
+	 *         {@code false}.
+	 */
+	public boolean hasHashedKeys() {
+		
+		return hashedKeys;
+	}
+	
+	
+	/**
+	 * Gets the allowed methods for the specified API key.
+	 *
+	 * @param t   The key table.
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The allowed methods, {@code null} if the API key is not
+	 *         known.
+	 *
+	 * @throws APIKeyStoreException If the API key store lookup failed.
+	 */
+	private static MethodPermissions getPermissions(final KeyTable t, final String key)
+		throws APIKeyStoreException {
+		
+		if (t.mappedKeyIndex != null) {
+			
+			final int id = t.mappedKeyIndex.lookup(key);
+			
+			return id >= 0 ? t.mappedPermissions[id] : null;
+		}
+		
+		if (t.storeCache != null)
+			return t.storeCache.get(key);
+		
+		if (t.keyIndex != null)
+			return t.keyIndex.get(key);
+		
+		KeyTagger.Tag tag = null;
+		
+		if (t.verifiedKeys != null) {
+			
+			tag = t.verifiedKeys.tag(key);
+			
+			MethodPermissions cached = t.verifiedKeys.get(tag);
+			
+			if (cached != null)
+				return cached;
+		}
+		
+		MethodPermissions permissions = t.hashedKeyIndex.get(APIKeyDigest.sha256(key));
+		
+		// Cache only verified keys, unknown keys would evict them
+		if (permissions != null && tag != null)
+			t.verifiedKeys.put(tag, permissions);
+		
+		return permissions;
+	}
+	
+	
 	/**
 	 * @inheritDoc
 	 */
-	@SuppressWarnings("unchecked")
 	public AccessFilterResult filter(final JSONRPC2Request request, 
 	                                 final MessageContext messageCtx) {
 
+		// Single volatile read of the current table
+		final KeyTable t = table;
+		
+		final int methodID = t.methodSymbols.get(request.getMethod());
+		
 		// Exempted method?
-		if (exemptedMethods.contains(request.getMethod()))
+		if (t.exemptedMethodIDs.allows(methodID))
 			return AccessFilterResult.ACCESS_ALLOWED;
 		
-		// Only named params expected
-		if (! request.getParamsType().equals(JSONRPC2ParamsType.OBJECT))
-			return new AccessFilterResult(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM);
+		// Only named params expected if the key is a named param
+		if (apiKeyParamName != null && request.getParamsType() != JSONRPC2ParamsType.OBJECT)
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM);
 
+		return checkAPIKey(t, methodID, request.getMethod(), apiKeyExtractor.extract(request, messageCtx), messageCtx);
+	}
+	
+	
+	/**
+	 * Checks the specified API key is allowed access to the specified 
+	 * non-exempted method.
+	 *
+	 * @param t          The key table.
+	 * @param methodID   The method ID.
+	 * @param method     The method name.
+	 * @param key        The API key, {@code null} if missing.
+	 * @param messageCtx The message context, for checking the client 
+	 *                   certificate binding of the key.
+	 *
+	 * @return The access filter result.
+	 */
+	private AccessFilterResult checkAPIKey(final KeyTable t, 
+	                                       final int methodID, 
+	                                       final String method, 
+	                                       final String key,
+	                                       final MessageContext messageCtx) {
 		
-		NamedParamsRetriever params = new NamedParamsRetriever((Map<String,Object>)request.getParams());
+		// API key present?
+		if (key == null)
+			return AccessFilterResult.denied(AccessDeniedError.MISSING_API_KEY);
 		
-		// API key param present?
-		APIKey key = null;
+		// Get allowed methods and binding for API key
+		MethodPermissions allowedMethods;
 		
 		try {
-			key = new APIKey(params.getString(apiKeyParamName));
-			
-		} catch (Exception e) {
+			allowedMethods = getPermissions(t, key);
 		
-			return new AccessFilterResult(AccessDeniedError.MISSING_API_KEY);
+		} catch (APIKeyStoreException e) {
+			
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_STORE_UNAVAILABLE);
 		}
 		
-		// Get allowed methods for API key
-		Set<String> allowedMethods = keyMap.get(key);
-		
 		if (allowedMethods == null)
-			return new AccessFilterResult(AccessDeniedError.API_KEY_DENIED);
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_DENIED);
+		
+		if (! matchesBinding(allowedMethods, messageCtx))
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH);
 		
-		// Any method allowed?
-		if (allowedMethods.contains("*"))
+		if (! allowedMethods.allows(methodID, method))
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_DENIED);
+		
+		return AccessFilterResult.ACCESS_ALLOWED;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the specified API key permissions are not 
+	 * bound or the client presents a matching certificate.
+	 *
+	 * @param permissions The API key permissions.
+	 * @param messageCtx  The message context.
+	 *
+	 * @return {@code true} if the binding is satisfied, else 
+	 *         {@code false}.
+	 */
+	private boolean matchesBinding(final MethodPermissions permissions, 
+	                               final MessageContext messageCtx) {
+		
+		final APIKeyBinding binding = permissions.getBinding();
+		
+		return binding == null || binding.matches(messageCtx, dnCache, fingerprintCache);
+	}
+	
+	
+	/**
+	 * Checks a JSON-RPC 2.0 request from its pre-scanned fields, with the
+	 * same outcome as {@link #filter}.
+	 *
+	 * @param method     The method name. Must not be {@code null}.
+	 * @param paramsType The parameters type. Must not be {@code null}.
+	 * @param key        The extracted API key, {@code null} if missing.
+	 * @param messageCtx The message context. Must not be {@code null}.
+	 *
+	 * @return The access filter result.
+	 */
+	AccessFilterResult check(final String method, 
+	                         final JSONRPC2ParamsType paramsType, 
+	                         final String key,
+	                         final MessageContext messageCtx) {
+		
+		final KeyTable t = table;
+		
+		final int methodID = t.methodSymbols.get(method);
+		
+		if (t.exemptedMethodIDs.allows(methodID))
 			return AccessFilterResult.ACCESS_ALLOWED;
 		
-		if (! allowedMethods.contains(request.getMethod()))
-			return new AccessFilterResult(AccessDeniedError.API_KEY_DENIED);
+		if (apiKeyParamName != null && paramsType != JSONRPC2ParamsType.OBJECT)
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM);
+		
+		return checkAPIKey(t, methodID, method, key, messageCtx);
+	}
+	
+	
+	/**
+	 * Checks the API key of a JSON-RPC 2.0 request before its JSON body
+	 * is parsed, for example from a servlet filter, so that requests with
+	 * missing or unknown keys are rejected without parsing. Requires a 
+	 * {@link HeaderAPIKeyExtractor}.
+	 *
+	 * <p>If the method name is not yet known the check only denies access
+	 * if no method is exempted and the API key is missing or unknown. A
+	 * request allowed by this check must still pass {@link #filter}.
+	 *
+	 * @param method      The JSON-RPC 2.0 request method name, 
+	 *                    {@code null} if not known.
+	 * @param httpRequest The HTTP servlet request. Must not be 
+	 *                    {@code null}.
+	 *
+	 * @return The access filter result.
+	 *
+	 * @throws IllegalStateException If the API key extractor is not a 
+	 *                               {@link HeaderAPIKeyExtractor}.
+	 */
+	public AccessFilterResult check(final String method, 
+	                                final HttpServletRequest httpRequest) {
+		
+		if (! (apiKeyExtractor instanceof HeaderAPIKeyExtractor))
+			throw new IllegalStateException("The API key is not passed in an HTTP header");
+		
+		String key = ((HeaderAPIKeyExtractor)apiKeyExtractor).extract(httpRequest);
+		
+		final KeyTable t = table;
+		
+		// Only bound keys need the client certificate
+		final MessageContext messageCtx = dnCache != null ? new MessageContext(httpRequest) : null;
+		
+		int methodID = MethodSymbolTable.UNKNOWN;
+		
+		if (method != null) {
+			
+			methodID = t.methodSymbols.get(method);
+			
+			if (t.exemptedMethodIDs.allows(methodID))
+				return AccessFilterResult.ACCESS_ALLOWED;
+		}
+		else if (! exemptedMethods.isEmpty()) {
+			
+			// Could be an exempted method, defer to the filter
+			return AccessFilterResult.ACCESS_ALLOWED;
+		}
+		
+		if (method != null)
+			return checkAPIKey(t, methodID, method, key, messageCtx);
+		
+		if (key == null)
+			return AccessFilterResult.denied(AccessDeniedError.MISSING_API_KEY);
+		
+		MethodPermissions permissions;
+		
+		try {
+			permissions = getPermissions(t, key);
+		
+		} catch (APIKeyStoreException e) {
+			
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_STORE_UNAVAILABLE);
+		}
+		
+		if (permissions == null)
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_DENIED);
+		
+		if (! matchesBinding(permissions, messageCtx))
+			return AccessFilterResult.denied(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH);
 		
 		return AccessFilterResult.ACCESS_ALLOWED;
 	}
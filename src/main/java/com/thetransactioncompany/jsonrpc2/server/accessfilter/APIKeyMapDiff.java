@@ -0,0 +1,157 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Immutable difference between two API key maps: the added API keys, the
+ * removed API keys and the API keys with changed allowed methods.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class APIKeyMapDiff {
+
+
+	/**
+	 * The added API keys and their allowed methods.
+	 */
+	private final Map<APIKey,Set<String>> added;
+
+
+	/**
+	 * The API keys with changed allowed methods and their new allowed
+	 * methods.
+	 */
+	private final Map<APIKey,Set<String>> changed;
+
+
+	/**
+	 * The removed API keys.
+	 */
+	private final Set<APIKey> removed;
+
+
+	/**
+	 * Creates a new API key map difference.
+	 *
+	 * @param added   The added API keys and their allowed methods. Must
+	 *                not be {@code null}.
+	 * @param changed The API keys with changed allowed methods and their
+	 *                new allowed methods. Must not be {@code null}.
+	 * @param removed The removed API keys. Must not be {@code null}.
+	 */
+	public APIKeyMapDiff(final Map<APIKey,Set<String>> added,
+	                     final Map<APIKey,Set<String>> changed,
+	                     final Set<APIKey> removed) {
+
+		if (added == null || changed == null || removed == null)
+			throw new IllegalArgumentException("The added, changed and removed API keys must not be null");
+
+		this.added = Collections.unmodifiableMap(added);
+		this.changed = Collections.unmodifiableMap(changed);
+		this.removed = Collections.unmodifiableSet(removed);
+	}
+
+
+	/**
+	 * Computes the difference between the specified API key maps.
+	 *
+	 * @param oldMap The old API key map. Must not be {@code null}.
+	 * @param newMap The new API key map. Must not be {@code null}.
+	 *
+	 * @return The difference.
+	 */
+	public static APIKeyMapDiff compute(final Map<APIKey,Set<String>> oldMap,
+	                                    final Map<APIKey,Set<String>> newMap) {
+
+		Map<APIKey,Set<String>> added = new HashMap<APIKey,Set<String>>();
+		Map<APIKey,Set<String>> changed = new HashMap<APIKey,Set<String>>();
+		Set<APIKey> removed = new HashSet<APIKey>();
+
+		for (Map.Entry<APIKey,Set<String>> en: newMap.entrySet()) {
+
+			Set<String> oldMethods = oldMap.get(en.getKey());
+
+			if (oldMethods == null)
+				added.put(en.getKey(), en.getValue());
+			else if (! oldMethods.equals(en.getValue()))
+				changed.put(en.getKey(), en.getValue());
+		}
+
+		// Keys in both maps are accounted for above, by size
+		if (oldMap.size() + added.size() != newMap.size()) {
+
+			for (APIKey key: oldMap.keySet()) {
+
+				if (! newMap.containsKey(key))
+					removed.add(key);
+			}
+		}
+
+		return new APIKeyMapDiff(added, changed, removed);
+	}
+
+
+	/**
+	 * Gets the added API keys.
+	 *
+	 * @return The added API keys and their allowed methods, empty if
+	 *         none.
+	 */
+	public Map<APIKey,Set<String>> getAdded() {
+
+		return added;
+	}
+
+
+	/**
+	 * Gets the API keys with changed allowed methods.
+	 *
+	 * @return The API keys with changed allowed methods and their new
+	 *         allowed methods, empty if none.
+	 */
+	public Map<APIKey,Set<String>> getChanged() {
+
+		return changed;
+	}
+
+
+	/**
+	 * Gets the removed API keys.
+	 *
+	 * @return The removed API keys, empty if none.
+	 */
+	public Set<APIKey> getRemoved() {
+
+		return removed;
+	}
+
+
+	/**
+	 * Returns {@code true} if the API key maps are equal.
+	 *
+	 * @return {@code true} if there are no differences, else
+	 *         {@code false}.
+	 */
+	public boolean isEmpty() {
+
+		return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+	}
+
+
+	/**
+	 * Returns a string representation of this difference.
+	 *
+	 * @return The string representation, e.g. "3 added, 1 changed, 2
+	 *         removed".
+	 */
+	public String toString() {
+
+		return added.size() + " added, " + changed.size() + " changed, " + removed.size() + " removed";
+	}
+}
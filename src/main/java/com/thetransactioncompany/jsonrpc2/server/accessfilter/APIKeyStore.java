@@ -0,0 +1,35 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Set;
+
+
+/**
+ * Service provider interface for looking up API keys in an external store,
+ * such as a database, as an alternative to the in-memory API key map of
+ * {@link APIKeyFilter}. The filter caches the lookup results, see
+ * {@link APIKeyFilter#init(APIKeyStore,Set,APIKeyExtractor,int,long,long)}.
+ *
+ * <p>Implementations must be thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface APIKeyStore {
+
+
+	/**
+	 * Looks up the JSON-RPC 2.0 methods the specified API key is allowed
+	 * access to. A method name may also be a glob pattern, such as
+	 * "billing.*" or "*.get", see {@link APIKeyFilter}.
+	 *
+	 * @param key The API key value, as presented by the client. Must not
+	 *            be {@code null}.
+	 *
+	 * @return The allowed methods, {@code null} if the API key is not
+	 *         known.
+	 *
+	 * @throws APIKeyStoreException If the lookup failed.
+	 */
+	public Set<String> getMethods(final String key)
+		throws APIKeyStoreException;
+}
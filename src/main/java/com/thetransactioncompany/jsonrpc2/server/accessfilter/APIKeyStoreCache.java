@@ -0,0 +1,283 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Bounded read-through cache of {@link APIKeyStore} lookups, holding the
+ * compiled method permissions of each API key. Known keys are cached for a
+ * time to live, unknown keys for a separate, typically shorter, time, so
+ * that repeated calls with invalid keys don't reach the store. Failed
+ * lookups are not cached.
+ *
+ * <p>Concurrent misses for the same key are collapsed into a single store
+ * lookup, which the other callers wait for up to a timeout. The lookup
+ * itself runs in the calling thread and is bounded by the store, see for
+ * example {@link JDBCAPIKeyStore#getQueryTimeout}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+class APIKeyStoreCache {
+
+
+	/**
+	 * Cached lookup result.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * The method permissions, {@code null} if the key is not known.
+		 */
+		final MethodPermissions permissions;
+
+
+		/**
+		 * The expiration time, in {@link #nanoTime} units.
+		 */
+		final long expires;
+
+
+		/**
+		 * Creates a new cache entry.
+		 *
+		 * @param permissions The method permissions, {@code null} if the
+		 *                    key is not known.
+		 * @param expires     The expiration time.
+		 */
+		Entry(final MethodPermissions permissions, final long expires) {
+
+			this.permissions = permissions;
+			this.expires = expires;
+		}
+	}
+
+
+	/**
+	 * The API key store.
+	 */
+	private final APIKeyStore store;
+
+
+	/**
+	 * The cached lookup results, {@code null} if caching is disabled.
+	 */
+	private final BoundedCache<String,Entry> cache;
+
+
+	/**
+	 * The time to live of known keys, in nanoseconds.
+	 */
+	private final long ttl;
+
+
+	/**
+	 * The time to live of unknown keys, in nanoseconds.
+	 */
+	private final long negativeTTL;
+
+
+	/**
+	 * The maximum time to wait for a lookup in progress, in milliseconds.
+	 */
+	private final long timeout;
+
+
+	/**
+	 * The lookups in progress, by key.
+	 */
+	private final ConcurrentMap<String,FutureTask<Entry>> loading =
+		new ConcurrentHashMap<String,FutureTask<Entry>>();
+
+
+	/**
+	 * Creates a new API key store cache.
+	 *
+	 * @param store       The API key store. Must not be {@code null}.
+	 * @param capacity    The cache capacity, zero disables caching.
+	 * @param ttl         The time to live of known keys, in
+	 *                    milliseconds.
+	 * @param negativeTTL The time to live of unknown keys, in
+	 *                    milliseconds, zero disables negative caching.
+	 * @param timeout     The maximum time to wait for a lookup of the
+	 *                    same key in progress, in milliseconds.
+	 */
+	APIKeyStoreCache(final APIKeyStore store,
+	                 final int capacity,
+	                 final long ttl,
+	                 final long negativeTTL,
+	                 final long timeout) {
+
+		this.store = store;
+
+		if (capacity > 0) {
+
+			cache = new BoundedCache<String,Entry>(capacity) {
+
+				boolean keyEquals(final String cached, final String key) {
+
+					return APIKeyDigest.constantTimeEquals(cached, key);
+				}
+			};
+		}
+		else {
+			cache = null;
+		}
+
+		this.ttl = ttl * 1000000L;
+		this.negativeTTL = negativeTTL * 1000000L;
+		this.timeout = timeout;
+	}
+
+
+	/**
+	 * Gets the API key store.
+	 *
+	 * @return The API key store.
+	 */
+	APIKeyStore getStore() {
+
+		return store;
+	}
+
+
+	/**
+	 * Gets the method permissions of the specified API key, from the
+	 * cache or else from the store.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The method permissions, {@code null} if the API key is not
+	 *         known.
+	 *
+	 * @throws APIKeyStoreException If the store lookup failed or the wait
+	 *                              for a lookup in progress timed out.
+	 */
+	MethodPermissions get(final String key)
+		throws APIKeyStoreException {
+
+		if (cache != null) {
+
+			final Entry e = cache.get(key);
+
+			if (e != null && e.expires - nanoTime() > 0L)
+				return e.permissions;
+		}
+
+		FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+
+			public Entry call()
+				throws APIKeyStoreException {
+
+				return load(key);
+			}
+		});
+
+		FutureTask<Entry> inProgress = loading.putIfAbsent(key, task);
+
+		if (inProgress == null) {
+
+			try {
+				task.run();
+
+			} finally {
+
+				loading.remove(key, task);
+			}
+		}
+		else {
+			task = inProgress;
+		}
+
+		try {
+			// Completed already if run by this thread
+			return task.get(timeout, TimeUnit.MILLISECONDS).permissions;
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new APIKeyStoreException("Interrupted while waiting for API key lookup");
+
+		} catch (TimeoutException e) {
+
+			throw new APIKeyStoreException("Timed out waiting for API key lookup after " + timeout + " ms");
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof APIKeyStoreException)
+				throw (APIKeyStoreException)e.getCause();
+
+			throw new APIKeyStoreException("API key lookup failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+
+	/**
+	 * Looks up the specified API key in the store and caches the result.
+	 *
+	 * @param key The API key value.
+	 *
+	 * @return The cache entry.
+	 *
+	 * @throws APIKeyStoreException If the store lookup failed or returned
+	 *                              invalid method patterns.
+	 */
+	private Entry load(final String key)
+		throws APIKeyStoreException {
+
+		final Set<String> methods = store.getMethods(key);
+
+		MethodPermissions permissions = null;
+
+		if (methods != null) {
+
+			// Compile without symbol table, which is read
+			// concurrently by the request threads
+			try {
+				permissions = MethodPermissions.compile(methods, null, true);
+
+			} catch (IllegalArgumentException e) {
+
+				throw new APIKeyStoreException("Invalid API key method patterns: " + e.getMessage(), e);
+			}
+		}
+
+		final long timeToLive = permissions != null ? ttl : negativeTTL;
+
+		final Entry entry = new Entry(permissions, nanoTime() + timeToLive);
+
+		if (cache != null && timeToLive > 0L)
+			cache.put(key, entry);
+
+		return entry;
+	}
+
+
+	/**
+	 * Removes all cached lookup results.
+	 */
+	void clear() {
+
+		if (cache != null)
+			cache.clear();
+	}
+
+
+	/**
+	 * Returns the current value of the monotonic clock.
+	 *
+	 * @return The current time, in nanoseconds.
+	 */
+	long nanoTime() {
+
+		return System.nanoTime();
+	}
+}
@@ -0,0 +1,39 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Thrown to indicate an {@link APIKeyStore} lookup failure.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class APIKeyStoreException extends Exception {
+
+
+	/**
+	 * The serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+
+	/**
+	 * Creates a new API key store exception.
+	 *
+	 * @param message The message.
+	 */
+	public APIKeyStoreException(final String message) {
+
+		super(message);
+	}
+
+
+	/**
+	 * Creates a new API key store exception.
+	 *
+	 * @param message The message.
+	 * @param cause   The cause.
+	 */
+	public APIKeyStoreException(final String message, final Throwable cause) {
+
+		super(message, cause);
+	}
+}
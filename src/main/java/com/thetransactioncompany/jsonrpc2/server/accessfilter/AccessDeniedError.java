@@ -46,6 +46,18 @@ public enum AccessDeniedError {
 	CLIENT_PRINCIPAL_DENIED (-31112, "Client X.509 certificate principal denied"),
 	
 	
+	/**
+	 * [-31113] Client X.509 certificate not pinned.
+	 */
+	CLIENT_CERT_NOT_PINNED (-31113, "Client X.509 certificate not pinned"),
+	
+	
+	/**
+	 * [-31114] Client X.509 certificate revoked.
+	 */
+	CLIENT_CERT_REVOKED (-31114, "Client X.509 certificate revoked"),
+	
+	
 	/**
 	 * [-31120] API key filter requires named JSON-RPC 2.0 parameters.
 	 */
@@ -58,10 +70,37 @@ public enum AccessDeniedError {
 	MISSING_API_KEY (-31121, "Missing API key"),
 	
 	
+	/**
+	 * [-31122] The API key store is unavailable.
+	 */
+	API_KEY_STORE_UNAVAILABLE (-31122, "API key store unavailable"),
+	
+	
 	/**
 	 * [-31123] API key denied access.
 	 */
-	API_KEY_DENIED (-31123, "API key denied access");
+	API_KEY_DENIED (-31123, "API key denied access"),
+	
+	
+	/**
+	 * [-31124] API key not bound to the client X.509 certificate.
+	 */
+	API_KEY_CLIENT_CERT_MISMATCH (-31124, "API key not bound to the client X.509 certificate"),
+	
+	
+	/**
+	 * [-31130] Rate limit exceeded. The error data is a JSON object with a
+	 * "retryAfter" member giving the seconds to wait before retrying.
+	 */
+	RATE_LIMIT_EXCEEDED (-31130, "Rate limit exceeded"),
+	
+	
+	/**
+	 * [-31131] Quota exceeded. The error data is a JSON object with a 
+	 * "period" member set to "day" or "month" and a "retryAfter" member
+	 * giving the seconds until the period ends.
+	 */
+	QUOTA_EXCEEDED (-31131, "Quota exceeded");
 	
 	
 	/**
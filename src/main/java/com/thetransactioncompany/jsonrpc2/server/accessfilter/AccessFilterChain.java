@@ -1,7 +1,8 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
@@ -15,6 +16,17 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
  * pass. If a single filter denies access the chain immediately returns an 
  * access denied.
  *
+ * <p>The chain is thread-safe. The filters are held in an immutable array
+ * snapshot which is replaced atomically on each modification (copy on 
+ * write). Filtering iterates over the current snapshot without locking or 
+ * allocating, and a concurrent reconfiguration never exposes a partially
+ * built chain.
+ *
+ * <p>The chain may optionally be switched to {@link #enableAdaptiveOrdering
+ * adaptive ordering}, where the filters are periodically reordered so that
+ * cheap filters which deny often run first. Ordering constraints between
+ * filters are declared by implementing {@link OrderedAccessFilter}.
+ *
  * @author Vladimir Dzhuvinov
  * @author Todor Arnaudov
  */
@@ -22,13 +34,80 @@ public class AccessFilterChain implements AccessFilter {
 
 
 	/**
-	 * The filter chain.
+	 * Empty filter chain snapshot.
+	 */
+	private static final AccessFilter[] EMPTY_CHAIN = new AccessFilter[0];
+	
+	
+	/**
+	 * The current filter chain snapshot. Never modified after 
+	 * publication.
+	 */
+	private volatile AccessFilter[] filterChain = EMPTY_CHAIN;
+	
+	
+	/**
+	 * The default sampling interval in adaptive ordering mode, in
+	 * requests.
+	 */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+	
+	
+	/**
+	 * The default minimum interval between reorderings in adaptive
+	 * ordering mode, in milliseconds.
+	 */
+	public static final long DEFAULT_REORDER_INTERVAL = 10000L;
+	
+	
+	/**
+	 * The adaptive filter order, {@code null} if adaptive ordering is 
+	 * disabled.
+	 */
+	private volatile AdaptiveFilterOrder adaptiveOrder;
+	
+	
+	/**
+	 * Lock serialising modifications of the filter chain. Never taken by
+	 * {@link #filter}.
+	 */
+	private final Object writeLock = new Object();
+	
+	
+	/**
+	 * The sampling interval in adaptive ordering mode. Guarded by the 
+	 * write lock.
 	 */
-	private List<AccessFilter> filterChain = new LinkedList<AccessFilter>();
+	private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+	
+	
+	/**
+	 * The reordering interval in adaptive ordering mode. Guarded by the
+	 * write lock.
+	 */
+	private long reorderInterval = DEFAULT_REORDER_INTERVAL;
+	
+	
+	/**
+	 * Publishes the specified filter chain snapshot. Must be called with
+	 * the write lock held.
+	 *
+	 * @param updated The new filter chain snapshot.
+	 */
+	private void publish(final AccessFilter[] updated) {
+		
+		filterChain = updated;
+		
+		// Restart the adaptive order from the configured order
+		if (adaptiveOrder != null)
+			adaptiveOrder = new AdaptiveFilterOrder(updated, sampleInterval, reorderInterval);
+	}
 	
 	
 	/**
-	 * Adds the specified access filter to this chain.
+	 * Adds the specified access filter to the end of this chain. The
+	 * filter becomes visible atomically to subsequent {@link #filter} 
+	 * calls.
 	 *
 	 * @param filter The access filter to add. Must not be {@code null}.
 	 */
@@ -37,19 +116,138 @@ public class AccessFilterChain implements AccessFilter {
 		if (filter == null)
 			throw new IllegalArgumentException("The access filter must not be null");
 		
-		filterChain.add(filter);
+		synchronized (writeLock) {
+			
+			AccessFilter[] current = filterChain;
+			AccessFilter[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = filter;
+			publish(updated);
+		}
+	}
+	
+	
+	/**
+	 * Replaces all access filters in this chain with the specified ones, 
+	 * as a single atomic operation. Concurrent {@link #filter} calls see
+	 * either the complete previous chain or the complete new chain.
+	 *
+	 * @param filters The new access filters, in the order they are to be
+	 *                invoked. Must not be {@code null} and must not 
+	 *                contain {@code null} elements.
+	 */
+	public void replaceAll(final List<? extends AccessFilter> filters) {
+		
+		if (filters == null)
+			throw new IllegalArgumentException("The access filters must not be null");
+		
+		AccessFilter[] updated = filters.toArray(new AccessFilter[filters.size()]);
+		
+		for (AccessFilter f: updated) {
+			
+			if (f == null)
+				throw new IllegalArgumentException("The access filter must not be null");
+		}
+		
+		synchronized (writeLock) {
+			
+			publish(updated);
+		}
 	}
 	
 	
 	/**
-	 * Gets the list of the chained access filters, in the order they were 
-	 * added.
+	 * Gets the list of the chained access filters, in the order they are
+	 * invoked. In adaptive ordering mode this may differ from the order 
+	 * they were added. The returned list is an unmodifiable snapshot, 
+	 * later changes to the chain are not reflected in it.
 	 *
 	 * @return The chained access filters, empty list if none.
 	 */
 	public List<AccessFilter> getAccessFilters() {
 	
-		return filterChain;
+		AdaptiveFilterOrder order = adaptiveOrder;
+		
+		AccessFilter[] filters = order != null ? order.getFilters() : filterChain;
+		
+		return Collections.unmodifiableList(Arrays.asList(filters));
+	}
+	
+	
+	/**
+	 * Enables adaptive ordering of the filters with the default sampling
+	 * and reordering intervals.
+	 *
+	 * @see #enableAdaptiveOrdering(int, long)
+	 */
+	public void enableAdaptiveOrdering() {
+		
+		enableAdaptiveOrdering(DEFAULT_SAMPLE_INTERVAL, DEFAULT_REORDER_INTERVAL);
+	}
+	
+	
+	/**
+	 * Enables adaptive ordering of the filters. The evaluation time and
+	 * outcome of the filters is sampled and at most once per reorder
+	 * interval the filters are reordered so that the expected cost of a
+	 * request is minimised, taking into account the constraints declared
+	 * by {@link OrderedAccessFilter}s.
+	 *
+	 * <p>Note that when a request would be denied by more than one filter,
+	 * the returned access denied error depends on the current order. Do 
+	 * not enable adaptive ordering if filters with side effects or 
+	 * implicit dependencies between each other are chained, unless these
+	 * are declared as {@link OrderedAccessFilter}s.
+	 *
+	 * @param sampleInterval  Every how many requests to sample, rounded up
+	 *                        to a power of two. Must be positive and not
+	 *                        exceed 2^30.
+	 * @param reorderInterval The minimum interval between reorderings, in
+	 *                        milliseconds. Zero or positive.
+	 */
+	public void enableAdaptiveOrdering(final int sampleInterval, final long reorderInterval) {
+		
+		synchronized (writeLock) {
+			
+			adaptiveOrder = new AdaptiveFilterOrder(filterChain, sampleInterval, reorderInterval);
+			this.sampleInterval = sampleInterval;
+			this.reorderInterval = reorderInterval;
+		}
+	}
+	
+	
+	/**
+	 * Disables adaptive ordering of the filters. The filters are invoked
+	 * in the order they were added.
+	 */
+	public void disableAdaptiveOrdering() {
+		
+		synchronized (writeLock) {
+			
+			adaptiveOrder = null;
+		}
+	}
+	
+	
+	/**
+	 * Returns {@code true} if adaptive ordering of the filters is enabled.
+	 *
+	 * @return {@code true} if adaptive ordering is enabled, else 
+	 *         {@code false}.
+	 */
+	public boolean isAdaptiveOrdering() {
+		
+		return adaptiveOrder != null;
+	}
+	
+	
+	/**
+	 * Gets the adaptive filter order, for testing.
+	 *
+	 * @return The adaptive filter order, {@code null} if disabled.
+	 */
+	AdaptiveFilterOrder getAdaptiveOrder() {
+		
+		return adaptiveOrder;
 	}
 	
 	
@@ -58,7 +256,10 @@ public class AccessFilterChain implements AccessFilter {
 	 */
 	public void clear() {
 	
-		filterChain = new LinkedList<AccessFilter>();
+		synchronized (writeLock) {
+			
+			publish(EMPTY_CHAIN);
+		}
 	}
 	
 	
@@ -67,10 +268,18 @@ public class AccessFilterChain implements AccessFilter {
 	 */
 	public AccessFilterResult filter(final JSONRPC2Request request, 
 	                                 final MessageContext messageCtx) {
+		
+		final AdaptiveFilterOrder order = adaptiveOrder;
+		
+		if (order != null)
+			return order.filter(request, messageCtx);
 					 
-		for (AccessFilter f: filterChain) {
+		// Single volatile read of the current snapshot
+		final AccessFilter[] chain = filterChain;
 		
-			AccessFilterResult result = f.filter(request, messageCtx);
+		for (int i=0; i < chain.length; i++) {
+			
+			AccessFilterResult result = chain[i].filter(request, messageCtx);
 			
 			if (result.accessDenied())
 				return result;
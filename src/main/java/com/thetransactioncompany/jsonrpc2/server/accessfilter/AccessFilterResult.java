@@ -2,7 +2,12 @@ package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
 /**
- * Access filter result.
+ * Immutable access filter result.
+ *
+ * <p>The access filters in this package return the shared 
+ * {@link #ACCESS_ALLOWED} constant and the shared {@link #denied canonical
+ * denied results}, so that filtering a request, whether allowed or denied,
+ * doesn't allocate.
  *
  * @author Vladimir Dzhuvinov
  */
@@ -12,13 +17,19 @@ public class AccessFilterResult {
 	/**
 	 * Indicates whether access is allowed or denied.
 	 */
-	private boolean accessAllowed;
+	private final boolean accessAllowed;
 	
 	
 	/**
 	 * The matching access denied error message if access is denied.
 	 */
-	private AccessDeniedError error;
+	private final AccessDeniedError error;
+	
+	
+	/**
+	 * Optional data for the access denied error, {@code null} if none.
+	 */
+	private final Object errorData;
 	
 	
 	/**
@@ -27,6 +38,41 @@ public class AccessFilterResult {
 	public static final AccessFilterResult ACCESS_ALLOWED = new AccessFilterResult();
 	
 	
+	/**
+	 * The canonical access denied results, indexed by access denied error
+	 * ordinal.
+	 */
+	private static final AccessFilterResult[] DENIED_RESULTS;
+	
+	
+	static {
+		AccessDeniedError[] errors = AccessDeniedError.values();
+		
+		DENIED_RESULTS = new AccessFilterResult[errors.length];
+		
+		for (AccessDeniedError e: errors)
+			DENIED_RESULTS[e.ordinal()] = new AccessFilterResult(e);
+	}
+	
+	
+	/**
+	 * Returns the canonical access filter result indicating access is 
+	 * denied with the specified error. No object is allocated.
+	 *
+	 * @param error The matching access denied error. Must not be 
+	 *              {@code null}.
+	 *
+	 * @return The shared access denied result.
+	 */
+	public static AccessFilterResult denied(final AccessDeniedError error) {
+		
+		if (error == null)
+			throw new IllegalArgumentException("The access denied error must not be null");
+		
+		return DENIED_RESULTS[error.ordinal()];
+	}
+	
+	
 	/**
 	 * Creates a new access filter result indicating access is allowed.
 	 */
@@ -34,23 +80,40 @@ public class AccessFilterResult {
 	
 		accessAllowed = true;
 		error = null;
+		errorData = null;
 	}
 	
 	
 	/**
 	 * Creates a new access filter result indicating access is denied.
+	 * Filters should prefer the shared {@link #denied} instances.
 	 *
 	 * @param error The matching access denied error message. Must not be 
 	 *              {@code null}.
 	 */
 	public AccessFilterResult(final AccessDeniedError error) {
 	
-		accessAllowed = false;
+		this(error, null);
+	}
+	
+	
+	/**
+	 * Creates a new access filter result indicating access is denied, with
+	 * additional error data, such as a retry-after hint.
+	 *
+	 * @param error     The matching access denied error message. Must not
+	 *                  be {@code null}.
+	 * @param errorData Additional error data, should serialise to JSON and
+	 *                  may be {@code null}.
+	 */
+	public AccessFilterResult(final AccessDeniedError error, final Object errorData) {
 		
 		if (error == null)
 			throw new IllegalArgumentException("The access denied error must not be null");
 		
+		accessAllowed = false;
 		this.error = error;
+		this.errorData = errorData;
 	}
 	
 	
@@ -90,4 +153,16 @@ public class AccessFilterResult {
 	
 		return error;
 	}
+	
+	
+	/**
+	 * Gets the additional data for the access denied error, to be passed
+	 * to {@link AccessDeniedError#toJSONRPC2Error(Object)}.
+	 *
+	 * @return The error data, {@code null} if none.
+	 */
+	public Object getErrorData() {
+		
+		return errorData;
+	}
 }
@@ -0,0 +1,359 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Adaptive evaluation order of the filters in an {@link AccessFilterChain}.
+ *
+ * <p>Every n-th request is sampled: the evaluation time and outcome of each
+ * filter reached by the request are recorded in striped counters, so that
+ * concurrent threads don't contend on the same cache line. Periodically the
+ * filters are reordered by ascending ratio of mean evaluation time to deny
+ * ratio, which minimises the expected cost of a request when the filter
+ * outcomes are independent. Ordering constraints declared by
+ * {@link OrderedAccessFilter}s are always honoured. The counters are reset
+ * after each reordering, so that the order tracks changes in the traffic.
+ *
+ * <p>A filter which is rarely reached, because an earlier filter denies
+ * nearly all requests, accumulates samples slowly and the reordering waits
+ * until each filter has at least {@link #MIN_SAMPLES} samples.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class AdaptiveFilterOrder {
+
+
+	/**
+	 * The minimum number of samples per filter for a reordering.
+	 */
+	static final int MIN_SAMPLES = 64;
+
+
+	/**
+	 * The number of counter stripes, a power of two.
+	 */
+	private static final int STRIPES = 16;
+
+
+	/**
+	 * The number of longs per stripe, pads each stripe to a cache line.
+	 */
+	private static final int PAD = 8;
+
+
+	/**
+	 * Stripe offset of the sample count.
+	 */
+	private static final int SAMPLES = 0;
+
+
+	/**
+	 * Stripe offset of the total evaluation time, in nanoseconds.
+	 */
+	private static final int NANOS = 1;
+
+
+	/**
+	 * Stripe offset of the denial count.
+	 */
+	private static final int DENIALS = 2;
+
+
+	/**
+	 * Immutable filter order with the matching statistics.
+	 */
+	private static final class Ordering {
+
+
+		/**
+		 * The filters, in evaluation order.
+		 */
+		final AccessFilter[] filters;
+
+
+		/**
+		 * The statistics of each filter, striped.
+		 */
+		final AtomicLongArray[] stats;
+
+
+		/**
+		 * Creates a new filter order with zeroed statistics.
+		 *
+		 * @param filters The filters, in evaluation order.
+		 */
+		Ordering(final AccessFilter[] filters) {
+
+			this.filters = filters;
+			stats = new AtomicLongArray[filters.length];
+
+			for (int i=0; i < filters.length; i++)
+				stats[i] = new AtomicLongArray(STRIPES * PAD);
+		}
+	}
+
+
+	/**
+	 * The sampling mask, derived from the sampling interval.
+	 */
+	private final int sampleMask;
+
+
+	/**
+	 * The minimum interval between reorderings, in nanoseconds.
+	 */
+	private final long reorderInterval;
+
+
+	/**
+	 * The per-stripe request counters, used to select the sampled
+	 * requests.
+	 */
+	private final AtomicLongArray requestCounts = new AtomicLongArray(STRIPES * PAD);
+
+
+	/**
+	 * Guards against concurrent reorderings.
+	 */
+	private final AtomicBoolean reordering = new AtomicBoolean();
+
+
+	/**
+	 * The current filter order.
+	 */
+	private volatile Ordering ordering;
+
+
+	/**
+	 * The earliest time of the next reordering, in
+	 * {@code System.nanoTime} units.
+	 */
+	private volatile long nextReorder;
+
+
+	/**
+	 * Creates a new adaptive filter order.
+	 *
+	 * @param filters         The filters, in their initial evaluation
+	 *                        order. Must not be {@code null}.
+	 * @param sampleInterval  Every how many requests to sample, rounded up
+	 *                        to a power of two. Must be positive and not
+	 *                        exceed 2^30.
+	 * @param reorderInterval The minimum interval between reorderings, in
+	 *                        milliseconds. Zero or positive.
+	 */
+	AdaptiveFilterOrder(final AccessFilter[] filters,
+	                    final int sampleInterval,
+	                    final long reorderInterval) {
+
+		if (sampleInterval <= 0 || sampleInterval > (1 << 30))
+			throw new IllegalArgumentException("The sample interval must be positive and not exceed 2^30");
+
+		if (reorderInterval < 0)
+			throw new IllegalArgumentException("The reorder interval must not be negative");
+
+		sampleMask = sampleInterval == 1 ? 0 : (Integer.highestOneBit(sampleInterval - 1) << 1) - 1;
+		this.reorderInterval = TimeUnit.MILLISECONDS.toNanos(reorderInterval);
+		ordering = new Ordering(filters);
+		nextReorder = System.nanoTime() + this.reorderInterval;
+	}
+
+
+	/**
+	 * Gets the filters in their current evaluation order.
+	 *
+	 * @return The filters. Must not be modified.
+	 */
+	AccessFilter[] getFilters() {
+
+		return ordering.filters;
+	}
+
+
+	/**
+	 * Filters the specified request in the current evaluation order.
+	 *
+	 * @param request    The JSON-RPC 2.0 request to filter.
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *
+	 * @return The access filter result.
+	 */
+	AccessFilterResult filter(final JSONRPC2Request request,
+	                          final MessageContext messageCtx) {
+
+		final Ordering current = ordering;
+		final AccessFilter[] filters = current.filters;
+
+		final int stripe = ((int)Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+
+		if ((requestCounts.incrementAndGet(stripe) & sampleMask) != 0) {
+
+			// Not sampled
+			for (int i=0; i < filters.length; i++) {
+
+				AccessFilterResult result = filters[i].filter(request, messageCtx);
+
+				if (result.accessDenied())
+					return result;
+			}
+
+			return AccessFilterResult.ACCESS_ALLOWED;
+		}
+
+		AccessFilterResult result = AccessFilterResult.ACCESS_ALLOWED;
+
+		long start = System.nanoTime();
+
+		for (int i=0; i < filters.length; i++) {
+
+			AccessFilterResult r = filters[i].filter(request, messageCtx);
+
+			final long end = System.nanoTime();
+
+			final AtomicLongArray stats = current.stats[i];
+			stats.incrementAndGet(stripe + SAMPLES);
+			stats.addAndGet(stripe + NANOS, end - start);
+			start = end;
+
+			if (r.accessDenied()) {
+				stats.incrementAndGet(stripe + DENIALS);
+				result = r;
+				break;
+			}
+		}
+
+		if (start - nextReorder >= 0 && reordering.compareAndSet(false, true)) {
+
+			try {
+				reorder();
+
+			} finally {
+				reordering.set(false);
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reorders the filters according to the collected statistics, if
+	 * each filter has enough samples. Resets the statistics on success.
+	 *
+	 * @return {@code true} if the filters were reordered (possibly to the
+	 *         same order), {@code false} if there weren't enough samples.
+	 */
+	boolean reorder() {
+
+		final Ordering current = ordering;
+		final int n = current.filters.length;
+
+		final double[] rank = new double[n];
+
+		for (int i=0; i < n; i++) {
+
+			long samples = 0;
+			long nanos = 0;
+			long denials = 0;
+
+			for (int s=0; s < STRIPES * PAD; s += PAD) {
+				samples += current.stats[i].get(s + SAMPLES);
+				nanos += current.stats[i].get(s + NANOS);
+				denials += current.stats[i].get(s + DENIALS);
+			}
+
+			if (samples < MIN_SAMPLES) {
+				// Keep collecting
+				nextReorder = System.nanoTime() + reorderInterval;
+				return false;
+			}
+
+			// Filters which never deny go last, in their
+			// current order
+			final double cost = Math.max((double)nanos / samples, 1.0);
+			rank[i] = denials > 0 ? cost * samples / denials : Double.POSITIVE_INFINITY;
+		}
+
+		ordering = new Ordering(order(current.filters, rank));
+		nextReorder = System.nanoTime() + reorderInterval;
+		return true;
+	}
+
+
+	/**
+	 * Orders the specified filters by ascending rank, subject to the
+	 * constraints declared by {@link OrderedAccessFilter}s. Filters with
+	 * equal rank keep their relative order. If the constraints are
+	 * cyclic the affected filters keep their relative order.
+	 *
+	 * @param filters The filters, in their current order. Must not be
+	 *                {@code null}.
+	 * @param rank    The rank of each filter. Must not be {@code null}.
+	 *
+	 * @return The ordered filters.
+	 */
+	static AccessFilter[] order(final AccessFilter[] filters, final double[] rank) {
+
+		final int n = filters.length;
+
+		// after[i][j]: filter i must run after filter j
+		final boolean[][] after = new boolean[n][n];
+
+		for (int i=0; i < n; i++) {
+
+			if (! (filters[i] instanceof OrderedAccessFilter))
+				continue;
+
+			for (Class<? extends AccessFilter> type: ((OrderedAccessFilter)filters[i]).getRunAfter()) {
+
+				for (int j=0; j < n; j++) {
+
+					if (j != i && type.isInstance(filters[j]))
+						after[i][j] = true;
+				}
+			}
+		}
+
+		final AccessFilter[] ordered = new AccessFilter[n];
+		final boolean[] placed = new boolean[n];
+
+		for (int k=0; k < n; k++) {
+
+			int best = -1;
+			int firstUnplaced = -1;
+
+			for (int i=0; i < n; i++) {
+
+				if (placed[i])
+					continue;
+
+				if (firstUnplaced < 0)
+					firstUnplaced = i;
+
+				boolean ready = true;
+
+				for (int j=0; j < n && ready; j++)
+					ready = ! after[i][j] || placed[j];
+
+				if (ready && (best < 0 || rank[i] < rank[best]))
+					best = i;
+			}
+
+			if (best < 0)
+				best = firstUnplaced; // cyclic constraints
+
+			placed[best] = true;
+			ordered[k] = filters[best];
+		}
+
+		return ordered;
+	}
+}
@@ -0,0 +1,165 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Bounded, direct-mapped cache. Each key maps to a single slot by its hash
+ * code; a put evicts the previous entry in the slot. Lookups do not allocate
+ * or lock.
+ *
+ * <p>The cache is thread-safe. Entries are immutable and published through
+ * their final fields, so a racing reader sees either a complete entry or
+ * none. Racing writers may overwrite each other's entries, which only costs
+ * a later cache miss.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+class BoundedCache<K,V> {
+
+
+	/**
+	 * Immutable cache entry.
+	 */
+	private static final class Entry<K,V> {
+
+
+		/**
+		 * The key.
+		 */
+		final K key;
+
+
+		/**
+		 * The value.
+		 */
+		final V value;
+
+
+		/**
+		 * Creates a new cache entry.
+		 *
+		 * @param key   The key.
+		 * @param value The value.
+		 */
+		Entry(final K key, final V value) {
+
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+
+	/**
+	 * The cache slots.
+	 */
+	private final Entry<K,V>[] slots;
+
+
+	/**
+	 * Creates a new bounded cache.
+	 *
+	 * @param capacity The maximum number of entries, rounded up to a
+	 *                 power of two. Must be positive and not exceed 2^30.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	BoundedCache(final int capacity) {
+
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("The cache capacity must be positive and not exceed 2^30");
+
+		slots = (Entry<K,V>[])new Entry[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+	}
+
+
+	/**
+	 * Returns the slot index of the specified key.
+	 *
+	 * @param key The key.
+	 *
+	 * @return The slot index.
+	 */
+	private int indexOf(final K key) {
+
+		return IntHashSet.mix(keyHash(key)) & (slots.length - 1);
+	}
+	
+	
+	/**
+	 * Returns the hash code of the specified key. Override to customise,
+	 * for example to hash by identity along with {@link #keyEquals}.
+	 *
+	 * @param key The key.
+	 *
+	 * @return The hash code.
+	 */
+	int keyHash(final K key) {
+		
+		return key.hashCode();
+	}
+
+
+	/**
+	 * Compares the specified keys. Override to customise, for example to
+	 * compare secrets in constant time.
+	 *
+	 * @param cached The cached key.
+	 * @param key    The looked up key.
+	 *
+	 * @return {@code true} if the keys are equal, else {@code false}.
+	 */
+	boolean keyEquals(final K cached, final K key) {
+
+		return cached.equals(key);
+	}
+
+
+	/**
+	 * Gets the cached value for the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The cached value, {@code null} if not cached.
+	 */
+	V get(final K key) {
+
+		final Entry<K,V> e = slots[indexOf(key)];
+
+		if (e != null && keyEquals(e.key, key))
+			return e.value;
+
+		return null;
+	}
+
+
+	/**
+	 * Caches the specified value, evicting any other entry in the same
+	 * slot.
+	 *
+	 * @param key   The key. Must not be {@code null}.
+	 * @param value The value. Must not be {@code null}.
+	 */
+	void put(final K key, final V value) {
+
+		slots[indexOf(key)] = new Entry<K,V>(key, value);
+	}
+
+
+	/**
+	 * Returns the capacity of this cache.
+	 *
+	 * @return The maximum number of entries.
+	 */
+	int capacity() {
+
+		return slots.length;
+	}
+
+
+	/**
+	 * Removes all entries from this cache.
+	 */
+	void clear() {
+
+		for (int i=0; i < slots.length; i++)
+			slots[i] = null;
+	}
+}
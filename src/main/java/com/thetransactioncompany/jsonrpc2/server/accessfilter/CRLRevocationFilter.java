@@ -0,0 +1,799 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.cert.CRL;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter denying revoked X.509 client certificates, as listed in
+ * local certificate revocation list (CRL) files. The CRLs are loaded into a
+ * hash set of the revoked serial numbers per issuer, so checking a
+ * certificate is a hash lookup, with no I/O or network calls per request.
+ *
+ * <p>The client certificate chain is obtained from the
+ * {@link X509CertPinningFilter#CERTIFICATE_ATTRIBUTE servlet request
+ * attribute}, requests without a servlet request or a certificate are denied
+ * with {@link AccessDeniedError#CLIENT_CERT_REQUIRED}. If a certificate of
+ * the chain is revoked the request is denied with
+ * {@link AccessDeniedError#CLIENT_CERT_REVOKED}.
+ *
+ * <p>The CRL files may be PEM or DER encoded and hold one or more CRLs. The
+ * CRL signatures are not verified, the files must come from a trusted
+ * source. The files can be {@link #startReload reloaded in the background}
+ * when they change; the new revoked serial numbers replace the current ones
+ * atomically. If a reload fails the current ones remain in effect.
+ *
+ * <p>This filter complements {@link HTTPSFilter} and always runs after it in
+ * an adaptively ordered {@link AccessFilterChain}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CRLRevocationFilter implements OrderedAccessFilter {
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger log = LogManager.getLogger("MAIN");
+
+
+	/**
+	 * The filters to run before this one.
+	 */
+	private static final Collection<Class<? extends AccessFilter>> RUN_AFTER =
+		Collections.<Class<? extends AccessFilter>>singleton(HTTPSFilter.class);
+
+
+	/**
+	 * Immutable snapshot of the revoked serial numbers, replaced as a
+	 * whole on reload.
+	 */
+	private static final class RevokedSerials {
+
+
+		/**
+		 * The revoked serial numbers, by issuer.
+		 */
+		final Map<X500Principal,Set<BigInteger>> serials;
+
+
+		/**
+		 * The number of revoked serial numbers.
+		 */
+		final int count;
+
+
+		/**
+		 * The last modification time and length of each CRL file,
+		 * when loaded.
+		 */
+		final long[] stamps;
+
+
+		/**
+		 * Creates a new revoked serial numbers snapshot.
+		 *
+		 * @param serials The revoked serial numbers, by issuer.
+		 * @param count   The number of revoked serial numbers.
+		 * @param stamps  The CRL file stamps.
+		 */
+		RevokedSerials(final Map<X500Principal,Set<BigInteger>> serials,
+		               final int count,
+		               final long[] stamps) {
+
+			this.serials = serials;
+			this.count = count;
+			this.stamps = stamps;
+		}
+	}
+
+
+	/**
+	 * Minimal DER reader, for walking the revoked certificate entries of a
+	 * CRL in their encoded order.
+	 */
+	private static final class DERReader {
+
+
+		/**
+		 * The BOOLEAN tag.
+		 */
+		static final int BOOLEAN = 0x01;
+
+
+		/**
+		 * The INTEGER tag.
+		 */
+		static final int INTEGER = 0x02;
+
+
+		/**
+		 * The UTCTime tag.
+		 */
+		static final int UTC_TIME = 0x17;
+
+
+		/**
+		 * The GeneralizedTime tag.
+		 */
+		static final int GENERALIZED_TIME = 0x18;
+
+
+		/**
+		 * The SEQUENCE tag.
+		 */
+		static final int SEQUENCE = 0x30;
+
+
+		/**
+		 * The directoryName general name tag.
+		 */
+		static final int DIRECTORY_NAME = 0xa4;
+
+
+		/**
+		 * The encoded bytes.
+		 */
+		private final byte[] buf;
+
+
+		/**
+		 * The end of the elements to read.
+		 */
+		private final int end;
+
+
+		/**
+		 * The position of the next element.
+		 */
+		private int pos;
+
+
+		/**
+		 * The tag of the last read element.
+		 */
+		int tag;
+
+
+		/**
+		 * The start of the last read element.
+		 */
+		private int elementStart;
+
+
+		/**
+		 * The start of the last read element value.
+		 */
+		private int valueStart;
+
+
+		/**
+		 * The end of the last read element.
+		 */
+		private int valueEnd;
+
+
+		/**
+		 * Creates a new DER reader of the specified elements.
+		 *
+		 * @param buf The encoded elements.
+		 */
+		DERReader(final byte[] buf) {
+
+			this(buf, 0, buf.length);
+		}
+
+
+		/**
+		 * Creates a new DER reader of the specified elements.
+		 *
+		 * @param buf   The buffer.
+		 * @param start The start of the encoded elements.
+		 * @param end   The end of the encoded elements.
+		 */
+		private DERReader(final byte[] buf, final int start, final int end) {
+
+			this.buf = buf;
+			this.pos = start;
+			this.end = end;
+		}
+
+
+		/**
+		 * Returns {@code true} if there are more elements to read.
+		 *
+		 * @return {@code true} if there are more elements.
+		 */
+		boolean hasNext() {
+
+			return pos < end;
+		}
+
+
+		/**
+		 * Returns the tag of the next element.
+		 *
+		 * @return The tag.
+		 */
+		int peekTag() {
+
+			return buf[pos] & 0xff;
+		}
+
+
+		/**
+		 * Reads the next element.
+		 *
+		 * @return This reader.
+		 *
+		 * @throws IOException If there is no next element or it is
+		 *                     malformed.
+		 */
+		DERReader read()
+			throws IOException {
+
+			if (end - pos < 2)
+				throw new IOException("Truncated DER element");
+
+			elementStart = pos;
+			tag = buf[pos++] & 0xff;
+
+			int length = buf[pos++] & 0xff;
+
+			if (length > 0x7f) {
+
+				final int n = length & 0x7f;
+
+				if (n == 0 || n > 3 || n > end - pos)
+					throw new IOException("Unsupported DER length");
+
+				length = 0;
+
+				for (int i=0; i < n; i++)
+					length = (length << 8) | (buf[pos++] & 0xff);
+			}
+
+			if (length > end - pos)
+				throw new IOException("Truncated DER element");
+
+			valueStart = pos;
+			valueEnd = pos + length;
+			pos = valueEnd;
+
+			return this;
+		}
+
+
+		/**
+		 * Returns a reader of the elements within the last read one.
+		 *
+		 * @return The reader.
+		 */
+		DERReader contents() {
+
+			return new DERReader(buf, valueStart, valueEnd);
+		}
+
+
+		/**
+		 * Returns the value of the last read element.
+		 *
+		 * @return The value bytes.
+		 */
+		byte[] value() {
+
+			return Arrays.copyOfRange(buf, valueStart, valueEnd);
+		}
+
+
+		/**
+		 * Returns the encoding of the last read element.
+		 *
+		 * @return The element bytes.
+		 */
+		byte[] element() {
+
+			return Arrays.copyOfRange(buf, elementStart, valueEnd);
+		}
+	}
+
+
+	/**
+	 * The encoded certificate issuer extension OID, 2.5.29.29.
+	 */
+	private static final byte[] CERTIFICATE_ISSUER_OID = {0x55, 0x1d, 0x1d};
+
+
+	/**
+	 * The CRL files.
+	 */
+	private List<File> files;
+
+
+	/**
+	 * The current revoked serial numbers.
+	 */
+	private volatile RevokedSerials revoked;
+
+
+	/**
+	 * Lock guarding initialisation and reload. Never taken by
+	 * {@link #filter}.
+	 */
+	private final Object reloadLock = new Object();
+
+
+	/**
+	 * The background reload executor, {@code null} if not started.
+	 */
+	private ScheduledExecutorService reloadExecutor;
+
+
+	/**
+	 * Initialises this CRL revocation filter.
+	 *
+	 * @param files The CRL files. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed.
+	 * @throws IOException              If a CRL file couldn't be read or
+	 *                                  parsed.
+	 */
+	public void init(final List<File> files)
+		throws IOException {
+
+		if (files == null)
+			throw new IllegalArgumentException("The CRL files must not be null");
+
+		List<File> newFiles = Collections.unmodifiableList(new ArrayList<File>(files));
+
+		synchronized (reloadLock) {
+
+			revoked = load(newFiles, stamp(newFiles));
+			this.files = newFiles;
+		}
+	}
+
+
+	/**
+	 * Gets the CRL files.
+	 *
+	 * @return The CRL files.
+	 */
+	public List<File> getFiles() {
+
+		return files;
+	}
+
+
+	/**
+	 * Gets the number of revoked serial numbers currently loaded.
+	 *
+	 * @return The number of revoked serial numbers.
+	 */
+	public int getRevokedCount() {
+
+		return revoked.count;
+	}
+
+
+	/**
+	 * Returns the last modification time and length of the specified
+	 * files.
+	 *
+	 * @param files The files.
+	 *
+	 * @return The file stamps.
+	 */
+	private static long[] stamp(final List<File> files) {
+
+		long[] stamps = new long[files.size() * 2];
+
+		for (int i=0; i < files.size(); i++) {
+			stamps[i * 2] = files.get(i).lastModified();
+			stamps[i * 2 + 1] = files.get(i).length();
+		}
+
+		return stamps;
+	}
+
+
+	/**
+	 * Loads the revoked serial numbers from the specified CRL files.
+	 *
+	 * @param files  The CRL files.
+	 * @param stamps The file stamps.
+	 *
+	 * @return The revoked serial numbers.
+	 *
+	 * @throws IOException If a CRL file couldn't be read or parsed.
+	 */
+	private static RevokedSerials load(final List<File> files, final long[] stamps)
+		throws IOException {
+
+		CertificateFactory cf;
+
+		try {
+			cf = CertificateFactory.getInstance("X.509");
+
+		} catch (CertificateException e) {
+
+			// Every Java platform must support X.509
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		Map<X500Principal,Set<BigInteger>> serials = new HashMap<X500Principal,Set<BigInteger>>();
+
+		int count = 0;
+
+		for (File file: files) {
+
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+			Collection<? extends CRL> crls;
+
+			try {
+				crls = cf.generateCRLs(in);
+
+			} catch (CRLException e) {
+
+				throw new IOException("Invalid CRL file " + file + ": " + e.getMessage(), e);
+
+			} finally {
+				in.close();
+			}
+
+			for (CRL crl: crls) {
+
+				try {
+					count += addRevoked((X509CRL)crl, serials);
+
+				} catch (IOException e) {
+
+					throw new IOException("Invalid CRL file " + file + ": " + e.getMessage(), e);
+				}
+			}
+		}
+
+		return new RevokedSerials(serials, count, stamps);
+	}
+
+
+	/**
+	 * Adds the revoked serial numbers of the specified CRL. The entries
+	 * are read in their encoded order, as the certificate issuer of an
+	 * indirect CRL entry applies to the following entries as well, until
+	 * another entry names a new one (RFC 5280, section 5.3.3). The
+	 * entries before the first certificate issuer belong to the CRL
+	 * issuer.
+	 *
+	 * @param crl     The CRL.
+	 * @param serials The revoked serial numbers, by issuer, to add to.
+	 *
+	 * @return The number of added serial numbers.
+	 *
+	 * @throws IOException If the CRL is malformed.
+	 */
+	private static int addRevoked(final X509CRL crl, final Map<X500Principal,Set<BigInteger>> serials)
+		throws IOException {
+
+		DERReader tbs;
+
+		try {
+			tbs = new DERReader(crl.getTBSCertList()).read().contents();
+
+		} catch (CRLException e) {
+
+			throw new IOException(e.getMessage(), e);
+		}
+
+		// Skip the version, signature, issuer and update times
+		if (tbs.hasNext() && tbs.peekTag() == DERReader.INTEGER)
+			tbs.read();
+
+		tbs.read();
+		tbs.read();
+		tbs.read();
+
+		if (tbs.hasNext() && (tbs.peekTag() == DERReader.UTC_TIME || tbs.peekTag() == DERReader.GENERALIZED_TIME))
+			tbs.read();
+
+		if (! tbs.hasNext() || tbs.peekTag() != DERReader.SEQUENCE)
+			return 0;
+
+		DERReader entries = tbs.read().contents();
+
+		X500Principal issuer = crl.getIssuerX500Principal();
+
+		Set<BigInteger> target = null;
+
+		int count = 0;
+
+		while (entries.hasNext()) {
+
+			DERReader entry = entries.read().contents();
+
+			BigInteger serial = new BigInteger(entry.read().value());
+
+			// Skip the revocation date
+			entry.read();
+
+			if (entry.hasNext()) {
+
+				X500Principal named = readCertificateIssuer(entry.read().contents());
+
+				if (named != null && ! named.equals(issuer)) {
+					issuer = named;
+					target = null;
+				}
+			}
+
+			if (target == null) {
+
+				target = serials.get(issuer);
+
+				if (target == null) {
+					target = new HashSet<BigInteger>();
+					serials.put(issuer, target);
+				}
+			}
+
+			if (target.add(serial))
+				count++;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Reads the certificate issuer extension of a CRL entry.
+	 *
+	 * @param extensions The CRL entry extensions.
+	 *
+	 * @return The certificate issuer, {@code null} if not specified.
+	 *
+	 * @throws IOException If the extensions are malformed or the
+	 *                     certificate issuer is not a directory name.
+	 */
+	private static X500Principal readCertificateIssuer(final DERReader extensions)
+		throws IOException {
+
+		X500Principal issuer = null;
+
+		while (extensions.hasNext()) {
+
+			DERReader ext = extensions.read().contents();
+
+			if (! Arrays.equals(ext.read().value(), CERTIFICATE_ISSUER_OID))
+				continue;
+
+			// Skip the criticality
+			if (ext.hasNext() && ext.peekTag() == DERReader.BOOLEAN)
+				ext.read();
+
+			DERReader names = new DERReader(ext.read().value()).read().contents();
+
+			while (names.hasNext()) {
+
+				if (names.read().tag != DERReader.DIRECTORY_NAME)
+					continue;
+
+				try {
+					issuer = new X500Principal(names.contents().read().element());
+
+				} catch (IllegalArgumentException e) {
+
+					throw new IOException("Invalid CRL entry certificate issuer: " + e.getMessage(), e);
+				}
+			}
+
+			if (issuer == null)
+				throw new IOException("Unsupported CRL entry certificate issuer, must be a directory name");
+		}
+
+		return issuer;
+	}
+
+
+	/**
+	 * Reloads the CRL files if any of them changed since they were last
+	 * loaded. Requests are checked against the current revoked serial
+	 * numbers until the reloaded ones replace them.
+	 *
+	 * @return {@code true} if the CRL files were reloaded, {@code false}
+	 *         if they are unchanged.
+	 *
+	 * @throws IOException If a CRL file couldn't be read or parsed. The
+	 *                     current revoked serial numbers remain in
+	 *                     effect.
+	 */
+	public boolean reload()
+		throws IOException {
+
+		synchronized (reloadLock) {
+
+			final long[] stamps = stamp(files);
+
+			if (Arrays.equals(stamps, revoked.stamps))
+				return false;
+
+			revoked = load(files, stamps);
+
+			if (log.isInfoEnabled())
+				log.info("Reloaded CRL files: " + revoked.count + " revoked certificates");
+
+			return true;
+		}
+	}
+
+
+	/**
+	 * Starts a background reload of the CRL files when they change. Any
+	 * previously started reload is stopped.
+	 *
+	 * @param interval The interval for checking the CRL files for changes,
+	 *                 in milliseconds. Must be positive.
+	 */
+	public void startReload(final long interval) {
+
+		if (interval <= 0)
+			throw new IllegalArgumentException("The reload interval must be positive");
+
+		synchronized (reloadLock) {
+
+			stopReload();
+
+			reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(final Runnable r) {
+
+					Thread t = new Thread(r, "CRLRevocationFilter-reload");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+			reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+
+				public void run() {
+
+					try {
+						reload();
+
+					} catch (IOException e) {
+
+						log.warn("Couldn't reload CRL files, keeping current revocations: " + e.getMessage());
+
+					} catch (RuntimeException e) {
+
+						// Keep the reload schedule alive
+						log.error("CRL reload failed: " + e.getMessage(), e);
+					}
+				}
+
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * Stops the background reload of the CRL files, if started.
+	 */
+	public void stopReload() {
+
+		synchronized (reloadLock) {
+
+			if (reloadExecutor != null) {
+
+				reloadExecutor.shutdownNow();
+				reloadExecutor = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if a background reload of the CRL files is
+	 * running.
+	 *
+	 * @return {@code true} if a background reload is running, else
+	 *         {@code false}.
+	 */
+	public boolean isReloading() {
+
+		synchronized (reloadLock) {
+
+			return reloadExecutor != null;
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified certificate is revoked.
+	 *
+	 * @param cert The certificate. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the certificate is revoked, else
+	 *         {@code false}.
+	 */
+	public boolean isRevoked(final X509Certificate cert) {
+
+		final Map<X500Principal,Set<BigInteger>> serials = revoked.serials;
+
+		if (serials.isEmpty())
+			return false;
+
+		final Set<BigInteger> issuerSerials = serials.get(cert.getIssuerX500Principal());
+
+		return issuerSerials != null && issuerSerials.contains(cert.getSerialNumber());
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter() {
+
+		return RUN_AFTER;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public AccessFilterResult filter(final JSONRPC2Request request,
+	                                 final MessageContext messageCtx) {
+
+		final HttpServletRequest httpRequest = messageCtx.getHttpServletRequest();
+
+		if (httpRequest == null)
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
+
+		final Object attribute = httpRequest.getAttribute(X509CertPinningFilter.CERTIFICATE_ATTRIBUTE);
+
+		if (! (attribute instanceof X509Certificate[]) || ((X509Certificate[])attribute).length == 0)
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
+
+		for (X509Certificate cert: (X509Certificate[])attribute) {
+
+			if (cert != null && isRevoked(cert))
+				return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REVOKED);
+		}
+
+		return AccessFilterResult.ACCESS_ALLOWED;
+	}
+}
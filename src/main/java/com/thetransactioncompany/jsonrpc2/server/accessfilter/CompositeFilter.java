@@ -1,10 +1,14 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.io.IOException;
+
 import java.net.UnknownHostException;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
@@ -19,11 +23,25 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
  *
  * <ol>
  *     <li>{@link HostFilter}
+ *     <li>{@link IPRateLimitFilter}, if enabled
  *     <li>{@link HTTPSFilter}
  *     <li>{@link X509ClientCertFilter}
  *     <li>{@link APIKeyFilter}
+ *     <li>{@link RateLimitFilter}, if enabled
+ *     <li>{@link QuotaFilter}, if enabled
  * </ol>
  *
+ * <p>The host and API key checks can also be applied to the raw request body,
+ * before the JSON is parsed, with the {@link #getPreParseFilter pre-parse
+ * filter}.
+ *
+ * <p>If a {@link CompositeFilterConfiguration.Hosts#refreshInterval host name
+ * refresh interval} is configured the composite filter starts a background
+ * thread, which must be stopped with {@link #shutdown} when the filter is no
+ * longer used. {@link #shutdown} also closes the quota counter file, if
+ * quotas are enabled, and stops watching the {@link 
+ * CompositeFilterConfiguration.APIKeys#file API key file}, if configured.
+ *
  * @author Vladimir Dzhuvinov
  */
 public class CompositeFilter extends AccessFilterChain {
@@ -34,51 +52,305 @@ public class CompositeFilter extends AccessFilterChain {
 	 */
 	private CompositeFilterConfiguration config;
 	
+	
+	/**
+	 * The host filter.
+	 */
+	private HostFilter hostFilter;
+	
+	
+	/**
+	 * The quota filter, {@code null} if none.
+	 */
+	private QuotaFilter quotaFilter;
+	
+	
+	/**
+	 * The CRL revocation filter, {@code null} if none.
+	 */
+	private CRLRevocationFilter crlFilter;
+	
+	
+	/**
+	 * The API key file watcher, {@code null} if none.
+	 */
+	private APIKeyFileWatcher apiKeyFileWatcher;
+	
+	
+	/**
+	 * The pre-parse filter.
+	 */
+	private volatile PreParseFilter preParseFilter;
+	
 
 	/**
 	 * Initialises this composite filter with the specified configuration.
+	 * The filter may be re-initialised while in use, the new filter chain
+	 * replaces the previous one atomically. If initialisation fails the 
+	 * previous filter chain remains in effect.
 	 *
 	 * @param config The composite filter configuration. Must not be 
 	 *               {@code null}.
 	 *
-	 * @throws UnknownHostException If the allow list contains a badly 
-	 *                              formatted IP address or if a host name
-	 *                              could not be resolved to an IP address.
+	 * @throws UnknownHostException  If the allow list contains a badly 
+	 *                               formatted IP address or if a host 
+	 *                               name could not be resolved to an IP
+	 *                               address (unless configured to ignore
+	 *                               unresolved host names).
+	 * @throws IllegalStateException If the API key file or index couldn't
+	 *                               be read or watched, the quota counter
+	 *                               file couldn't be opened, or a CRL 
+	 *                               file couldn't be read, with the 
+	 *                               {@link IOException} as cause.
 	 */
 	public void init(final CompositeFilterConfiguration config)
 		throws UnknownHostException {
 	
-		this.config = config;
+		init(config, null);
+	}
+	
+	
+	/**
+	 * Initialises this composite filter with the specified configuration,
+	 * looking up the API keys in the specified store instead of the 
+	 * configured API key map or file. The store lookups are cached as 
+	 * set by the {@link CompositeFilterConfiguration.APIKeys#storeCacheSize
+	 * store cache properties}. Keys in a store can't be bound to client 
+	 * certificates. The filter may be re-initialised while in
+	 * use, the new filter chain replaces the previous one atomically. If 
+	 * initialisation fails the previous filter chain remains in effect.
+	 *
+	 * @param config      The composite filter configuration. Must not be
+	 *                    {@code null}.
+	 * @param apiKeyStore The API key store, {@code null} to use the 
+	 *                    configured API key map or file.
+	 *
+	 * @throws UnknownHostException     If the allow list contains a badly
+	 *                                  formatted IP address or if a host
+	 *                                  name could not be resolved to an 
+	 *                                  IP address (unless configured to 
+	 *                                  ignore unresolved host names).
+	 * @throws IllegalArgumentException If API key bindings are configured
+	 *                                  along with a store, or the store is
+	 *                                  a {@link JDBCAPIKeyStore} not 
+	 *                                  hashed as configured.
+	 * @throws IllegalStateException    If the API key file or index 
+	 *                                  couldn't be read or watched, the 
+	 *                                  quota counter file couldn't be 
+	 *                                  opened, or a CRL file couldn't be 
+	 *                                  read, with the {@link IOException}
+	 *                                  as cause.
+	 */
+	public void init(final CompositeFilterConfiguration config, final APIKeyStore apiKeyStore)
+		throws UnknownHostException {
+		
+		if (apiKeyStore != null && config.apiKeys.require) {
+			
+			// The store path would otherwise drop these silently
+			if (! config.apiKeys.bindings.isEmpty())
+				throw new IllegalArgumentException("API keys in a store can't be bound to client certificates");
+			
+			if (apiKeyStore instanceof JDBCAPIKeyStore && 
+			    ((JDBCAPIKeyStore)apiKeyStore).hasHashedKeys() != config.apiKeys.hashed)
+				throw new IllegalArgumentException("The API key store hashing doesn't match the hashed API keys setting");
+		}
+		
+		try {
+			initFilters(config, apiKeyStore);
+		
+		} catch (UnknownHostException e) {
+			
+			throw e;
+		
+		} catch (IOException e) {
+			
+			throw new IllegalStateException("Couldn't initialise the access filters: " + e.getMessage(), e);
+		}
+	}
+	
+	
+	/**
+	 * Initialises this composite filter, see {@link #init(CompositeFilterConfiguration,APIKeyStore)}.
+	 *
+	 * @param config      The composite filter configuration. Must not be
+	 *                    {@code null}.
+	 * @param apiKeyStore The API key store, {@code null} to use the 
+	 *                    configured API key map or file.
+	 *
+	 * @throws IOException If a host name couldn't be resolved or a file
+	 *                     couldn't be read, opened or watched.
+	 */
+	private void initFilters(final CompositeFilterConfiguration config, final APIKeyStore apiKeyStore)
+		throws IOException {
+		
+		// Build the new chain aside, the current one stays in effect
+		// until it's replaced atomically
+		List<AccessFilter> filters = new ArrayList<AccessFilter>();
 		
-		clear();
+		HostFilter newHostFilter = new HostFilter();
 		
-		HostFilter hostFilter = new HostFilter();
-		hostFilter.init(config.hosts.allow);
-		add(hostFilter);
+		HostResolution resolution = newHostFilter.init(config.hosts.allow, 
+		                                             new DefaultHostResolver(),
+		                                             config.hosts.resolveThreads,
+		                                             config.hosts.resolveTimeout);
+		
+		if (! resolution.isComplete() && ! config.hosts.ignoreUnresolved)
+			throw new UnknownHostException(resolution.describeUnresolved());
+		
+		filters.add(newHostFilter);
+		
+		if (config.ipRateLimits.enable) {
+			IPRateLimitFilter ipRateLimitFilter = new IPRateLimitFilter();
+			ipRateLimitFilter.init(config.ipRateLimits.limit,
+			                       config.ipRateLimits.window * 1000L,
+			                       config.ipRateLimits.maxAddresses,
+			                       config.ipRateLimits.ipv6PrefixLength);
+			filters.add(ipRateLimitFilter);
+		}
+		
+		CRLRevocationFilter newCRLFilter = null;
 		
 		// Add HTTPS / client cert filter?
 		if (config.https.require) {
 			
 			HTTPSFilter httpsFilter = new HTTPSFilter();
 			httpsFilter.init(config.https.require);
-			add(httpsFilter);
+			filters.add(httpsFilter);
 			
 			if (config.https.requireClientCert) {
 		
 				X509ClientCertFilter certFilter = new X509ClientCertFilter();
 				certFilter.init(config.https.requireClientCert, 
-				                config.https.clientCertPrincipal);
-				add(certFilter);
+				                config.https.clientCertPrincipal,
+				                config.https.principalMap,
+				                config.https.clientCertDNCacheSize);
+				filters.add(certFilter);
+			}
+			
+			if (! config.https.pinnedCerts.isEmpty()) {
+				
+				X509CertPinningFilter pinningFilter = new X509CertPinningFilter();
+				pinningFilter.init(config.https.pinnedCerts);
+				filters.add(pinningFilter);
+			}
+			
+			if (! config.https.crlFiles.isEmpty()) {
+				
+				newCRLFilter = new CRLRevocationFilter();
+				newCRLFilter.init(config.https.crlFiles);
+				filters.add(newCRLFilter);
 			}
 		}
 		
-		if (config.apiKeys.require) {
-			APIKeyFilter apiKeyFilter = new APIKeyFilter();
-			apiKeyFilter.init(config.apiKeys.map, 
+		APIKeyFilter apiKeyFilter = null;
+		
+		APIKeyFileWatcher newAPIKeyFileWatcher = null;
+		
+		if (config.apiKeys.require && apiKeyStore != null) {
+			
+			apiKeyFilter = new APIKeyFilter();
+			apiKeyFilter.init(apiKeyStore, 
+			                  config.apiKeys.exemptedMethods,
+			                  config.apiKeys.createAPIKeyExtractor(),
+			                  config.apiKeys.storeCacheSize,
+			                  config.apiKeys.storeCacheTTL * 1000L,
+			                  config.apiKeys.storeNegativeCacheTTL * 1000L,
+			                  config.apiKeys.storeTimeout * 1000L);
+			filters.add(apiKeyFilter);
+		}
+		else if (config.apiKeys.require && config.apiKeys.indexFile != null) {
+			
+			apiKeyFilter = new APIKeyFilter();
+			apiKeyFilter.init(MappedKeyIndex.open(config.apiKeys.indexFile), 
 			                  config.apiKeys.exemptedMethods,
-					  config.apiKeys.parameterName);
-			add(apiKeyFilter);
+			                  config.apiKeys.createAPIKeyExtractor());
+			filters.add(apiKeyFilter);
 		}
+		else if (config.apiKeys.require) {
+			
+			Map<APIKey,Set<String>> keyMap = config.apiKeys.map;
+			
+			if (config.apiKeys.file != null)
+				keyMap = APIKeyFile.load(config.apiKeys.file, config.apiKeys.hashed);
+			
+			apiKeyFilter = new APIKeyFilter();
+			apiKeyFilter.init(keyMap, 
+			                  config.apiKeys.exemptedMethods,
+					  config.apiKeys.createAPIKeyExtractor(),
+					  config.apiKeys.hashed,
+					  config.apiKeys.verifiedKeyCacheSize,
+					  config.apiKeys.bindings);
+			filters.add(apiKeyFilter);
+			
+			if (config.apiKeys.file != null && config.apiKeys.watchFile)
+				newAPIKeyFileWatcher = new APIKeyFileWatcher(config.apiKeys.file, apiKeyFilter);
+		}
+		
+		// Rate limit after the API key check, so that only valid keys
+		// take a bucket
+		if (config.rateLimits.enable) {
+			RateLimitFilter rateLimitFilter = new RateLimitFilter();
+			rateLimitFilter.init(config.rateLimits.defaultLimit,
+			                     config.rateLimits.overrides,
+			                     config.apiKeys.exemptedMethods,
+			                     config.apiKeys.createAPIKeyExtractor(),
+			                     config.apiKeys.hashed,
+			                     config.rateLimits.maxKeys);
+			filters.add(rateLimitFilter);
+		}
+		
+		// Count quota last, so that denied calls are not counted
+		QuotaFilter newQuotaFilter = null;
+		
+		if (config.quotas.enable) {
+			newQuotaFilter = new QuotaFilter();
+			newQuotaFilter.init(config.quotas.file,
+			                    config.quotas.defaultQuota,
+			                    config.quotas.overrides,
+			                    config.apiKeys.exemptedMethods,
+			                    config.apiKeys.createAPIKeyExtractor(),
+			                    config.apiKeys.hashed,
+			                    config.quotas.maxKeys);
+			filters.add(newQuotaFilter);
+		}
+		
+		// Start watching last, nothing after that fails
+		if (newAPIKeyFileWatcher != null) {
+			
+			try {
+				newAPIKeyFileWatcher.start();
+			
+			} catch (IOException e) {
+				
+				if (newQuotaFilter != null)
+					newQuotaFilter.close();
+				
+				throw e;
+			}
+		}
+		
+		replaceAll(filters);
+		
+		preParseFilter = new PreParseFilter(newHostFilter, apiKeyFilter);
+		
+		// Stop background tasks from a previous init, if any
+		shutdown();
+		
+		this.config = config;
+		
+		hostFilter = newHostFilter;
+		
+		quotaFilter = newQuotaFilter;
+		
+		crlFilter = newCRLFilter;
+		
+		if (config.hosts.refreshInterval > 0)
+			hostFilter.startRefresh(config.hosts.refreshInterval * 1000L);
+		
+		if (crlFilter != null && config.https.crlReloadInterval > 0)
+			crlFilter.startReload(config.https.crlReloadInterval * 1000L);
+		
+		apiKeyFileWatcher = newAPIKeyFileWatcher;
 	}
 	
 	
@@ -91,4 +363,53 @@ public class CompositeFilter extends AccessFilterChain {
 	
 		return config;
 	}
+	
+	
+	/**
+	 * Gets the pre-parse filter, which applies the host and API key 
+	 * checks of this composite filter to raw request bodies, before the 
+	 * JSON is parsed.
+	 *
+	 * @return The pre-parse filter, {@code null} if this composite filter
+	 *         is not initialised.
+	 */
+	public PreParseFilter getPreParseFilter() {
+		
+		return preParseFilter;
+	}
+	
+	
+	/**
+	 * Stops any background tasks started by this composite filter, such as
+	 * the periodic refresh of the allowed host names, the reload of the
+	 * CRL files and the watching of the API key file, and closes the quota
+	 * counter file.
+	 */
+	public void shutdown() {
+		
+		if (hostFilter != null)
+			hostFilter.stopRefresh();
+		
+		if (crlFilter != null)
+			crlFilter.stopReload();
+		
+		if (apiKeyFileWatcher != null) {
+			apiKeyFileWatcher.stop();
+			apiKeyFileWatcher = null;
+		}
+		
+		if (quotaFilter != null) {
+			
+			try {
+				quotaFilter.close();
+			
+			} catch (IOException e) {
+				
+				// The mapped counters are still written back by
+				// the operating system
+			}
+			
+			quotaFilter = null;
+		}
+	}
 }
@@ -1,11 +1,15 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.io.File;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -30,15 +34,71 @@ import com.thetransactioncompany.util.PropertyParseException;
  * access.https.require=true
  * access.https.requireClientCert=true
  * access.https.clientCertPrincipal=cn=John Doe,ou=people,cd=company,dc=org
+ * access.https.clientCertDNCacheSize=1024
+ * # Optional client certificate principals and their allowed methods, by
+ * # exact DN or by DN suffix
+ * # access.https.principalMap.sso.dn=cn=SSO Gateway,ou=services,o=Acme
+ * # access.https.principalMap.sso.methods=sso.*
+ * # access.https.principalMap.partners.dnSuffix=ou=Partners,o=Acme
+ * # access.https.principalMap.partners.methods=billing.get billing.list
+ * # Optional pinned client certificates, by SHA-256 fingerprint
+ * # access.https.pinnedCerts=3b:1e:...:9a 5f0c...e2
+ * # Optional CRL files for checking client certificate revocation
+ * # access.https.crlFiles=/etc/pki/crl/ca.crl /etc/pki/crl/sub-ca.crl
+ * # access.https.crlReloadInterval=60
  * 
  * access.hosts.allow=*
+ * access.hosts.refreshInterval=0
+ * access.hosts.resolveThreads=16
+ * access.hosts.resolveTimeout=10000
+ * access.hosts.ignoreUnresolved=false
  * 
  * access.apiKeys.require=true
+ * access.apiKeys.source=param
  * access.apiKeys.parameterName=apiKey
+ * access.apiKeys.position=0
+ * access.apiKeys.headerName=X-API-Key
+ * access.apiKeys.headerScheme=
+ * access.apiKeys.hashed=false
+ * access.apiKeys.verifiedKeyCacheSize=4096
  * access.apiKeys.exemptedMethods=ws.getName ws.getVersion ws.getTime
  * access.apiKeys.map.f70defbe-b881-41f8-8138-bea52b6e1b9c=sso.login sso.logout sso.getSession
  * access.apiKeys.map.08d1e641-b1c1-4d88-8796-e47c06430efb=sso.proxiedLogin sso.proxiedLogout sso.getSession
  * access.apiKeys.map.d881afe0-4d7d-4520-9fda-bffffc3022ba=sso.userCount sso.sessionCount sso.listUsers
+ * access.apiKeys.map.2b0e8f5c-7f1d-4b8e-9c55-64a9d3f7e0a1=billing.* *.get
+ * # Alternatively, keys in an API key file, reloaded on change
+ * # access.apiKeys.file=/etc/json-rpc/api-keys.txt
+ * # access.apiKeys.watchFile=true
+ * # Optional binding of API keys to client certificates, by principal DNs
+ * # separated by '|' and / or by SHA-256 fingerprints
+ * # access.apiKeys.bindDN.f70defbe-b881-41f8-8138-bea52b6e1b9c=cn=SSO Gateway,o=Acme | cn=SSO Backup,o=Acme
+ * # access.apiKeys.bindCert.08d1e641-b1c1-4d88-8796-e47c06430efb=3b:1e:...:9a
+ * # Or a prebuilt memory-mapped index, for very large key sets
+ * # access.apiKeys.indexFile=/var/lib/json-rpc/api-keys.idx
+ * # Lookup cache, if the keys are in an APIKeyStore
+ * # access.apiKeys.storeCacheSize=65536
+ * # access.apiKeys.storeCacheTTL=60
+ * # access.apiKeys.storeNegativeCacheTTL=5
+ * # access.apiKeys.storeTimeout=5
+ * 
+ * access.rateLimit.enable=true
+ * access.rateLimit.rate=10
+ * access.rateLimit.burst=20
+ * access.rateLimit.maxKeys=100000
+ * access.rateLimit.key.f70defbe-b881-41f8-8138-bea52b6e1b9c=100 200
+ * 
+ * access.ipRateLimit.enable=true
+ * access.ipRateLimit.limit=600
+ * access.ipRateLimit.window=60
+ * access.ipRateLimit.maxAddresses=65536
+ * access.ipRateLimit.ipv6PrefixLength=64
+ * 
+ * access.quota.enable=true
+ * access.quota.file=/var/lib/json-rpc/quota.dat
+ * access.quota.daily=10000
+ * access.quota.monthly=200000
+ * access.quota.maxKeys=100000
+ * access.quota.key.f70defbe-b881-41f8-8138-bea52b6e1b9c=50000 1000000
  * </pre>
  *
  * @author Vladimir Dzhuvinov
@@ -106,6 +166,157 @@ public class CompositeFilterConfiguration {
 		public final DN clientCertPrincipal;
 		
 		
+		/**
+		 * The capacity of the cache of parsed client certificate 
+		 * principal DNs, zero disables caching.
+		 *
+		 * <p>Property key: access.https.clientCertDNCacheSize
+		 */
+		public final int clientCertDNCacheSize;
+		
+		
+		/**
+		 * If not {@code null} requires the X.509 client certificate 
+		 * subject to be allowed the requested method by the specified
+		 * map. Each named map entry has a "dn" or a "dnSuffix" property
+		 * and a "methods" property with the allowed method names or 
+		 * glob patterns, separated by spaces.
+		 *
+		 * <p>Property keys: access.https.principalMap.*.dn, 
+		 * access.https.principalMap.*.dnSuffix, 
+		 * access.https.principalMap.*.methods
+		 */
+		public final PrincipalMethodMap principalMap;
+		
+		
+		/**
+		 * The pinned X.509 client certificates, as lower case 
+		 * hexadecimal SHA-256 fingerprints, empty set if none. If set
+		 * clients must present one of the pinned certificates. Applies
+		 * if {@link #require require HTTPS} is set.
+		 *
+		 * <p>Property key: access.https.pinnedCerts
+		 */
+		public final Set<String> pinnedCerts;
+		
+		
+		/**
+		 * The certificate revocation list (CRL) files, empty list if 
+		 * none. If set clients presenting a certificate revoked by one
+		 * of the CRLs are denied. Applies if {@link #require require 
+		 * HTTPS} is set.
+		 *
+		 * <p>Property key: access.https.crlFiles
+		 */
+		public final List<File> crlFiles;
+		
+		
+		/**
+		 * The interval in seconds for checking the CRL files for 
+		 * changes and reloading them in the background. Zero disables
+		 * the background reload.
+		 *
+		 * <p>Property key: access.https.crlReloadInterval
+		 */
+		public final int crlReloadInterval;
+		
+		
+		/**
+		 * The default CRL reload interval, in seconds.
+		 */
+		public static final int DEFAULT_CRL_RELOAD_INTERVAL = 60;
+		
+		
+		/**
+		 * Parses the principal method map.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 *
+		 * @return The principal method map, {@code null} if none.
+		 *
+		 * @throws PropertyParseException On a missing or invalid 
+		 *                                property.
+		 */
+		private static PrincipalMethodMap parsePrincipalMap(final String prefix, 
+		                                                    final Properties props)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			final String mapPrefix = prefix + "https.principalMap.";
+			
+			// Collect the entry names
+			Set<String> names = new HashSet<String>();
+			
+			for (String propKey: props.stringPropertyNames()) {
+				
+				if (! propKey.startsWith(mapPrefix))
+					continue;
+				
+				final int dot = propKey.lastIndexOf('.');
+				
+				if (dot > mapPrefix.length())
+					names.add(propKey.substring(mapPrefix.length(), dot));
+			}
+			
+			if (names.isEmpty())
+				return null;
+			
+			Map<DN,Set<String>> principals = new HashMap<DN,Set<String>>();
+			Map<DN,Set<String>> suffixes = new HashMap<DN,Set<String>>();
+			
+			for (String name: names) {
+				
+				String dnKey = mapPrefix + name + ".dn";
+				String suffixKey = mapPrefix + name + ".dnSuffix";
+				String methodsKey = mapPrefix + name + ".methods";
+				
+				String dnString = pr.getOptString(dnKey, null);
+				String suffixString = pr.getOptString(suffixKey, null);
+				
+				if ((dnString == null) == (suffixString == null))
+					throw new PropertyParseException("The principal map entry must have either a DN or a DN suffix", 
+					                                 suffixKey, 
+					                                 suffixString);
+				
+				final String key = dnString != null ? dnKey : suffixKey;
+				final String value = dnString != null ? dnString : suffixString;
+				
+				DN dn;
+				
+				try {
+					dn = new DN(value);
+				
+				} catch (LDAPException e) {
+					
+					throw new PropertyParseException("Invalid DN", key, value);
+				}
+				
+				Set<String> methods = new HashSet<String>(Arrays.asList(pr.getString(methodsKey).trim().split("\\s+")));
+				
+				// Check the patterns compile
+				try {
+					MethodPermissions.compile(methods, new MethodSymbolTable(methods.size()), true);
+				
+				} catch (IllegalArgumentException e) {
+					
+					throw new PropertyParseException("Invalid principal map method patterns: " + e.getMessage(), 
+					                                 methodsKey, 
+					                                 pr.getString(methodsKey));
+				}
+				
+				Map<DN,Set<String>> target = dnString != null ? principals : suffixes;
+				
+				if (target.put(dn, Collections.unmodifiableSet(methods)) != null)
+					throw new PropertyParseException("Duplicate principal map DN", key, value);
+			}
+			
+			return new PrincipalMethodMap(principals, suffixes);
+		}
+		
+		
 		/**
 		 * Creates a new HTTPS access configuration from the specified
 		 * properties.
@@ -146,6 +357,55 @@ public class CompositeFilterConfiguration {
 									 dnString);
 				}
 			}
+			
+			clientCertDNCacheSize = pr.getOptInt(prefix + "https.clientCertDNCacheSize", 
+			                                     X509ClientCertFilter.DEFAULT_DN_CACHE_SIZE);
+			
+			if (clientCertDNCacheSize < 0)
+				throw new PropertyParseException("The client certificate DN cache size must not be negative", 
+				                                 prefix + "https.clientCertDNCacheSize", 
+				                                 Integer.toString(clientCertDNCacheSize));
+			
+			principalMap = parsePrincipalMap(prefix, props);
+			
+			Set<String> fingerprints = new HashSet<String>();
+			
+			String pinned = pr.getOptString(prefix + "https.pinnedCerts", "");
+			
+			for (String fingerprint: pinned.trim().split("\\s+")) {
+				
+				if (fingerprint.isEmpty())
+					continue;
+				
+				String hex = X509CertPinningFilter.parseFingerprint(fingerprint);
+				
+				if (hex == null)
+					throw new PropertyParseException("Invalid SHA-256 certificate fingerprint: " + fingerprint, 
+					                                 prefix + "https.pinnedCerts", 
+					                                 pinned);
+				
+				fingerprints.add(hex);
+			}
+			
+			pinnedCerts = Collections.unmodifiableSet(fingerprints);
+			
+			List<File> files = new ArrayList<File>();
+			
+			for (String name: pr.getOptString(prefix + "https.crlFiles", "").trim().split("\\s+")) {
+				
+				if (! name.isEmpty())
+					files.add(new File(name));
+			}
+			
+			crlFiles = Collections.unmodifiableList(files);
+			
+			crlReloadInterval = pr.getOptInt(prefix + "https.crlReloadInterval", 
+			                                 DEFAULT_CRL_RELOAD_INTERVAL);
+			
+			if (crlReloadInterval < 0)
+				throw new PropertyParseException("The CRL reload interval must not be negative", 
+				                                 prefix + "https.crlReloadInterval", 
+				                                 Integer.toString(crlReloadInterval));
 		}
 		
 		
@@ -164,6 +424,19 @@ public class CompositeFilterConfiguration {
 				log.info("Client X.509 certificate principal: " + clientCertPrincipal);
 			else
 				log.info("Client X.509 certificate principal: Any");
+			
+			log.info("Client X.509 certificate DN cache size: " + clientCertDNCacheSize);
+			
+			if (principalMap != null)
+				log.info("Client X.509 certificate principal map: " + principalMap.getPrincipals().size() + 
+				         " DNs, " + principalMap.getSuffixes().size() + " DN suffixes");
+			
+			log.info("Pinned client X.509 certificates: " + pinnedCerts.size());
+			
+			if (! crlFiles.isEmpty()) {
+				log.info("Client X.509 certificate CRL files: " + crlFiles);
+				log.info("Client X.509 certificate CRL reload interval: " + crlReloadInterval + " s");
+			}
 		}
 	}
 	
@@ -177,9 +450,10 @@ public class CompositeFilterConfiguration {
 	
 		
 		/**
-		 * String of space separated client IP addresses and / or 
-		 * hostnames that are allowed access. If set to "*" (asterisk) 
-		 * any IP address is allowed.
+		 * String of space separated client IP addresses, IP address
+		 * blocks in CIDR notation (e.g. 10.0.0.0/8, 2001:db8::/32) 
+		 * and / or hostnames that are allowed access. If set to "*" 
+		 * (asterisk) any IP address is allowed.
 		 *
 		 * <p>Property key: access.hosts.allow
 		 */
@@ -192,6 +466,56 @@ public class CompositeFilterConfiguration {
 		public static final String DEFAULT_ALLOW = "*";
 		
 		
+		/**
+		 * The interval in seconds for re-resolving the allowed host
+		 * names in the background. Zero disables the background
+		 * refresh.
+		 *
+		 * <p>Property key: access.hosts.refreshInterval
+		 */
+		public final int refreshInterval;
+		
+		
+		/**
+		 * The default host name refresh interval (disabled).
+		 */
+		public static final int DEFAULT_REFRESH_INTERVAL = 0;
+		
+		
+		/**
+		 * The maximum number of threads for resolving the allowed host
+		 * names concurrently.
+		 *
+		 * <p>Property key: access.hosts.resolveThreads
+		 */
+		public final int resolveThreads;
+		
+		
+		/**
+		 * The global timeout in milliseconds for resolving all allowed
+		 * host names.
+		 *
+		 * <p>Property key: access.hosts.resolveTimeout
+		 */
+		public final long resolveTimeout;
+		
+		
+		/**
+		 * If {@code true} allowed host names which fail to resolve on 
+		 * initialisation are logged and skipped, else they cause the
+		 * initialisation to fail.
+		 *
+		 * <p>Property key: access.hosts.ignoreUnresolved
+		 */
+		public final boolean ignoreUnresolved;
+		
+		
+		/**
+		 * The default unresolved host names policy.
+		 */
+		public static final boolean DEFAULT_IGNORE_UNRESOLVED = false;
+		
+		
 		/**
 		 * Creates a new client hosts access configuration from the 
 		 * specified properties.
@@ -209,6 +533,40 @@ public class CompositeFilterConfiguration {
 			PropertyRetriever pr = new PropertyRetriever(props);
 			
 			allow = pr.getOptString(prefix + "hosts.allow", DEFAULT_ALLOW);
+			
+			refreshInterval = pr.getOptInt(prefix + "hosts.refreshInterval", DEFAULT_REFRESH_INTERVAL);
+			
+			if (refreshInterval < 0)
+				throw new PropertyParseException("The host refresh interval must not be negative", 
+				                                 prefix + "hosts.refreshInterval", 
+								 Integer.toString(refreshInterval));
+			
+			resolveThreads = pr.getOptInt(prefix + "hosts.resolveThreads", HostResolution.DEFAULT_MAX_THREADS);
+			
+			if (resolveThreads <= 0)
+				throw new PropertyParseException("The number of host resolve threads must be positive", 
+				                                 prefix + "hosts.resolveThreads", 
+								 Integer.toString(resolveThreads));
+			
+			resolveTimeout = pr.getOptLong(prefix + "hosts.resolveTimeout", HostResolution.DEFAULT_TIMEOUT);
+			
+			if (resolveTimeout <= 0)
+				throw new PropertyParseException("The host resolve timeout must be positive", 
+				                                 prefix + "hosts.resolveTimeout", 
+								 Long.toString(resolveTimeout));
+			
+			ignoreUnresolved = pr.getOptBoolean(prefix + "hosts.ignoreUnresolved", DEFAULT_IGNORE_UNRESOLVED);
+			
+			// Check the CIDR address blocks, if any
+			long[] buf = new long[3];
+			
+			for (String t: allow.trim().split("\\s+")) {
+				
+				if (t.indexOf('/') >= 0 && IPAddressParser.parseCIDR(t, buf) == IPAddressParser.INVALID)
+					throw new PropertyParseException("Invalid CIDR address block", 
+					                                 prefix + "hosts.allow", 
+									 allow);
+			}
 		}
 		
 		
@@ -218,6 +576,15 @@ public class CompositeFilterConfiguration {
 		private void log() {
 			
 			log.info("Allowed hosts: " + allow);
+			
+			if (refreshInterval > 0)
+				log.info("Allowed host names refresh interval: " + refreshInterval + " s");
+			else
+				log.info("Allowed host names refresh interval: None");
+			
+			log.info("Allowed host names resolve threads: " + resolveThreads);
+			log.info("Allowed host names resolve timeout: " + resolveTimeout + " ms");
+			log.info("Ignore unresolved allowed host names: " + ignoreUnresolved);
 		}
 	}
 
@@ -245,15 +612,91 @@ public class CompositeFilterConfiguration {
 		public static final boolean DEFAULT_REQUIRE = true;
 		
 		
+		/**
+		 * The API key sources.
+		 */
+		public static enum Source {
+			
+			
+			/**
+			 * Named JSON-RPC 2.0 parameter, see 
+			 * {@link NamedParamAPIKeyExtractor}.
+			 */
+			PARAM,
+			
+			
+			/**
+			 * Positional JSON-RPC 2.0 parameter, see
+			 * {@link PositionalParamAPIKeyExtractor}.
+			 */
+			POSITION,
+			
+			
+			/**
+			 * HTTP request header, see 
+			 * {@link HeaderAPIKeyExtractor}.
+			 */
+			HEADER
+		}
+		
+		
+		/**
+		 * The source of the API key, "param", "position" or "header".
+		 *
+		 * <p>Property key: access.apiKeys.source
+		 */
+		public final Source source;
+		
+		
+		/**
+		 * The default API key source.
+		 */
+		public static final Source DEFAULT_SOURCE = Source.PARAM;
+		
+		
 		/**
 		 * The name of the JSON-RPC 2.0 parameter used to pass the API
-		 * key.
+		 * key, if the source is "param".
 		 *
 		 * <p>Property key: access.apiKeys.parameterName
 		 */
 		public final String parameterName;
 		
 		
+		/**
+		 * The zero-based position of the JSON-RPC 2.0 parameter used to
+		 * pass the API key, if the source is "position".
+		 *
+		 * <p>Property key: access.apiKeys.position
+		 */
+		public final int position;
+		
+		
+		/**
+		 * The default API key parameter position.
+		 */
+		public static final int DEFAULT_POSITION = 0;
+		
+		
+		/**
+		 * The name of the HTTP header used to pass the API key, if the
+		 * source is "header".
+		 *
+		 * <p>Property key: access.apiKeys.headerName
+		 */
+		public final String headerName;
+		
+		
+		/**
+		 * The authentication scheme preceding the API key in the HTTP
+		 * header, for example "Bearer" for the Authorization header,
+		 * {@code null} if none.
+		 *
+		 * <p>Property key: access.apiKeys.headerScheme
+		 */
+		public final String headerScheme;
+		
+		
 		/**
 		 * Exempted JSON-RPC 2.0 methods for which an API key is not
 		 * required.
@@ -263,13 +706,131 @@ public class CompositeFilterConfiguration {
 		public final Set<String> exemptedMethods;
 
 
+		/**
+		 * If {@code true} the API key map is keyed by the hexadecimal
+		 * SHA-256 digests of the API keys instead of the keys 
+		 * themselves, see {@link APIKey#getSHA256Digest}.
+		 *
+		 * <p>Property key: access.apiKeys.hashed
+		 */
+		public final boolean hashed;
+		
+		
+		/**
+		 * The default hashed API keys setting.
+		 */
+		public static final boolean DEFAULT_HASHED = false;
+		
+		
+		/**
+		 * The capacity of the cache of recently verified API keys when
+		 * the keys are hashed, zero disables caching.
+		 *
+		 * <p>Property key: access.apiKeys.verifiedKeyCacheSize
+		 */
+		public final int verifiedKeyCacheSize;
+		
+		
 		/**
 		 * Map of API keys to the JSON-RPC 2.0 methods they are allowed
-		 * access to.
+		 * access to. A method name may also be a glob pattern, such as
+		 * "billing.*" or "*.get", see {@link APIKeyFilter}. API keys 
+		 * with identical methods share the same unmodifiable set 
+		 * instance.
+		 *
+		 * <p>Property keys: access.apiKeys.map.*
 		 */
 		public final Map<APIKey,Set<String>> map;
 		
 		
+		/**
+		 * Map of API keys to the client X.509 certificates they are 
+		 * bound to, empty if none. A bound key is accepted only from a
+		 * client presenting a certificate with one of the bound 
+		 * principal DNs, separated by '|', or SHA-256 fingerprints, 
+		 * separated by spaces. Applies to the keys of the {@link #map} 
+		 * and the {@link #file}, keyed the same way; every bound key 
+		 * must be in them. Not supported with an index file or an 
+		 * {@link APIKeyStore}.
+		 *
+		 * <p>Property keys: access.apiKeys.bindDN.*, 
+		 * access.apiKeys.bindCert.*
+		 */
+		public final Map<APIKey,APIKeyBinding> bindings;
+		
+		
+		/**
+		 * The API key file, {@code null} if the API keys are specified
+		 * by the {@link #map} properties. The file format is described
+		 * in {@link APIKeyFile}; if set the {@link #map} properties 
+		 * must not be.
+		 *
+		 * <p>Property key: access.apiKeys.file
+		 */
+		public final File file;
+		
+		
+		/**
+		 * If {@code true} the {@link #file API key file} is watched and
+		 * its changes applied while the filter is in use.
+		 *
+		 * <p>Property key: access.apiKeys.watchFile
+		 */
+		public final boolean watchFile;
+		
+		
+		/**
+		 * The default API key file watching setting.
+		 */
+		public static final boolean DEFAULT_WATCH_FILE = true;
+		
+		
+		/**
+		 * The prebuilt {@link MappedKeyIndex API key index file}, 
+		 * {@code null} if none. If set the {@link #map} and 
+		 * {@link #file} properties must not be.
+		 *
+		 * <p>Property key: access.apiKeys.indexFile
+		 */
+		public final File indexFile;
+		
+		
+		/**
+		 * The capacity of the lookup cache if the API keys are looked 
+		 * up in an {@link APIKeyStore}, zero disables caching.
+		 *
+		 * <p>Property key: access.apiKeys.storeCacheSize
+		 */
+		public final int storeCacheSize;
+		
+		
+		/**
+		 * The time to live of known API keys in the store lookup cache,
+		 * in seconds.
+		 *
+		 * <p>Property key: access.apiKeys.storeCacheTTL
+		 */
+		public final long storeCacheTTL;
+		
+		
+		/**
+		 * The time to live of unknown API keys in the store lookup 
+		 * cache, in seconds, zero disables negative caching.
+		 *
+		 * <p>Property key: access.apiKeys.storeNegativeCacheTTL
+		 */
+		public final long storeNegativeCacheTTL;
+		
+		
+		/**
+		 * The maximum time to wait for a concurrent store lookup of the
+		 * same API key, in seconds.
+		 *
+		 * <p>Property key: access.apiKeys.storeTimeout
+		 */
+		public final long storeTimeout;
+		
+		
 		/**
 		 * Parses the exempted methods.
 		 *
@@ -296,26 +857,67 @@ public class CompositeFilterConfiguration {
 		
 		
 		/**
-		 * Parses the API key map.
+		 * Parses the API key source.
 		 *
 		 * @param prefix The properties prefix. Must not be 
 		 *               {@code null}.
 		 * @param props  The properties. Must not be {@code null}.
 		 *
-		 * @return The API keys map, empty if no keys are specified.
+		 * @return The API key source.
 		 *
 		 * @throws PropertyParseException If parsing failed.
 		 */
-		private static Map<APIKey,Set<String>> parseAPIKeysMap(final String prefix, final Properties props)
+		private static Source parseSource(final String prefix, final Properties props)
 			throws PropertyParseException {
-		
-			PropertyRetriever pr = new PropertyRetriever(props);
 			
-			Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+			PropertyRetriever pr = new PropertyRetriever(props);
 			
-			Iterator<String> it = props.stringPropertyNames().iterator();
+			String s = pr.getOptString(prefix + "apiKeys.source", null);
 			
-			while(it.hasNext()) {
+			if (s == null || s.trim().isEmpty())
+				return DEFAULT_SOURCE;
+			
+			for (Source source: Source.values()) {
+				
+				if (source.name().equalsIgnoreCase(s.trim()))
+					return source;
+			}
+			
+			throw new PropertyParseException("Invalid API key source, must be param, position or header", 
+			                                 prefix + "apiKeys.source", 
+			                                 s);
+		}
+		
+		
+		/**
+		 * Parses the API key map.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 * @param hashed If {@code true} the API keys must be 
+		 *               hexadecimal SHA-256 digests.
+		 *
+		 * @return The API keys map, empty if no keys are specified.
+		 *
+		 * @throws PropertyParseException If parsing failed.
+		 */
+		private static Map<APIKey,Set<String>> parseAPIKeysMap(final String prefix, 
+		                                                       final Properties props,
+		                                                       final boolean hashed)
+			throws PropertyParseException {
+		
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+			
+			// Shared method sets, typically there are far fewer
+			// distinct method sets than API keys
+			Map<Set<String>,Set<String>> sharedSets = new HashMap<Set<String>,Set<String>>();
+			
+			Iterator<String> it = props.stringPropertyNames().iterator();
+			
+			while(it.hasNext()) {
 			
 				String propKey = it.next();
 				
@@ -329,6 +931,11 @@ public class CompositeFilterConfiguration {
 				if (keyString.isEmpty())
 					continue;
 				
+				if (hashed && APIKeyDigest.parseHex(keyString) == null)
+					throw new PropertyParseException("Invalid SHA-256 API key digest", 
+					                                 propKey, 
+					                                 pr.getString(propKey));
+				
 				APIKey apiKey = new APIKey(keyString);
 				
 				// Get the allowed methods for this API key
@@ -338,13 +945,142 @@ public class CompositeFilterConfiguration {
 				for (String method: pr.getString(propKey).split("\\s+"))
 					methods.add(method);
 				
-				map.put(apiKey, methods);
+				Set<String> shared = sharedSets.get(methods);
+				
+				if (shared == null) {
+					
+					// Check the patterns compile
+					try {
+						MethodPermissions.compile(methods, new MethodSymbolTable(methods.size()), true);
+					
+					} catch (IllegalArgumentException e) {
+						
+						throw new PropertyParseException("Invalid API key method patterns: " + e.getMessage(), 
+						                                 propKey, 
+						                                 pr.getString(propKey));
+					}
+					
+					shared = Collections.unmodifiableSet(methods);
+					sharedSets.put(methods, shared);
+				}
+				
+				map.put(apiKey, shared);
 			}
 			
 			return map;
 		}
 		
 		
+		/**
+		 * Parses the API key client certificate bindings.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 * @param hashed If {@code true} the API keys must be 
+		 *               hexadecimal SHA-256 digests.
+		 *
+		 * @return The API key bindings, empty if none.
+		 *
+		 * @throws PropertyParseException If parsing failed.
+		 */
+		private static Map<APIKey,APIKeyBinding> parseBindings(final String prefix, 
+		                                                       final Properties props,
+		                                                       final boolean hashed)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			final String dnPrefix = prefix + "apiKeys.bindDN.";
+			final String certPrefix = prefix + "apiKeys.bindCert.";
+			
+			Map<APIKey,Set<DN>> principals = new HashMap<APIKey,Set<DN>>();
+			Map<APIKey,Set<String>> fingerprints = new HashMap<APIKey,Set<String>>();
+			
+			for (String propKey: props.stringPropertyNames()) {
+				
+				final boolean isDN = propKey.startsWith(dnPrefix);
+				
+				if (! isDN && ! propKey.startsWith(certPrefix))
+					continue;
+				
+				String keyString = propKey.substring(isDN ? dnPrefix.length() : certPrefix.length());
+				
+				if (keyString.isEmpty())
+					continue;
+				
+				final String value = pr.getString(propKey);
+				
+				if (hashed && APIKeyDigest.parseHex(keyString) == null)
+					throw new PropertyParseException("Invalid SHA-256 API key digest", propKey, value);
+				
+				APIKey apiKey = new APIKey(keyString);
+				
+				if (isDN) {
+					
+					Set<DN> dns = new HashSet<DN>();
+					
+					for (String dnString: value.split("\\|")) {
+						
+						if (dnString.trim().isEmpty())
+							continue;
+						
+						try {
+							dns.add(new DN(dnString.trim()));
+						
+						} catch (LDAPException e) {
+							
+							throw new PropertyParseException("Invalid DN", propKey, value);
+						}
+					}
+					
+					principals.put(apiKey, dns);
+					continue;
+				}
+				
+				Set<String> hexes = new HashSet<String>();
+				
+				for (String fingerprint: value.trim().split("\\s+")) {
+					
+					if (fingerprint.isEmpty())
+						continue;
+					
+					String hex = X509CertPinningFilter.parseFingerprint(fingerprint);
+					
+					if (hex == null)
+						throw new PropertyParseException("Invalid SHA-256 certificate fingerprint: " + fingerprint, 
+						                                 propKey, 
+						                                 value);
+					
+					hexes.add(hex);
+				}
+				
+				fingerprints.put(apiKey, hexes);
+			}
+			
+			Set<APIKey> keys = new HashSet<APIKey>(principals.keySet());
+			keys.addAll(fingerprints.keySet());
+			
+			Map<APIKey,APIKeyBinding> bindings = new HashMap<APIKey,APIKeyBinding>();
+			
+			for (APIKey apiKey: keys) {
+				
+				Set<DN> dns = principals.get(apiKey);
+				Set<String> hexes = fingerprints.get(apiKey);
+				
+				if ((dns == null || dns.isEmpty()) && (hexes == null || hexes.isEmpty()))
+					throw new PropertyParseException("The API key binding must have a DN or a fingerprint", 
+					                                 (dns != null ? dnPrefix : certPrefix) + apiKey, 
+					                                 "");
+				
+				bindings.put(apiKey, new APIKeyBinding(dns != null ? dns : Collections.<DN>emptySet(), 
+				                                       hexes != null ? hexes : Collections.<String>emptySet()));
+			}
+			
+			return Collections.unmodifiableMap(bindings);
+		}
+		
+		
 		/**
 		 * Creates a new client hosts access configuration from the 
 		 * specified properties.
@@ -363,17 +1099,132 @@ public class CompositeFilterConfiguration {
 			
 			require = pr.getOptBoolean(prefix + "apiKeys.require", DEFAULT_REQUIRE);
 			
+			source = parseSource(prefix, props);
+			
 			parameterName = pr.getOptString(prefix + "apiKeys.parameterName", 
 			                                APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME);
 			
+			position = pr.getOptInt(prefix + "apiKeys.position", DEFAULT_POSITION);
+			
+			if (position < 0)
+				throw new PropertyParseException("The API key parameter position must not be negative", 
+				                                 prefix + "apiKeys.position", 
+				                                 Integer.toString(position));
+			
+			headerName = pr.getOptString(prefix + "apiKeys.headerName", 
+			                             HeaderAPIKeyExtractor.DEFAULT_HEADER_NAME);
+			
+			String scheme = pr.getOptString(prefix + "apiKeys.headerScheme", null);
+			
+			headerScheme = scheme == null || scheme.trim().isEmpty() ? null : scheme.trim();
+			
 			if (require) {
 			
 				exemptedMethods = parseExemptedMethods(prefix, props);
-				map = parseAPIKeysMap(prefix, props);
+				hashed = pr.getOptBoolean(prefix + "apiKeys.hashed", DEFAULT_HASHED);
+				verifiedKeyCacheSize = pr.getOptInt(prefix + "apiKeys.verifiedKeyCacheSize", 
+				                                    APIKeyFilter.DEFAULT_VERIFIED_KEY_CACHE_SIZE);
+				
+				if (verifiedKeyCacheSize < 0)
+					throw new PropertyParseException("The verified API key cache size must not be negative", 
+					                                 prefix + "apiKeys.verifiedKeyCacheSize", 
+					                                 Integer.toString(verifiedKeyCacheSize));
+				
+				map = parseAPIKeysMap(prefix, props, hashed);
+				
+				String f = pr.getOptString(prefix + "apiKeys.file", null);
+				
+				file = f == null || f.trim().isEmpty() ? null : new File(f.trim());
+				
+				if (file != null && ! map.isEmpty())
+					throw new PropertyParseException("The API keys must be specified either by file or by map properties", 
+					                                 prefix + "apiKeys.file", 
+					                                 f);
+				
+				watchFile = pr.getOptBoolean(prefix + "apiKeys.watchFile", DEFAULT_WATCH_FILE);
+				
+				String idx = pr.getOptString(prefix + "apiKeys.indexFile", null);
+				
+				indexFile = idx == null || idx.trim().isEmpty() ? null : new File(idx.trim());
+				
+				if (indexFile != null && (file != null || ! map.isEmpty()))
+					throw new PropertyParseException("The API keys must be specified either by index file, file or map properties", 
+					                                 prefix + "apiKeys.indexFile", 
+					                                 idx);
+				
+				bindings = parseBindings(prefix, props, hashed);
+				
+				if (indexFile != null && ! bindings.isEmpty())
+					throw new PropertyParseException("API keys in an index file can't be bound to client certificates", 
+					                                 prefix + "apiKeys.indexFile", 
+					                                 idx);
+				
+				storeCacheSize = pr.getOptInt(prefix + "apiKeys.storeCacheSize", 
+				                              APIKeyFilter.DEFAULT_STORE_CACHE_SIZE);
+				
+				if (storeCacheSize < 0)
+					throw new PropertyParseException("The API key store cache size must not be negative", 
+					                                 prefix + "apiKeys.storeCacheSize", 
+					                                 Integer.toString(storeCacheSize));
+				
+				storeCacheTTL = pr.getOptLong(prefix + "apiKeys.storeCacheTTL", 
+				                              APIKeyFilter.DEFAULT_STORE_CACHE_TTL / 1000L);
+				
+				if (storeCacheTTL < 0L)
+					throw new PropertyParseException("The API key store cache time to live must not be negative", 
+					                                 prefix + "apiKeys.storeCacheTTL", 
+					                                 Long.toString(storeCacheTTL));
+				
+				storeNegativeCacheTTL = pr.getOptLong(prefix + "apiKeys.storeNegativeCacheTTL", 
+				                                      APIKeyFilter.DEFAULT_STORE_NEGATIVE_CACHE_TTL / 1000L);
+				
+				if (storeNegativeCacheTTL < 0L)
+					throw new PropertyParseException("The API key store negative cache time to live must not be negative", 
+					                                 prefix + "apiKeys.storeNegativeCacheTTL", 
+					                                 Long.toString(storeNegativeCacheTTL));
+				
+				storeTimeout = pr.getOptLong(prefix + "apiKeys.storeTimeout", 
+				                             APIKeyFilter.DEFAULT_STORE_TIMEOUT / 1000L);
+				
+				if (storeTimeout < 0L)
+					throw new PropertyParseException("The API key store timeout must not be negative", 
+					                                 prefix + "apiKeys.storeTimeout", 
+					                                 Long.toString(storeTimeout));
 			}
 			else {
 				exemptedMethods = null;
+				hashed = DEFAULT_HASHED;
+				verifiedKeyCacheSize = APIKeyFilter.DEFAULT_VERIFIED_KEY_CACHE_SIZE;
 				map = null;
+				bindings = null;
+				file = null;
+				watchFile = DEFAULT_WATCH_FILE;
+				indexFile = null;
+				storeCacheSize = APIKeyFilter.DEFAULT_STORE_CACHE_SIZE;
+				storeCacheTTL = APIKeyFilter.DEFAULT_STORE_CACHE_TTL / 1000L;
+				storeNegativeCacheTTL = APIKeyFilter.DEFAULT_STORE_NEGATIVE_CACHE_TTL / 1000L;
+				storeTimeout = APIKeyFilter.DEFAULT_STORE_TIMEOUT / 1000L;
+			}
+		}
+		
+		
+		/**
+		 * Creates an extractor for the configured API key source.
+		 *
+		 * @return The API key extractor.
+		 */
+		public APIKeyExtractor createAPIKeyExtractor() {
+			
+			switch (source) {
+				
+				case POSITION:
+					return new PositionalParamAPIKeyExtractor(position);
+				
+				case HEADER:
+					return new HeaderAPIKeyExtractor(headerName, headerScheme);
+				
+				default:
+					return new NamedParamAPIKeyExtractor(parameterName);
 			}
 		}
 		
@@ -388,7 +1239,28 @@ public class CompositeFilterConfiguration {
 			if (! require)
 				return;
 			
-			log.info("API key parameter name: " + parameterName);
+			log.info("API key source: " + source.name().toLowerCase());
+			
+			if (source == Source.PARAM)
+				log.info("API key parameter name: " + parameterName);
+			else if (source == Source.POSITION)
+				log.info("API key parameter position: " + position);
+			else
+				log.info("API key header: " + headerName + (headerScheme != null ? " " + headerScheme : ""));
+			
+			log.info("API keys hashed: " + hashed);
+			
+			if (hashed)
+				log.info("Verified API key cache size: " + verifiedKeyCacheSize);
+			
+			if (file != null)
+				log.info("API key file: " + file + (watchFile ? ", watched" : ""));
+			
+			if (indexFile != null)
+				log.info("API key index file: " + indexFile);
+			
+			if (! bindings.isEmpty())
+				log.info("API keys bound to client X.509 certificates: " + bindings.size());
 			
 			StringBuilder sb = new StringBuilder();
 			sb.append("API key exempted JSON-RPC 2.0 methods: ");
@@ -403,6 +1275,553 @@ public class CompositeFilterConfiguration {
 	}
 	
 	
+	/**
+	 * API key rate limit configuration.
+	 *
+	 * <p>Property keys: access.rateLimit.*
+	 */
+	public static class RateLimits {
+		
+		
+		/**
+		 * If {@code true} the request rate of each API key is limited.
+		 * Requires {@link APIKeys#require API keys}, so that only 
+		 * valid keys are limited.
+		 *
+		 * <p>Property key: access.rateLimit.enable
+		 */
+		public final boolean enable;
+		
+		
+		/**
+		 * The default rate limit enablement.
+		 */
+		public static final boolean DEFAULT_ENABLE = false;
+		
+		
+		/**
+		 * The default rate limit of each API key.
+		 *
+		 * <p>Property keys: access.rateLimit.rate, 
+		 * access.rateLimit.burst
+		 */
+		public final RateLimit defaultLimit;
+		
+		
+		/**
+		 * The default rate, in requests per second.
+		 */
+		public static final double DEFAULT_RATE = 10.0;
+		
+		
+		/**
+		 * The default burst size, in requests.
+		 */
+		public static final int DEFAULT_BURST = 20;
+		
+		
+		/**
+		 * The maximum number of API keys with their own rate limit 
+		 * bucket, further keys share one bucket.
+		 *
+		 * <p>Property key: access.rateLimit.maxKeys
+		 */
+		public final int maxKeys;
+		
+		
+		/**
+		 * The rate limit overrides for selected API keys, specified 
+		 * as a rate and an optional burst size. If the API keys are
+		 * hashed the overrides are keyed by SHA-256 digest as well.
+		 *
+		 * <p>Property keys: access.rateLimit.key.*
+		 */
+		public final Map<APIKey,RateLimit> overrides;
+		
+		
+		/**
+		 * Creates a rate limit.
+		 *
+		 * @param propKey The property key, for error reporting. Must
+		 *                not be {@code null}.
+		 * @param rate    The rate.
+		 * @param burst   The burst size.
+		 * @param value   The property value, for error reporting.
+		 *
+		 * @return The rate limit.
+		 *
+		 * @throws PropertyParseException If the rate or burst is 
+		 *                                invalid.
+		 */
+		private static RateLimit toRateLimit(final String propKey,
+		                                     final double rate,
+		                                     final int burst,
+		                                     final String value)
+			throws PropertyParseException {
+			
+			try {
+				return new RateLimit(rate, burst);
+			
+			} catch (IllegalArgumentException e) {
+				
+				throw new PropertyParseException("Invalid rate limit: " + e.getMessage(), 
+				                                 propKey, 
+				                                 value);
+			}
+		}
+		
+		
+		/**
+		 * Parses the rate limit overrides.
+		 *
+		 * @param prefix       The properties prefix. Must not be 
+		 *                     {@code null}.
+		 * @param props        The properties. Must not be 
+		 *                     {@code null}.
+		 * @param defaultBurst The default burst size.
+		 *
+		 * @return The rate limit overrides, empty if none.
+		 *
+		 * @throws PropertyParseException If parsing failed.
+		 */
+		private static Map<APIKey,RateLimit> parseOverrides(final String prefix, 
+		                                                    final Properties props,
+		                                                    final int defaultBurst)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			Map<APIKey,RateLimit> map = new HashMap<APIKey,RateLimit>();
+			
+			for (String propKey: props.stringPropertyNames()) {
+				
+				if (! propKey.startsWith(prefix + "rateLimit.key."))
+					continue;
+				
+				String keyString = propKey.substring((prefix + "rateLimit.key.").length());
+				
+				if (keyString.isEmpty())
+					continue;
+				
+				String value = pr.getString(propKey);
+				
+				String[] tokens = value.trim().split("\\s+");
+				
+				if (tokens.length > 2)
+					throw new PropertyParseException("Invalid rate limit, expected rate and optional burst", 
+					                                 propKey, 
+					                                 value);
+				
+				double rate;
+				int burst = defaultBurst;
+				
+				try {
+					rate = Double.parseDouble(tokens[0]);
+					
+					if (tokens.length == 2)
+						burst = Integer.parseInt(tokens[1]);
+				
+				} catch (NumberFormatException e) {
+					
+					throw new PropertyParseException("Invalid rate limit number", 
+					                                 propKey, 
+					                                 value);
+				}
+				
+				map.put(new APIKey(keyString), toRateLimit(propKey, rate, burst, value));
+			}
+			
+			return Collections.unmodifiableMap(map);
+		}
+		
+		
+		/**
+		 * Creates a new API key rate limit configuration from the 
+		 * specified properties.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 *
+		 * @throws PropertyParseException On a missing or invalid 
+		 *                                property.
+		 */
+		public RateLimits(final String prefix, final Properties props)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			enable = pr.getOptBoolean(prefix + "rateLimit.enable", DEFAULT_ENABLE);
+			
+			if (! enable) {
+				defaultLimit = null;
+				maxKeys = RateLimitFilter.DEFAULT_MAX_KEYS;
+				overrides = null;
+				return;
+			}
+			
+			double rate = pr.getOptDouble(prefix + "rateLimit.rate", DEFAULT_RATE);
+			int burst = pr.getOptInt(prefix + "rateLimit.burst", DEFAULT_BURST);
+			
+			if (burst < 1 || burst > RateLimit.MAX_BURST)
+				throw new PropertyParseException("The rate limit burst must be positive and not exceed " + RateLimit.MAX_BURST, 
+				                                 prefix + "rateLimit.burst", 
+				                                 Integer.toString(burst));
+			
+			defaultLimit = toRateLimit(prefix + "rateLimit.rate", rate, burst, Double.toString(rate));
+			
+			maxKeys = pr.getOptInt(prefix + "rateLimit.maxKeys", RateLimitFilter.DEFAULT_MAX_KEYS);
+			
+			if (maxKeys < 1)
+				throw new PropertyParseException("The maximum number of rate limited API keys must be positive", 
+				                                 prefix + "rateLimit.maxKeys", 
+				                                 Integer.toString(maxKeys));
+			
+			overrides = parseOverrides(prefix, props, burst);
+		}
+		
+		
+		/**
+		 * Logs the configuration details at INFO level.
+		 */
+		private void log() {
+			
+			log.info("API key rate limit enabled: " + enable);
+			
+			if (! enable)
+				return;
+			
+			log.info("API key default rate limit: " + defaultLimit);
+			log.info("API key rate limit max keys: " + maxKeys);
+			log.info("API key rate limit overrides: " + overrides.size());
+		}
+	}
+	
+	
+	/**
+	 * Client IP address rate limit configuration.
+	 */
+	public static class IPRateLimits {
+		
+		
+		/**
+		 * If {@code true} the request rate of each client IP address
+		 * is limited.
+		 *
+		 * <p>Property key: access.ipRateLimit.enable
+		 */
+		public final boolean enable;
+		
+		
+		/**
+		 * The default IP rate limit enablement.
+		 */
+		public static final boolean DEFAULT_ENABLE = false;
+		
+		
+		/**
+		 * The maximum number of requests per sliding window from each
+		 * client IP address.
+		 *
+		 * <p>Property key: access.ipRateLimit.limit
+		 */
+		public final int limit;
+		
+		
+		/**
+		 * The default maximum number of requests per window.
+		 */
+		public static final int DEFAULT_LIMIT = 600;
+		
+		
+		/**
+		 * The sliding window length in seconds.
+		 *
+		 * <p>Property key: access.ipRateLimit.window
+		 */
+		public final int window;
+		
+		
+		/**
+		 * The default sliding window length in seconds.
+		 */
+		public static final int DEFAULT_WINDOW = 60;
+		
+		
+		/**
+		 * The maximum number of client IP addresses with a request 
+		 * counter, idle counters are evicted beyond it.
+		 *
+		 * <p>Property key: access.ipRateLimit.maxAddresses
+		 */
+		public final int maxAddresses;
+		
+		
+		/**
+		 * The length of the IPv6 prefix by which clients are counted, 
+		 * 128 to count each IPv6 address.
+		 *
+		 * <p>Property key: access.ipRateLimit.ipv6PrefixLength
+		 */
+		public final int ipv6PrefixLength;
+		
+		
+		/**
+		 * Creates a new client IP address rate limit configuration from
+		 * the specified properties.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 *
+		 * @throws PropertyParseException On a missing or invalid 
+		 *                                property.
+		 */
+		public IPRateLimits(final String prefix, final Properties props)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			enable = pr.getOptBoolean(prefix + "ipRateLimit.enable", DEFAULT_ENABLE);
+			
+			limit = pr.getOptInt(prefix + "ipRateLimit.limit", DEFAULT_LIMIT);
+			
+			if (limit < 1)
+				throw new PropertyParseException("The IP rate limit must be positive", 
+				                                 prefix + "ipRateLimit.limit", 
+				                                 Integer.toString(limit));
+			
+			window = pr.getOptInt(prefix + "ipRateLimit.window", DEFAULT_WINDOW);
+			
+			if (window < 1)
+				throw new PropertyParseException("The IP rate limit window must be positive", 
+				                                 prefix + "ipRateLimit.window", 
+				                                 Integer.toString(window));
+			
+			maxAddresses = pr.getOptInt(prefix + "ipRateLimit.maxAddresses", IPRateLimitFilter.DEFAULT_MAX_ADDRESSES);
+			
+			if (maxAddresses < 1)
+				throw new PropertyParseException("The maximum number of rate limited IP addresses must be positive", 
+				                                 prefix + "ipRateLimit.maxAddresses", 
+				                                 Integer.toString(maxAddresses));
+			
+			ipv6PrefixLength = pr.getOptInt(prefix + "ipRateLimit.ipv6PrefixLength", IPRateLimitFilter.DEFAULT_IPV6_PREFIX_LENGTH);
+			
+			if (ipv6PrefixLength < 1 || ipv6PrefixLength > 128)
+				throw new PropertyParseException("The IPv6 prefix length must be in the range 1 to 128", 
+				                                 prefix + "ipRateLimit.ipv6PrefixLength", 
+				                                 Integer.toString(ipv6PrefixLength));
+		}
+		
+		
+		/**
+		 * Logs the configuration details at INFO level.
+		 */
+		private void log() {
+			
+			log.info("IP rate limit enabled: " + enable);
+			
+			if (! enable)
+				return;
+			
+			log.info("IP rate limit: " + limit + " requests per " + window + " s");
+			log.info("IP rate limit max addresses: " + maxAddresses);
+			log.info("IP rate limit IPv6 prefix length: " + ipv6PrefixLength);
+		}
+	}
+	
+	
+	/**
+	 * API key call quota configuration.
+	 */
+	public static class Quotas {
+		
+		
+		/**
+		 * If {@code true} the daily and monthly calls of each API key 
+		 * are limited. Requires {@link APIKeys#require API keys}, so 
+		 * that only valid keys are counted.
+		 *
+		 * <p>Property key: access.quota.enable
+		 */
+		public final boolean enable;
+		
+		
+		/**
+		 * The default quota enablement.
+		 */
+		public static final boolean DEFAULT_ENABLE = false;
+		
+		
+		/**
+		 * The call counter file, created if it doesn't exist. Required
+		 * if quotas are enabled.
+		 *
+		 * <p>Property key: access.quota.file
+		 */
+		public final File file;
+		
+		
+		/**
+		 * The default quota of each API key, zero for an unlimited 
+		 * period.
+		 *
+		 * <p>Property keys: access.quota.daily, access.quota.monthly
+		 */
+		public final Quota defaultQuota;
+		
+		
+		/**
+		 * The maximum number of API keys with call counters.
+		 *
+		 * <p>Property key: access.quota.maxKeys
+		 */
+		public final int maxKeys;
+		
+		
+		/**
+		 * The quota overrides for selected API keys, specified as a 
+		 * daily and an optional monthly limit. If the API keys are 
+		 * hashed the overrides are keyed by SHA-256 digest as well.
+		 *
+		 * <p>Property keys: access.quota.key.*
+		 */
+		public final Map<APIKey,Quota> overrides;
+		
+		
+		/**
+		 * Parses the quota overrides.
+		 *
+		 * @param prefix         The properties prefix. Must not be 
+		 *                       {@code null}.
+		 * @param props          The properties. Must not be 
+		 *                       {@code null}.
+		 * @param defaultMonthly The default monthly limit.
+		 *
+		 * @return The quota overrides, empty if none.
+		 *
+		 * @throws PropertyParseException If parsing failed.
+		 */
+		private static Map<APIKey,Quota> parseOverrides(final String prefix, 
+		                                                final Properties props,
+		                                                final long defaultMonthly)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			Map<APIKey,Quota> map = new HashMap<APIKey,Quota>();
+			
+			for (String propKey: props.stringPropertyNames()) {
+				
+				if (! propKey.startsWith(prefix + "quota.key."))
+					continue;
+				
+				String keyString = propKey.substring((prefix + "quota.key.").length());
+				
+				if (keyString.isEmpty())
+					continue;
+				
+				String value = pr.getString(propKey);
+				
+				String[] tokens = value.trim().split("\\s+");
+				
+				if (tokens.length > 2)
+					throw new PropertyParseException("Invalid quota, expected daily and optional monthly limit", 
+					                                 propKey, 
+					                                 value);
+				
+				try {
+					long daily = Long.parseLong(tokens[0]);
+					long monthly = tokens.length == 2 ? Long.parseLong(tokens[1]) : defaultMonthly;
+					
+					map.put(new APIKey(keyString), new Quota(daily, monthly));
+				
+				} catch (IllegalArgumentException e) {
+					
+					// Also NumberFormatException
+					throw new PropertyParseException("Invalid quota: " + e.getMessage(), 
+					                                 propKey, 
+					                                 value);
+				}
+			}
+			
+			return Collections.unmodifiableMap(map);
+		}
+		
+		
+		/**
+		 * Creates a new API key call quota configuration from the 
+		 * specified properties.
+		 *
+		 * @param prefix The properties prefix. Must not be 
+		 *               {@code null}.
+		 * @param props  The properties. Must not be {@code null}.
+		 *
+		 * @throws PropertyParseException On a missing or invalid 
+		 *                                property.
+		 */
+		public Quotas(final String prefix, final Properties props)
+			throws PropertyParseException {
+			
+			PropertyRetriever pr = new PropertyRetriever(props);
+			
+			enable = pr.getOptBoolean(prefix + "quota.enable", DEFAULT_ENABLE);
+			
+			if (! enable) {
+				file = null;
+				defaultQuota = null;
+				maxKeys = QuotaFilter.DEFAULT_MAX_KEYS;
+				overrides = null;
+				return;
+			}
+			
+			file = new File(pr.getString(prefix + "quota.file").trim());
+			
+			long daily = pr.getOptLong(prefix + "quota.daily", Quota.UNLIMITED);
+			
+			if (daily < 0L)
+				throw new PropertyParseException("The daily quota must not be negative", 
+				                                 prefix + "quota.daily", 
+				                                 Long.toString(daily));
+			
+			long monthly = pr.getOptLong(prefix + "quota.monthly", Quota.UNLIMITED);
+			
+			if (monthly < 0L)
+				throw new PropertyParseException("The monthly quota must not be negative", 
+				                                 prefix + "quota.monthly", 
+				                                 Long.toString(monthly));
+			
+			defaultQuota = new Quota(daily, monthly);
+			
+			maxKeys = pr.getOptInt(prefix + "quota.maxKeys", QuotaFilter.DEFAULT_MAX_KEYS);
+			
+			if (maxKeys < 1)
+				throw new PropertyParseException("The maximum number of API keys with quotas must be positive", 
+				                                 prefix + "quota.maxKeys", 
+				                                 Integer.toString(maxKeys));
+			
+			overrides = parseOverrides(prefix, props, monthly);
+		}
+		
+		
+		/**
+		 * Logs the configuration details at INFO level.
+		 */
+		private void log() {
+			
+			log.info("API key quotas enabled: " + enable);
+			
+			if (! enable)
+				return;
+			
+			log.info("API key quota file: " + file);
+			log.info("API key default quota: " + defaultQuota);
+			log.info("API key quota max keys: " + maxKeys);
+			log.info("API key quota overrides: " + overrides.size());
+		}
+	}
+	
+	
 	/**
 	 * The HTTPS configuration.
 	 */
@@ -421,6 +1840,24 @@ public class CompositeFilterConfiguration {
 	public final APIKeys apiKeys;
 	
 	
+	/**
+	 * The API key rate limit configuration.
+	 */
+	public final RateLimits rateLimits;
+	
+	
+	/**
+	 * The client IP address rate limit configuration.
+	 */
+	public final IPRateLimits ipRateLimits;
+	
+	
+	/**
+	 * The API key call quota configuration.
+	 */
+	public final Quotas quotas;
+	
+	
 	/**
 	 * Creates a new composite filter configuration from the specified 
 	 * properties. The expected prefix is {@link #DEFAULT_PREFIX}.
@@ -451,6 +1888,20 @@ public class CompositeFilterConfiguration {
 		https = new HTTPS(prefix, props);
 		hosts = new Hosts(prefix, props);
 		apiKeys = new APIKeys(prefix, props);
+		rateLimits = new RateLimits(prefix, props);
+		
+		if (rateLimits.enable && ! apiKeys.require)
+			throw new PropertyParseException("API key rate limits require API keys", 
+			                                 prefix + "rateLimit.enable", 
+			                                 "true");
+		
+		ipRateLimits = new IPRateLimits(prefix, props);
+		quotas = new Quotas(prefix, props);
+		
+		if (quotas.enable && ! apiKeys.require)
+			throw new PropertyParseException("API key quotas require API keys", 
+			                                 prefix + "quota.enable", 
+			                                 "true");
 	}
 	
 	
@@ -462,5 +1913,8 @@ public class CompositeFilterConfiguration {
 		https.log();
 		hosts.log();
 		apiKeys.log();
+		rateLimits.log();
+		ipRateLimits.log();
+		quotas.log();
 	}
 }
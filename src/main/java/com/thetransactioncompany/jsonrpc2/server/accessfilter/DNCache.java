@@ -0,0 +1,109 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+
+/**
+ * Bounded cache of parsed client principal distinguished names (DNs), keyed
+ * by the principal name string. Invalid names are cached too, so repeat
+ * clients skip parsing whatever the outcome. The DNs are normalised before
+ * they are cached, so later comparisons don't normalise them again.
+ *
+ * <p>The cache is thread-safe, see {@link BoundedCache}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+class DNCache {
+
+
+	/**
+	 * Parsed principal name.
+	 */
+	private static final class Parsed {
+
+
+		/**
+		 * The DN, {@code null} if the name is invalid.
+		 */
+		final DN dn;
+
+
+		/**
+		 * Creates a new parsed principal name.
+		 *
+		 * @param dn The DN, {@code null} if the name is invalid.
+		 */
+		Parsed(final DN dn) {
+
+			this.dn = dn;
+		}
+	}
+
+
+	/**
+	 * The parsed invalid names.
+	 */
+	private static final Parsed INVALID = new Parsed(null);
+
+
+	/**
+	 * The cached names, {@code null} if caching is disabled.
+	 */
+	private final BoundedCache<String,Parsed> cache;
+
+
+	/**
+	 * Creates a new DN cache.
+	 *
+	 * @param capacity The maximum number of cached names, zero to disable
+	 *                 caching. Must not be negative.
+	 */
+	DNCache(final int capacity) {
+
+		if (capacity < 0)
+			throw new IllegalArgumentException("The DN cache size must not be negative");
+
+		cache = capacity > 0 ? new BoundedCache<String,Parsed>(capacity) : null;
+	}
+
+
+	/**
+	 * Parses the specified principal name, or returns the cached DN.
+	 *
+	 * @param name The principal name. Must not be {@code null}.
+	 *
+	 * @return The DN, {@code null} if the name is invalid.
+	 */
+	DN get(final String name) {
+
+		if (cache != null) {
+
+			Parsed cached = cache.get(name);
+
+			if (cached != null)
+				return cached.dn;
+		}
+
+		Parsed parsed;
+
+		try {
+			DN dn = new DN(name);
+
+			// Normalise once, the DN keeps the normalised form
+			dn.toNormalizedString();
+
+			parsed = new Parsed(dn);
+
+		} catch (LDAPException e) {
+
+			parsed = INVALID;
+		}
+
+		if (cache != null)
+			cache.put(name, parsed);
+
+		return parsed.dn;
+	}
+}
@@ -0,0 +1,25 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+
+/**
+ * Default host resolver, backed by the system name service through
+ * {@code java.net.InetAddress}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class DefaultHostResolver implements HostResolver {
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public InetAddress[] resolve(final String host)
+		throws UnknownHostException {
+		
+		return InetAddress.getAllByName(host);
+	}
+}
@@ -0,0 +1,93 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+
+/**
+ * Bounded cache of X.509 certificate SHA-256 fingerprints, keyed by
+ * certificate instance, so certificates reused across the requests of a TLS
+ * session are hashed only once.
+ *
+ * <p>The cache is thread-safe, see {@link BoundedCache}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+class FingerprintCache {
+
+
+	/**
+	 * The cached fingerprints, {@code null} if caching is disabled.
+	 */
+	private final BoundedCache<X509Certificate,String> cache;
+
+
+	/**
+	 * Creates a new fingerprint cache.
+	 *
+	 * @param capacity The maximum number of cached fingerprints, zero to
+	 *                 disable caching. Must not be negative.
+	 */
+	FingerprintCache(final int capacity) {
+
+		if (capacity < 0)
+			throw new IllegalArgumentException("The fingerprint cache size must not be negative");
+
+		if (capacity == 0) {
+			cache = null;
+			return;
+		}
+
+		// Certificates are cached by instance, equals() would compare
+		// their encodings
+		cache = new BoundedCache<X509Certificate,String>(capacity) {
+
+			int keyHash(final X509Certificate key) {
+
+				return System.identityHashCode(key);
+			}
+
+			boolean keyEquals(final X509Certificate cached, final X509Certificate key) {
+
+				return cached == key;
+			}
+		};
+	}
+
+
+	/**
+	 * Computes the fingerprint of the specified certificate, or returns
+	 * the cached one.
+	 *
+	 * @param cert The certificate. Must not be {@code null}.
+	 *
+	 * @return The lower case hexadecimal SHA-256 fingerprint,
+	 *         {@code null} if the certificate couldn't be encoded.
+	 */
+	String get(final X509Certificate cert) {
+
+		if (cache != null) {
+
+			String cached = cache.get(cert);
+
+			if (cached != null)
+				return cached;
+		}
+
+		String fingerprint;
+
+		try {
+			fingerprint = APIKeyDigest.toHex(APIKeyDigest.sha256(cert.getEncoded()));
+
+		} catch (CertificateEncodingException e) {
+
+			return null;
+		}
+
+		if (cache != null)
+			cache.put(cert, fingerprint);
+
+		return fingerprint;
+	}
+}
@@ -58,6 +58,6 @@ public class HTTPSFilter implements AccessFilter {
 		if (messageCtx.isSecure())
 			return AccessFilterResult.ACCESS_ALLOWED;
 		else
-			return new AccessFilterResult(AccessDeniedError.HTTPS_REQUIRED);
+			return AccessFilterResult.denied(AccessDeniedError.HTTPS_REQUIRED);
 	}
 }
@@ -0,0 +1,267 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Open-addressed index of SHA-256 API key digests to their method
+ * permissions. Slots are located by the leading 64 bits of the digest and
+ * candidate digests are confirmed with a constant-time comparison of all
+ * 256 bits. Lookups do not allocate.
+ *
+ * <p>The index is not thread-safe for modification. It is intended to be
+ * populated once and then safely published for concurrent reads.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HashedKeyIndex {
+
+
+	/**
+	 * The leading 64 bits of the digest in each slot.
+	 */
+	private long[] prefixes;
+
+
+	/**
+	 * The digests, {@code null} marks an empty slot.
+	 */
+	private byte[][] digests;
+
+
+	/**
+	 * The method permissions of each digest.
+	 */
+	private MethodPermissions[] permissions;
+
+
+	/**
+	 * The number of digests in the index.
+	 */
+	private int size;
+
+
+	/**
+	 * Creates a new empty index.
+	 *
+	 * @param expectedSize The expected number of digests.
+	 */
+	HashedKeyIndex(final int expectedSize) {
+
+		allocate(IntHashSet.tableSizeFor(expectedSize));
+	}
+	
+	
+	/**
+	 * Creates a copy of the specified index. Modifying the copy doesn't
+	 * affect the original.
+	 *
+	 * @param other The index to copy. Must not be {@code null}.
+	 */
+	HashedKeyIndex(final HashedKeyIndex other) {
+		
+		prefixes = other.prefixes.clone();
+		digests = other.digests.clone();
+		permissions = other.permissions.clone();
+		size = other.size;
+	}
+
+
+	/**
+	 * Allocates empty tables.
+	 *
+	 * @param length The table length, a power of two.
+	 */
+	private void allocate(final int length) {
+
+		prefixes = new long[length];
+		digests = new byte[length][];
+		permissions = new MethodPermissions[length];
+	}
+
+
+	/**
+	 * Returns the leading 64 bits of the specified digest.
+	 *
+	 * @param digest The digest.
+	 *
+	 * @return The leading 64 bits.
+	 */
+	private static long prefixOf(final byte[] digest) {
+
+		long v = 0;
+
+		for (int i=0; i < 8; i++)
+			v = (v << 8) | (digest[i] & 0xff);
+
+		return v;
+	}
+
+
+	/**
+	 * Returns the initial slot of the specified digest prefix. The digest
+	 * bits are uniformly distributed and need no further mixing.
+	 *
+	 * @param prefix The digest prefix.
+	 * @param mask   The table mask.
+	 *
+	 * @return The slot.
+	 */
+	private static int slotOf(final long prefix, final int mask) {
+
+		return (int)(prefix >>> 32) & mask;
+	}
+
+
+	/**
+	 * Adds or replaces the specified digest.
+	 *
+	 * @param digest      The SHA-256 digest. Must not be {@code null}.
+	 * @param permissions The method permissions. Must not be
+	 *                    {@code null}.
+	 */
+	void put(final byte[] digest, final MethodPermissions permissions) {
+
+		if (digest.length != APIKeyDigest.LENGTH)
+			throw new IllegalArgumentException("The digest must be " + APIKeyDigest.LENGTH + " bytes");
+
+		if ((size + 1) * 2 > digests.length) {
+
+			final long[] p = prefixes;
+			final byte[][] d = digests;
+			final MethodPermissions[] m = this.permissions;
+
+			allocate(d.length << 1);
+
+			for (int i=0; i < d.length; i++) {
+
+				if (d[i] != null)
+					insert(p[i], d[i], m[i]);
+			}
+		}
+
+		if (insert(prefixOf(digest), digest.clone(), permissions))
+			size++;
+	}
+
+
+	/**
+	 * Inserts the specified digest into the tables.
+	 *
+	 * @param prefix      The digest prefix.
+	 * @param digest      The digest.
+	 * @param permissions The method permissions.
+	 *
+	 * @return {@code true} if the digest was added, {@code false} if it
+	 *         replaced an existing entry.
+	 */
+	private boolean insert(final long prefix, final byte[] digest, final MethodPermissions permissions) {
+
+		final int mask = digests.length - 1;
+
+		for (int i = slotOf(prefix, mask); ; i = (i + 1) & mask) {
+
+			if (digests[i] == null) {
+				prefixes[i] = prefix;
+				digests[i] = digest;
+				this.permissions[i] = permissions;
+				return true;
+			}
+
+			if (prefixes[i] == prefix && APIKeyDigest.constantTimeEquals(digests[i], digest)) {
+				this.permissions[i] = permissions;
+				return false;
+			}
+		}
+	}
+
+
+	/**
+	 * Removes the specified digest, if present.
+	 *
+	 * @param digest The SHA-256 digest. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the digest was removed, {@code false} if it
+	 *         was not in the index.
+	 */
+	boolean remove(final byte[] digest) {
+		
+		if (digest.length != APIKeyDigest.LENGTH)
+			return false;
+		
+		final long prefix = prefixOf(digest);
+		final int mask = digests.length - 1;
+		
+		int i = slotOf(prefix, mask);
+		
+		while (true) {
+			
+			if (digests[i] == null)
+				return false;
+			
+			if (prefixes[i] == prefix && APIKeyDigest.constantTimeEquals(digests[i], digest))
+				break;
+			
+			i = (i + 1) & mask;
+		}
+		
+		// Shift back the following entries of the probe run, so that
+		// no tombstones are needed
+		for (int j = (i + 1) & mask; digests[j] != null; j = (j + 1) & mask) {
+			
+			final int home = slotOf(prefixes[j], mask);
+			
+			// Move the entry unless its home lies cyclically in (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				prefixes[i] = prefixes[j];
+				digests[i] = digests[j];
+				permissions[i] = permissions[j];
+				i = j;
+			}
+		}
+		
+		prefixes[i] = 0L;
+		digests[i] = null;
+		permissions[i] = null;
+		size--;
+		return true;
+	}
+	
+	
+	/**
+	 * Gets the method permissions for the specified digest.
+	 *
+	 * @param digest The SHA-256 digest. Must not be {@code null}.
+	 *
+	 * @return The method permissions, {@code null} if the digest is not
+	 *         in the index.
+	 */
+	MethodPermissions get(final byte[] digest) {
+
+		if (digest.length != APIKeyDigest.LENGTH)
+			return null;
+
+		final long prefix = prefixOf(digest);
+
+		final byte[][] d = digests;
+		final int mask = d.length - 1;
+
+		for (int i = slotOf(prefix, mask); ; i = (i + 1) & mask) {
+
+			if (d[i] == null)
+				return null;
+
+			if (prefixes[i] == prefix && APIKeyDigest.constantTimeEquals(d[i], digest))
+				return permissions[i];
+		}
+	}
+
+
+	/**
+	 * Returns the number of digests in the index.
+	 *
+	 * @return The index size.
+	 */
+	int size() {
+
+		return size;
+	}
+}
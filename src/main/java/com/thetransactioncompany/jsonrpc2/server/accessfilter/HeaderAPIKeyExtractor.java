@@ -0,0 +1,141 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Extracts the API key from a designated HTTP request header, for example
+ * {@code X-API-Key: f70defbe} or, with an authentication scheme, 
+ * {@code Authorization: Bearer f70defbe}. The HTTP request is obtained from
+ * the message context.
+ *
+ * <p>The header can also be read directly from the HTTP servlet request with
+ * {@link #extract(HttpServletRequest)}, so that requests with missing or 
+ * unknown API keys can be rejected before the JSON body is parsed, see
+ * {@link APIKeyFilter#check}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class HeaderAPIKeyExtractor implements APIKeyExtractor {
+
+
+	/**
+	 * The default name of the HTTP header used to pass the API key.
+	 */
+	public static final String DEFAULT_HEADER_NAME = "X-API-Key";
+
+
+	/**
+	 * The name of the HTTP header used to pass the API key.
+	 */
+	private final String headerName;
+
+
+	/**
+	 * The expected authentication scheme, {@code null} if none.
+	 */
+	private final String scheme;
+
+
+	/**
+	 * Creates a new HTTP header API key extractor without an 
+	 * authentication scheme.
+	 *
+	 * @param headerName The name of the HTTP header used to pass the API
+	 *                   key. Must not be {@code null}.
+	 */
+	public HeaderAPIKeyExtractor(final String headerName) {
+
+		this(headerName, null);
+	}
+
+
+	/**
+	 * Creates a new HTTP header API key extractor.
+	 *
+	 * @param headerName The name of the HTTP header used to pass the API
+	 *                   key. Must not be {@code null}.
+	 * @param scheme     The authentication scheme which must precede the
+	 *                   API key in the header value, for example 
+	 *                   "Bearer" for the {@code Authorization} header, 
+	 *                   matched case-insensitively. {@code null} if none.
+	 */
+	public HeaderAPIKeyExtractor(final String headerName, final String scheme) {
+
+		if (headerName == null)
+			throw new IllegalArgumentException("The API key header name must not be null");
+
+		this.headerName = headerName;
+		this.scheme = scheme;
+	}
+
+
+	/**
+	 * Gets the name of the HTTP header used to pass the API key.
+	 *
+	 * @return The header name.
+	 */
+	public String getHeaderName() {
+
+		return headerName;
+	}
+
+
+	/**
+	 * Gets the expected authentication scheme.
+	 *
+	 * @return The authentication scheme, {@code null} if none.
+	 */
+	public String getScheme() {
+
+		return scheme;
+	}
+
+
+	/**
+	 * Extracts the API key from the specified HTTP servlet request.
+	 *
+	 * @param httpRequest The HTTP servlet request. May be {@code null}.
+	 *
+	 * @return The API key, {@code null} if not found.
+	 */
+	public String extract(final HttpServletRequest httpRequest) {
+
+		if (httpRequest == null)
+			return null;
+
+		String value = httpRequest.getHeader(headerName);
+
+		if (value == null)
+			return null;
+
+		if (scheme != null) {
+
+			if (value.length() <= scheme.length() ||
+			    ! value.regionMatches(true, 0, scheme, 0, scheme.length()) ||
+			    value.charAt(scheme.length()) != ' ')
+				return null;
+
+			value = value.substring(scheme.length() + 1);
+		}
+
+		value = value.trim();
+
+		return value.isEmpty() ? null : value;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public String extract(final JSONRPC2Request request,
+	                      final MessageContext messageCtx) {
+
+		return extract(messageCtx.getHttpServletRequest());
+	}
+}
@@ -4,6 +4,20 @@ package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
@@ -15,18 +29,39 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
  *
  * <p>Requests are filtered by taking the client IP address and matching it 
  * against a list of allowed IP addresses or host names (that resolve to an IP 
- * address). Both IPv4 as well as IPv6 addresses are supported. To allow any 
- * host set the whitelist to "*" (asterisk).
+ * address). Both IPv4 as well as IPv6 addresses are supported. Whole subnets
+ * can be allowed by specifying them in CIDR notation, e.g. "10.0.0.0/8" or 
+ * "2001:db8::/32". To allow any host set the whitelist to "*" (asterisk).
+ *
+ * <p>The allowed addresses are kept in binary form, in open-addressed hash 
+ * sets of primitive IPv4 and IPv6 values. Checking a client IP address is
+ * thus a constant time operation that doesn't allocate, regardless of the 
+ * size of the whitelist. CIDR address blocks are merged into a sorted array 
+ * of disjoint ranges which is binary searched, so that tens of thousands of
+ * blocks cost only a few memory accesses per check.
  *
  * <p>Important: To speed up checking all host names in the supplied whitelist 
  * are resolved during initialisation. This means that if the IP address for a 
  * whitelisted host name changes later, {@link #isAllowedIP} will return a false
- * negative. To prevent this from occurring you may choose to periodically 
- * reinitialise the host filter.
+ * negative. To prevent this from occurring you may choose to start a
+ * {@link #startRefresh background refresh} which periodically re-resolves the
+ * host names. The refreshed whitelist is compiled on the background thread
+ * and then published atomically, so request threads never block on DNS
+ * lookups or locks.
+ *
+ * <p>Host names are resolved concurrently, with a bounded number of threads
+ * and a global deadline, so that a slow or dead host name cannot stall the
+ * initialisation.
  *
  * @author Vladimir Dzhuvinov
  */
 public class HostFilter implements AccessFilter {
+	
+	
+	/**
+	 * The logger.
+	 */
+	private static final Logger log = LogManager.getLogger("MAIN");
 
 
 	/**
@@ -37,61 +72,397 @@ public class HostFilter implements AccessFilter {
 	
 	
 	/**
-	 * Space-separated string of allowed IPv4 or IPv6 addresses.
+	 * The whitelist tokens, empty if any host is allowed.
 	 */
-	private String allowedIPs;
+	private String[] tokens = new String[0];
 	
 	
 	/**
-	 * Indicates that any host is allowed.
+	 * The host names in the whitelist.
 	 */
-	private boolean allowAny;
+	private Set<String> hostNames = new LinkedHashSet<String>();
 	
 	
 	/**
-	 * Initialises this host filter.
+	 * The resolved IP addresses of the host names in the whitelist.
+	 */
+	private Map<String,InetAddress[]> resolvedHosts = new HashMap<String,InetAddress[]>();
+	
+	
+	/**
+	 * The result of the last host name resolution.
+	 */
+	private HostResolution resolution;
+	
+	
+	/**
+	 * The maximum number of concurrent resolver threads.
+	 */
+	private int maxResolveThreads = HostResolution.DEFAULT_MAX_THREADS;
+	
+	
+	/**
+	 * The global host name resolution timeout, in milliseconds.
+	 */
+	private long resolveTimeout = HostResolution.DEFAULT_TIMEOUT;
+	
+	
+	/**
+	 * The host name resolver.
+	 */
+	private HostResolver resolver = new DefaultHostResolver();
+	
+	
+	/**
+	 * The current compiled whitelist snapshot.
+	 */
+	private volatile HostWhitelist whitelist = HostWhitelist.NONE;
+	
+	
+	/**
+	 * Lock guarding whitelist initialisation and refresh. Never taken by
+	 * request threads.
+	 */
+	private final Object refreshLock = new Object();
+	
+	
+	/**
+	 * The background refresh executor, {@code null} if not started.
+	 */
+	private ScheduledExecutorService refreshExecutor;
+	
+	
+	/**
+	 * Initialises this host filter. Host names are resolved with the
+	 * {@link DefaultHostResolver default resolver}.
 	 *
-	 * @param whitelist Space-separated string of allowed host names and/or 
-	 *                  IPv4 / IPv6 addresses. All host names will be 
+	 * @param whitelist Space-separated string of allowed host names, 
+	 *                  IPv4 / IPv6 addresses and / or IPv4 / IPv6 address
+	 *                  blocks in CIDR notation. All host names will be 
 	 *                  resolved to their corresponding IP addresses. If set
 	 *                  to "*" (asterisk) any IP address will be allowed.
 	 *                  Must not be {@code null}.
 	 *
 	 * @throws UnknownHostException If the allow list contains a badly 
-	 *                              formatted IP address or if a host name
-	 *                              could not be resolved to an IP address.
+	 *                              formatted IP address or CIDR address
+	 *                              block, or if a host name could not be
+	 *                              resolved to an IP address.
 	 */
 	public void init(final String whitelist)
 		throws UnknownHostException {
 	
-		allow = whitelist;
+		init(whitelist, new DefaultHostResolver());
+	}
+	
+	
+	/**
+	 * Initialises this host filter. Host names are resolved concurrently
+	 * with the {@link HostResolution#DEFAULT_MAX_THREADS default number} of
+	 * threads and within the {@link HostResolution#DEFAULT_TIMEOUT default
+	 * timeout}.
+	 *
+	 * @param whitelist Space-separated string of allowed host names, 
+	 *                  IPv4 / IPv6 addresses and / or IPv4 / IPv6 address
+	 *                  blocks in CIDR notation. All host names will be 
+	 *                  resolved to their corresponding IP addresses. If set
+	 *                  to "*" (asterisk) any IP address will be allowed.
+	 *                  Must not be {@code null}.
+	 * @param resolver  The resolver to use for the host names, also on
+	 *                  {@link #refresh}. Must not be {@code null}.
+	 *
+	 * @throws UnknownHostException If the allow list contains a badly 
+	 *                              formatted IP address or CIDR address
+	 *                              block, or if a host name could not be
+	 *                              resolved to an IP address.
+	 */
+	public void init(final String whitelist, final HostResolver resolver)
+		throws UnknownHostException {
 		
-		if (whitelist.trim().equals("*")) {
+		init(whitelist, resolver, HostResolution.DEFAULT_MAX_THREADS, HostResolution.DEFAULT_TIMEOUT, true);
+	}
+	
+	
+	/**
+	 * Initialises this host filter, tolerating unresolved host names. Host
+	 * names are resolved concurrently. Host names which fail to resolve or
+	 * time out are reported in the returned result and left out of the
+	 * whitelist until a subsequent successful {@link #refresh}.
+	 *
+	 * @param whitelist  Space-separated string of allowed host names, 
+	 *                   IPv4 / IPv6 addresses and / or IPv4 / IPv6 
+	 *                   address blocks in CIDR notation. If set to "*" 
+	 *                   (asterisk) any IP address will be allowed. Must
+	 *                   not be {@code null}.
+	 * @param resolver   The resolver to use for the host names, also on
+	 *                   {@link #refresh}. Must not be {@code null}.
+	 * @param maxThreads The maximum number of concurrent resolver 
+	 *                   threads. Must be positive.
+	 * @param timeout    The global timeout for resolving all host names,
+	 *                   in milliseconds. Must be positive.
+	 *
+	 * @return The host name resolution result.
+	 *
+	 * @throws UnknownHostException If the allow list contains a badly 
+	 *                              formatted CIDR address block.
+	 */
+	public HostResolution init(final String whitelist, 
+	                           final HostResolver resolver,
+	                           final int maxThreads,
+	                           final long timeout)
+		throws UnknownHostException {
+		
+		return init(whitelist, resolver, maxThreads, timeout, false);
+	}
+	
+	
+	/**
+	 * Initialises this host filter.
+	 *
+	 * @param whitelist  The whitelist. Must not be {@code null}.
+	 * @param resolver   The host resolver. Must not be {@code null}.
+	 * @param maxThreads The maximum number of concurrent resolver 
+	 *                   threads. Must be positive.
+	 * @param timeout    The global resolution timeout, in milliseconds.
+	 *                   Must be positive.
+	 * @param strict     If {@code true} an unresolved host name causes
+	 *                   an exception and the filter is left unchanged.
+	 *
+	 * @return The host name resolution result.
+	 *
+	 * @throws UnknownHostException On a badly formatted CIDR address 
+	 *                              block or, if strict, an unresolved
+	 *                              host name.
+	 */
+	private HostResolution init(final String whitelist, 
+	                            final HostResolver resolver,
+	                            final int maxThreads,
+	                            final long timeout,
+	                            final boolean strict)
+		throws UnknownHostException {
+		
+		if (resolver == null)
+			throw new IllegalArgumentException("The host resolver must not be null");
+		
+		if (maxThreads <= 0)
+			throw new IllegalArgumentException("The maximum number of resolver threads must be positive");
+		
+		if (timeout <= 0)
+			throw new IllegalArgumentException("The resolution timeout must be positive");
+		
+		synchronized (refreshLock) {
+			
+			allow = whitelist;
+			
+			this.resolver = resolver;
+			maxResolveThreads = maxThreads;
+			resolveTimeout = timeout;
+		
+			if (whitelist.trim().equals("*")) {
+			
+				tokens = new String[0];
+				hostNames = new LinkedHashSet<String>();
+				resolvedHosts = new HashMap<String,InetAddress[]>();
+				resolution = HostResolution.resolve(hostNames, resolver, maxThreads, timeout);
+				this.whitelist = HostWhitelist.ANY;
+				return resolution;
+			}
 			
-			allowAny = true;
+			String[] newTokens = whitelist.trim().split("\\s+");
 			
-			allowedIPs = "*";
+			Set<String> newHostNames = new LinkedHashSet<String>();
+			
+			for (String t: newTokens) {
+				
+				if (HostWhitelist.isHostName(t))
+					newHostNames.add(t);
+			}
+			
+			// Resolve all hostnames to IP addresses
+			HostResolution newResolution = HostResolution.resolve(newHostNames, resolver, maxThreads, timeout);
+				
+			if (strict && ! newResolution.isComplete())
+				throw new UnknownHostException(newResolution.describeUnresolved());
+			
+			Map<String,InetAddress[]> resolved = new HashMap<String,InetAddress[]>(newResolution.getResolvedHosts());
+			
+			HostWhitelist compiled = HostWhitelist.compile(newTokens, resolved);
+			
+			tokens = newTokens;
+			hostNames = newHostNames;
+			resolvedHosts = resolved;
+			resolution = newResolution;
+			this.whitelist = compiled;
+			
+			if (! newResolution.isComplete())
+				log.warn("Couldn't resolve all allowed hosts: " + newResolution.describeUnresolved());
+			
+			return newResolution;
 		}
-		else {
-			allowAny = false;
+	}
+	
+	
+	/**
+	 * Gets the result of the last host name resolution, on 
+	 * {@link #init initialisation} or {@link #refresh}.
+	 *
+	 * @return The host name resolution result, {@code null} if not
+	 *         initialised.
+	 */
+	public HostResolution getHostResolution() {
+		
+		synchronized (refreshLock) {
+			
+			return resolution;
+		}
+	}
 			
-			String[] tokens = whitelist.split("\\s+");
 			
-			allowedIPs = "";
-
-			for (String t: tokens) {
-
-				// Resolve all hostnames to IP addresses
-				// and compose final IP allow list
-				InetAddress[] hostAddresses = InetAddress.getAllByName(t);
+	/**
+	 * Re-resolves the host names in the whitelist and atomically publishes
+	 * the updated whitelist if any IP addresses have changed. Host names
+	 * which fail to resolve keep their last known IP addresses, host names
+	 * which were unresolved so far are added once resolved.
+	 *
+	 * <p>This method is invoked periodically after a
+	 * {@link #startRefresh background refresh} is started. Concurrent
+	 * {@link #filter} calls are not blocked.
+	 *
+	 * @return {@code true} if the whitelist was updated, else
+	 *         {@code false}.
+	 */
+	public boolean refresh() {
+			
+		synchronized (refreshLock) {
 
-				for (InetAddress addr: hostAddresses)
-					allowedIPs += addr.getHostAddress() + " ";
+			if (hostNames.isEmpty())
+				return false;
+			
+			HostResolution newResolution = HostResolution.resolve(hostNames, resolver, maxResolveThreads, resolveTimeout);
+			
+			resolution = newResolution;
+			
+			if (! newResolution.isComplete())
+				log.warn("Couldn't re-resolve all allowed hosts, keeping last known IP addresses: " + newResolution.describeUnresolved());
+				
+			Map<String,InetAddress[]> resolved = new HashMap<String,InetAddress[]>(resolvedHosts);
+					
+			boolean changed = false;
+					
+			for (Map.Entry<String,InetAddress[]> en: newResolution.getResolvedHosts().entrySet()) {
+					
+				InetAddress[] previous = resolvedHosts.get(en.getKey());
+					
+				if (previous == null || ! new HashSet<InetAddress>(Arrays.asList(en.getValue())).equals(new HashSet<InetAddress>(Arrays.asList(previous)))) {
+					
+					resolved.put(en.getKey(), en.getValue());
+					changed = true;
+				}
+			}
+			
+			if (! changed)
+				return false;
+			
+			HostWhitelist compiled;
+			
+			try {
+				compiled = HostWhitelist.compile(tokens, resolved);
+			
+			} catch (UnknownHostException e) {
+				
+				// Tokens already validated on init
+				log.error("Couldn't compile refreshed host whitelist: " + e.getMessage());
+				return false;
+			}
+			
+			resolvedHosts = resolved;
+			whitelist = compiled;
+			
+			if (log.isInfoEnabled())
+				log.info("Refreshed allowed hosts: " + compiled.getResolvedIPs());
+			
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Starts a background refresh of the host names in the whitelist. Any
+	 * previously started refresh is stopped.
+	 *
+	 * @param interval The refresh interval, in milliseconds. Must be
+	 *                 positive.
+	 */
+	public void startRefresh(final long interval) {
+		
+		if (interval <= 0)
+			throw new IllegalArgumentException("The refresh interval must be positive");
+		
+		synchronized (refreshLock) {
+			
+			stopRefresh();
+			
+			refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				
+				public Thread newThread(final Runnable r) {
+					
+					Thread t = new Thread(r, "HostFilter-refresh");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			
+			refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+				
+				public void run() {
+					
+					try {
+						refresh();
+					
+					} catch (RuntimeException e) {
+						
+						// Keep the refresh schedule alive
+						log.error("Host whitelist refresh failed: " + e.getMessage(), e);
+					}
+				}
+			
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	/**
+	 * Stops the background refresh of the host names in the whitelist, if
+	 * started.
+	 */
+	public void stopRefresh() {
+		
+		synchronized (refreshLock) {
+			
+			if (refreshExecutor != null) {
+				
+				refreshExecutor.shutdownNow();
+				refreshExecutor = null;
 			}
 		}
 	}
 	
 	
+	/**
+	 * Returns {@code true} if a background refresh of the host names in
+	 * the whitelist is running.
+	 *
+	 * @return {@code true} if a background refresh is running, else
+	 *         {@code false}.
+	 */
+	public boolean isRefreshing() {
+		
+		synchronized (refreshLock) {
+			
+			return refreshExecutor != null;
+		}
+	}
+	
+	
 	/**
 	 * Returns the originial whitelist of host names and IP addresses
 	 * supplied to {@link #init}.
@@ -112,7 +483,7 @@ public class HostFilter implements AccessFilter {
 	 */
 	public String getResolvedAllowedIPs() {
 	
-		return allowedIPs;
+		return whitelist.getResolvedIPs();
 	}
 	
 
@@ -121,14 +492,12 @@ public class HostFilter implements AccessFilter {
 	 *
 	 * @param ip A valid IPv4 or IPv6 address. Must not be {@code null}.
 	 *
-	 * @return {@code true} if the address is allowed, else {@code false}.
+	 * @return {@code true} if the address is allowed, else {@code false}
+	 *         (also if the address is invalid).
 	 */
 	public boolean isAllowedIP(final String ip) {
 	
-		if (allowAny || allowedIPs.indexOf(ip) >= 0)
-			return true;
-		else
-			return false;
+		return whitelist.isAllowed(ip);
 	}
 	
 	
@@ -138,19 +507,33 @@ public class HostFilter implements AccessFilter {
 	public AccessFilterResult filter(final JSONRPC2Request request, 
 	                                 final MessageContext messageCtx) {
 					 
-		final String ip = messageCtx.getClientInetAddress();
+		return check(messageCtx);
+	}
+	
+	
+	/**
+	 * Checks the client IP address of the specified message context. The
+	 * JSON-RPC 2.0 request is not needed, so the check can be made before
+	 * the request is parsed.
+	 *
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *                   Must not be {@code null}.
+	 *
+	 * @return The access filter result.
+	 */
+	public AccessFilterResult check(final MessageContext messageCtx) {
 		
-		if (ip == null) {
+		// Single volatile read of the current snapshot
+		final HostWhitelist wl = whitelist;
 		
-			if (allowAny)
-				return AccessFilterResult.ACCESS_ALLOWED;
-			else
-				return new AccessFilterResult(AccessDeniedError.CLIENT_IP_DENIED);
-		}
+		if (wl.allowsAny())
+			return AccessFilterResult.ACCESS_ALLOWED;
+		
+		final String ip = messageCtx.getClientInetAddress();
 		
-		if (isAllowedIP(ip))
+		if (ip != null && wl.isAllowed(ip))
 			return AccessFilterResult.ACCESS_ALLOWED;
 		else
-			return new AccessFilterResult(AccessDeniedError.CLIENT_IP_DENIED);
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_IP_DENIED);
 	}
 }
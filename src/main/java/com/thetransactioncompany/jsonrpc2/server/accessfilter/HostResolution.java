@@ -0,0 +1,277 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Immutable result of resolving a set of host names. Host names are resolved
+ * concurrently with a bounded number of threads and a global deadline, so
+ * that a single slow or dead host name cannot stall the resolution of the
+ * others. Each host name ends up either resolved, failed or timed out.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class HostResolution {
+
+
+	/**
+	 * The default maximum number of concurrent resolver threads.
+	 */
+	public static final int DEFAULT_MAX_THREADS = 16;
+
+
+	/**
+	 * The default global resolution timeout, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 10000L;
+
+
+	/**
+	 * The resolved host names and their IP addresses.
+	 */
+	private final Map<String,InetAddress[]> resolved;
+
+
+	/**
+	 * The host names which failed to resolve and the matching exceptions.
+	 */
+	private final Map<String,UnknownHostException> failed;
+
+
+	/**
+	 * The host names which were not resolved before the deadline.
+	 */
+	private final Set<String> timedOut;
+
+
+	/**
+	 * Creates a new host resolution result.
+	 *
+	 * @param resolved The resolved host names. Must not be {@code null}.
+	 * @param failed   The failed host names. Must not be {@code null}.
+	 * @param timedOut The timed out host names. Must not be
+	 *                 {@code null}.
+	 */
+	public HostResolution(final Map<String,InetAddress[]> resolved,
+	                      final Map<String,UnknownHostException> failed,
+	                      final Set<String> timedOut) {
+
+		this.resolved = Collections.unmodifiableMap(resolved);
+		this.failed = Collections.unmodifiableMap(failed);
+		this.timedOut = Collections.unmodifiableSet(timedOut);
+	}
+
+
+	/**
+	 * Resolves the specified host names concurrently.
+	 *
+	 * @param hosts      The host names to resolve. Must not be
+	 *                   {@code null}.
+	 * @param resolver   The host resolver. Must not be {@code null}.
+	 * @param maxThreads The maximum number of concurrent resolver
+	 *                   threads. Must be positive.
+	 * @param timeout    The global timeout for resolving all host names,
+	 *                   in milliseconds. Must be positive.
+	 *
+	 * @return The host resolution result.
+	 */
+	public static HostResolution resolve(final Collection<String> hosts,
+	                                     final HostResolver resolver,
+	                                     final int maxThreads,
+	                                     final long timeout) {
+
+		if (maxThreads <= 0)
+			throw new IllegalArgumentException("The maximum number of resolver threads must be positive");
+
+		if (timeout <= 0)
+			throw new IllegalArgumentException("The resolution timeout must be positive");
+
+		Map<String,InetAddress[]> resolved = new LinkedHashMap<String,InetAddress[]>();
+		Map<String,UnknownHostException> failed = new LinkedHashMap<String,UnknownHostException>();
+		Set<String> timedOut = new LinkedHashSet<String>();
+
+		Set<String> uniqueHosts = new LinkedHashSet<String>(hosts);
+
+		if (uniqueHosts.isEmpty())
+			return new HostResolution(resolved, failed, timedOut);
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxThreads, uniqueHosts.size()), new ThreadFactory() {
+
+			public Thread newThread(final Runnable r) {
+
+				// Resolver calls may not be interruptible,
+				// don't let them hold up JVM shutdown
+				Thread t = new Thread(r, "HostFilter-resolve");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		try {
+			Map<String,Future<InetAddress[]>> futures = new LinkedHashMap<String,Future<InetAddress[]>>();
+
+			for (final String host: uniqueHosts) {
+
+				futures.put(host, executor.submit(new Callable<InetAddress[]>() {
+
+					public InetAddress[] call()
+						throws UnknownHostException {
+
+						return resolver.resolve(host);
+					}
+				}));
+			}
+
+			for (Map.Entry<String,Future<InetAddress[]>> en: futures.entrySet()) {
+
+				try {
+					long remaining = deadline - System.nanoTime();
+
+					if (remaining <= 0 && ! en.getValue().isDone())
+						throw new TimeoutException();
+
+					resolved.put(en.getKey(), en.getValue().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS));
+
+				} catch (TimeoutException e) {
+
+					en.getValue().cancel(true);
+					timedOut.add(en.getKey());
+
+				} catch (ExecutionException e) {
+
+					Throwable cause = e.getCause();
+
+					if (cause instanceof UnknownHostException) {
+						failed.put(en.getKey(), (UnknownHostException)cause);
+					}
+					else {
+						UnknownHostException uhe = new UnknownHostException(en.getKey() + ": " + cause);
+						uhe.initCause(cause);
+						failed.put(en.getKey(), uhe);
+					}
+
+				} catch (InterruptedException e) {
+
+					// Give up on the remaining host names,
+					// restore the interrupt status
+					Thread.currentThread().interrupt();
+
+					for (Map.Entry<String,Future<InetAddress[]>> rest: futures.entrySet()) {
+
+						if (! resolved.containsKey(rest.getKey()) && ! failed.containsKey(rest.getKey()))
+							timedOut.add(rest.getKey());
+					}
+
+					break;
+				}
+			}
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+
+		return new HostResolution(resolved, failed, timedOut);
+	}
+
+
+	/**
+	 * Returns {@code true} if all host names were successfully resolved.
+	 *
+	 * @return {@code true} if the resolution is complete, else
+	 *         {@code false}.
+	 */
+	public boolean isComplete() {
+
+		return failed.isEmpty() && timedOut.isEmpty();
+	}
+
+
+	/**
+	 * Gets the resolved host names and their IP addresses.
+	 *
+	 * @return The resolved host names, empty map if none.
+	 */
+	public Map<String,InetAddress[]> getResolvedHosts() {
+
+		return resolved;
+	}
+
+
+	/**
+	 * Gets the host names which failed to resolve and the matching
+	 * exceptions.
+	 *
+	 * @return The failed host names, empty map if none.
+	 */
+	public Map<String,UnknownHostException> getFailedHosts() {
+
+		return failed;
+	}
+
+
+	/**
+	 * Gets the host names which were not resolved before the deadline.
+	 *
+	 * @return The timed out host names, empty set if none.
+	 */
+	public Set<String> getTimedOutHosts() {
+
+		return timedOut;
+	}
+
+
+	/**
+	 * Returns a summary of the unresolved host names.
+	 *
+	 * @return The summary, empty string if the resolution is complete.
+	 */
+	public String describeUnresolved() {
+
+		StringBuilder sb = new StringBuilder();
+
+		if (! failed.isEmpty()) {
+
+			sb.append("Unknown host(s):");
+
+			for (String host: failed.keySet()) {
+				sb.append(' ');
+				sb.append(host);
+			}
+		}
+
+		if (! timedOut.isEmpty()) {
+
+			if (sb.length() > 0)
+				sb.append("; ");
+
+			sb.append("Timed out host(s):");
+
+			for (String host: timedOut) {
+				sb.append(' ');
+				sb.append(host);
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,28 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+
+/**
+ * Resolver of host names to IP addresses, used by {@link HostFilter}. 
+ * Implementations must be thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface HostResolver {
+
+
+	/**
+	 * Resolves the specified host name to its IP addresses.
+	 *
+	 * @param host The host name. Must not be {@code null}.
+	 *
+	 * @return The IP addresses of the host, at least one.
+	 *
+	 * @throws UnknownHostException If the host name couldn't be resolved.
+	 */
+	public InetAddress[] resolve(final String host)
+		throws UnknownHostException;
+}
@@ -0,0 +1,260 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import java.util.Map;
+
+
+/**
+ * Immutable compiled host whitelist, holding the allowed IP addresses and 
+ * CIDR address blocks in binary form. Snapshots are compiled off the request
+ * path and published by {@link HostFilter} with a single volatile write.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HostWhitelist {
+
+
+	/**
+	 * Whitelist allowing any host.
+	 */
+	static final HostWhitelist ANY = new HostWhitelist(true, "*", new IntHashSet(0), 
+	                                                   new LongPairHashSet(0),
+	                                                   new IPRangeSet.Builder().build());
+
+
+	/**
+	 * Empty whitelist, denying all hosts.
+	 */
+	static final HostWhitelist NONE = new HostWhitelist(false, "", new IntHashSet(0), 
+	                                                    new LongPairHashSet(0),
+	                                                    new IPRangeSet.Builder().build());
+
+
+	/**
+	 * Per-thread scratch array for parsing client IP addresses.
+	 */
+	private static final ThreadLocal<long[]> parseBuffer = new ThreadLocal<long[]>() {
+
+		protected long[] initialValue() {
+
+			return new long[2];
+		}
+	};
+
+
+	/**
+	 * Indicates that any host is allowed.
+	 */
+	private final boolean allowAny;
+
+
+	/**
+	 * Space-separated string of the allowed IPv4 / IPv6 addresses and
+	 * CIDR address blocks.
+	 */
+	private final String resolvedIPs;
+
+
+	/**
+	 * The allowed IPv4 addresses.
+	 */
+	private final IntHashSet ipv4s;
+
+
+	/**
+	 * The allowed IPv6 addresses.
+	 */
+	private final LongPairHashSet ipv6s;
+
+
+	/**
+	 * The allowed IPv4 and IPv6 address ranges, from CIDR address blocks.
+	 */
+	private final IPRangeSet ranges;
+
+
+	/**
+	 * Creates a new host whitelist.
+	 */
+	private HostWhitelist(final boolean allowAny,
+	                      final String resolvedIPs,
+	                      final IntHashSet ipv4s,
+	                      final LongPairHashSet ipv6s,
+	                      final IPRangeSet ranges) {
+
+		this.allowAny = allowAny;
+		this.resolvedIPs = resolvedIPs;
+		this.ipv4s = ipv4s;
+		this.ipv6s = ipv6s;
+		this.ranges = ranges;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified whitelist token is a host name
+	 * which must be resolved, as opposed to an IP address or a CIDR
+	 * address block.
+	 *
+	 * @param token The whitelist token. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the token is a host name.
+	 */
+	static boolean isHostName(final String token) {
+
+		return token.indexOf('/') < 0 && 
+		       IPAddressParser.parse(token, new long[2]) == IPAddressParser.INVALID;
+	}
+
+
+	/**
+	 * Compiles a host whitelist.
+	 *
+	 * @param tokens        The whitelist tokens: IP addresses, CIDR 
+	 *                      address blocks and host names. Must not be
+	 *                      {@code null}.
+	 * @param resolvedHosts The resolved IP addresses of the host name
+	 *                      tokens. Host names missing from the map are
+	 *                      skipped. Must not be {@code null}.
+	 *
+	 * @return The compiled host whitelist.
+	 *
+	 * @throws UnknownHostException If a CIDR address block is invalid.
+	 */
+	static HostWhitelist compile(final String[] tokens, 
+	                             final Map<String,InetAddress[]> resolvedHosts)
+		throws UnknownHostException {
+
+		StringBuilder sb = new StringBuilder();
+
+		IntHashSet ipv4s = new IntHashSet(tokens.length);
+		LongPairHashSet ipv6s = new LongPairHashSet(tokens.length);
+		IPRangeSet.Builder ranges = new IPRangeSet.Builder();
+
+		long[] buf = new long[3];
+
+		for (String t: tokens) {
+
+			// CIDR address block?
+			if (t.indexOf('/') >= 0) {
+
+				int type = IPAddressParser.parseCIDR(t, buf);
+
+				if (type == IPAddressParser.INVALID)
+					throw new UnknownHostException("Invalid CIDR address block: " + t);
+
+				ranges.add(type, buf);
+
+				if (sb.length() > 0)
+					sb.append(' ');
+
+				sb.append(t);
+				continue;
+			}
+
+			// IP address?
+			int type = IPAddressParser.parse(t, buf);
+
+			if (type != IPAddressParser.INVALID) {
+
+				add(type, buf, ipv4s, ipv6s);
+
+				if (sb.length() > 0)
+					sb.append(' ');
+
+				sb.append(t);
+				continue;
+			}
+
+			// Resolved host name
+			InetAddress[] hostAddresses = resolvedHosts.get(t);
+
+			if (hostAddresses == null)
+				continue;
+
+			for (InetAddress addr: hostAddresses) {
+
+				add(IPAddressParser.toLongs(addr, buf), buf, ipv4s, ipv6s);
+
+				if (sb.length() > 0)
+					sb.append(' ');
+
+				sb.append(addr.getHostAddress());
+			}
+		}
+
+		return new HostWhitelist(false, sb.toString(), ipv4s, ipv6s, ranges.build());
+	}
+
+
+	/**
+	 * Adds the specified parsed IP address to the matching set.
+	 */
+	private static void add(final int type, 
+	                        final long[] buf, 
+	                        final IntHashSet ipv4s, 
+	                        final LongPairHashSet ipv6s) {
+
+		if (type == IPAddressParser.IPV4)
+			ipv4s.add((int)buf[0]);
+		else if (type == IPAddressParser.IPV6)
+			ipv6s.add(buf[0], buf[1]);
+	}
+
+
+	/**
+	 * Returns {@code true} if any host is allowed.
+	 *
+	 * @return {@code true} if any host is allowed.
+	 */
+	boolean allowsAny() {
+
+		return allowAny;
+	}
+
+
+	/**
+	 * Returns the space-separated string of allowed IP addresses and CIDR
+	 * address blocks.
+	 *
+	 * @return The allowed IP addresses, "*" if any is allowed.
+	 */
+	String getResolvedIPs() {
+
+		return resolvedIPs;
+	}
+
+
+	/**
+	 * Checks if the specified IP address is allowed. No objects are
+	 * allocated.
+	 *
+	 * @param ip The IPv4 or IPv6 address. May be {@code null}.
+	 *
+	 * @return {@code true} if the address is allowed, else {@code false}
+	 *         (also if the address is invalid).
+	 */
+	boolean isAllowed(final String ip) {
+
+		if (allowAny)
+			return true;
+
+		final long[] buf = parseBuffer.get();
+
+		switch (IPAddressParser.parse(ip, buf)) {
+
+			case IPAddressParser.IPV4:
+				return ipv4s.contains((int)buf[0]) ||
+				       ranges.containsIPv4(buf[0]);
+
+			case IPAddressParser.IPV6:
+				return ipv6s.contains(buf[0], buf[1]) ||
+				       ranges.containsIPv6(buf[0], buf[1]);
+
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,432 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+
+
+/**
+ * Allocation-free parser of textual IPv4 and IPv6 addresses into their
+ * primitive binary representation.
+ *
+ * <p>IPv4 addresses are returned as the unsigned 32-bit address value. IPv6
+ * addresses are returned as a pair of longs holding the high and low 64 bits
+ * of the address. IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) are returned as
+ * IPv4, which is consistent with {@code java.net.InetAddress}.
+ *
+ * <p>Supported IPv6 notations include compressed zero groups ("::"), embedded
+ * dotted IPv4 tails, enclosing square brackets and trailing zone IDs
+ * ("%eth0"), the latter being ignored.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class IPAddressParser {
+
+
+	/**
+	 * Indicates an invalid address.
+	 */
+	static final int INVALID = 0;
+
+
+	/**
+	 * Indicates an IPv4 address.
+	 */
+	static final int IPV4 = 4;
+
+
+	/**
+	 * Indicates an IPv6 address.
+	 */
+	static final int IPV6 = 6;
+
+
+	/**
+	 * Parses the specified textual IPv4 or IPv6 address. No objects are
+	 * allocated.
+	 *
+	 * @param s   The address string. May be {@code null}.
+	 * @param out Array of at least two elements to receive the parsed
+	 *            address. For IPv4 the address is set at index 0; for
+	 *            IPv6 the high 64 bits are set at index 0 and the low 64
+	 *            bits at index 1. Must not be {@code null}.
+	 *
+	 * @return {@link #IPV4}, {@link #IPV6} or {@link #INVALID}.
+	 */
+	static int parse(final String s, final long[] out) {
+
+		if (s == null)
+			return INVALID;
+
+		int start = 0;
+		int end = s.length();
+
+		// Strip enclosing brackets, as in URLs
+		if (end > 1 && s.charAt(0) == '[' && s.charAt(end - 1) == ']') {
+			start = 1;
+			end--;
+		}
+
+		// Ignore IPv6 zone ID
+		final int zone = s.indexOf('%', start);
+
+		if (zone >= 0 && zone < end)
+			end = zone;
+
+		if (start >= end)
+			return INVALID;
+
+		final int colon = s.indexOf(':', start);
+
+		if (colon < 0 || colon >= end) {
+
+			final long v4 = parseIPv4(s, start, end);
+
+			if (v4 < 0)
+				return INVALID;
+
+			out[0] = v4;
+			out[1] = 0;
+			return IPV4;
+		}
+
+		if (! parseIPv6(s, start, end, out))
+			return INVALID;
+
+		// IPv4-mapped IPv6 address?
+		if (out[0] == 0 && (out[1] >>> 32) == 0xffffL) {
+
+			out[0] = out[1] & 0xffffffffL;
+			out[1] = 0;
+			return IPV4;
+		}
+
+		return IPV6;
+	}
+	
+	
+	/**
+	 * Parses the specified IPv4 or IPv6 address block in CIDR notation, 
+	 * for example "10.0.0.0/8" or "2001:db8::/32". Host bits set in the 
+	 * address are ignored. IPv4-mapped IPv6 blocks with a prefix length of
+	 * 96 or more are returned as IPv4.
+	 *
+	 * @param s   The CIDR string. May be {@code null}.
+	 * @param out Array of at least three elements to receive the parsed
+	 *            block. The network address is set as for {@link #parse}
+	 *            and the prefix length at index 2. Must not be
+	 *            {@code null}.
+	 *
+	 * @return {@link #IPV4}, {@link #IPV6} or {@link #INVALID}.
+	 */
+	static int parseCIDR(final String s, final long[] out) {
+		
+		if (s == null)
+			return INVALID;
+		
+		final int slash = s.indexOf('/');
+		
+		if (slash < 1 || slash == s.length() - 1 || s.length() - slash > 4)
+			return INVALID;
+		
+		int prefixLength = 0;
+		
+		for (int i = slash + 1; i < s.length(); i++) {
+			
+			final char c = s.charAt(i);
+			
+			if (c < '0' || c > '9')
+				return INVALID;
+			
+			prefixLength = prefixLength * 10 + (c - '0');
+		}
+		
+		final String addr = s.substring(0, slash);
+		
+		int type = parse(addr, out);
+		
+		if (type == IPV4 && addr.indexOf(':') >= 0) {
+			
+			// IPv4-mapped IPv6 block
+			prefixLength -= 96;
+			
+			if (prefixLength < 0)
+				return INVALID;
+		}
+		
+		if (type == IPV4 && prefixLength > 32)
+			return INVALID;
+		
+		if (type == IPV6 && prefixLength > 128)
+			return INVALID;
+		
+		out[2] = prefixLength;
+		return type;
+	}
+
+
+	/**
+	 * Converts the specified resolved IP address to its primitive binary
+	 * representation.
+	 *
+	 * @param addr The IP address. Must not be {@code null}.
+	 * @param out  Array of at least two elements to receive the address,
+	 *             as for {@link #parse}. Must not be {@code null}.
+	 *
+	 * @return {@link #IPV4}, {@link #IPV6} or {@link #INVALID}.
+	 */
+	static int toLongs(final InetAddress addr, final long[] out) {
+
+		final byte[] bytes = addr.getAddress();
+
+		if (bytes.length == 4) {
+
+			out[0] = readLong(bytes, 0, 4);
+			out[1] = 0;
+			return IPV4;
+		}
+
+		if (bytes.length == 16) {
+
+			out[0] = readLong(bytes, 0, 8);
+			out[1] = readLong(bytes, 8, 8);
+			return IPV6;
+		}
+
+		return INVALID;
+	}
+
+
+	/**
+	 * Reads the specified number of bytes as a big-endian unsigned value.
+	 *
+	 * @param bytes The byte array.
+	 * @param off   The offset.
+	 * @param len   The number of bytes, up to 8.
+	 *
+	 * @return The value.
+	 */
+	private static long readLong(final byte[] bytes, final int off, final int len) {
+
+		long v = 0;
+
+		for (int i = off; i < off + len; i++)
+			v = (v << 8) | (bytes[i] & 0xff);
+
+		return v;
+	}
+
+
+	/**
+	 * Parses a dotted IPv4 address within the specified string range.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The unsigned 32-bit address value, -1 if invalid.
+	 */
+	static long parseIPv4(final String s, final int start, final int end) {
+
+		if (start >= end)
+			return -1;
+
+		long addr = 0;
+		int octets = 0;
+		int value = 0;
+		int digits = 0;
+
+		// A virtual dot terminates the last octet
+		for (int i = start; i <= end; i++) {
+
+			final char c = i < end ? s.charAt(i) : '.';
+
+			if (c >= '0' && c <= '9') {
+
+				value = value * 10 + (c - '0');
+
+				if (++digits > 3 || value > 255)
+					return -1;
+			}
+			else if (c == '.') {
+
+				if (digits == 0 || ++octets > 4)
+					return -1;
+
+				addr = (addr << 8) | value;
+				value = 0;
+				digits = 0;
+			}
+			else {
+				return -1;
+			}
+		}
+
+		return octets == 4 ? addr : -1;
+	}
+
+
+	/**
+	 * Parses an IPv6 address within the specified string range.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 * @param out   Receives the high and low 64 bits of the address.
+	 *
+	 * @return {@code true} if the address is valid, else {@code false}.
+	 */
+	private static boolean parseIPv6(final String s, final int start, final int end, final long[] out) {
+
+		// Locate the "::" zero group compression, if any
+		int dc = s.indexOf("::", start);
+
+		if (dc + 2 > end)
+			dc = -1;
+
+		int tailGroups = 0;
+
+		if (dc >= 0) {
+
+			final int next = s.indexOf("::", dc + 1);
+
+			if (next >= 0 && next + 2 <= end)
+				return false; // more than one "::"
+
+			// Count the groups following "::", an IPv4 tail
+			// takes two groups
+			if (dc + 2 < end) {
+
+				tailGroups = 1;
+
+				for (int i = dc + 2; i < end; i++) {
+
+					final char c = s.charAt(i);
+
+					if (c == ':') {
+						tailGroups++;
+					}
+					else if (c == '.') {
+						tailGroups++;
+						break;
+					}
+				}
+			}
+
+			if (tailGroups > 7)
+				return false;
+		}
+
+		long hi = 0;
+		long lo = 0;
+		int index = 0;
+		int i = start;
+
+		if (dc == start) {
+
+			i = start + 2;
+			index = 8 - tailGroups;
+		}
+
+		while (i < end) {
+
+			int j = i;
+			int value = 0;
+
+			while (j < end) {
+
+				final int d = hexValue(s.charAt(j));
+
+				if (d < 0)
+					break;
+
+				value = (value << 4) | d;
+				j++;
+			}
+
+			if (j < end && s.charAt(j) == '.') {
+
+				// Embedded IPv4 tail, must take the last two groups
+				if (index != 6)
+					return false;
+
+				final long v4 = parseIPv4(s, i, end);
+
+				if (v4 < 0)
+					return false;
+
+				lo |= v4;
+				index = 8;
+				break;
+			}
+
+			final int digits = j - i;
+
+			if (digits == 0 || digits > 4 || index > 7)
+				return false;
+
+			if (index < 4)
+				hi |= (long)value << (16 * (3 - index));
+			else
+				lo |= (long)value << (16 * (7 - index));
+
+			index++;
+
+			if (j == end)
+				break;
+
+			if (s.charAt(j) != ':')
+				return false;
+
+			if (j == dc) {
+
+				// "::" must stand for at least one zero group
+				if (8 - tailGroups <= index)
+					return false;
+
+				index = 8 - tailGroups;
+				j += 2;
+			}
+			else {
+				j++;
+
+				if (j == end)
+					return false; // trailing single colon
+			}
+
+			i = j;
+		}
+
+		if (index != 8)
+			return false;
+
+		out[0] = hi;
+		out[1] = lo;
+		return true;
+	}
+
+
+	/**
+	 * Returns the value of the specified hexadecimal digit.
+	 *
+	 * @param c The character.
+	 *
+	 * @return The digit value, -1 if not a hexadecimal digit.
+	 */
+	private static int hexValue(final char c) {
+
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		else if (c >= 'a' && c <= 'f')
+			return c - 'a' + 10;
+		else if (c >= 'A' && c <= 'F')
+			return c - 'A' + 10;
+		else
+			return -1;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private IPAddressParser() { }
+}
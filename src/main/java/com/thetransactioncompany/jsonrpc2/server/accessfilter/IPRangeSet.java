@@ -0,0 +1,326 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Set of IPv4 and IPv6 address ranges, typically compiled from CIDR address
+ * blocks. The ranges are sorted and merged into disjoint intervals stored in
+ * primitive arrays, so that a lookup is a binary search costing O(log n) 
+ * memory accesses and no allocation.
+ *
+ * <p>Use {@link Builder} to create a range set. Once built the set is
+ * immutable and thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class IPRangeSet {
+
+
+	/**
+	 * Builder of IP range sets.
+	 */
+	static final class Builder {
+
+
+		/**
+		 * The IPv4 ranges, as {start, end} pairs.
+		 */
+		private final List<long[]> ipv4Ranges = new ArrayList<long[]>();
+
+
+		/**
+		 * The IPv6 ranges, as biased {startHi, startLo, endHi, endLo}
+		 * quads.
+		 */
+		private final List<long[]> ipv6Ranges = new ArrayList<long[]>();
+
+
+		/**
+		 * Adds the specified IPv4 address block.
+		 *
+		 * @param addr         The IPv4 address.
+		 * @param prefixLength The prefix length, 0 to 32.
+		 *
+		 * @return This builder.
+		 */
+		Builder addIPv4(final long addr, final int prefixLength) {
+
+			final long mask = prefixLength == 0 ? 0 : (0xffffffffL << (32 - prefixLength)) & 0xffffffffL;
+			final long start = addr & mask;
+			ipv4Ranges.add(new long[]{start, start | (~mask & 0xffffffffL)});
+			return this;
+		}
+
+
+		/**
+		 * Adds the specified IPv6 address block.
+		 *
+		 * @param hi           The high 64 bits of the IPv6 address.
+		 * @param lo           The low 64 bits of the IPv6 address.
+		 * @param prefixLength The prefix length, 0 to 128.
+		 *
+		 * @return This builder.
+		 */
+		Builder addIPv6(final long hi, final long lo, final int prefixLength) {
+
+			final long hiMask;
+			final long loMask;
+
+			if (prefixLength >= 64) {
+				hiMask = -1L;
+				loMask = prefixLength == 64 ? 0 : -1L << (128 - prefixLength);
+			}
+			else {
+				hiMask = prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+				loMask = 0;
+			}
+
+			ipv6Ranges.add(new long[]{
+				(hi & hiMask) ^ Long.MIN_VALUE,
+				(lo & loMask) ^ Long.MIN_VALUE,
+				(hi | ~hiMask) ^ Long.MIN_VALUE,
+				(lo | ~loMask) ^ Long.MIN_VALUE });
+
+			return this;
+		}
+
+
+		/**
+		 * Adds the IPv4 or IPv6 address block output by 
+		 * {@link IPAddressParser#parseCIDR}.
+		 *
+		 * @param type The address type.
+		 * @param cidr The parsed address block.
+		 *
+		 * @return This builder.
+		 */
+		Builder add(final int type, final long[] cidr) {
+
+			if (type == IPAddressParser.IPV4)
+				addIPv4(cidr[0], (int)cidr[2]);
+			else if (type == IPAddressParser.IPV6)
+				addIPv6(cidr[0], cidr[1], (int)cidr[2]);
+
+			return this;
+		}
+
+
+		/**
+		 * Builds a new IP range set.
+		 *
+		 * @return The IP range set.
+		 */
+		IPRangeSet build() {
+
+			return new IPRangeSet(mergeIPv4(), mergeIPv6());
+		}
+
+
+		/**
+		 * Sorts and merges the IPv4 ranges.
+		 *
+		 * @return The disjoint ranges, as a flat array of sorted 
+		 *         {start, end} pairs.
+		 */
+		private long[] mergeIPv4() {
+
+			Collections.sort(ipv4Ranges, new Comparator<long[]>() {
+
+				public int compare(final long[] a, final long[] b) {
+
+					return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+				}
+			});
+
+			long[] merged = new long[ipv4Ranges.size() * 2];
+			int n = 0;
+
+			for (long[] r: ipv4Ranges) {
+
+				// Overlapping or adjacent to the previous range?
+				if (n > 0 && r[0] <= merged[n - 1] + 1) {
+
+					merged[n - 1] = Math.max(merged[n - 1], r[1]);
+					continue;
+				}
+
+				merged[n++] = r[0];
+				merged[n++] = r[1];
+			}
+
+			return Arrays.copyOf(merged, n);
+		}
+
+
+		/**
+		 * Sorts and merges the IPv6 ranges.
+		 *
+		 * @return The disjoint ranges, as a flat array of sorted biased
+		 *         {startHi, startLo, endHi, endLo} quads.
+		 */
+		private long[] mergeIPv6() {
+
+			Collections.sort(ipv6Ranges, new Comparator<long[]>() {
+
+				public int compare(final long[] a, final long[] b) {
+
+					return IPRangeSet.compare(a[0], a[1], b[0], b[1]);
+				}
+			});
+
+			long[] merged = new long[ipv6Ranges.size() * 4];
+			int n = 0;
+
+			for (long[] r: ipv6Ranges) {
+
+				// Overlapping the previous range?
+				if (n > 0 && compare(r[0], r[1], merged[n - 2], merged[n - 1]) <= 0) {
+
+					if (compare(r[2], r[3], merged[n - 2], merged[n - 1]) > 0) {
+						merged[n - 2] = r[2];
+						merged[n - 1] = r[3];
+					}
+
+					continue;
+				}
+
+				System.arraycopy(r, 0, merged, n, 4);
+				n += 4;
+			}
+
+			return Arrays.copyOf(merged, n);
+		}
+	}
+
+
+	/**
+	 * The disjoint IPv4 ranges, as a flat array of sorted {start, end}
+	 * pairs.
+	 */
+	private final long[] ipv4Ranges;
+
+
+	/**
+	 * The disjoint IPv6 ranges, as a flat array of sorted {startHi, 
+	 * startLo, endHi, endLo} quads. The values are biased by flipping 
+	 * the sign bit, so that signed comparison yields unsigned order.
+	 */
+	private final long[] ipv6Ranges;
+
+
+	/**
+	 * Creates a new IP range set.
+	 *
+	 * @param ipv4Ranges The disjoint IPv4 ranges.
+	 * @param ipv6Ranges The disjoint biased IPv6 ranges.
+	 */
+	private IPRangeSet(final long[] ipv4Ranges, final long[] ipv6Ranges) {
+
+		this.ipv4Ranges = ipv4Ranges;
+		this.ipv6Ranges = ipv6Ranges;
+	}
+
+
+	/**
+	 * Compares two biased 128-bit values.
+	 *
+	 * @return Negative, zero or positive if the first value is less than,
+	 *         equal to or greater than the second value.
+	 */
+	private static int compare(final long aHi, final long aLo, final long bHi, final long bLo) {
+
+		if (aHi != bHi)
+			return aHi < bHi ? -1 : 1;
+
+		if (aLo != bLo)
+			return aLo < bLo ? -1 : 1;
+
+		return 0;
+	}
+
+
+	/**
+	 * Returns {@code true} if the set contains no ranges.
+	 *
+	 * @return {@code true} if the set is empty.
+	 */
+	boolean isEmpty() {
+
+		return ipv4Ranges.length == 0 && ipv6Ranges.length == 0;
+	}
+
+
+	/**
+	 * Checks if the specified IPv4 address is contained in a range.
+	 *
+	 * @param addr The unsigned 32-bit IPv4 address.
+	 *
+	 * @return {@code true} if contained, else {@code false}.
+	 */
+	boolean containsIPv4(final long addr) {
+
+		final long[] r = ipv4Ranges;
+
+		// Find the last range starting at or before the address
+		int low = 0;
+		int high = r.length / 2 - 1;
+		int found = -1;
+
+		while (low <= high) {
+
+			final int mid = (low + high) >>> 1;
+
+			if (r[mid * 2] <= addr) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+
+		return found >= 0 && addr <= r[found * 2 + 1];
+	}
+
+
+	/**
+	 * Checks if the specified IPv6 address is contained in a range.
+	 *
+	 * @param hi The high 64 bits of the IPv6 address.
+	 * @param lo The low 64 bits of the IPv6 address.
+	 *
+	 * @return {@code true} if contained, else {@code false}.
+	 */
+	boolean containsIPv6(final long hi, final long lo) {
+
+		final long[] r = ipv6Ranges;
+		final long bHi = hi ^ Long.MIN_VALUE;
+		final long bLo = lo ^ Long.MIN_VALUE;
+
+		// Find the last range starting at or before the address
+		int low = 0;
+		int high = r.length / 4 - 1;
+		int found = -1;
+
+		while (low <= high) {
+
+			final int mid = (low + high) >>> 1;
+
+			if (compare(r[mid * 4], r[mid * 4 + 1], bHi, bLo) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+
+		return found >= 0 && compare(bHi, bLo, r[found * 4 + 2], r[found * 4 + 3]) <= 0;
+	}
+}
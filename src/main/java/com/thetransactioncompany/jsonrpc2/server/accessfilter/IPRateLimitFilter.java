@@ -0,0 +1,283 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter capping the request rate of each client IP address, as
+ * reported by {@link MessageContext#getClientInetAddress}, over a sliding
+ * window. Unlike {@link RateLimitFilter} it applies to unauthenticated
+ * callers as well, and should be placed right after the {@link HostFilter}.
+ * Requests with a missing or invalid client IP address are not limited.
+ *
+ * <p>IPv6 clients are counted per network prefix, /64 by default, since a
+ * single host is commonly assigned a whole /64 and could otherwise evade the
+ * limit by rotating its interface identifier.
+ *
+ * <p>The counters are held in a striped table of fixed capacity, which never
+ * grows: idle counters are evicted as new addresses arrive, so a spray of
+ * spoofed addresses cannot exhaust the heap. Lookups of IPv4 and IPv6
+ * addresses do not allocate.
+ *
+ * <p>Requests over the limit are denied with
+ * {@link AccessDeniedError#RATE_LIMIT_EXCEEDED}, the {@link
+ * AccessFilterResult#getErrorData error data} is a JSON object with a
+ * {@link RateLimitFilter#RETRY_AFTER "retryAfter"} member giving the seconds
+ * until a retry may succeed.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class IPRateLimitFilter implements AccessFilter {
+
+
+	/**
+	 * The default maximum number of client IP addresses with a counter.
+	 */
+	public static final int DEFAULT_MAX_ADDRESSES = 65536;
+
+
+	/**
+	 * The default length of the IPv6 prefix by which clients are counted.
+	 */
+	public static final int DEFAULT_IPV6_PREFIX_LENGTH = 64;
+
+
+	/**
+	 * Per-thread scratch array for parsing client IP addresses.
+	 */
+	private static final ThreadLocal<long[]> parseBuffer = new ThreadLocal<long[]>() {
+
+		protected long[] initialValue() {
+
+			return new long[2];
+		}
+	};
+
+
+	/**
+	 * The maximum number of requests per window.
+	 */
+	private int limit;
+
+
+	/**
+	 * The window length in milliseconds.
+	 */
+	private long windowMillis;
+
+
+	/**
+	 * The request counters.
+	 */
+	private SlidingWindowTable counters;
+
+
+	/**
+	 * The length of the IPv6 prefix by which clients are counted.
+	 */
+	private int ipv6PrefixLength;
+
+
+	/**
+	 * The mask of the high 64 bits of the IPv6 addresses.
+	 */
+	private long ipv6HiMask;
+
+
+	/**
+	 * The mask of the low 64 bits of the IPv6 addresses.
+	 */
+	private long ipv6LoMask;
+
+
+	/**
+	 * The time origin, in nanoseconds.
+	 */
+	private final long origin = System.nanoTime();
+
+
+	/**
+	 * Initialises this IP rate limit filter, with the
+	 * {@link #DEFAULT_MAX_ADDRESSES default maximum number of client IP
+	 * addresses}.
+	 *
+	 * @param limit        The maximum number of requests per window from
+	 *                     each client IP address. Must be positive.
+	 * @param windowMillis The sliding window length in milliseconds. Must
+	 *                     be positive.
+	 */
+	public void init(final int limit, final long windowMillis) {
+
+		init(limit, windowMillis, DEFAULT_MAX_ADDRESSES);
+	}
+
+
+	/**
+	 * Initialises this IP rate limit filter, counting IPv6 clients by the
+	 * {@link #DEFAULT_IPV6_PREFIX_LENGTH default prefix}.
+	 *
+	 * @param limit        The maximum number of requests per window from
+	 *                     each client IP address. Must be positive.
+	 * @param windowMillis The sliding window length in milliseconds. Must
+	 *                     be positive.
+	 * @param maxAddresses The maximum number of client IP addresses with a
+	 *                     counter, rounded up to the table capacity. Must
+	 *                     be positive.
+	 *
+	 * @throws IllegalArgumentException If an argument is not positive.
+	 */
+	public void init(final int limit, final long windowMillis, final int maxAddresses) {
+
+		init(limit, windowMillis, maxAddresses, DEFAULT_IPV6_PREFIX_LENGTH);
+	}
+
+
+	/**
+	 * Initialises this IP rate limit filter.
+	 *
+	 * @param limit            The maximum number of requests per window
+	 *                         from each client IP address. Must be
+	 *                         positive.
+	 * @param windowMillis     The sliding window length in milliseconds.
+	 *                         Must be positive.
+	 * @param maxAddresses     The maximum number of client IP addresses
+	 *                         with a counter, rounded up to the table
+	 *                         capacity. Must be positive.
+	 * @param ipv6PrefixLength The length of the IPv6 prefix by which
+	 *                         clients are counted, 128 to count each
+	 *                         address. Must be in the range 1 to 128.
+	 *
+	 * @throws IllegalArgumentException If an argument is not positive or
+	 *                                  the IPv6 prefix length is out of
+	 *                                  range.
+	 */
+	public void init(final int limit,
+	                 final long windowMillis,
+	                 final int maxAddresses,
+	                 final int ipv6PrefixLength) {
+
+		if (ipv6PrefixLength < 1 || ipv6PrefixLength > 128)
+			throw new IllegalArgumentException("The IPv6 prefix length must be in the range 1 to 128");
+
+		counters = new SlidingWindowTable(limit, windowMillis, maxAddresses);
+
+		this.limit = limit;
+		this.windowMillis = windowMillis;
+		this.ipv6PrefixLength = ipv6PrefixLength;
+
+		if (ipv6PrefixLength <= 64) {
+			ipv6HiMask = -1L << (64 - ipv6PrefixLength);
+			ipv6LoMask = 0L;
+		} else {
+			ipv6HiMask = -1L;
+			ipv6LoMask = -1L << (128 - ipv6PrefixLength);
+		}
+	}
+
+
+	/**
+	 * Gets the maximum number of requests per window from each client IP
+	 * address.
+	 *
+	 * @return The request limit.
+	 */
+	public int getLimit() {
+
+		return limit;
+	}
+
+
+	/**
+	 * Gets the sliding window length.
+	 *
+	 * @return The window length in milliseconds.
+	 */
+	public long getWindowMillis() {
+
+		return windowMillis;
+	}
+
+
+	/**
+	 * Gets the length of the IPv6 prefix by which clients are counted.
+	 *
+	 * @return The IPv6 prefix length.
+	 */
+	public int getIPv6PrefixLength() {
+
+		return ipv6PrefixLength;
+	}
+
+
+	/**
+	 * Gets the number of client IP addresses with a counter.
+	 *
+	 * @return The table capacity.
+	 */
+	public int getCapacity() {
+
+		return counters.capacity();
+	}
+
+
+	/**
+	 * Returns the current time in milliseconds, from an arbitrary origin.
+	 * Must be monotonic and non-negative.
+	 *
+	 * @return The current time in milliseconds.
+	 */
+	long currentTimeMillis() {
+
+		return (System.nanoTime() - origin) / 1000000L;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public AccessFilterResult filter(final JSONRPC2Request request,
+	                                 final MessageContext messageCtx) {
+
+		return check(messageCtx);
+	}
+
+
+	/**
+	 * Checks the request rate of the client IP address of the specified
+	 * message context. The JSON-RPC 2.0 request is not needed, so the check
+	 * can be made before the request is parsed.
+	 *
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *                   Must not be {@code null}.
+	 *
+	 * @return The access filter result.
+	 */
+	public AccessFilterResult check(final MessageContext messageCtx) {
+
+		final long[] buf = parseBuffer.get();
+
+		final long wait;
+
+		switch (IPAddressParser.parse(messageCtx.getClientInetAddress(), buf)) {
+
+			case IPAddressParser.IPV4:
+				wait = counters.acquireIPv4(buf[0], currentTimeMillis());
+				break;
+
+			case IPAddressParser.IPV6:
+				wait = counters.acquire(buf[0] & ipv6HiMask, buf[1] & ipv6LoMask, currentTimeMillis());
+				break;
+
+			default:
+				return AccessFilterResult.ACCESS_ALLOWED;
+		}
+
+		if (wait == 0L)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		return RateLimitFilter.denied(wait);
+	}
+}
@@ -0,0 +1,188 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Open-addressed hash set of primitive int values, used to look up IPv4
+ * addresses without boxing. Lookups do not allocate.
+ *
+ * <p>The set is not thread-safe for modification. It is intended to be
+ * populated once and then safely published for concurrent reads.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class IntHashSet {
+
+
+	/**
+	 * The hash table, zero marks an empty slot.
+	 */
+	private int[] table;
+
+
+	/**
+	 * Indicates whether the set contains zero, which cannot be stored in
+	 * the table.
+	 */
+	private boolean containsZero;
+
+
+	/**
+	 * The number of values in the set.
+	 */
+	private int size;
+
+
+	/**
+	 * Creates a new empty set.
+	 *
+	 * @param expectedSize The expected number of values.
+	 */
+	IntHashSet(final int expectedSize) {
+
+		table = new int[tableSizeFor(expectedSize)];
+	}
+
+
+	/**
+	 * Returns the table size for the specified number of values, a power
+	 * of two with a load factor of at most 0.5.
+	 *
+	 * @param expectedSize The expected number of values.
+	 *
+	 * @return The table size.
+	 */
+	static int tableSizeFor(final int expectedSize) {
+
+		int n = 8;
+
+		while (n < expectedSize * 2 && n < (1 << 30))
+			n <<= 1;
+
+		return n;
+	}
+
+
+	/**
+	 * Mixes the bits of the specified value (MurmurHash3 finaliser).
+	 *
+	 * @param v The value.
+	 *
+	 * @return The hash.
+	 */
+	static int mix(int v) {
+
+		v ^= v >>> 16;
+		v *= 0x85ebca6b;
+		v ^= v >>> 13;
+		v *= 0xc2b2ae35;
+		v ^= v >>> 16;
+		return v;
+	}
+
+
+	/**
+	 * Adds the specified value to the set.
+	 *
+	 * @param v The value.
+	 */
+	void add(final int v) {
+
+		if (v == 0) {
+
+			if (! containsZero) {
+				containsZero = true;
+				size++;
+			}
+
+			return;
+		}
+
+		if ((size + 1) * 2 > table.length)
+			rehash(table.length << 1);
+
+		if (insert(table, v))
+			size++;
+	}
+
+
+	/**
+	 * Inserts the specified non-zero value into the specified table.
+	 *
+	 * @param t The table.
+	 * @param v The value.
+	 *
+	 * @return {@code true} if the value was inserted, {@code false} if it
+	 *         was already present.
+	 */
+	private static boolean insert(final int[] t, final int v) {
+
+		final int mask = t.length - 1;
+
+		for (int i = mix(v) & mask; ; i = (i + 1) & mask) {
+
+			if (t[i] == v)
+				return false;
+
+			if (t[i] == 0) {
+				t[i] = v;
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Resizes the table.
+	 *
+	 * @param newLength The new table length, a power of two.
+	 */
+	private void rehash(final int newLength) {
+
+		final int[] t = new int[newLength];
+
+		for (int v: table) {
+
+			if (v != 0)
+				insert(t, v);
+		}
+
+		table = t;
+	}
+
+
+	/**
+	 * Checks if the set contains the specified value.
+	 *
+	 * @param v The value.
+	 *
+	 * @return {@code true} if the value is contained, else {@code false}.
+	 */
+	boolean contains(final int v) {
+
+		if (v == 0)
+			return containsZero;
+
+		final int[] t = table;
+		final int mask = t.length - 1;
+
+		for (int i = mix(v) & mask; ; i = (i + 1) & mask) {
+
+			if (t[i] == v)
+				return true;
+
+			if (t[i] == 0)
+				return false;
+		}
+	}
+
+
+	/**
+	 * Returns the number of values in the set.
+	 *
+	 * @return The set size.
+	 */
+	int size() {
+
+		return size;
+	}
+}
@@ -0,0 +1,230 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+
+/**
+ * API key store backed by a JDBC database. The API keys are looked up with
+ * a parameterised SQL query, which is passed the API key, or its
+ * hexadecimal SHA-256 digest if the keys are hashed, and returns the
+ * allowed methods in its first column. A column value may list several
+ * methods separated by spaces, and the query may return several rows; an
+ * API key for which the query returns no rows is not known.
+ *
+ * <p>Example table and query:
+ *
+ * <pre>
+ * CREATE TABLE api_keys (api_key VARCHAR(64) PRIMARY KEY, methods VARCHAR(4096));
+ *
+ * SELECT methods FROM api_keys WHERE api_key = ?
+ * </pre>
+ *
+ * <p>Each lookup takes a connection from the data source, which should
+ * therefore be pooled. The query is given a timeout, so that a stalled
+ * database fails the lookup instead of holding up the request.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class JDBCAPIKeyStore implements APIKeyStore {
+
+
+	/**
+	 * The default query timeout, in seconds.
+	 */
+	public static final int DEFAULT_QUERY_TIMEOUT = 5;
+
+
+	/**
+	 * The data source.
+	 */
+	private final DataSource dataSource;
+
+
+	/**
+	 * The lookup query.
+	 */
+	private final String query;
+
+
+	/**
+	 * {@code true} if the database is keyed by SHA-256 digests.
+	 */
+	private final boolean hashed;
+
+
+	/**
+	 * The query timeout, in seconds, zero if none.
+	 */
+	private final int queryTimeout;
+
+
+	/**
+	 * Creates a new JDBC API key store with the
+	 * {@link #DEFAULT_QUERY_TIMEOUT default query timeout}.
+	 *
+	 * @param dataSource The data source. Must not be {@code null}.
+	 * @param query      The SQL query, with a single parameter for the
+	 *                   API key. Must not be {@code null}.
+	 * @param hashed     If {@code true} the query is passed the
+	 *                   hexadecimal SHA-256 digest of the API key, see
+	 *                   {@link APIKey#getSHA256Digest}.
+	 */
+	public JDBCAPIKeyStore(final DataSource dataSource, final String query, final boolean hashed) {
+
+		this(dataSource, query, hashed, DEFAULT_QUERY_TIMEOUT);
+	}
+
+
+	/**
+	 * Creates a new JDBC API key store.
+	 *
+	 * @param dataSource   The data source. Must not be {@code null}.
+	 * @param query        The SQL query, with a single parameter for the
+	 *                     API key. Must not be {@code null}.
+	 * @param hashed       If {@code true} the query is passed the
+	 *                     hexadecimal SHA-256 digest of the API key,
+	 *                     see {@link APIKey#getSHA256Digest}.
+	 * @param queryTimeout The query timeout, in seconds, zero if none.
+	 *                     Must not be negative.
+	 */
+	public JDBCAPIKeyStore(final DataSource dataSource,
+	                       final String query,
+	                       final boolean hashed,
+	                       final int queryTimeout) {
+
+		if (dataSource == null)
+			throw new IllegalArgumentException("The data source must not be null");
+
+		if (query == null)
+			throw new IllegalArgumentException("The query must not be null");
+
+		if (queryTimeout < 0)
+			throw new IllegalArgumentException("The query timeout must not be negative");
+
+		this.dataSource = dataSource;
+		this.query = query;
+		this.hashed = hashed;
+		this.queryTimeout = queryTimeout;
+	}
+
+
+	/**
+	 * Gets the SQL query.
+	 *
+	 * @return The SQL query.
+	 */
+	public String getQuery() {
+
+		return query;
+	}
+
+
+	/**
+	 * Returns {@code true} if the database is keyed by the SHA-256 digests
+	 * of the API keys.
+	 *
+	 * @return {@code true} if the API keys are hashed, else
+	 *         {@code false}.
+	 */
+	public boolean hasHashedKeys() {
+
+		return hashed;
+	}
+
+
+	/**
+	 * Gets the query timeout.
+	 *
+	 * @return The query timeout, in seconds, zero if none.
+	 */
+	public int getQueryTimeout() {
+
+		return queryTimeout;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Set<String> getMethods(final String key)
+		throws APIKeyStoreException {
+
+		final String param = hashed ? APIKeyDigest.toHex(APIKeyDigest.sha256(key)) : key;
+
+		try {
+			Connection con = dataSource.getConnection();
+
+			try {
+				PreparedStatement stmt = con.prepareStatement(query);
+
+				try {
+					stmt.setQueryTimeout(queryTimeout);
+					stmt.setString(1, param);
+
+					ResultSet rs = stmt.executeQuery();
+
+					try {
+						return readMethods(rs);
+
+					} finally {
+						rs.close();
+					}
+
+				} finally {
+					stmt.close();
+				}
+
+			} finally {
+				con.close();
+			}
+
+		} catch (SQLException e) {
+
+			throw new APIKeyStoreException("API key lookup failed: " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Reads the allowed methods from the specified query result.
+	 *
+	 * @param rs The query result.
+	 *
+	 * @return The allowed methods, {@code null} if there are no rows.
+	 *
+	 * @throws SQLException If reading failed.
+	 */
+	private static Set<String> readMethods(final ResultSet rs)
+		throws SQLException {
+
+		Set<String> methods = null;
+
+		while (rs.next()) {
+
+			if (methods == null)
+				methods = new HashSet<String>();
+
+			String value = rs.getString(1);
+
+			if (value == null)
+				continue;
+
+			for (String method: value.trim().split("\\s+")) {
+
+				if (! method.isEmpty())
+					methods.add(method);
+			}
+		}
+
+		return methods != null ? Collections.unmodifiableSet(methods) : null;
+	}
+}
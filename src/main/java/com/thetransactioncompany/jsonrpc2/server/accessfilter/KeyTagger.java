@@ -0,0 +1,199 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.nio.charset.Charset;
+
+import java.security.SecureRandom;
+
+
+/**
+ * Computes keyed 128-bit SipHash-2-4 tags of API keys, with a random secret
+ * chosen when the tagger is created. A tag is cheap to compute compared to
+ * the SHA-256 digest and, without the secret, reveals nothing about the key,
+ * so tags can stand in for the keys in in-memory tables.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class KeyTagger {
+
+
+	/**
+	 * Immutable 128-bit key tag.
+	 */
+	static final class Tag {
+
+
+		/**
+		 * The first 64 bits.
+		 */
+		final long h0;
+
+
+		/**
+		 * The second 64 bits.
+		 */
+		final long h1;
+
+
+		/**
+		 * Creates a new key tag.
+		 *
+		 * @param h0 The first 64 bits.
+		 * @param h1 The second 64 bits.
+		 */
+		Tag(final long h0, final long h1) {
+
+			this.h0 = h0;
+			this.h1 = h1;
+		}
+
+
+		/**
+		 * @inheritDoc
+		 */
+		public int hashCode() {
+
+			return (int)h0;
+		}
+
+
+		/**
+		 * Compares the tags in constant time.
+		 *
+		 * @inheritDoc
+		 */
+		public boolean equals(final Object object) {
+
+			if (! (object instanceof Tag))
+				return false;
+
+			final Tag other = (Tag)object;
+
+			return ((h0 ^ other.h0) | (h1 ^ other.h1)) == 0L;
+		}
+	}
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The first 64 bits of the secret.
+	 */
+	private final long k0;
+
+
+	/**
+	 * The second 64 bits of the secret.
+	 */
+	private final long k1;
+
+
+	/**
+	 * Creates a new key tagger with a random secret.
+	 */
+	KeyTagger() {
+
+		this(new SecureRandom());
+	}
+
+
+	/**
+	 * Creates a new key tagger with a secret from the specified source.
+	 *
+	 * @param random The secret source. Must not be {@code null}.
+	 */
+	KeyTagger(final SecureRandom random) {
+
+		k0 = random.nextLong();
+		k1 = random.nextLong();
+	}
+
+
+	/**
+	 * Computes the tag of the specified API key.
+	 *
+	 * @param key The API key value, UTF-8 encoded for hashing. Must not be
+	 *            {@code null}.
+	 *
+	 * @return The tag.
+	 */
+	Tag tag(final String key) {
+
+		return sipHash128(k0, k1, key.getBytes(UTF8));
+	}
+
+
+	/**
+	 * Computes the 128-bit SipHash-2-4 of the specified message.
+	 *
+	 * @param k0  The first 64 bits of the secret, little-endian.
+	 * @param k1  The second 64 bits of the secret, little-endian.
+	 * @param msg The message. Must not be {@code null}.
+	 *
+	 * @return The hash, as a tag.
+	 */
+	static Tag sipHash128(final long k0, final long k1, final byte[] msg) {
+
+		long v0 = k0 ^ 0x736f6d6570736575L;
+		long v1 = k1 ^ 0x646f72616e646f6dL ^ 0xeeL;
+		long v2 = k0 ^ 0x6c7967656e657261L;
+		long v3 = k1 ^ 0x7465646279746573L;
+
+		final int end = msg.length & ~7;
+
+		for (int i=0; i <= end; i += 8) {
+
+			long m;
+
+			if (i < end) {
+				m = 0L;
+
+				for (int j=7; j >= 0; j--)
+					m = (m << 8) | (msg[i + j] & 0xffL);
+			} else {
+				// Last block: the remaining bytes and the length
+				m = (long)msg.length << 56;
+
+				for (int j=msg.length - end - 1; j >= 0; j--)
+					m |= (msg[i + j] & 0xffL) << (j * 8);
+			}
+
+			v3 ^= m;
+
+			for (int r=0; r < 2; r++) {
+				v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+				v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+				v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+				v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+			}
+
+			v0 ^= m;
+		}
+
+		v2 ^= 0xeeL;
+
+		for (int r=0; r < 4; r++) {
+			v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+			v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+			v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+			v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+		}
+
+		final long h0 = v0 ^ v1 ^ v2 ^ v3;
+
+		v1 ^= 0xddL;
+
+		for (int r=0; r < 4; r++) {
+			v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+			v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+			v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+			v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+		}
+
+		return new Tag(h0, v0 ^ v1 ^ v2 ^ v3);
+	}
+}
@@ -0,0 +1,182 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Open-addressed hash set of primitive 128-bit values, held as pairs of 
+ * longs, used to look up IPv6 addresses without allocating. Lookups do not 
+ * allocate.
+ *
+ * <p>The set is not thread-safe for modification. It is intended to be
+ * populated once and then safely published for concurrent reads.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class LongPairHashSet {
+
+
+	/**
+	 * The hash table, the high and low 64 bits of each value are stored
+	 * in adjacent elements. A zero pair marks an empty slot.
+	 */
+	private long[] table;
+
+
+	/**
+	 * Indicates whether the set contains the zero pair, which cannot be
+	 * stored in the table.
+	 */
+	private boolean containsZero;
+
+
+	/**
+	 * The number of values in the set.
+	 */
+	private int size;
+
+
+	/**
+	 * Creates a new empty set.
+	 *
+	 * @param expectedSize The expected number of values.
+	 */
+	LongPairHashSet(final int expectedSize) {
+
+		table = new long[2 * IntHashSet.tableSizeFor(expectedSize)];
+	}
+
+
+	/**
+	 * Mixes the bits of the specified value pair (MurmurHash3 64-bit
+	 * finaliser).
+	 *
+	 * @param hi The high 64 bits.
+	 * @param lo The low 64 bits.
+	 *
+	 * @return The hash.
+	 */
+	static int mix(final long hi, final long lo) {
+
+		long h = hi * 0x9e3779b97f4a7c15L ^ lo;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int)h;
+	}
+
+
+	/**
+	 * Adds the specified value to the set.
+	 *
+	 * @param hi The high 64 bits.
+	 * @param lo The low 64 bits.
+	 */
+	void add(final long hi, final long lo) {
+
+		if (hi == 0 && lo == 0) {
+
+			if (! containsZero) {
+				containsZero = true;
+				size++;
+			}
+
+			return;
+		}
+
+		if ((size + 1) * 4 > table.length)
+			rehash(table.length << 1);
+
+		if (insert(table, hi, lo))
+			size++;
+	}
+
+
+	/**
+	 * Inserts the specified non-zero value into the specified table.
+	 *
+	 * @param t  The table.
+	 * @param hi The high 64 bits.
+	 * @param lo The low 64 bits.
+	 *
+	 * @return {@code true} if the value was inserted, {@code false} if it
+	 *         was already present.
+	 */
+	private static boolean insert(final long[] t, final long hi, final long lo) {
+
+		final int mask = (t.length >> 1) - 1;
+
+		for (int i = mix(hi, lo) & mask; ; i = (i + 1) & mask) {
+
+			final int k = i << 1;
+
+			if (t[k] == hi && t[k + 1] == lo)
+				return false;
+
+			if (t[k] == 0 && t[k + 1] == 0) {
+				t[k] = hi;
+				t[k + 1] = lo;
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Resizes the table.
+	 *
+	 * @param newLength The new table array length.
+	 */
+	private void rehash(final int newLength) {
+
+		final long[] t = new long[newLength];
+
+		for (int k = 0; k < table.length; k += 2) {
+
+			if (table[k] != 0 || table[k + 1] != 0)
+				insert(t, table[k], table[k + 1]);
+		}
+
+		table = t;
+	}
+
+
+	/**
+	 * Checks if the set contains the specified value.
+	 *
+	 * @param hi The high 64 bits.
+	 * @param lo The low 64 bits.
+	 *
+	 * @return {@code true} if the value is contained, else {@code false}.
+	 */
+	boolean contains(final long hi, final long lo) {
+
+		if (hi == 0 && lo == 0)
+			return containsZero;
+
+		final long[] t = table;
+		final int mask = (t.length >> 1) - 1;
+
+		for (int i = mix(hi, lo) & mask; ; i = (i + 1) & mask) {
+
+			final int k = i << 1;
+
+			if (t[k] == hi && t[k + 1] == lo)
+				return true;
+
+			if (t[k] == 0 && t[k + 1] == 0)
+				return false;
+		}
+	}
+
+
+	/**
+	 * Returns the number of values in the set.
+	 *
+	 * @return The set size.
+	 */
+	int size() {
+
+		return size;
+	}
+}
@@ -0,0 +1,626 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Read-only API key index in a memory-mapped file, for key sets too large
+ * to hold on the Java heap. The file is built with {@link #write} and
+ * opened with {@link #open}, which maps it without reading the keys, so the
+ * heap use and the opening time don't grow with the number of keys. Only
+ * the distinct method sets are loaded on the heap.
+ *
+ * <p>The keys are indexed by their SHA-256 digest, truncated to 128 bits,
+ * in an open-addressed table of fixed-width slots, each with the ID of the
+ * key's method set. A Bloom filter in front of the table rejects most
+ * unknown keys without probing it. The keys themselves are not stored.
+ *
+ * <p>File layout, big-endian: a 64 byte header with the magic number, the
+ * format version, the number of keys, slots, Bloom filter words, Bloom
+ * filter hashes and method sets, and the method sets offset; followed by
+ * the Bloom filter bits, the 24 byte slots with the 16 byte key hash and
+ * the method set ID plus one (zero for an empty slot), and the method sets
+ * as counted lists of length-prefixed UTF-8 strings.
+ *
+ * <p>The index can be used as an {@link APIKeyStore}, or directly by an
+ * {@link APIKeyFilter}, which then compiles the method sets at
+ * initialisation and checks requests without a lookup cache.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class MappedKeyIndex implements APIKeyStore {
+
+
+	/**
+	 * The magic number, "JRKI".
+	 */
+	static final int MAGIC = 0x4a524b49;
+
+
+	/**
+	 * The file format version.
+	 */
+	static final int VERSION = 1;
+
+
+	/**
+	 * The header size in bytes.
+	 */
+	static final int HEADER_SIZE = 64;
+
+
+	/**
+	 * The slot size in bytes.
+	 */
+	static final int SLOT_SIZE = 24;
+
+
+	/**
+	 * The Bloom filter bits per key.
+	 */
+	static final int BLOOM_BITS_PER_KEY = 10;
+
+
+	/**
+	 * The number of Bloom filter hashes, optimal for the bits per key.
+	 */
+	static final int BLOOM_HASHES = 7;
+
+
+	/**
+	 * The mapped file contents.
+	 */
+	private final MappedByteBuffer buffer;
+
+
+	/**
+	 * The number of keys.
+	 */
+	private final int keyCount;
+
+
+	/**
+	 * The slot mask, the number of slots minus one.
+	 */
+	private final int slotMask;
+
+
+	/**
+	 * The offset of the slots.
+	 */
+	private final int slotsOffset;
+
+
+	/**
+	 * The number of Bloom filter bits.
+	 */
+	private final long bloomBits;
+
+
+	/**
+	 * The number of Bloom filter hashes.
+	 */
+	private final int bloomHashes;
+
+
+	/**
+	 * The method sets, by ID.
+	 */
+	private final List<Set<String>> methodSets;
+
+
+	/**
+	 * Creates a new mapped key index.
+	 *
+	 * @param buffer      The mapped file contents.
+	 * @param keyCount    The number of keys.
+	 * @param slots       The number of slots.
+	 * @param bloomWords  The number of Bloom filter words.
+	 * @param bloomHashes The number of Bloom filter hashes.
+	 * @param methodSets  The method sets.
+	 */
+	private MappedKeyIndex(final MappedByteBuffer buffer,
+	                       final int keyCount,
+	                       final int slots,
+	                       final int bloomWords,
+	                       final int bloomHashes,
+	                       final List<Set<String>> methodSets) {
+
+		this.buffer = buffer;
+		this.keyCount = keyCount;
+		this.slotMask = slots - 1;
+		this.slotsOffset = HEADER_SIZE + bloomWords * 8;
+		this.bloomBits = bloomWords * 64L;
+		this.bloomHashes = bloomHashes;
+		this.methodSets = methodSets;
+	}
+
+
+	/**
+	 * Opens the specified key index file.
+	 *
+	 * @param file The key index file. Must not be {@code null}.
+	 *
+	 * @return The key index.
+	 *
+	 * @throws IOException If the file couldn't be opened or mapped, or
+	 *                     isn't a valid key index file.
+	 */
+	public static MappedKeyIndex open(final File file)
+		throws IOException {
+
+		if (file == null)
+			throw new IllegalArgumentException("The key index file must not be null");
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			if (raf.length() < HEADER_SIZE || raf.length() > Integer.MAX_VALUE)
+				throw new IOException("Not a key index file: " + file);
+
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length());
+
+			if (buffer.getInt(0) != MAGIC)
+				throw new IOException("Not a key index file: " + file);
+
+			final int version = buffer.getInt(4);
+
+			if (version != VERSION)
+				throw new IOException("Unsupported key index file version " + version + ": " + file);
+
+			final int keyCount = buffer.getInt(8);
+			final int slots = buffer.getInt(12);
+			final int bloomWords = buffer.getInt(16);
+			final int bloomHashes = buffer.getInt(20);
+			final int setCount = buffer.getInt(24);
+			final long setsOffset = buffer.getLong(28);
+
+			if (slots < 1 || Integer.bitCount(slots) != 1 || keyCount < 0 || keyCount >= slots ||
+			    bloomWords < 1 || bloomHashes < 1 || setCount < 0 ||
+			    setsOffset != HEADER_SIZE + bloomWords * 8L + (long)slots * SLOT_SIZE ||
+			    setsOffset > raf.length())
+				throw new IOException("Corrupted key index file: " + file);
+
+			List<Set<String>> methodSets;
+
+			try {
+				methodSets = readMethodSets(buffer, (int)setsOffset, setCount);
+
+			} catch (RuntimeException e) {
+
+				throw new IOException("Corrupted key index file: " + file);
+			}
+
+			return new MappedKeyIndex(buffer, keyCount, slots, bloomWords, bloomHashes, methodSets);
+
+		} finally {
+			// The mapping remains valid
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Writes a key index file for the specified API key map. The index is
+	 * written to a temporary file in the same directory, which is then
+	 * renamed atomically, so an index opened from the replaced file stays
+	 * valid.
+	 *
+	 * @param keyMap The map of API keys to their allowed JSON-RPC 2.0
+	 *               methods, as for {@link APIKeyFilter}. Must not be
+	 *               {@code null}.
+	 * @param hashed If {@code true} the API keys in the map are
+	 *               hexadecimal SHA-256 digests.
+	 * @param file   The file to write, replaced if it exists. Must not be
+	 *               {@code null}.
+	 *
+	 * @throws IllegalArgumentException If an API key is not a valid
+	 *                                  SHA-256 digest or the index would
+	 *                                  exceed 2 GB.
+	 * @throws IOException              If writing the file failed.
+	 */
+	public static void write(final Map<APIKey,Set<String>> keyMap, final boolean hashed, final File file)
+		throws IOException {
+
+		if (keyMap == null)
+			throw new IllegalArgumentException("The API key map must not be null");
+
+		if (file == null)
+			throw new IllegalArgumentException("The key index file must not be null");
+
+		// Half full at most, for short probe runs
+		final long slots = Math.max(2L, Long.highestOneBit(Math.max(1L, keyMap.size() * 2L - 1L)) << 1);
+		final long bloomWords = Math.max(1L, (keyMap.size() * (long)BLOOM_BITS_PER_KEY + 63L) / 64L);
+
+		// Number the distinct method sets
+		Map<Set<String>,Integer> setIDs = new HashMap<Set<String>,Integer>();
+		List<Set<String>> sets = new ArrayList<Set<String>>();
+
+		for (Set<String> methods: keyMap.values()) {
+
+			if (! setIDs.containsKey(methods)) {
+				setIDs.put(methods, sets.size());
+				sets.add(methods);
+			}
+		}
+
+		byte[] setBytes = encodeMethodSets(sets);
+
+		final long setsOffset = HEADER_SIZE + bloomWords * 8L + slots * SLOT_SIZE;
+		final long length = setsOffset + setBytes.length;
+
+		if (length > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The key index would exceed 2 GB");
+
+		// Never truncate the file in place, it may be mapped by a running
+		// server
+		final File tmp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+
+		boolean renamed = false;
+
+		try {
+			writeIndex(keyMap, hashed, tmp, length, (int)slots, (int)bloomWords, setsOffset, setIDs, sets, setBytes);
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+			renamed = true;
+
+		} finally {
+
+			if (! renamed)
+				tmp.delete();
+		}
+	}
+
+
+	/**
+	 * Writes a key index to the specified new file.
+	 *
+	 * @param keyMap     The map of API keys to their allowed JSON-RPC 2.0
+	 *                   methods.
+	 * @param hashed     If {@code true} the API keys in the map are
+	 *                   hexadecimal SHA-256 digests.
+	 * @param file       The empty file to write.
+	 * @param length     The file length.
+	 * @param slots      The number of slots.
+	 * @param bloomWords The number of Bloom filter words.
+	 * @param setsOffset The method sets offset.
+	 * @param setIDs     The method set IDs.
+	 * @param sets       The method sets, by ID.
+	 * @param setBytes   The encoded method sets.
+	 *
+	 * @throws IOException If writing the file failed.
+	 */
+	private static void writeIndex(final Map<APIKey,Set<String>> keyMap,
+	                               final boolean hashed,
+	                               final File file,
+	                               final long length,
+	                               final int slots,
+	                               final int bloomWords,
+	                               final long setsOffset,
+	                               final Map<Set<String>,Integer> setIDs,
+	                               final List<Set<String>> sets,
+	                               final byte[] setBytes)
+		throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try {
+			// Start from zeroed slots and Bloom filter
+			raf.setLength(length);
+
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, length);
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, keyMap.size());
+			buffer.putInt(12, slots);
+			buffer.putInt(16, bloomWords);
+			buffer.putInt(20, BLOOM_HASHES);
+			buffer.putInt(24, sets.size());
+			buffer.putLong(28, setsOffset);
+
+			MappedKeyIndex index = new MappedKeyIndex(buffer, 0, slots, bloomWords, BLOOM_HASHES, sets);
+
+			for (Map.Entry<APIKey,Set<String>> en: keyMap.entrySet()) {
+
+				byte[] digest = hashed ? APIKeyDigest.parseHex(en.getKey().toString()) : APIKeyDigest.sha256(en.getKey().toString());
+
+				if (digest == null)
+					throw new IllegalArgumentException("Invalid SHA-256 API key digest: " + en.getKey());
+
+				index.put(digest, setIDs.get(en.getValue()));
+			}
+
+			for (int i=0; i < setBytes.length; i++)
+				buffer.put((int)setsOffset + i, setBytes[i]);
+
+			buffer.force();
+
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Gets the number of API keys in this index.
+	 *
+	 * @return The number of API keys.
+	 */
+	public int size() {
+
+		return keyCount;
+	}
+
+
+	/**
+	 * Gets the number of distinct method sets in this index.
+	 *
+	 * @return The number of method sets.
+	 */
+	public int getMethodSetCount() {
+
+		return methodSets.size();
+	}
+
+
+	/**
+	 * Gets the method set with the specified ID.
+	 *
+	 * @param id The method set ID, from zero to the
+	 *           {@link #getMethodSetCount number of method sets} minus
+	 *           one.
+	 *
+	 * @return The unmodifiable method set.
+	 */
+	public Set<String> getMethodSet(final int id) {
+
+		return methodSets.get(id);
+	}
+
+
+	/**
+	 * Looks up the method set ID of the specified API key.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The method set ID, -1 if the API key is not known or its
+	 *         slot is corrupted.
+	 */
+	public int lookup(final String key) {
+
+		return lookup(APIKeyDigest.sha256(key));
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Set<String> getMethods(final String key) {
+
+		final int id = lookup(key);
+
+		return id >= 0 ? methodSets.get(id) : null;
+	}
+
+
+	/**
+	 * Looks up the method set ID of the specified key digest.
+	 *
+	 * @param digest The SHA-256 digest of the API key.
+	 *
+	 * @return The method set ID, -1 if the key is not known or its slot
+	 *         is corrupted.
+	 */
+	int lookup(final byte[] digest) {
+
+		final long hashA = readLong(digest, 0);
+		final long hashB = readLong(digest, 8);
+
+		if (! mightContain(readLong(digest, 16), readLong(digest, 24)))
+			return -1;
+
+		// Probe each slot at most once, a corrupted file may have no
+		// empty slot
+		for (int n=0, i = (int)hashA & slotMask; n <= slotMask; n++, i = (i + 1) & slotMask) {
+
+			final int base = slotsOffset + i * SLOT_SIZE;
+
+			final int id = buffer.getInt(base + 16);
+
+			if (id == 0)
+				return -1;
+
+			if (buffer.getLong(base) == hashA && buffer.getLong(base + 8) == hashB) {
+
+				// The slots aren't validated at open, a corrupted
+				// method set ID is treated as an unknown key
+				if (id < 0 || id > methodSets.size())
+					return -1;
+
+				return id - 1;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Checks the Bloom filter for the specified key hashes.
+	 *
+	 * @param h1 The first Bloom filter hash.
+	 * @param h2 The second Bloom filter hash.
+	 *
+	 * @return {@code false} if the key is definitely not in the index.
+	 */
+	private boolean mightContain(final long h1, final long h2) {
+
+		// Double hashing, with an odd step
+		final long step = h2 | 1L;
+
+		for (int i=0; i < bloomHashes; i++) {
+
+			final long bit = ((h1 + i * step) & Long.MAX_VALUE) % bloomBits;
+
+			if ((buffer.getLong(HEADER_SIZE + (int)(bit >>> 6) * 8) & (1L << bit)) == 0L)
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Adds the specified key digest to the slots and the Bloom filter,
+	 * while writing the index.
+	 *
+	 * @param digest The SHA-256 digest of the API key.
+	 * @param id     The method set ID.
+	 */
+	private void put(final byte[] digest, final int id) {
+
+		final long hashA = readLong(digest, 0);
+		final long hashB = readLong(digest, 8);
+
+		final long h1 = readLong(digest, 16);
+		final long step = readLong(digest, 24) | 1L;
+
+		for (int i=0; i < bloomHashes; i++) {
+
+			final long bit = ((h1 + i * step) & Long.MAX_VALUE) % bloomBits;
+
+			final int offset = HEADER_SIZE + (int)(bit >>> 6) * 8;
+
+			buffer.putLong(offset, buffer.getLong(offset) | (1L << bit));
+		}
+
+		for (int i = (int)hashA & slotMask; ; i = (i + 1) & slotMask) {
+
+			final int base = slotsOffset + i * SLOT_SIZE;
+
+			if (buffer.getInt(base + 16) == 0) {
+				buffer.putLong(base, hashA);
+				buffer.putLong(base + 8, hashB);
+				buffer.putInt(base + 16, id + 1);
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Encodes the specified method sets.
+	 *
+	 * @param sets The method sets.
+	 *
+	 * @return The encoded method sets.
+	 */
+	private static byte[] encodeMethodSets(final List<Set<String>> sets) {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			for (Set<String> methods: sets) {
+
+				out.writeInt(methods.size());
+
+				for (String method: methods) {
+					byte[] b = method.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(b.length);
+					out.write(b);
+				}
+			}
+
+		} catch (IOException e) {
+
+			// Not thrown by byte array streams
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Reads the method sets from the specified buffer.
+	 *
+	 * @param buffer The buffer.
+	 * @param offset The offset of the method sets.
+	 * @param count  The number of method sets.
+	 *
+	 * @return The unmodifiable method sets, equal sets sharing the same
+	 *         instance.
+	 */
+	private static List<Set<String>> readMethodSets(final MappedByteBuffer buffer, final int offset, final int count) {
+
+		List<Set<String>> sets = new ArrayList<Set<String>>(count);
+
+		int pos = offset;
+
+		for (int i=0; i < count; i++) {
+
+			final int size = buffer.getInt(pos);
+			pos += 4;
+
+			Set<String> methods = new HashSet<String>();
+
+			for (int j=0; j < size; j++) {
+
+				final int length = buffer.getInt(pos);
+				pos += 4;
+
+				byte[] b = new byte[length];
+
+				for (int k=0; k < length; k++)
+					b[k] = buffer.get(pos + k);
+
+				pos += length;
+
+				methods.add(new String(b, StandardCharsets.UTF_8));
+			}
+
+			sets.add(Collections.unmodifiableSet(methods));
+		}
+
+		return Collections.unmodifiableList(sets);
+	}
+
+
+	/**
+	 * Reads a big-endian long from the specified bytes.
+	 *
+	 * @param b      The bytes.
+	 * @param offset The offset.
+	 *
+	 * @return The long.
+	 */
+	private static long readLong(final byte[] b, final int offset) {
+
+		long v = 0L;
+
+		for (int i=0; i < 8; i++)
+			v = (v << 8) | (b[offset + i] & 0xffL);
+
+		return v;
+	}
+}
@@ -0,0 +1,356 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+
+/**
+ * Immutable matcher of JSON-RPC 2.0 method names against a set of glob
+ * patterns, for example "billing.*" or "*.get". An asterisk matches any
+ * sequence of characters, including none and including dots; a question
+ * mark matches any single character. All other characters match literally.
+ *
+ * <p>The patterns are compiled into a single deterministic finite automaton,
+ * so matching a method name takes one pass over its characters, regardless
+ * of the number of patterns. Matching does not allocate.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class MethodPatternMatcher {
+
+
+	/**
+	 * The maximum number of automaton states.
+	 */
+	static final int MAX_STATES = 10000;
+
+
+	/**
+	 * The dead state, from which no pattern can match.
+	 */
+	private static final int DEAD = -1;
+
+
+	/**
+	 * The sorted distinct patterns.
+	 */
+	private final String[] patterns;
+
+
+	/**
+	 * The character class of each ASCII character.
+	 */
+	private final int[] asciiClasses;
+
+
+	/**
+	 * The sorted non-ASCII literal characters of the patterns.
+	 */
+	private final char[] otherChars;
+
+
+	/**
+	 * The character classes of the non-ASCII literal characters.
+	 */
+	private final int[] otherClasses;
+
+
+	/**
+	 * The number of character classes. Class zero stands for all
+	 * characters which don't appear literally in the patterns.
+	 */
+	private final int numClasses;
+
+
+	/**
+	 * The transition table, indexed by state and character class.
+	 */
+	private final int[] transitions;
+
+
+	/**
+	 * The accepting states.
+	 */
+	private final boolean[] accepting;
+
+
+	/**
+	 * Returns {@code true} if the specified method name is a glob pattern.
+	 *
+	 * @param method The method name. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the name contains an asterisk or question
+	 *         mark, else {@code false}.
+	 */
+	static boolean isPattern(final String method) {
+
+		return method.indexOf('*') >= 0 || method.indexOf('?') >= 0;
+	}
+
+
+	/**
+	 * Compiles the specified glob patterns.
+	 *
+	 * @param patterns The glob patterns. Must not be {@code null} or
+	 *                 empty.
+	 *
+	 * @return The pattern matcher.
+	 *
+	 * @throws IllegalArgumentException If the patterns produce more than
+	 *                                  {@link #MAX_STATES} automaton
+	 *                                  states.
+	 */
+	static MethodPatternMatcher compile(final Collection<String> patterns) {
+
+		if (patterns.isEmpty())
+			throw new IllegalArgumentException("The method patterns must not be empty");
+
+		return new MethodPatternMatcher(new TreeSet<String>(patterns).toArray(new String[0]));
+	}
+
+
+	/**
+	 * Creates a new pattern matcher.
+	 *
+	 * @param patterns The sorted distinct glob patterns.
+	 */
+	private MethodPatternMatcher(final String[] patterns) {
+
+		this.patterns = patterns;
+
+		// Assign a class to each distinct literal character
+		TreeSet<Character> literals = new TreeSet<Character>();
+
+		for (String p: patterns) {
+
+			for (int i=0; i < p.length(); i++) {
+
+				char c = p.charAt(i);
+
+				if (c != '*' && c != '?')
+					literals.add(c);
+			}
+		}
+
+		asciiClasses = new int[128];
+		List<Character> others = new ArrayList<Character>();
+
+		int nextClass = 1;
+
+		for (char c: literals) {
+
+			if (c < 128)
+				asciiClasses[c] = nextClass++;
+			else
+				others.add(c);
+		}
+
+		otherChars = new char[others.size()];
+		otherClasses = new int[others.size()];
+
+		for (int i=0; i < others.size(); i++) {
+			otherChars[i] = others.get(i);
+			otherClasses[i] = nextClass++;
+		}
+
+		numClasses = nextClass;
+
+		// A representative character for each class, class zero
+		// is represented by "no literal"
+		char[] representative = new char[numClasses];
+
+		for (char c: literals)
+			representative[classOf(c)] = c;
+
+		// NFA positions: one per pattern character plus the end
+		int[] offsets = new int[patterns.length + 1];
+
+		for (int i=0; i < patterns.length; i++)
+			offsets[i + 1] = offsets[i] + patterns[i].length() + 1;
+
+		// Subset construction
+		Map<BitSet,Integer> stateIDs = new HashMap<BitSet,Integer>();
+		List<BitSet> states = new ArrayList<BitSet>();
+
+		BitSet start = new BitSet();
+
+		for (int i=0; i < patterns.length; i++)
+			addClosure(patterns[i], offsets[i], 0, start);
+
+		stateIDs.put(start, 0);
+		states.add(start);
+
+		int[] table = new int[numClasses * 16];
+
+		for (int s=0; s < states.size(); s++) {
+
+			BitSet current = states.get(s);
+
+			for (int cls=0; cls < numClasses; cls++) {
+
+				BitSet next = new BitSet();
+
+				for (int i=0; i < patterns.length; i++) {
+
+					String p = patterns[i];
+
+					for (int pos=0; pos < p.length(); pos++) {
+
+						if (! current.get(offsets[i] + pos))
+							continue;
+
+						char pc = p.charAt(pos);
+
+						if (pc == '*')
+							addClosure(p, offsets[i], pos, next);
+						else if (pc == '?' || (cls != 0 && pc == representative[cls]))
+							addClosure(p, offsets[i], pos + 1, next);
+					}
+				}
+
+				int target = DEAD;
+
+				if (! next.isEmpty()) {
+
+					Integer id = stateIDs.get(next);
+
+					if (id == null) {
+
+						if (states.size() == MAX_STATES)
+							throw new IllegalArgumentException("The method patterns are too complex: " + Arrays.toString(patterns));
+
+						id = states.size();
+						stateIDs.put(next, id);
+						states.add(next);
+					}
+
+					target = id;
+				}
+
+				int index = s * numClasses + cls;
+
+				if (index >= table.length)
+					table = Arrays.copyOf(table, table.length * 2);
+
+				table[index] = target;
+			}
+		}
+
+		transitions = Arrays.copyOf(table, states.size() * numClasses);
+
+		accepting = new boolean[states.size()];
+
+		for (int s=0; s < states.size(); s++) {
+
+			for (int i=0; i < patterns.length && ! accepting[s]; i++)
+				accepting[s] = states.get(s).get(offsets[i] + patterns[i].length());
+		}
+	}
+
+
+	/**
+	 * Adds the specified NFA position and the positions reachable from it
+	 * by skipping asterisks.
+	 *
+	 * @param pattern The pattern.
+	 * @param offset  The offset of the pattern positions.
+	 * @param pos     The position within the pattern.
+	 * @param set     The set of positions to add to.
+	 */
+	private static void addClosure(final String pattern, final int offset, int pos, final BitSet set) {
+
+		set.set(offset + pos);
+
+		while (pos < pattern.length() && pattern.charAt(pos) == '*')
+			set.set(offset + ++pos);
+	}
+
+
+	/**
+	 * Returns the character class of the specified character.
+	 *
+	 * @param c The character.
+	 *
+	 * @return The character class.
+	 */
+	private int classOf(final char c) {
+
+		if (c < 128)
+			return asciiClasses[c];
+
+		final int i = Arrays.binarySearch(otherChars, c);
+
+		return i >= 0 ? otherClasses[i] : 0;
+	}
+
+
+	/**
+	 * Returns the number of automaton states.
+	 *
+	 * @return The number of states.
+	 */
+	int getStateCount() {
+
+		return accepting.length;
+	}
+
+
+	/**
+	 * Checks if the specified method name matches any of the patterns.
+	 *
+	 * @param method The method name. May be {@code null}.
+	 *
+	 * @return {@code true} if the method name matches, else
+	 *         {@code false}.
+	 */
+	boolean matches(final String method) {
+
+		if (method == null)
+			return false;
+
+		int state = 0;
+
+		for (int i=0; i < method.length(); i++) {
+
+			state = transitions[state * numClasses + classOf(method.charAt(i))];
+
+			if (state == DEAD)
+				return false;
+		}
+
+		return accepting[state];
+	}
+
+
+	/**
+	 * Overrides {@code Object.hashCode()}.
+	 *
+	 * @return The object hash code.
+	 */
+	public int hashCode() {
+
+		return Arrays.hashCode(patterns);
+	}
+
+
+	/**
+	 * Overrides {@code Object.equals()}.
+	 *
+	 * @param object The object to compare to.
+	 *
+	 * @return {@code true} if the objects have the same patterns,
+	 *         otherwise {@code false}.
+	 */
+	public boolean equals(final Object object) {
+
+		return object instanceof MethodPatternMatcher &&
+		       Arrays.equals(patterns, ((MethodPatternMatcher)object).patterns);
+	}
+}
@@ -0,0 +1,287 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Immutable set of permitted JSON-RPC 2.0 methods, represented as a bitset
+ * of the method IDs in a {@link MethodSymbolTable} and an optional
+ * {@link MethodPatternMatcher} for glob patterns. Checking a method is a
+ * single bit test, plus a single pass over the method name if the method 
+ * isn't permitted by name and there are patterns.
+ *
+ * <p>Permissions compiled without a symbol table, for method sets loaded
+ * while the symbol table is in use, match the method names by string lookup
+ * instead.
+ *
+ * <p>The permissions of an API key may carry its {@link APIKeyBinding client
+ * certificate binding}, so that the binding is fetched by the same index 
+ * lookup as the permitted methods.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class MethodPermissions {
+
+
+	/**
+	 * The method name permitting any method.
+	 */
+	static final String ANY_METHOD = "*";
+
+
+	/**
+	 * Permits any method.
+	 */
+	static final MethodPermissions ANY = new MethodPermissions(true, new long[0], null, null, null);
+
+
+	/**
+	 * Permits no method.
+	 */
+	static final MethodPermissions NONE = new MethodPermissions(false, new long[0], null, null, null);
+
+
+	/**
+	 * {@code true} if any method is permitted.
+	 */
+	private final boolean any;
+
+
+	/**
+	 * The bitset of the permitted method IDs.
+	 */
+	private final long[] bits;
+
+
+	/**
+	 * The permitted method names, {@code null} if compiled into the
+	 * bitset.
+	 */
+	private final Set<String> names;
+	
+	
+	/**
+	 * The matcher of the permitted method patterns, {@code null} if
+	 * none.
+	 */
+	private final MethodPatternMatcher patterns;
+	
+	
+	/**
+	 * The client certificate binding, {@code null} if none.
+	 */
+	private final APIKeyBinding binding;
+	
+	
+	/**
+	 * Creates a new method permissions set.
+	 *
+	 * @param any      {@code true} if any method is permitted.
+	 * @param bits     The bitset of the permitted method IDs.
+	 * @param names    The permitted method names, {@code null} if 
+	 *                 compiled into the bitset.
+	 * @param patterns The matcher of the permitted method patterns,
+	 *                 {@code null} if none.
+	 * @param binding  The client certificate binding, {@code null} if
+	 *                 none.
+	 */
+	private MethodPermissions(final boolean any,
+	                          final long[] bits,
+	                          final Set<String> names,
+	                          final MethodPatternMatcher patterns,
+	                          final APIKeyBinding binding) {
+
+		this.any = any;
+		this.bits = bits;
+		this.names = names;
+		this.patterns = patterns;
+		this.binding = binding;
+	}
+
+
+	/**
+	 * Compiles the specified method names into a permissions set.
+	 *
+	 * @param methods The method names. Must not be {@code null}.
+	 * @param symbols The symbol table to intern the method names into,
+	 *                {@code null} to match the method names by string
+	 *                lookup.
+	 * @param globs   If {@code true} method names with asterisks or 
+	 *                question marks are glob patterns and the 
+	 *                {@link #ANY_METHOD} name permits any method, else
+	 *                all method names are literal.
+	 *
+	 * @return The permissions set.
+	 *
+	 * @throws IllegalArgumentException If the glob patterns are too 
+	 *                                  complex.
+	 */
+	static MethodPermissions compile(final Collection<String> methods,
+	                                 final MethodSymbolTable symbols,
+	                                 final boolean globs) {
+
+		if (globs && methods.contains(ANY_METHOD))
+			return ANY;
+
+		if (methods.isEmpty())
+			return NONE;
+
+		int maxID = -1;
+
+		final List<Integer> methodIDs = new ArrayList<Integer>(methods.size());
+		final List<String> globPatterns = new ArrayList<String>();
+		final Set<String> names = symbols == null ? new HashSet<String>() : null;
+
+		for (String m: methods) {
+
+			if (globs && MethodPatternMatcher.isPattern(m)) {
+				globPatterns.add(m);
+				continue;
+			}
+			
+			if (names != null) {
+				names.add(m);
+				continue;
+			}
+			
+			int id = symbols.intern(m);
+			methodIDs.add(id);
+			maxID = Math.max(maxID, id);
+		}
+
+		// Signed shift, no IDs make an empty bitset
+		final long[] bits = new long[(maxID >> 6) + 1];
+
+		for (int id: methodIDs)
+			bits[id >>> 6] |= 1L << id;
+
+		MethodPatternMatcher matcher = null;
+		
+		if (! globPatterns.isEmpty())
+			matcher = MethodPatternMatcher.compile(globPatterns);
+		
+		return new MethodPermissions(false, bits, names, matcher, null);
+	}
+	
+	
+	/**
+	 * Returns a copy of these permissions carrying the specified client
+	 * certificate binding. The copy shares the compiled bitset and 
+	 * patterns.
+	 *
+	 * @param binding The client certificate binding, {@code null} if 
+	 *                none.
+	 *
+	 * @return The bound permissions.
+	 */
+	MethodPermissions bind(final APIKeyBinding binding) {
+		
+		return new MethodPermissions(any, bits, names, patterns, binding);
+	}
+	
+	
+	/**
+	 * Gets the client certificate binding.
+	 *
+	 * @return The binding, {@code null} if none.
+	 */
+	APIKeyBinding getBinding() {
+		
+		return binding;
+	}
+
+
+	/**
+	 * Returns {@code true} if any method is permitted.
+	 *
+	 * @return {@code true} if any method is permitted, else
+	 *         {@code false}.
+	 */
+	boolean allowsAny() {
+
+		return any;
+	}
+
+
+	/**
+	 * Checks if the specified method is permitted by ID. Glob patterns
+	 * and names matched by string lookup are not considered.
+	 *
+	 * @param methodID The method ID, {@link MethodSymbolTable#UNKNOWN} if
+	 *                 the method name is not in the symbol table.
+	 *
+	 * @return {@code true} if the method is permitted, else
+	 *         {@code false}.
+	 */
+	boolean allows(final int methodID) {
+
+		if (any)
+			return true;
+
+		if (methodID < 0)
+			return false;
+
+		final int word = methodID >>> 6;
+
+		return word < bits.length && (bits[word] & (1L << methodID)) != 0;
+	}
+
+
+	/**
+	 * Checks if the specified method is permitted, by name or by glob
+	 * pattern.
+	 *
+	 * @param methodID The method ID, {@link MethodSymbolTable#UNKNOWN} if
+	 *                 the method name is not in the symbol table.
+	 * @param method   The method name. May be {@code null}.
+	 *
+	 * @return {@code true} if the method is permitted, else
+	 *         {@code false}.
+	 */
+	boolean allows(final int methodID, final String method) {
+		
+		return allows(methodID) || 
+		       (names != null && method != null && names.contains(method)) || 
+		       (patterns != null && patterns.matches(method));
+	}
+	
+	
+	/**
+	 * Overrides {@code Object.hashCode()}.
+	 *
+	 * @return The object hash code.
+	 */
+	public int hashCode() {
+
+		return Arrays.hashCode(bits) ^ (any ? 1 : 0) ^ (names != null ? names.hashCode() : 0) ^ (patterns != null ? patterns.hashCode() : 0) ^ (binding != null ? binding.hashCode() : 0);
+	}
+
+
+	/**
+	 * Overrides {@code Object.equals()}.
+	 *
+	 * @param object The object to compare to.
+	 *
+	 * @return {@code true} if the objects permit the same methods, with
+	 *         the same binding, otherwise {@code false}.
+	 */
+	public boolean equals(final Object object) {
+
+		if (! (object instanceof MethodPermissions))
+			return false;
+
+		MethodPermissions other = (MethodPermissions)object;
+
+		return any == other.any && 
+		       Arrays.equals(bits, other.bits) &&
+		       (names == null ? other.names == null : names.equals(other.names)) &&
+		       (patterns == null ? other.patterns == null : patterns.equals(other.patterns)) &&
+		       (binding == null ? other.binding == null : binding.equals(other.binding));
+	}
+}
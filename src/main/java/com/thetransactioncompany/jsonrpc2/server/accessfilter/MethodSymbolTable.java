@@ -0,0 +1,170 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Symbol table mapping JSON-RPC 2.0 method names to dense integer IDs,
+ * starting from zero. Backed by an open-addressed hash table, lookups do not
+ * allocate.
+ *
+ * <p>The table is not thread-safe for modification. It is intended to be
+ * populated once and then safely published for concurrent reads.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class MethodSymbolTable {
+
+
+	/**
+	 * Indicates an unknown method name.
+	 */
+	static final int UNKNOWN = -1;
+
+
+	/**
+	 * The method names, {@code null} marks an empty slot.
+	 */
+	private String[] names;
+
+
+	/**
+	 * The method IDs, parallel to the names.
+	 */
+	private int[] ids;
+
+
+	/**
+	 * The number of method names in the table.
+	 */
+	private int size;
+
+
+	/**
+	 * Creates a new empty symbol table.
+	 *
+	 * @param expectedSize The expected number of method names.
+	 */
+	MethodSymbolTable(final int expectedSize) {
+
+		final int length = IntHashSet.tableSizeFor(expectedSize);
+		names = new String[length];
+		ids = new int[length];
+	}
+	
+	
+	/**
+	 * Creates a copy of the specified symbol table, with the same method
+	 * IDs. Interning into the copy doesn't affect the original.
+	 *
+	 * @param other The symbol table to copy. Must not be {@code null}.
+	 */
+	MethodSymbolTable(final MethodSymbolTable other) {
+		
+		names = other.names.clone();
+		ids = other.ids.clone();
+		size = other.size;
+	}
+
+
+	/**
+	 * Interns the specified method name.
+	 *
+	 * @param name The method name. Must not be {@code null}.
+	 *
+	 * @return The ID of the method name, assigned on first interning.
+	 */
+	int intern(final String name) {
+
+		final int existing = get(name);
+
+		if (existing != UNKNOWN)
+			return existing;
+
+		if ((size + 1) * 2 > names.length)
+			rehash(names.length << 1);
+
+		insert(names, ids, name, size);
+		return size++;
+	}
+
+
+	/**
+	 * Inserts the specified absent method name into the specified tables.
+	 *
+	 * @param n    The names table.
+	 * @param i    The IDs table.
+	 * @param name The method name.
+	 * @param id   The method ID.
+	 */
+	private static void insert(final String[] n, final int[] i, final String name, final int id) {
+
+		final int mask = n.length - 1;
+
+		int slot = IntHashSet.mix(name.hashCode()) & mask;
+
+		while (n[slot] != null)
+			slot = (slot + 1) & mask;
+
+		n[slot] = name;
+		i[slot] = id;
+	}
+
+
+	/**
+	 * Resizes the tables.
+	 *
+	 * @param newLength The new table length, a power of two.
+	 */
+	private void rehash(final int newLength) {
+
+		final String[] n = new String[newLength];
+		final int[] i = new int[newLength];
+
+		for (int slot=0; slot < names.length; slot++) {
+
+			if (names[slot] != null)
+				insert(n, i, names[slot], ids[slot]);
+		}
+
+		names = n;
+		ids = i;
+	}
+
+
+	/**
+	 * Gets the ID of the specified method name.
+	 *
+	 * @param name The method name. May be {@code null}.
+	 *
+	 * @return The method ID, {@link #UNKNOWN} if not interned.
+	 */
+	int get(final String name) {
+
+		if (name == null)
+			return UNKNOWN;
+
+		final String[] n = names;
+		final int mask = n.length - 1;
+
+		for (int slot = IntHashSet.mix(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+
+			final String s = n[slot];
+
+			if (s == null)
+				return UNKNOWN;
+
+			if (s == name || s.equals(name))
+				return ids[slot];
+		}
+	}
+
+
+	/**
+	 * Returns the number of interned method names.
+	 *
+	 * @return The number of method names.
+	 */
+	int size() {
+
+		return size;
+	}
+}
@@ -0,0 +1,69 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Extracts the API key from a designated string parameter of a JSON-RPC 2.0
+ * request with named parameters. This is the default API key extractor.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class NamedParamAPIKeyExtractor implements APIKeyExtractor {
+
+
+	/**
+	 * The name of the JSON-RPC 2.0 parameter used to pass the API key.
+	 */
+	private final String paramName;
+
+
+	/**
+	 * Creates a new named parameter API key extractor.
+	 *
+	 * @param paramName The name of the JSON-RPC 2.0 parameter used to 
+	 *                  pass the API key. Must not be {@code null}.
+	 */
+	public NamedParamAPIKeyExtractor(final String paramName) {
+
+		if (paramName == null)
+			throw new IllegalArgumentException("The API key parameter name must not be null");
+
+		this.paramName = paramName;
+	}
+
+
+	/**
+	 * Gets the name of the JSON-RPC 2.0 parameter used to pass the API
+	 * key.
+	 *
+	 * @return The parameter name.
+	 */
+	public String getParameterName() {
+
+		return paramName;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public String extract(final JSONRPC2Request request,
+	                      final MessageContext messageCtx) {
+
+		if (request.getParamsType() != JSONRPC2ParamsType.OBJECT)
+			return null;
+
+		Map<String,Object> params = request.getNamedParams();
+
+		Object key = params != null ? params.get(paramName) : null;
+
+		return key instanceof String ? (String)key : null;
+	}
+}
@@ -0,0 +1,26 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collection;
+
+
+/**
+ * Access filter which declares ordering constraints relative to other
+ * filters. The constraints are honoured by an {@link AccessFilterChain} in
+ * {@link AccessFilterChain#enableAdaptiveOrdering adaptive ordering} mode,
+ * which is otherwise free to reorder its filters.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface OrderedAccessFilter extends AccessFilter {
+
+
+	/**
+	 * Gets the types of the access filters which must run before this
+	 * one, if present in the same chain.
+	 *
+	 * @return The types of the preceding access filters, empty collection
+	 *         if none.
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter();
+}
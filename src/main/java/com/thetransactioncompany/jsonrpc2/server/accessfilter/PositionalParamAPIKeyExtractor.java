@@ -0,0 +1,74 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.List;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Extracts the API key from a string parameter at a designated position of
+ * a JSON-RPC 2.0 request with positional parameters.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class PositionalParamAPIKeyExtractor implements APIKeyExtractor {
+
+
+	/**
+	 * The position of the JSON-RPC 2.0 parameter used to pass the API 
+	 * key.
+	 */
+	private final int position;
+
+
+	/**
+	 * Creates a new positional parameter API key extractor.
+	 *
+	 * @param position The zero-based position of the JSON-RPC 2.0 
+	 *                 parameter used to pass the API key. Must not be
+	 *                 negative.
+	 */
+	public PositionalParamAPIKeyExtractor(final int position) {
+
+		if (position < 0)
+			throw new IllegalArgumentException("The API key parameter position must not be negative");
+
+		this.position = position;
+	}
+
+
+	/**
+	 * Gets the position of the JSON-RPC 2.0 parameter used to pass the 
+	 * API key.
+	 *
+	 * @return The zero-based parameter position.
+	 */
+	public int getPosition() {
+
+		return position;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public String extract(final JSONRPC2Request request,
+	                      final MessageContext messageCtx) {
+
+		if (request.getParamsType() != JSONRPC2ParamsType.ARRAY)
+			return null;
+
+		List<Object> params = request.getPositionalParams();
+
+		if (params == null || position >= params.size())
+			return null;
+
+		Object key = params.get(position);
+
+		return key instanceof String ? (String)key : null;
+	}
+}
@@ -0,0 +1,161 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.nio.ByteBuffer;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter for raw JSON-RPC 2.0 request bodies, to shed invalid traffic
+ * before paying for the full JSON parsing. Makes the {@link HostFilter} and
+ * {@link APIKeyFilter} decisions, scanning the raw UTF-8 bytes only for the
+ * method name and the API key parameter, without building a JSON tree.
+ *
+ * <p>A denial is final and the request may be rejected straight away. An
+ * allowed result only means the request couldn't be denied before parsing:
+ * batches, requests the scanner cannot decide with certainty (for example
+ * strings with escape sequences) and API keys from a custom
+ * {@link APIKeyExtractor} are deferred. Allowed requests must still be
+ * parsed and passed through the regular access filters. Malformed bodies are
+ * not validated and may be denied access instead of failing to parse.
+ *
+ * <p>Example servlet usage:
+ *
+ * <pre>
+ * AccessFilterResult result = preParseFilter.filter(body, messageCtx);
+ *
+ * if (! result.accessAllowed())
+ *     // Reject request
+ *
+ * JSONRPC2Request request = JSONRPC2Request.parse(new String(body, "UTF-8"));
+ *
+ * result = compositeFilter.filter(request, messageCtx);
+ * ...
+ * </pre>
+ *
+ * <p>The filter is created from initialised host and API key filters, it
+ * must be created anew if they are re-initialised.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class PreParseFilter {
+
+
+	/**
+	 * The host filter, {@code null} if none.
+	 */
+	private final HostFilter hostFilter;
+
+
+	/**
+	 * The API key filter, {@code null} if none.
+	 */
+	private final APIKeyFilter apiKeyFilter;
+
+
+	/**
+	 * The HTTP header API key extractor, {@code null} if the API key is
+	 * not passed in an HTTP header.
+	 */
+	private final HeaderAPIKeyExtractor headerExtractor;
+
+
+	/**
+	 * The request scanner, {@code null} if the API key filter decision
+	 * cannot be made before parsing.
+	 */
+	private final RequestScanner scanner;
+
+
+	/**
+	 * Creates a new pre-parse filter.
+	 *
+	 * @param hostFilter   The initialised host filter, {@code null} if
+	 *                     none.
+	 * @param apiKeyFilter The initialised API key filter, {@code null} if
+	 *                     none.
+	 */
+	public PreParseFilter(final HostFilter hostFilter, final APIKeyFilter apiKeyFilter) {
+
+		this.hostFilter = hostFilter;
+		this.apiKeyFilter = apiKeyFilter;
+
+		final APIKeyExtractor extractor = apiKeyFilter != null ? apiKeyFilter.getAPIKeyExtractor() : null;
+
+		if (extractor instanceof NamedParamAPIKeyExtractor) {
+			headerExtractor = null;
+			scanner = new RequestScanner(((NamedParamAPIKeyExtractor)extractor).getParameterName(), -1);
+		}
+		else if (extractor instanceof PositionalParamAPIKeyExtractor) {
+			headerExtractor = null;
+			scanner = new RequestScanner(null, ((PositionalParamAPIKeyExtractor)extractor).getPosition());
+		}
+		else if (extractor instanceof HeaderAPIKeyExtractor) {
+			headerExtractor = (HeaderAPIKeyExtractor)extractor;
+			scanner = new RequestScanner(null, -1);
+		}
+		else {
+			// No API key filter or custom extractor
+			headerExtractor = null;
+			scanner = null;
+		}
+	}
+
+
+	/**
+	 * Filters the specified raw JSON-RPC 2.0 request body.
+	 *
+	 * @param body       The UTF-8 encoded request body. Must not be
+	 *                   {@code null}.
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *                   Must not be {@code null}.
+	 *
+	 * @return The access filter result.
+	 */
+	public AccessFilterResult filter(final byte[] body, final MessageContext messageCtx) {
+
+		return filter(ByteBuffer.wrap(body), messageCtx);
+	}
+
+
+	/**
+	 * Filters the specified raw JSON-RPC 2.0 request body, from the buffer
+	 * position to its limit. The buffer position and limit are not
+	 * modified.
+	 *
+	 * @param body       The UTF-8 encoded request body. Must not be
+	 *                   {@code null}.
+	 * @param messageCtx The context of the JSON-RPC 2.0 request message.
+	 *                   Must not be {@code null}.
+	 *
+	 * @return The access filter result.
+	 */
+	public AccessFilterResult filter(final ByteBuffer body, final MessageContext messageCtx) {
+
+		if (hostFilter != null) {
+
+			AccessFilterResult result = hostFilter.check(messageCtx);
+
+			if (! result.accessAllowed())
+				return result;
+		}
+
+		if (scanner == null)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		RequestScanner.Result scanned = scanner.scan(body);
+
+		if (scanned == null)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		String key;
+
+		if (headerExtractor != null)
+			key = headerExtractor.extract(messageCtx.getHttpServletRequest());
+		else
+			key = scanned.getAPIKey();
+
+		return apiKeyFilter.check(scanned.getMethod(), scanned.getParamsType(), key, messageCtx);
+	}
+}
@@ -0,0 +1,240 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.RDN;
+
+
+/**
+ * Immutable map of X.509 client certificate principals (subject DNs) to
+ * their allowed JSON-RPC 2.0 methods. The allowed methods may also be glob
+ * patterns, as for {@link APIKeyFilter}.
+ *
+ * <p>Principals are mapped either by exact DN or by DN suffix. Exact DNs are
+ * indexed by their normalised string in a hash table. Suffix rules, such as
+ * any certificate under "ou=Partners,o=Acme", are indexed in a trie of the
+ * normalised RDNs, in reverse order; a suffix rule applies to the suffix DN
+ * itself and to any DN under it. An exact DN takes precedence over suffix
+ * rules, and the longest matching suffix over shorter ones.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class PrincipalMethodMap {
+
+
+	/**
+	 * Trie node of reversed normalised RDNs.
+	 */
+	private static final class Node {
+
+
+		/**
+		 * The child nodes, by normalised RDN.
+		 */
+		final Map<String,Node> children = new HashMap<String,Node>();
+
+
+		/**
+		 * The allowed methods of the suffix ending at this node,
+		 * {@code null} if no suffix ends here.
+		 */
+		MethodPermissions permissions;
+	}
+
+
+	/**
+	 * The exact principal DNs and their allowed methods.
+	 */
+	private final Map<DN,Set<String>> principals;
+
+
+	/**
+	 * The principal DN suffixes and their allowed methods.
+	 */
+	private final Map<DN,Set<String>> suffixes;
+
+
+	/**
+	 * The IDs of the JSON-RPC 2.0 method names.
+	 */
+	private final MethodSymbolTable methodSymbols;
+
+
+	/**
+	 * Index of the normalised exact DNs to their allowed methods.
+	 */
+	private final Map<String,MethodPermissions> exactIndex;
+
+
+	/**
+	 * The root of the suffix trie.
+	 */
+	private final Node suffixRoot = new Node();
+
+
+	/**
+	 * Creates a new principal method map.
+	 *
+	 * @param principals The exact principal DNs and their allowed
+	 *                   JSON-RPC 2.0 methods, empty if none. Must not be
+	 *                   {@code null}.
+	 * @param suffixes   The principal DN suffixes and their allowed
+	 *                   JSON-RPC 2.0 methods, empty if none. Must not be
+	 *                   {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the method patterns of a principal
+	 *                                  are too complex.
+	 */
+	public PrincipalMethodMap(final Map<DN,Set<String>> principals,
+	                          final Map<DN,Set<String>> suffixes) {
+
+		if (principals == null || suffixes == null)
+			throw new IllegalArgumentException("The principals and suffixes must not be null");
+
+		methodSymbols = new MethodSymbolTable(16);
+
+		// Compile each distinct method set only once
+		Map<Set<String>,MethodPermissions> compiled = new HashMap<Set<String>,MethodPermissions>();
+
+		exactIndex = new HashMap<String,MethodPermissions>(principals.size() * 4 / 3 + 1);
+
+		for (Map.Entry<DN,Set<String>> en: principals.entrySet())
+			exactIndex.put(en.getKey().toNormalizedString(), compile(en.getValue(), compiled));
+
+		for (Map.Entry<DN,Set<String>> en: suffixes.entrySet()) {
+
+			RDN[] rdns = en.getKey().getRDNs();
+
+			Node node = suffixRoot;
+
+			for (int i = rdns.length - 1; i >= 0; i--) {
+
+				final String rdn = rdns[i].toNormalizedString();
+
+				Node child = node.children.get(rdn);
+
+				if (child == null) {
+					child = new Node();
+					node.children.put(rdn, child);
+				}
+
+				node = child;
+			}
+
+			node.permissions = compile(en.getValue(), compiled);
+		}
+
+		this.principals = Collections.unmodifiableMap(new HashMap<DN,Set<String>>(principals));
+		this.suffixes = Collections.unmodifiableMap(new HashMap<DN,Set<String>>(suffixes));
+	}
+
+
+	/**
+	 * Compiles the specified method set, or returns the compiled
+	 * permissions of an equal set.
+	 *
+	 * @param methods  The allowed methods.
+	 * @param compiled The compiled method sets, updated.
+	 *
+	 * @return The method permissions.
+	 */
+	private MethodPermissions compile(final Set<String> methods,
+	                                  final Map<Set<String>,MethodPermissions> compiled) {
+
+		if (methods == null)
+			throw new IllegalArgumentException("The allowed methods must not be null");
+
+		MethodPermissions permissions = compiled.get(methods);
+
+		if (permissions == null) {
+			permissions = MethodPermissions.compile(methods, methodSymbols, true);
+			compiled.put(methods, permissions);
+		}
+
+		return permissions;
+	}
+
+
+	/**
+	 * Gets the exact principal DNs.
+	 *
+	 * @return The exact principal DNs and their allowed methods, empty if
+	 *         none.
+	 */
+	public Map<DN,Set<String>> getPrincipals() {
+
+		return principals;
+	}
+
+
+	/**
+	 * Gets the principal DN suffixes.
+	 *
+	 * @return The principal DN suffixes and their allowed methods, empty
+	 *         if none.
+	 */
+	public Map<DN,Set<String>> getSuffixes() {
+
+		return suffixes;
+	}
+
+
+	/**
+	 * Gets the allowed methods of the specified principal.
+	 *
+	 * @param dn The principal DN. Must not be {@code null}.
+	 *
+	 * @return The allowed methods, {@code null} if the principal is not
+	 *         mapped.
+	 */
+	MethodPermissions get(final DN dn) {
+
+		MethodPermissions permissions = exactIndex.get(dn.toNormalizedString());
+
+		if (permissions != null || suffixRoot.children.isEmpty())
+			return permissions;
+
+		RDN[] rdns = dn.getRDNs();
+
+		Node node = suffixRoot;
+
+		for (int i = rdns.length - 1; i >= 0; i--) {
+
+			node = node.children.get(rdns[i].toNormalizedString());
+
+			if (node == null)
+				break;
+
+			// Keep the longest matching suffix
+			if (node.permissions != null)
+				permissions = node.permissions;
+		}
+
+		return permissions;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified principal is allowed the
+	 * specified JSON-RPC 2.0 method.
+	 *
+	 * @param dn     The principal DN. Must not be {@code null}.
+	 * @param method The JSON-RPC 2.0 method name. Must not be
+	 *               {@code null}.
+	 *
+	 * @return {@code true} if the method is allowed, {@code false} if not
+	 *         or the principal is not mapped.
+	 */
+	public boolean allows(final DN dn, final String method) {
+
+		MethodPermissions permissions = get(dn);
+
+		return permissions != null && permissions.allows(methodSymbols.get(method), method);
+	}
+}
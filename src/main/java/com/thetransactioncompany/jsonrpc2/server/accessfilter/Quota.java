@@ -0,0 +1,114 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Immutable call quota, with a daily and a monthly limit. The periods are
+ * UTC calendar days and months.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class Quota {
+
+
+	/**
+	 * Indicates an unlimited period.
+	 */
+	public static final long UNLIMITED = 0L;
+
+
+	/**
+	 * The maximum calls per day, {@link #UNLIMITED} if none.
+	 */
+	private final long daily;
+
+
+	/**
+	 * The maximum calls per month, {@link #UNLIMITED} if none.
+	 */
+	private final long monthly;
+
+
+	/**
+	 * Creates a new quota.
+	 *
+	 * @param daily   The maximum calls per day, {@link #UNLIMITED} if
+	 *                none. Must not be negative.
+	 * @param monthly The maximum calls per month, {@link #UNLIMITED} if
+	 *                none. Must not be negative.
+	 */
+	public Quota(final long daily, final long monthly) {
+
+		if (daily < 0L)
+			throw new IllegalArgumentException("The daily quota must not be negative");
+
+		if (monthly < 0L)
+			throw new IllegalArgumentException("The monthly quota must not be negative");
+
+		this.daily = daily;
+		this.monthly = monthly;
+	}
+
+
+	/**
+	 * Gets the daily limit.
+	 *
+	 * @return The maximum calls per day, {@link #UNLIMITED} if none.
+	 */
+	public long getDaily() {
+
+		return daily;
+	}
+
+
+	/**
+	 * Gets the monthly limit.
+	 *
+	 * @return The maximum calls per month, {@link #UNLIMITED} if none.
+	 */
+	public long getMonthly() {
+
+		return monthly;
+	}
+
+
+	/**
+	 * Overrides {@code Object.hashCode()}.
+	 *
+	 * @return The object hash code.
+	 */
+	public int hashCode() {
+
+		return (int)(daily ^ (daily >>> 32)) * 31 + (int)(monthly ^ (monthly >>> 32));
+	}
+
+
+	/**
+	 * Overrides {@code Object.equals()}.
+	 *
+	 * @param object The object to compare to.
+	 *
+	 * @return {@code true} if the objects have the same limits, otherwise
+	 *         {@code false}.
+	 */
+	public boolean equals(final Object object) {
+
+		if (! (object instanceof Quota))
+			return false;
+
+		Quota other = (Quota)object;
+
+		return daily == other.daily && monthly == other.monthly;
+	}
+
+
+	/**
+	 * Returns a string representation of this quota.
+	 *
+	 * @return The string representation, e.g. "1000/day 20000/month".
+	 */
+	public String toString() {
+
+		return (daily == UNLIMITED ? "unlimited" : Long.toString(daily)) + "/day " +
+		       (monthly == UNLIMITED ? "unlimited" : Long.toString(monthly)) + "/month";
+	}
+}
@@ -0,0 +1,539 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Memory-mapped file of per-key call counters, in fixed-size slots. Each
+ * slot holds the SHA-256 digest of its key and the call counts of the
+ * current UTC day and month, which are reset when a new period begins.
+ * The counters survive restarts; the operating system writes the mapped
+ * pages back to the file in the background, {@link #force} writes them
+ * synchronously.
+ *
+ * <p>Slots are found by open addressing on the key digest and are never
+ * released. Java offers no atomic operations on mapped buffers, the counter
+ * updates are therefore made under striped locks, with a separate lock for
+ * claiming slots. A file must therefore be mapped only once, files {@link
+ * #open opened} by path are shared and closed when the last user closes
+ * them.
+ *
+ * <p>File layout, big-endian: a 64 byte header with the magic number, the
+ * format version and the number of slots, followed by the 64 byte slots.
+ * Each slot has the 32 byte key digest, an in-use flag, the current day and
+ * month numbers as ints, and the day and month counts as longs.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class QuotaFile {
+
+
+	/**
+	 * The magic number, "JRQF".
+	 */
+	static final int MAGIC = 0x4a525146;
+
+
+	/**
+	 * The file format version.
+	 */
+	static final int VERSION = 1;
+
+
+	/**
+	 * The header size in bytes.
+	 */
+	static final int HEADER_SIZE = 64;
+
+
+	/**
+	 * The slot size in bytes.
+	 */
+	static final int SLOT_SIZE = 64;
+
+
+	/**
+	 * The call was counted.
+	 */
+	static final int COUNTED = 0;
+
+
+	/**
+	 * The daily limit is reached, the call was not counted.
+	 */
+	static final int DAY_EXCEEDED = 1;
+
+
+	/**
+	 * The monthly limit is reached, the call was not counted.
+	 */
+	static final int MONTH_EXCEEDED = 2;
+
+
+	/**
+	 * The milliseconds per day.
+	 */
+	static final long MILLIS_PER_DAY = 86400000L;
+
+
+	/**
+	 * The slot offsets of the in-use flag, period numbers and counts.
+	 */
+	private static final int IN_USE = 32, DAY = 36, MONTH = 40, DAY_COUNT = 48, MONTH_COUNT = 56;
+
+
+	/**
+	 * The number of counter lock stripes, a power of two.
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+
+	/**
+	 * The shared quota files, by canonical path.
+	 */
+	private static final Map<File,QuotaFile> OPEN = new HashMap<File,QuotaFile>();
+
+
+	/**
+	 * The file path.
+	 */
+	private final File path;
+
+
+	/**
+	 * The number of users of this file, guarded by {@link #OPEN}.
+	 */
+	private int references = 1;
+
+
+	/**
+	 * The file.
+	 */
+	private final RandomAccessFile raf;
+
+
+	/**
+	 * The mapped file contents.
+	 */
+	private final MappedByteBuffer buffer;
+
+
+	/**
+	 * The number of slots.
+	 */
+	private final int slots;
+
+
+	/**
+	 * The counter locks, by slot.
+	 */
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+
+	/**
+	 * The slot claim lock.
+	 */
+	private final Object claimLock = new Object();
+
+
+	/**
+	 * Opens the specified quota file, creating it if it doesn't exist or
+	 * is empty. An existing file keeps its number of slots, which must not
+	 * be less than the requested.
+	 *
+	 * @param file  The file. Must not be {@code null}.
+	 * @param slots The number of slots. Must be positive.
+	 *
+	 * @throws IOException If the file couldn't be opened or mapped, isn't
+	 *                     a quota file, or has fewer slots.
+	 */
+	QuotaFile(final File file, final int slots)
+		throws IOException {
+
+		if (slots < 1 || slots > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE)
+			throw new IllegalArgumentException("Invalid number of quota slots: " + slots);
+
+		path = file;
+
+		raf = new RandomAccessFile(file, "rw");
+
+		try {
+			if (raf.length() == 0L) {
+
+				raf.setLength(HEADER_SIZE + (long)slots * SLOT_SIZE);
+				raf.writeInt(MAGIC);
+				raf.writeInt(VERSION);
+				raf.writeInt(slots);
+				this.slots = slots;
+			}
+			else {
+				if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+					throw new IOException("Not a quota file: " + file);
+
+				final int version = raf.readInt();
+
+				if (version != VERSION)
+					throw new IOException("Unsupported quota file version " + version + ": " + file);
+
+				this.slots = raf.readInt();
+
+				if (this.slots < slots)
+					throw new IOException("The quota file has " + this.slots + " slots, " + slots + " required: " + file);
+
+				if (raf.length() != HEADER_SIZE + (long)this.slots * SLOT_SIZE)
+					throw new IOException("Truncated quota file: " + file);
+			}
+
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, raf.length());
+
+		} catch (IOException e) {
+
+			raf.close();
+			throw e;
+		}
+
+		for (int i=0; i < LOCK_STRIPES; i++)
+			locks[i] = new Object();
+	}
+
+
+	/**
+	 * Opens the specified quota file, or shares it if it's already open.
+	 * See {@link #QuotaFile(File,int)}.
+	 *
+	 * @param file  The file. Must not be {@code null}.
+	 * @param slots The number of slots. Must be positive.
+	 *
+	 * @return The quota file.
+	 *
+	 * @throws IOException If the file couldn't be opened or mapped, isn't
+	 *                     a quota file, or has fewer slots.
+	 */
+	static QuotaFile open(final File file, final int slots)
+		throws IOException {
+
+		final File canonical = file.getCanonicalFile();
+
+		synchronized (OPEN) {
+
+			QuotaFile f = OPEN.get(canonical);
+
+			if (f != null) {
+
+				if (f.slots < slots)
+					throw new IOException("The quota file has " + f.slots + " slots, " + slots + " required: " + file);
+
+				f.references++;
+				return f;
+			}
+
+			f = new QuotaFile(canonical, slots);
+			OPEN.put(canonical, f);
+			return f;
+		}
+	}
+
+
+	/**
+	 * Returns the number of slots.
+	 *
+	 * @return The number of slots.
+	 */
+	int slots() {
+
+		return slots;
+	}
+
+
+	/**
+	 * Finds the slot of the specified key digest, claiming a free one if
+	 * the key has none.
+	 *
+	 * @param digest The SHA-256 digest of the key. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The slot, -1 if the key has none and all slots are taken.
+	 */
+	int claim(final byte[] digest) {
+
+		final int home = (IntHashSet.mix(readInt(digest)) & 0x7fffffff) % slots;
+
+		synchronized (claimLock) {
+
+			for (int i=0; i < slots; i++) {
+
+				final int slot = (home + i) % slots;
+
+				final int base = HEADER_SIZE + slot * SLOT_SIZE;
+
+				if (buffer.getInt(base + IN_USE) == 0) {
+
+					for (int j=0; j < digest.length; j++)
+						buffer.put(base + j, digest[j]);
+
+					buffer.putInt(base + IN_USE, 1);
+					return slot;
+				}
+
+				if (digestEquals(base, digest))
+					return slot;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Finds the slot of the specified key digest.
+	 *
+	 * @param digest The SHA-256 digest of the key. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The slot, -1 if the key has none.
+	 */
+	int find(final byte[] digest) {
+
+		final int home = (IntHashSet.mix(readInt(digest)) & 0x7fffffff) % slots;
+
+		synchronized (claimLock) {
+
+			for (int i=0; i < slots; i++) {
+
+				final int base = HEADER_SIZE + ((home + i) % slots) * SLOT_SIZE;
+
+				if (buffer.getInt(base + IN_USE) == 0)
+					return -1;
+
+				if (digestEquals(base, digest))
+					return (home + i) % slots;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Counts a call in the specified slot, unless a limit is reached.
+	 *
+	 * @param slot         The slot.
+	 * @param day          The current UTC day number.
+	 * @param month        The current UTC month number.
+	 * @param dailyLimit   The daily limit, {@link Quota#UNLIMITED} if
+	 *                     none.
+	 * @param monthlyLimit The monthly limit, {@link Quota#UNLIMITED} if
+	 *                     none.
+	 *
+	 * @return {@link #COUNTED}, {@link #DAY_EXCEEDED} or
+	 *         {@link #MONTH_EXCEEDED}.
+	 */
+	int increment(final int slot,
+	              final int day,
+	              final int month,
+	              final long dailyLimit,
+	              final long monthlyLimit) {
+
+		final int base = HEADER_SIZE + slot * SLOT_SIZE;
+
+		synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+
+			// Roll over to the current periods
+			if (buffer.getInt(base + DAY) != day) {
+				buffer.putInt(base + DAY, day);
+				buffer.putLong(base + DAY_COUNT, 0L);
+			}
+
+			if (buffer.getInt(base + MONTH) != month) {
+				buffer.putInt(base + MONTH, month);
+				buffer.putLong(base + MONTH_COUNT, 0L);
+			}
+
+			final long dayCount = buffer.getLong(base + DAY_COUNT);
+			final long monthCount = buffer.getLong(base + MONTH_COUNT);
+
+			if (monthlyLimit != Quota.UNLIMITED && monthCount >= monthlyLimit)
+				return MONTH_EXCEEDED;
+
+			if (dailyLimit != Quota.UNLIMITED && dayCount >= dailyLimit)
+				return DAY_EXCEEDED;
+
+			buffer.putLong(base + DAY_COUNT, dayCount + 1);
+			buffer.putLong(base + MONTH_COUNT, monthCount + 1);
+			return COUNTED;
+		}
+	}
+
+
+	/**
+	 * Gets the call count of the specified slot in the specified day.
+	 *
+	 * @param slot The slot.
+	 * @param day  The UTC day number.
+	 *
+	 * @return The call count, zero if none.
+	 */
+	long getDayCount(final int slot, final int day) {
+
+		final int base = HEADER_SIZE + slot * SLOT_SIZE;
+
+		synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+
+			return buffer.getInt(base + DAY) == day ? buffer.getLong(base + DAY_COUNT) : 0L;
+		}
+	}
+
+
+	/**
+	 * Gets the call count of the specified slot in the specified month.
+	 *
+	 * @param slot  The slot.
+	 * @param month The UTC month number.
+	 *
+	 * @return The call count, zero if none.
+	 */
+	long getMonthCount(final int slot, final int month) {
+
+		final int base = HEADER_SIZE + slot * SLOT_SIZE;
+
+		synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+
+			return buffer.getInt(base + MONTH) == month ? buffer.getLong(base + MONTH_COUNT) : 0L;
+		}
+	}
+
+
+	/**
+	 * Writes the counters to the file synchronously.
+	 */
+	void force() {
+
+		buffer.force();
+	}
+
+
+	/**
+	 * Writes the counters to the file and closes it, if this is the last
+	 * user of a shared file. The mapping itself is released when garbage
+	 * collected.
+	 *
+	 * @throws IOException If closing the file failed.
+	 */
+	void close()
+		throws IOException {
+
+		synchronized (OPEN) {
+
+			if (references == 0 || --references > 0)
+				return;
+
+			if (OPEN.get(path) == this)
+				OPEN.remove(path);
+		}
+
+		buffer.force();
+		raf.close();
+	}
+
+
+	/**
+	 * Returns the UTC day number of the specified time.
+	 *
+	 * @param millis The time, in milliseconds since the epoch.
+	 *
+	 * @return The days since 1970-01-01.
+	 */
+	static int dayOf(final long millis) {
+
+		long day = millis / MILLIS_PER_DAY;
+
+		if (millis < 0L && day * MILLIS_PER_DAY != millis)
+			day--;
+
+		return (int)day;
+	}
+
+
+	/**
+	 * Returns the month number of the specified UTC day.
+	 *
+	 * @param day The days since 1970-01-01.
+	 *
+	 * @return The month number, year * 12 + zero-based month.
+	 */
+	static int monthOf(final int day) {
+
+		// Civil from days, with March-based years
+		final int z = day + 719468;
+		final int era = (z >= 0 ? z : z - 146096) / 146097;
+		final int doe = z - era * 146097;
+		final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final int mp = (5 * doy + 2) / 153;
+		final int m = mp < 10 ? mp + 3 : mp - 9;
+		final int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+		return y * 12 + m - 1;
+	}
+
+
+	/**
+	 * Returns the first UTC day of the specified month.
+	 *
+	 * @param month The month number, year * 12 + zero-based month.
+	 *
+	 * @return The days since 1970-01-01.
+	 */
+	static int firstDayOf(final int month) {
+
+		// Days from civil, with March-based years
+		final int m = month % 12 + 1;
+		final int y = month / 12 - (m <= 2 ? 1 : 0);
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+		return era * 146097 + doe - 719468;
+	}
+
+
+	/**
+	 * Compares the key digest of the slot at the specified offset.
+	 *
+	 * @param base   The slot offset.
+	 * @param digest The digest.
+	 *
+	 * @return {@code true} if the digests are equal.
+	 */
+	private boolean digestEquals(final int base, final byte[] digest) {
+
+		for (int j=0; j < digest.length; j++) {
+
+			if (buffer.get(base + j) != digest[j])
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Reads a big-endian int from the start of the specified bytes.
+	 *
+	 * @param b The bytes, at least four.
+	 *
+	 * @return The int.
+	 */
+	private static int readInt(final byte[] b) {
+
+		return (b[0] << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+	}
+}
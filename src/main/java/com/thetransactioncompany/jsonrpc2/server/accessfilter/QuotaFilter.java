@@ -0,0 +1,543 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter enforcing daily and monthly call quotas per API key. The
+ * API key is obtained with an {@link APIKeyExtractor}, the same way as in
+ * {@link APIKeyFilter}; requests without an API key and requests for methods
+ * exempted from the API key check are not counted. The filter must be
+ * placed after an {@link APIKeyFilter}, so that only valid API keys are
+ * counted, and always runs after it and after a {@link RateLimitFilter} in
+ * an adaptively ordered {@link AccessFilterChain}.
+ *
+ * <p>The call counters are kept in a memory-mapped file of fixed-size slots,
+ * one per API key, so they survive restarts without a database round trip
+ * or a synchronous write per request. The counters are reset at the start
+ * of each UTC day and month. Denied calls are not counted. The file holds a
+ * fixed number of API keys; once it's full calls with new API keys are
+ * denied.
+ *
+ * <p>Calls over the quota are denied with
+ * {@link AccessDeniedError#QUOTA_EXCEEDED}, the {@link
+ * AccessFilterResult#getErrorData error data} is a JSON object with a
+ * {@link #PERIOD "period"} member set to "day" or "month" and a
+ * {@link RateLimitFilter#RETRY_AFTER "retryAfter"} member giving the seconds
+ * until the period ends.
+ *
+ * <p>The filter must be {@link #close closed} to release the file. Filters
+ * with the same counter file share its mapping, so a filter may be replaced
+ * by a new one without losing counts; calls to a closed filter are allowed.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class QuotaFilter implements OrderedAccessFilter {
+
+
+	/**
+	 * The default maximum number of API keys with counters.
+	 */
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+
+	/**
+	 * The name of the error data member giving the exceeded quota period.
+	 */
+	public static final String PERIOD = "period";
+
+
+	/**
+	 * The filters to run before this one.
+	 */
+	private static final Collection<Class<? extends AccessFilter>> RUN_AFTER =
+		Collections.unmodifiableList(Arrays.<Class<? extends AccessFilter>>asList(APIKeyFilter.class, RateLimitFilter.class));
+
+
+	/**
+	 * The default quota.
+	 */
+	private Quota defaultQuota;
+
+
+	/**
+	 * The quota overrides, keyed by API key value or by SHA-256 digest if
+	 * the keys are hashed.
+	 */
+	private Map<String,Quota> overrides;
+
+
+	/**
+	 * {@code true} if the quota overrides are keyed by API key SHA-256
+	 * digest.
+	 */
+	private boolean hashedKeys;
+
+
+	/**
+	 * The methods exempted from the API key check, which are not counted.
+	 */
+	private Set<String> exemptedMethods;
+
+
+	/**
+	 * The API key extractor.
+	 */
+	private APIKeyExtractor apiKeyExtractor;
+
+
+	/**
+	 * The counter file, {@code null} if closed.
+	 */
+	private volatile QuotaFile file;
+
+
+	/**
+	 * The tagger of the API keys in the slot cache.
+	 */
+	private final KeyTagger tagger = new KeyTagger();
+
+
+	/**
+	 * The counter slots of the API keys seen so far, keyed by tag so the
+	 * key values aren't held in the clear.
+	 */
+	private ConcurrentMap<KeyTagger.Tag,Integer> slots;
+
+
+	/**
+	 * Initialises this quota filter. The API key is passed in the
+	 * {@link APIKeyFilter#DEFAULT_API_KEY_PARAMETER_NAME default named
+	 * parameter}.
+	 *
+	 * @param file         The counter file, created if it doesn't exist.
+	 *                     Must not be {@code null}.
+	 * @param defaultQuota The default quota of each API key. Must not be
+	 *                     {@code null}.
+	 * @param overrides    The quota overrides for selected API keys, empty
+	 *                     if none. Must not be {@code null}.
+	 *
+	 * @throws IOException If the counter file couldn't be opened.
+	 */
+	public void init(final File file,
+	                 final Quota defaultQuota,
+	                 final Map<APIKey,Quota> overrides)
+		throws IOException {
+
+		init(file,
+		     defaultQuota,
+		     overrides,
+		     new NamedParamAPIKeyExtractor(APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME),
+		     false,
+		     DEFAULT_MAX_KEYS);
+	}
+
+
+	/**
+	 * Initialises this quota filter. A previously opened counter file is
+	 * closed.
+	 *
+	 * @param file            The counter file, created if it doesn't
+	 *                        exist. An existing file must hold at least
+	 *                        the maximum number of keys. Must not be
+	 *                        {@code null}.
+	 * @param defaultQuota    The default quota of each API key. Must not
+	 *                        be {@code null}.
+	 * @param overrides       The quota overrides for selected API keys,
+	 *                        empty if none. Must not be {@code null}.
+	 * @param apiKeyExtractor The extractor of the API key from the
+	 *                        JSON-RPC 2.0 request. Must not be
+	 *                        {@code null}.
+	 * @param hashedKeys      If {@code true} the overrides are keyed by
+	 *                        the hexadecimal SHA-256 digests of the API
+	 *                        keys, see {@link APIKey#getSHA256Digest}.
+	 * @param maxKeys         The maximum number of API keys with counters.
+	 *                        Must be positive.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the maximum number of keys is not
+	 *                                  positive.
+	 * @throws IOException              If the counter file couldn't be
+	 *                                  opened.
+	 */
+	public void init(final File file,
+	                 final Quota defaultQuota,
+	                 final Map<APIKey,Quota> overrides,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final boolean hashedKeys,
+	                 final int maxKeys)
+		throws IOException {
+
+		init(file,
+		     defaultQuota,
+		     overrides,
+		     Collections.<String>emptySet(),
+		     apiKeyExtractor,
+		     hashedKeys,
+		     maxKeys);
+	}
+
+
+	/**
+	 * Initialises this quota filter. A previously opened counter file is
+	 * closed. A counter file already open in another quota filter is
+	 * shared.
+	 *
+	 * @param file            The counter file, created if it doesn't
+	 *                        exist. An existing file must hold at least
+	 *                        the maximum number of keys. Must not be
+	 *                        {@code null}.
+	 * @param defaultQuota    The default quota of each API key. Must not
+	 *                        be {@code null}.
+	 * @param overrides       The quota overrides for selected API keys,
+	 *                        empty if none. Must not be {@code null}.
+	 * @param exemptedMethods The JSON-RPC 2.0 methods exempted from the
+	 *                        API key check, which are not counted. Must
+	 *                        not be {@code null}.
+	 * @param apiKeyExtractor The extractor of the API key from the
+	 *                        JSON-RPC 2.0 request. Must not be
+	 *                        {@code null}.
+	 * @param hashedKeys      If {@code true} the overrides are keyed by
+	 *                        the hexadecimal SHA-256 digests of the API
+	 *                        keys, see {@link APIKey#getSHA256Digest}.
+	 * @param maxKeys         The maximum number of API keys with counters.
+	 *                        Must be positive.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the maximum number of keys is not
+	 *                                  positive.
+	 * @throws IOException              If the counter file couldn't be
+	 *                                  opened.
+	 */
+	public void init(final File file,
+	                 final Quota defaultQuota,
+	                 final Map<APIKey,Quota> overrides,
+	                 final Set<String> exemptedMethods,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final boolean hashedKeys,
+	                 final int maxKeys)
+		throws IOException {
+
+		if (file == null)
+			throw new IllegalArgumentException("The quota file must not be null");
+
+		if (defaultQuota == null)
+			throw new IllegalArgumentException("The default quota must not be null");
+
+		if (overrides == null)
+			throw new IllegalArgumentException("The quota overrides must not be null");
+
+		if (exemptedMethods == null)
+			throw new IllegalArgumentException("The exempted methods must not be null");
+
+		if (apiKeyExtractor == null)
+			throw new IllegalArgumentException("The API key extractor must not be null");
+
+		if (maxKeys < 1)
+			throw new IllegalArgumentException("The maximum number of keys must be positive");
+
+		Map<String,Quota> newOverrides = new HashMap<String,Quota>(overrides.size() * 4 / 3 + 1);
+
+		for (Map.Entry<APIKey,Quota> en: overrides.entrySet()) {
+
+			if (en.getValue() == null)
+				throw new IllegalArgumentException("The quota of API key " + en.getKey() + " must not be null");
+
+			// Digests are matched in lower case
+			String key = hashedKeys ? en.getKey().toString().toLowerCase(Locale.ROOT) : en.getKey().toString();
+
+			newOverrides.put(key, en.getValue());
+		}
+
+		// Open at twice the keys, for short probe runs
+		QuotaFile newFile = QuotaFile.open(file, (int)Math.min(maxKeys * 2L, Integer.MAX_VALUE / QuotaFile.SLOT_SIZE - 1));
+
+		close();
+
+		this.defaultQuota = defaultQuota;
+		this.overrides = newOverrides;
+		this.hashedKeys = hashedKeys;
+		this.exemptedMethods = exemptedMethods;
+		this.apiKeyExtractor = apiKeyExtractor;
+
+		slots = new ConcurrentHashMap<KeyTagger.Tag,Integer>();
+
+		this.file = newFile;
+	}
+
+
+	/**
+	 * Gets the default quota of each API key.
+	 *
+	 * @return The default quota.
+	 */
+	public Quota getDefaultQuota() {
+
+		return defaultQuota;
+	}
+
+
+	/**
+	 * Gets the quota of the specified API key.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The quota.
+	 */
+	public Quota getQuota(final String key) {
+
+		if (overrides.isEmpty())
+			return defaultQuota;
+
+		Quota quota;
+
+		if (hashedKeys)
+			quota = overrides.get(APIKeyDigest.toHex(APIKeyDigest.sha256(key)));
+		else
+			quota = overrides.get(key);
+
+		return quota != null ? quota : defaultQuota;
+	}
+
+
+	/**
+	 * Gets the JSON-RPC 2.0 methods exempted from the API key check, which
+	 * are not counted.
+	 *
+	 * @return The exempted methods, empty set if none.
+	 */
+	public Set<String> getExemptedMethods() {
+
+		return exemptedMethods;
+	}
+
+
+	/**
+	 * Gets the extractor of the API key from the JSON-RPC 2.0 request.
+	 *
+	 * @return The API key extractor.
+	 */
+	public APIKeyExtractor getAPIKeyExtractor() {
+
+		return apiKeyExtractor;
+	}
+
+
+	/**
+	 * Gets the number of calls made with the specified API key in the
+	 * current UTC day.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The call count.
+	 */
+	public long getDailyCount(final String key) {
+
+		final QuotaFile f = file;
+
+		final int slot = f != null ? slotOf(f, key, false) : -1;
+
+		if (slot < 0)
+			return 0L;
+
+		return f.getDayCount(slot, QuotaFile.dayOf(currentTimeMillis()));
+	}
+
+
+	/**
+	 * Gets the number of calls made with the specified API key in the
+	 * current UTC month.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The call count.
+	 */
+	public long getMonthlyCount(final String key) {
+
+		final QuotaFile f = file;
+
+		final int slot = f != null ? slotOf(f, key, false) : -1;
+
+		if (slot < 0)
+			return 0L;
+
+		return f.getMonthCount(slot, QuotaFile.monthOf(QuotaFile.dayOf(currentTimeMillis())));
+	}
+
+
+	/**
+	 * Writes the call counters to the file synchronously. They are
+	 * otherwise written by the operating system in the background.
+	 */
+	public void flush() {
+
+		final QuotaFile f = file;
+
+		if (f != null)
+			f.force();
+	}
+
+
+	/**
+	 * Writes the call counters to the file and closes it, unless it's
+	 * shared with another quota filter. Calls are allowed after that,
+	 * without counting, unless the filter is re-initialised.
+	 *
+	 * @throws IOException If closing the file failed.
+	 */
+	public synchronized void close()
+		throws IOException {
+
+		final QuotaFile f = file;
+
+		if (f == null)
+			return;
+
+		file = null;
+		f.close();
+	}
+
+
+	/**
+	 * Returns the current time in milliseconds since the epoch.
+	 *
+	 * @return The current time in milliseconds.
+	 */
+	long currentTimeMillis() {
+
+		return System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Returns the counter slot of the specified API key.
+	 *
+	 * @param f     The counter file.
+	 * @param key   The API key value.
+	 * @param claim If {@code true} a slot is claimed if the key has none.
+	 *
+	 * @return The slot, -1 if the key has none and the counter file is
+	 *         full or no slot was to be claimed.
+	 */
+	private int slotOf(final QuotaFile f, final String key, final boolean claim) {
+
+		final KeyTagger.Tag tag = tagger.tag(key);
+
+		Integer slot = slots.get(tag);
+
+		if (slot != null)
+			return slot;
+
+		final byte[] digest = APIKeyDigest.sha256(key);
+
+		final int found = claim ? f.claim(digest) : f.find(digest);
+
+		if (found >= 0)
+			slots.putIfAbsent(tag, found);
+
+		return found;
+	}
+
+
+	/**
+	 * Creates a denied result for the specified period.
+	 *
+	 * @param period  The exceeded period, "day" or "month".
+	 * @param seconds The seconds until the period ends.
+	 *
+	 * @return The denied result.
+	 */
+	private static AccessFilterResult denied(final String period, final long seconds) {
+
+		Map<String,Object> data = new LinkedHashMap<String,Object>();
+		data.put(PERIOD, period);
+		data.put(RateLimitFilter.RETRY_AFTER, seconds);
+
+		return new AccessFilterResult(AccessDeniedError.QUOTA_EXCEEDED, data);
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter() {
+
+		return RUN_AFTER;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public AccessFilterResult filter(final JSONRPC2Request request,
+	                                 final MessageContext messageCtx) {
+
+		final QuotaFile f = file;
+
+		// Closed while the filter is being replaced?
+		if (f == null)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		// The key of an exempted method isn't validated
+		if (exemptedMethods.contains(request.getMethod()))
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		final String key = apiKeyExtractor.extract(request, messageCtx);
+
+		if (key == null)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		final int slot = slotOf(f, key, true);
+
+		if (slot < 0)
+			return AccessFilterResult.denied(AccessDeniedError.QUOTA_EXCEEDED);
+
+		final Quota quota = getQuota(key);
+
+		final long now = currentTimeMillis();
+		final int day = QuotaFile.dayOf(now);
+		final int month = QuotaFile.monthOf(day);
+
+		switch (f.increment(slot, day, month, quota.getDaily(), quota.getMonthly())) {
+
+			case QuotaFile.COUNTED:
+				return AccessFilterResult.ACCESS_ALLOWED;
+
+			case QuotaFile.DAY_EXCEEDED:
+				return denied("day", secondsUntil((day + 1) * QuotaFile.MILLIS_PER_DAY, now));
+
+			default:
+				return denied("month", secondsUntil(QuotaFile.firstDayOf(month + 1) * QuotaFile.MILLIS_PER_DAY, now));
+		}
+	}
+
+
+	/**
+	 * Returns the seconds until the specified time, rounded up.
+	 *
+	 * @param end The end time, in milliseconds since the epoch.
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The seconds.
+	 */
+	private static long secondsUntil(final long end, final long now) {
+
+		return (end - now + 999L) / 1000L;
+	}
+}
@@ -0,0 +1,116 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Immutable token bucket rate limit. The bucket holds up to the burst number
+ * of tokens and is refilled at the specified rate; each request takes one
+ * token.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class RateLimit {
+
+
+	/**
+	 * The maximum burst size.
+	 */
+	public static final int MAX_BURST = (1 << 20) - 1;
+
+
+	/**
+	 * The refill rate, in tokens (requests) per second.
+	 */
+	private final double rate;
+
+
+	/**
+	 * The burst size, the bucket capacity in tokens.
+	 */
+	private final int burst;
+
+
+	/**
+	 * Creates a new rate limit.
+	 *
+	 * @param rate  The refill rate, in tokens (requests) per second. Must
+	 *              be positive.
+	 * @param burst The burst size, the bucket capacity in tokens. Must be
+	 *              positive and not exceed {@link #MAX_BURST}.
+	 */
+	public RateLimit(final double rate, final int burst) {
+
+		if (! (rate > 0.0) || Double.isInfinite(rate))
+			throw new IllegalArgumentException("The rate must be positive");
+
+		if (burst < 1 || burst > MAX_BURST)
+			throw new IllegalArgumentException("The burst must be positive and not exceed " + MAX_BURST);
+
+		this.rate = rate;
+		this.burst = burst;
+	}
+
+
+	/**
+	 * Gets the refill rate.
+	 *
+	 * @return The refill rate, in tokens (requests) per second.
+	 */
+	public double getRate() {
+
+		return rate;
+	}
+
+
+	/**
+	 * Gets the burst size.
+	 *
+	 * @return The burst size, the bucket capacity in tokens.
+	 */
+	public int getBurst() {
+
+		return burst;
+	}
+
+
+	/**
+	 * Overrides {@code Object.hashCode()}.
+	 *
+	 * @return The object hash code.
+	 */
+	public int hashCode() {
+
+		long bits = Double.doubleToLongBits(rate);
+
+		return (int)(bits ^ (bits >>> 32)) * 31 + burst;
+	}
+
+
+	/**
+	 * Overrides {@code Object.equals()}.
+	 *
+	 * @param object The object to compare to.
+	 *
+	 * @return {@code true} if the objects have the same rate and burst,
+	 *         otherwise {@code false}.
+	 */
+	public boolean equals(final Object object) {
+
+		if (! (object instanceof RateLimit))
+			return false;
+
+		RateLimit other = (RateLimit)object;
+
+		return rate == other.rate && burst == other.burst;
+	}
+
+
+	/**
+	 * Returns a string representation of this rate limit.
+	 *
+	 * @return The string representation, e.g. "10.0/s burst 20".
+	 */
+	public String toString() {
+
+		return rate + "/s burst " + burst;
+	}
+}
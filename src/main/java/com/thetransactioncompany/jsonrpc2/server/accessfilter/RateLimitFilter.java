@@ -0,0 +1,464 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter capping the request rate of each API key with a token
+ * bucket. The API key is obtained with an {@link APIKeyExtractor}, the same
+ * way as in {@link APIKeyFilter}; requests without an API key and requests
+ * for methods exempted from the API key check are not limited.
+ *
+ * <p>Each API key has a default {@link RateLimit rate limit}, which may be
+ * overridden for selected keys. The buckets are updated lock-free by
+ * compare-and-set on a packed long, so the filter doesn't block under
+ * contention. The number of keys tracked is bounded. When the limit is
+ * reached the buckets which have refilled to capacity are evicted, at most
+ * once per second; if none are idle further keys share a single overflow
+ * bucket with the default limit. If the keys are hashed the buckets are
+ * keyed by a {@link KeyTagger tag} of each key, not by its value. The filter must therefore be placed after
+ * an {@link APIKeyFilter}, so that only valid API keys take a bucket, and
+ * always runs after it in an adaptively ordered {@link AccessFilterChain}.
+ *
+ * <p>Requests over the limit are denied with
+ * {@link AccessDeniedError#RATE_LIMIT_EXCEEDED}, the {@link
+ * AccessFilterResult#getErrorData error data} is a JSON object with a
+ * {@link #RETRY_AFTER "retryAfter"} member giving the seconds until a
+ * retry may succeed.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class RateLimitFilter implements OrderedAccessFilter {
+
+
+	/**
+	 * The default maximum number of API keys with their own bucket.
+	 */
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+
+	/**
+	 * The name of the error data member giving the seconds to wait before
+	 * retrying.
+	 */
+	public static final String RETRY_AFTER = "retryAfter";
+
+
+	/**
+	 * The maximum retry-after value, in seconds, with a cached denied
+	 * result.
+	 */
+	private static final int MAX_CACHED_RETRY_AFTER = 3600;
+
+
+	/**
+	 * Cache of denied results by retry-after seconds, populated on
+	 * demand. Racing writers store equal results.
+	 */
+	private static final AccessFilterResult[] DENIED_RESULTS = new AccessFilterResult[MAX_CACHED_RETRY_AFTER + 1];
+
+
+	/**
+	 * The minimum interval between evictions of idle buckets, in
+	 * milliseconds.
+	 */
+	private static final long EVICTION_INTERVAL = 1000L;
+
+
+	/**
+	 * The filters to run before this one.
+	 */
+	private static final Collection<Class<? extends AccessFilter>> RUN_AFTER =
+		Collections.<Class<? extends AccessFilter>>singleton(APIKeyFilter.class);
+
+
+	/**
+	 * The default rate limit.
+	 */
+	private RateLimit defaultLimit;
+
+
+	/**
+	 * The rate limit overrides, keyed by API key value or by SHA-256
+	 * digest if the keys are hashed.
+	 */
+	private Map<String,RateLimit> overrides;
+
+
+	/**
+	 * {@code true} if the rate limit overrides are keyed by API key
+	 * SHA-256 digest.
+	 */
+	private boolean hashedKeys;
+
+
+	/**
+	 * The tagger of the bucket keys if the keys are hashed, {@code null}
+	 * if the buckets are keyed by API key value.
+	 */
+	private KeyTagger tagger;
+
+
+	/**
+	 * The methods exempted from the API key check, which are not limited.
+	 */
+	private Set<String> exemptedMethods;
+
+
+	/**
+	 * The API key extractor.
+	 */
+	private APIKeyExtractor apiKeyExtractor;
+
+
+	/**
+	 * The token buckets, replaced when the idle buckets are evicted.
+	 */
+	private volatile TokenBucketTable buckets;
+
+
+	/**
+	 * The time of the last eviction of idle buckets, in milliseconds.
+	 */
+	private long lastEviction = -EVICTION_INTERVAL;
+
+
+	/**
+	 * The lock for evicting idle buckets.
+	 */
+	private final Object evictionLock = new Object();
+
+
+	/**
+	 * The time origin, in nanoseconds.
+	 */
+	private final long origin = System.nanoTime();
+
+
+	/**
+	 * Initialises this rate limit filter. The API key is passed in the
+	 * {@link APIKeyFilter#DEFAULT_API_KEY_PARAMETER_NAME default named
+	 * parameter}.
+	 *
+	 * @param defaultLimit The default rate limit of each API key. Must
+	 *                     not be {@code null}.
+	 * @param overrides    The rate limit overrides for selected API keys,
+	 *                     empty if none. Must not be {@code null}.
+	 */
+	public void init(final RateLimit defaultLimit,
+	                 final Map<APIKey,RateLimit> overrides) {
+
+		init(defaultLimit,
+		     overrides,
+		     new NamedParamAPIKeyExtractor(APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME),
+		     false,
+		     DEFAULT_MAX_KEYS);
+	}
+
+
+	/**
+	 * Initialises this rate limit filter.
+	 *
+	 * @param defaultLimit    The default rate limit of each API key. Must
+	 *                        not be {@code null}.
+	 * @param overrides       The rate limit overrides for selected API
+	 *                        keys, empty if none. Must not be
+	 *                        {@code null}.
+	 * @param apiKeyExtractor The extractor of the API key from the
+	 *                        JSON-RPC 2.0 request. Must not be
+	 *                        {@code null}.
+	 * @param hashedKeys      If {@code true} the overrides are keyed by
+	 *                        the hexadecimal SHA-256 digests of the API
+	 *                        keys, see {@link APIKey#getSHA256Digest}.
+	 * @param maxKeys         The maximum number of API keys with their own
+	 *                        bucket. Must be positive.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the maximum number of keys is not
+	 *                                  positive.
+	 */
+	public void init(final RateLimit defaultLimit,
+	                 final Map<APIKey,RateLimit> overrides,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final boolean hashedKeys,
+	                 final int maxKeys) {
+
+		init(defaultLimit,
+		     overrides,
+		     Collections.<String>emptySet(),
+		     apiKeyExtractor,
+		     hashedKeys,
+		     maxKeys);
+	}
+
+
+	/**
+	 * Initialises this rate limit filter.
+	 *
+	 * @param defaultLimit    The default rate limit of each API key. Must
+	 *                        not be {@code null}.
+	 * @param overrides       The rate limit overrides for selected API
+	 *                        keys, empty if none. Must not be
+	 *                        {@code null}.
+	 * @param exemptedMethods The JSON-RPC 2.0 methods exempted from the
+	 *                        API key check, which are not limited. Must
+	 *                        not be {@code null}.
+	 * @param apiKeyExtractor The extractor of the API key from the
+	 *                        JSON-RPC 2.0 request. Must not be
+	 *                        {@code null}.
+	 * @param hashedKeys      If {@code true} the overrides are keyed by
+	 *                        the hexadecimal SHA-256 digests of the API
+	 *                        keys, see {@link APIKey#getSHA256Digest}.
+	 * @param maxKeys         The maximum number of API keys with their own
+	 *                        bucket. Must be positive.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or
+	 *                                  the maximum number of keys is not
+	 *                                  positive.
+	 */
+	public void init(final RateLimit defaultLimit,
+	                 final Map<APIKey,RateLimit> overrides,
+	                 final Set<String> exemptedMethods,
+	                 final APIKeyExtractor apiKeyExtractor,
+	                 final boolean hashedKeys,
+	                 final int maxKeys) {
+
+		if (defaultLimit == null)
+			throw new IllegalArgumentException("The default rate limit must not be null");
+
+		if (overrides == null)
+			throw new IllegalArgumentException("The rate limit overrides must not be null");
+
+		if (exemptedMethods == null)
+			throw new IllegalArgumentException("The exempted methods must not be null");
+
+		if (apiKeyExtractor == null)
+			throw new IllegalArgumentException("The API key extractor must not be null");
+
+		this.defaultLimit = defaultLimit;
+
+		this.overrides = new HashMap<String,RateLimit>(overrides.size() * 4 / 3 + 1);
+
+		for (Map.Entry<APIKey,RateLimit> en: overrides.entrySet()) {
+
+			if (en.getValue() == null)
+				throw new IllegalArgumentException("The rate limit of API key " + en.getKey() + " must not be null");
+
+			// Digests are matched in lower case
+			String key = hashedKeys ? en.getKey().toString().toLowerCase(Locale.ROOT) : en.getKey().toString();
+
+			this.overrides.put(key, en.getValue());
+		}
+
+		this.hashedKeys = hashedKeys;
+		tagger = hashedKeys ? new KeyTagger() : null;
+		this.exemptedMethods = exemptedMethods;
+		this.apiKeyExtractor = apiKeyExtractor;
+
+		buckets = new TokenBucketTable(maxKeys, defaultLimit);
+	}
+
+
+	/**
+	 * Gets the default rate limit of each API key.
+	 *
+	 * @return The default rate limit.
+	 */
+	public RateLimit getDefaultRateLimit() {
+
+		return defaultLimit;
+	}
+
+
+	/**
+	 * Gets the rate limit of the specified API key.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The rate limit.
+	 */
+	public RateLimit getRateLimit(final String key) {
+
+		if (overrides.isEmpty())
+			return defaultLimit;
+
+		RateLimit limit;
+
+		if (hashedKeys)
+			limit = overrides.get(APIKeyDigest.toHex(APIKeyDigest.sha256(key)));
+		else
+			limit = overrides.get(key);
+
+		return limit != null ? limit : defaultLimit;
+	}
+
+
+	/**
+	 * Gets the JSON-RPC 2.0 methods exempted from the API key check, which
+	 * are not limited.
+	 *
+	 * @return The exempted methods, empty set if none.
+	 */
+	public Set<String> getExemptedMethods() {
+
+		return exemptedMethods;
+	}
+
+
+	/**
+	 * Gets the extractor of the API key from the JSON-RPC 2.0 request.
+	 *
+	 * @return The API key extractor.
+	 */
+	public APIKeyExtractor getAPIKeyExtractor() {
+
+		return apiKeyExtractor;
+	}
+
+
+	/**
+	 * Returns the current time in milliseconds, from an arbitrary origin.
+	 * Must be monotonic and non-negative.
+	 *
+	 * @return The current time in milliseconds.
+	 */
+	long currentTimeMillis() {
+
+		return (System.nanoTime() - origin) / 1000000L;
+	}
+
+
+	/**
+	 * Replaces the specified full bucket table with a copy without the
+	 * idle buckets, unless that was done less than a second ago.
+	 *
+	 * @param full The full bucket table.
+	 * @param now  The current time in milliseconds.
+	 *
+	 * @return {@code true} if the bucket table was replaced.
+	 */
+	private boolean evictIdle(final TokenBucketTable full, final long now) {
+
+		synchronized (evictionLock) {
+
+			// Replaced by another thread meanwhile?
+			if (buckets != full)
+				return true;
+
+			if (now - lastEviction < EVICTION_INTERVAL)
+				return false;
+
+			lastEviction = now;
+
+			buckets = full.evictIdle(now);
+
+			return true;
+		}
+	}
+
+
+	/**
+	 * Returns the denied result for the specified wait time.
+	 *
+	 * @param waitMillis The wait time in milliseconds, positive.
+	 *
+	 * @return The denied result, with error data giving the wait time in
+	 *         seconds, rounded up.
+	 */
+	static AccessFilterResult denied(final long waitMillis) {
+
+		final long seconds = (waitMillis + 999L) / 1000L;
+
+		if (seconds > MAX_CACHED_RETRY_AFTER)
+			return createDenied(seconds);
+
+		AccessFilterResult result = DENIED_RESULTS[(int)seconds];
+
+		if (result == null) {
+			result = createDenied(seconds);
+			DENIED_RESULTS[(int)seconds] = result;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Creates a denied result with the specified retry-after hint.
+	 *
+	 * @param seconds The seconds to wait before retrying.
+	 *
+	 * @return The denied result.
+	 */
+	private static AccessFilterResult createDenied(final long seconds) {
+
+		Map<String,Object> data = Collections.<String,Object>singletonMap(RETRY_AFTER, seconds);
+
+		return new AccessFilterResult(AccessDeniedError.RATE_LIMIT_EXCEEDED, data);
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter() {
+
+		return RUN_AFTER;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public AccessFilterResult filter(final JSONRPC2Request request,
+	                                 final MessageContext messageCtx) {
+
+		// The key of an exempted method isn't validated
+		if (exemptedMethods.contains(request.getMethod()))
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		final String key = apiKeyExtractor.extract(request, messageCtx);
+
+		if (key == null)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		final long now = currentTimeMillis();
+
+		// Hashed keys aren't held in the clear, not even by the buckets
+		final Object bucketKey = hashedKeys ? tagger.tag(key) : key;
+
+		TokenBucketTable b = buckets;
+
+		int slot = b.find(bucketKey);
+
+		if (slot < 0) {
+
+			final RateLimit limit = getRateLimit(key);
+
+			slot = b.add(bucketKey, limit);
+
+			// Full, make room by evicting the idle buckets
+			if (slot == b.overflowSlot() && evictIdle(b, now)) {
+				b = buckets;
+				slot = b.add(bucketKey, limit);
+			}
+		}
+
+		final long wait = b.acquire(slot, now);
+
+		if (wait == 0L)
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		return denied(wait);
+	}
+}
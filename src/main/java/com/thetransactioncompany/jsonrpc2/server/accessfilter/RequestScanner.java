@@ -0,0 +1,598 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
+
+
+/**
+ * Streaming scanner of raw UTF-8 encoded JSON-RPC 2.0 request bodies. Pulls
+ * out only the method name, the parameters type and the API key parameter,
+ * without building a JSON tree. Values of other members are skipped over
+ * by matching their brackets and quotes.
+ *
+ * <p>The scanner is conservative: it gives up on batches, on member names or
+ * extracted strings with escape sequences, on duplicate "method" or
+ * "params" members and on anything else it cannot decide with certainty,
+ * leaving the request to the full JSON parser.
+ *
+ * <p>The scanner is thread-safe. The scanned buffer's position and limit
+ * are not modified.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class RequestScanner {
+
+
+	/**
+	 * The fields of a scanned request.
+	 */
+	static final class Result {
+
+
+		/**
+		 * The method name.
+		 */
+		private String method;
+
+
+		/**
+		 * The parameters type.
+		 */
+		private JSONRPC2ParamsType paramsType = JSONRPC2ParamsType.NO_PARAMS;
+
+
+		/**
+		 * The API key, {@code null} if not found or not a string.
+		 */
+		private String apiKey;
+
+
+		/**
+		 * Gets the method name.
+		 *
+		 * @return The method name.
+		 */
+		String getMethod() {
+
+			return method;
+		}
+
+
+		/**
+		 * Gets the parameters type.
+		 *
+		 * @return The parameters type.
+		 */
+		JSONRPC2ParamsType getParamsType() {
+
+			return paramsType;
+		}
+
+
+		/**
+		 * Gets the API key.
+		 *
+		 * @return The API key, {@code null} if not found or not a
+		 *         string.
+		 */
+		String getAPIKey() {
+
+			return apiKey;
+		}
+	}
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The "method" member name.
+	 */
+	private static final byte[] METHOD = "method".getBytes(UTF8);
+
+
+	/**
+	 * The "params" member name.
+	 */
+	private static final byte[] PARAMS = "params".getBytes(UTF8);
+
+
+	/**
+	 * The UTF-8 encoded name of the API key parameter, {@code null} if the
+	 * API key is not passed in a named parameter.
+	 */
+	private final byte[] apiKeyParamName;
+
+
+	/**
+	 * The position of the API key parameter, -1 if the API key is not
+	 * passed in a positional parameter.
+	 */
+	private final int apiKeyPosition;
+
+
+	/**
+	 * Creates a new request scanner.
+	 *
+	 * @param apiKeyParamName The name of the API key parameter,
+	 *                        {@code null} if the API key is not passed in
+	 *                        a named parameter.
+	 * @param apiKeyPosition  The position of the API key parameter, -1 if
+	 *                        the API key is not passed in a positional
+	 *                        parameter.
+	 */
+	RequestScanner(final String apiKeyParamName, final int apiKeyPosition) {
+
+		this.apiKeyParamName = apiKeyParamName != null ? apiKeyParamName.getBytes(UTF8) : null;
+		this.apiKeyPosition = apiKeyPosition;
+	}
+
+
+	/**
+	 * Scans the specified request body, from its position to its limit.
+	 *
+	 * @param buf The request body. Must not be {@code null}.
+	 *
+	 * @return The scanned fields, {@code null} if the body is not a single
+	 *         JSON-RPC 2.0 request or couldn't be scanned with certainty.
+	 */
+	Result scan(final ByteBuffer buf) {
+
+		final int limit = buf.limit();
+
+		int i = skipWhitespace(buf, buf.position(), limit);
+
+		if (i >= limit || buf.get(i) != '{')
+			return null;
+
+		Result result = new Result();
+		boolean paramsSeen = false;
+
+		i = skipWhitespace(buf, i + 1, limit);
+
+		while (true) {
+
+			// Member name
+			final int nameEnd = skipString(buf, i, limit);
+
+			if (nameEnd < 0 || containsBackslash(buf, i + 1, nameEnd - 1))
+				return null;
+
+			final int valueStart = skipColon(buf, nameEnd, limit);
+
+			if (valueStart < 0)
+				return null;
+
+			if (regionEquals(buf, i + 1, nameEnd - 1, METHOD)) {
+
+				if (result.method != null)
+					return null;
+
+				i = skipString(buf, valueStart, limit);
+
+				if (i < 0 || containsBackslash(buf, valueStart + 1, i - 1))
+					return null;
+
+				result.method = decode(buf, valueStart + 1, i - 1);
+			}
+			else if (regionEquals(buf, i + 1, nameEnd - 1, PARAMS)) {
+
+				if (paramsSeen)
+					return null;
+
+				paramsSeen = true;
+
+				if (valueStart >= limit)
+					return null;
+
+				final byte c = buf.get(valueStart);
+
+				if (c == '{') {
+					result.paramsType = JSONRPC2ParamsType.OBJECT;
+					i = apiKeyParamName != null ? scanNamedParams(buf, valueStart, limit, result) : skipValue(buf, valueStart, limit);
+				}
+				else if (c == '[') {
+					result.paramsType = JSONRPC2ParamsType.ARRAY;
+					i = apiKeyPosition >= 0 ? scanPositionalParams(buf, valueStart, limit, result) : skipValue(buf, valueStart, limit);
+				}
+				else {
+					// Invalid params, leave to the parser
+					return null;
+				}
+			}
+			else {
+				i = skipValue(buf, valueStart, limit);
+			}
+
+			if (i < 0)
+				return null;
+
+			i = skipWhitespace(buf, i, limit);
+
+			if (i >= limit)
+				return null;
+
+			final byte c = buf.get(i);
+
+			if (c == ',') {
+				i = skipWhitespace(buf, i + 1, limit);
+			}
+			else if (c == '}') {
+				break;
+			}
+			else {
+				return null;
+			}
+		}
+
+		// Only trailing whitespace allowed
+		if (skipWhitespace(buf, i + 1, limit) != limit || result.method == null)
+			return null;
+
+		return result;
+	}
+
+
+	/**
+	 * Scans the named parameters object at the specified index for the API
+	 * key parameter.
+	 *
+	 * @param buf    The buffer.
+	 * @param i      The index of the opening brace.
+	 * @param limit  The buffer limit.
+	 * @param result The result to set the API key of.
+	 *
+	 * @return The index after the closing brace, -1 if the object couldn't
+	 *         be scanned with certainty.
+	 */
+	private int scanNamedParams(final ByteBuffer buf, int i, final int limit, final Result result) {
+
+		boolean keySeen = false;
+
+		i = skipWhitespace(buf, i + 1, limit);
+
+		if (i < limit && buf.get(i) == '}')
+			return i + 1;
+
+		while (true) {
+
+			final int nameEnd = skipString(buf, i, limit);
+
+			if (nameEnd < 0 || containsBackslash(buf, i + 1, nameEnd - 1))
+				return -1;
+
+			final int valueStart = skipColon(buf, nameEnd, limit);
+
+			if (valueStart < 0)
+				return -1;
+
+			if (regionEquals(buf, i + 1, nameEnd - 1, apiKeyParamName)) {
+
+				if (keySeen)
+					return -1;
+
+				keySeen = true;
+
+				i = scanAPIKey(buf, valueStart, limit, result);
+			}
+			else {
+				i = skipValue(buf, valueStart, limit);
+			}
+
+			if (i < 0)
+				return -1;
+
+			i = skipWhitespace(buf, i, limit);
+
+			if (i >= limit)
+				return -1;
+
+			final byte c = buf.get(i);
+
+			if (c == '}')
+				return i + 1;
+
+			if (c != ',')
+				return -1;
+
+			i = skipWhitespace(buf, i + 1, limit);
+		}
+	}
+
+
+	/**
+	 * Scans the positional parameters array at the specified index for
+	 * the API key parameter.
+	 *
+	 * @param buf    The buffer.
+	 * @param i      The index of the opening bracket.
+	 * @param limit  The buffer limit.
+	 * @param result The result to set the API key of.
+	 *
+	 * @return The index after the closing bracket, -1 if the array
+	 *         couldn't be scanned with certainty.
+	 */
+	private int scanPositionalParams(final ByteBuffer buf, int i, final int limit, final Result result) {
+
+		i = skipWhitespace(buf, i + 1, limit);
+
+		if (i < limit && buf.get(i) == ']')
+			return i + 1;
+
+		for (int pos=0; ; pos++) {
+
+			if (pos == apiKeyPosition)
+				i = scanAPIKey(buf, i, limit, result);
+			else
+				i = skipValue(buf, i, limit);
+
+			if (i < 0)
+				return -1;
+
+			i = skipWhitespace(buf, i, limit);
+
+			if (i >= limit)
+				return -1;
+
+			final byte c = buf.get(i);
+
+			if (c == ']')
+				return i + 1;
+
+			if (c != ',')
+				return -1;
+
+			i = skipWhitespace(buf, i + 1, limit);
+		}
+	}
+
+
+	/**
+	 * Scans the API key value at the specified index. Only string values
+	 * are API keys.
+	 *
+	 * @param buf    The buffer.
+	 * @param i      The index of the value.
+	 * @param limit  The buffer limit.
+	 * @param result The result to set the API key of.
+	 *
+	 * @return The index after the value, -1 if the value couldn't be
+	 *         scanned with certainty.
+	 */
+	private static int scanAPIKey(final ByteBuffer buf, final int i, final int limit, final Result result) {
+
+		if (i >= limit || buf.get(i) != '"')
+			return skipValue(buf, i, limit);
+
+		final int end = skipString(buf, i, limit);
+
+		if (end < 0 || containsBackslash(buf, i + 1, end - 1))
+			return -1;
+
+		result.apiKey = decode(buf, i + 1, end - 1);
+
+		return end;
+	}
+
+
+	/**
+	 * Skips JSON whitespace.
+	 *
+	 * @param buf   The buffer.
+	 * @param i     The start index.
+	 * @param limit The buffer limit.
+	 *
+	 * @return The index of the first non-whitespace byte, or the limit.
+	 */
+	private static int skipWhitespace(final ByteBuffer buf, int i, final int limit) {
+
+		while (i < limit) {
+
+			final byte c = buf.get(i);
+
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+				break;
+
+			i++;
+		}
+
+		return i;
+	}
+
+
+	/**
+	 * Skips a colon and the whitespace around it.
+	 *
+	 * @param buf   The buffer.
+	 * @param i     The start index.
+	 * @param limit The buffer limit.
+	 *
+	 * @return The index of the following value, -1 if there is no colon.
+	 */
+	private static int skipColon(final ByteBuffer buf, int i, final int limit) {
+
+		i = skipWhitespace(buf, i, limit);
+
+		if (i >= limit || buf.get(i) != ':')
+			return -1;
+
+		return skipWhitespace(buf, i + 1, limit);
+	}
+
+
+	/**
+	 * Skips a string, including escape sequences.
+	 *
+	 * @param buf   The buffer.
+	 * @param i     The index of the opening quote.
+	 * @param limit The buffer limit.
+	 *
+	 * @return The index after the closing quote, -1 if there is no string
+	 *         or it is not terminated.
+	 */
+	private static int skipString(final ByteBuffer buf, int i, final int limit) {
+
+		if (i >= limit || buf.get(i) != '"')
+			return -1;
+
+		for (i++; i < limit; i++) {
+
+			final byte c = buf.get(i);
+
+			if (c == '"')
+				return i + 1;
+
+			if (c == '\\')
+				i++;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Skips a value of any type. Nested objects and arrays are skipped by
+	 * matching their brackets.
+	 *
+	 * @param buf   The buffer.
+	 * @param i     The index of the value.
+	 * @param limit The buffer limit.
+	 *
+	 * @return The index after the value, -1 if the value is not
+	 *         terminated.
+	 */
+	private static int skipValue(final ByteBuffer buf, int i, final int limit) {
+
+		if (i >= limit)
+			return -1;
+
+		byte c = buf.get(i);
+
+		if (c == '"')
+			return skipString(buf, i, limit);
+
+		if (c == '{' || c == '[') {
+
+			int depth = 0;
+
+			while (i < limit) {
+
+				c = buf.get(i);
+
+				if (c == '"') {
+					i = skipString(buf, i, limit);
+
+					if (i < 0)
+						return -1;
+
+					continue;
+				}
+
+				if (c == '{' || c == '[') {
+					depth++;
+				}
+				else if (c == '}' || c == ']') {
+
+					if (--depth == 0)
+						return i + 1;
+				}
+
+				i++;
+			}
+
+			return -1;
+		}
+
+		// Number, true, false or null
+		final int start = i;
+
+		while (i < limit) {
+
+			c = buf.get(i);
+
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r')
+				break;
+
+			i++;
+		}
+
+		return i > start ? i : -1;
+	}
+
+
+	/**
+	 * Checks if the specified buffer region contains a backslash.
+	 *
+	 * @param buf  The buffer.
+	 * @param from The start index, inclusive.
+	 * @param to   The end index, exclusive.
+	 *
+	 * @return {@code true} if the region contains a backslash, else
+	 *         {@code false}.
+	 */
+	private static boolean containsBackslash(final ByteBuffer buf, final int from, final int to) {
+
+		for (int i=from; i < to; i++) {
+
+			if (buf.get(i) == '\\')
+				return true;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Compares the specified buffer region to the specified bytes.
+	 *
+	 * @param buf   The buffer.
+	 * @param from  The start index, inclusive.
+	 * @param to    The end index, exclusive.
+	 * @param bytes The bytes to compare to.
+	 *
+	 * @return {@code true} if the region equals the bytes, else
+	 *         {@code false}.
+	 */
+	private static boolean regionEquals(final ByteBuffer buf, final int from, final int to, final byte[] bytes) {
+
+		if (to - from != bytes.length)
+			return false;
+
+		for (int i=0; i < bytes.length; i++) {
+
+			if (buf.get(from + i) != bytes[i])
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Decodes the specified UTF-8 encoded buffer region.
+	 *
+	 * @param buf  The buffer.
+	 * @param from The start index, inclusive.
+	 * @param to   The end index, exclusive.
+	 *
+	 * @return The decoded string.
+	 */
+	private static String decode(final ByteBuffer buf, final int from, final int to) {
+
+		if (buf.hasArray())
+			return new String(buf.array(), buf.arrayOffset() + from, to - from, UTF8);
+
+		byte[] bytes = new byte[to - from];
+
+		for (int i=0; i < bytes.length; i++)
+			bytes[i] = buf.get(from + i);
+
+		return new String(bytes, UTF8);
+	}
+}
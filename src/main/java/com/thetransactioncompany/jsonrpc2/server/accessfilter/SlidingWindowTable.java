@@ -0,0 +1,308 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+/**
+ * Striped, fixed-capacity table of sliding window request counters keyed by
+ * IP address. Addresses are held as pairs of longs, IPv4 addresses in their
+ * IPv4-mapped IPv6 form, so that lookups do not allocate.
+ *
+ * <p>The sliding window is approximated from the counts of the current and
+ * the previous fixed window, the previous count being weighted by the part
+ * of it still covered by the sliding window. Denied requests are not
+ * counted.
+ *
+ * <p>The table never grows. Each address may take one of a short run of
+ * slots from its hash; when all are taken the counter with the lowest
+ * estimate is evicted. Idle counters, whose windows have passed, estimate
+ * zero and are therefore reclaimed first, while the counters of the busiest
+ * addresses are kept.
+ *
+ * <p>Each stripe is guarded by its own lock.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class SlidingWindowTable {
+
+
+	/**
+	 * The number of stripes, a power of two.
+	 */
+	static final int STRIPES = 32;
+
+
+	/**
+	 * The number of slots an address may take, starting from its hash.
+	 */
+	static final int PROBES = 8;
+
+
+	/**
+	 * The IPv4-mapped IPv6 prefix, in the low 64 bits.
+	 */
+	private static final long IPV4_MAPPED = 0xffffL << 32;
+
+
+	/**
+	 * Table stripe.
+	 */
+	private static final class Stripe {
+
+
+		/**
+		 * The addresses, the high and low 64 bits of each in adjacent
+		 * elements.
+		 */
+		final long[] addresses;
+
+
+		/**
+		 * The fixed window number of the current counts plus one, zero
+		 * marks an empty slot.
+		 */
+		final long[] windows;
+
+
+		/**
+		 * The request counts of the current windows.
+		 */
+		final int[] current;
+
+
+		/**
+		 * The request counts of the previous windows.
+		 */
+		final int[] previous;
+
+
+		/**
+		 * The slot mask.
+		 */
+		final int mask;
+
+
+		/**
+		 * Creates a new stripe.
+		 *
+		 * @param capacity The number of slots, a power of two.
+		 */
+		Stripe(final int capacity) {
+
+			addresses = new long[capacity * 2];
+			windows = new long[capacity];
+			current = new int[capacity];
+			previous = new int[capacity];
+			mask = capacity - 1;
+		}
+	}
+
+
+	/**
+	 * The stripes.
+	 */
+	private final Stripe[] stripes;
+
+
+	/**
+	 * The maximum number of requests per window.
+	 */
+	private final int limit;
+
+
+	/**
+	 * The window length in milliseconds.
+	 */
+	private final long windowMillis;
+
+
+	/**
+	 * Creates a new sliding window table.
+	 *
+	 * @param limit        The maximum number of requests per window. Must
+	 *                     be positive.
+	 * @param windowMillis The window length in milliseconds. Must be
+	 *                     positive.
+	 * @param maxAddresses The number of addresses to hold. Must be
+	 *                     positive.
+	 */
+	SlidingWindowTable(final int limit, final long windowMillis, final int maxAddresses) {
+
+		if (limit < 1)
+			throw new IllegalArgumentException("The request limit must be positive");
+
+		if (windowMillis < 1)
+			throw new IllegalArgumentException("The window must be positive");
+
+		if (maxAddresses < 1)
+			throw new IllegalArgumentException("The maximum number of addresses must be positive");
+
+		this.limit = limit;
+		this.windowMillis = windowMillis;
+
+		int capacity = PROBES;
+
+		while (capacity * STRIPES < maxAddresses && capacity < (1 << 24))
+			capacity <<= 1;
+
+		stripes = new Stripe[STRIPES];
+
+		for (int i=0; i < STRIPES; i++)
+			stripes[i] = new Stripe(capacity);
+	}
+
+
+	/**
+	 * Returns the number of addresses this table holds.
+	 *
+	 * @return The capacity.
+	 */
+	int capacity() {
+
+		return STRIPES * (stripes[0].mask + 1);
+	}
+
+
+	/**
+	 * Counts a request from the specified IPv4 address, if within the
+	 * limit.
+	 *
+	 * @param addr The unsigned 32-bit address value.
+	 * @param now  The current time in milliseconds, non-negative and
+	 *             monotonic.
+	 *
+	 * @return Zero if the request was counted, else the time in
+	 *         milliseconds until a request would be allowed.
+	 */
+	long acquireIPv4(final long addr, final long now) {
+
+		return acquire(0L, IPV4_MAPPED | addr, now);
+	}
+
+
+	/**
+	 * Counts a request from the specified IPv6 address, if within the
+	 * limit. Callers counting by network prefix pass the address with
+	 * the host bits cleared.
+	 *
+	 * @param hi  The high 64 bits of the address.
+	 * @param lo  The low 64 bits of the address.
+	 * @param now The current time in milliseconds, non-negative and
+	 *            monotonic.
+	 *
+	 * @return Zero if the request was counted, else the time in
+	 *         milliseconds until a request would be allowed.
+	 */
+	long acquire(final long hi, final long lo, final long now) {
+
+		final int h = LongPairHashSet.mix(hi, lo);
+
+		// The high bits select the stripe, the low bits the slot
+		final Stripe s = stripes[h >>> (32 - Integer.numberOfTrailingZeros(STRIPES))];
+
+		final long window = now / windowMillis;
+
+		final double elapsed = (double)(now - window * windowMillis) / windowMillis;
+
+		synchronized (s) {
+
+			int slot = -1;
+			int victim = -1;
+			double victimEstimate = Double.MAX_VALUE;
+
+			for (int i=0; i < PROBES; i++) {
+
+				final int j = (h + i) & s.mask;
+
+				if (s.windows[j] == 0L) {
+					// Slots are never emptied, the address is absent
+					slot = j;
+					s.addresses[j * 2] = hi;
+					s.addresses[j * 2 + 1] = lo;
+					s.windows[j] = window + 1;
+					s.current[j] = 0;
+					s.previous[j] = 0;
+					break;
+				}
+
+				roll(s, j, window);
+
+				if (s.addresses[j * 2] == hi && s.addresses[j * 2 + 1] == lo) {
+					slot = j;
+					break;
+				}
+
+				final double estimate = s.previous[j] * (1.0 - elapsed) + s.current[j];
+
+				if (estimate < victimEstimate) {
+					victim = j;
+					victimEstimate = estimate;
+				}
+			}
+
+			if (slot < 0) {
+				slot = victim;
+				s.addresses[slot * 2] = hi;
+				s.addresses[slot * 2 + 1] = lo;
+				s.current[slot] = 0;
+				s.previous[slot] = 0;
+			}
+
+			final int prev = s.previous[slot];
+			final int cur = s.current[slot];
+
+			if (prev * (1.0 - elapsed) + cur + 1 <= limit) {
+				s.current[slot] = cur + 1;
+				return 0L;
+			}
+
+			return waitMillis(prev, cur, elapsed);
+		}
+	}
+
+
+	/**
+	 * Rolls the counts of the specified slot over to the specified fixed
+	 * window.
+	 *
+	 * @param s      The stripe.
+	 * @param j      The slot.
+	 * @param window The current fixed window number.
+	 */
+	private static void roll(final Stripe s, final int j, final long window) {
+
+		final long passed = window + 1 - s.windows[j];
+
+		if (passed == 0L)
+			return;
+
+		s.previous[j] = passed == 1L ? s.current[j] : 0;
+		s.current[j] = 0;
+		s.windows[j] = window + 1;
+	}
+
+
+	/**
+	 * Computes the time until a request would be allowed.
+	 *
+	 * @param prev    The count of the previous window.
+	 * @param cur     The count of the current window.
+	 * @param elapsed The elapsed part of the current window, from 0 to 1.
+	 *
+	 * @return The wait time in milliseconds, positive.
+	 */
+	private long waitMillis(final int prev, final int cur, final double elapsed) {
+
+		double wait;
+
+		if (cur < limit) {
+			// Wait for the previous count to slide out enough
+			wait = (1.0 - (double)(limit - cur - 1) / prev - elapsed) * windowMillis;
+		}
+		else {
+			// Wait for the next window, in which the current count
+			// becomes the previous one
+			wait = (1.0 - elapsed + Math.max(0.0, 1.0 - (double)(limit - 1) / cur)) * windowMillis;
+		}
+
+		return Math.max(1L, (long)Math.ceil(wait));
+	}
+}
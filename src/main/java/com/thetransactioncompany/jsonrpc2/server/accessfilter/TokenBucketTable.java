@@ -0,0 +1,363 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Concurrent open-addressed table of token buckets, keyed by objects
+ * compared with {@link Object#equals}. The state of each bucket is packed
+ * into a single long, holding the token count and the time of the last
+ * refill, and is updated lock-free by compare-and-set.
+ *
+ * <p>Buckets are created on first use and are never removed from a table.
+ * Once the maximum number of keys is reached further keys share a single
+ * overflow bucket, unless the idle buckets are {@link #evictIdle evicted}
+ * by copying the others to a new table.
+ *
+ * <p>The packed bucket state has the refill time in milliseconds in the upper
+ * 40 bits and the tokens, in fixed-point 1/16 token units, in the lower 24
+ * bits. Zero marks a new bucket, which is full.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class TokenBucketTable {
+
+
+	/**
+	 * The token units per token.
+	 */
+	static final int UNITS_PER_TOKEN = 16;
+
+
+	/**
+	 * The number of bits of the token units.
+	 */
+	private static final int TOKEN_BITS = 24;
+
+
+	/**
+	 * The token units mask.
+	 */
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+
+	/**
+	 * Immutable bucket entry.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * The key.
+		 */
+		final Object key;
+
+
+		/**
+		 * The bucket capacity, in token units.
+		 */
+		final long capacity;
+
+
+		/**
+		 * The refill rate, in token units per millisecond.
+		 */
+		final double unitsPerMilli;
+
+
+		/**
+		 * Creates a new bucket entry.
+		 *
+		 * @param key   The key.
+		 * @param limit The rate limit.
+		 */
+		Entry(final Object key, final RateLimit limit) {
+
+			this.key = key;
+			capacity = (long)limit.getBurst() * UNITS_PER_TOKEN;
+			unitsPerMilli = limit.getRate() * UNITS_PER_TOKEN / 1000.0;
+		}
+	}
+
+
+	/**
+	 * The bucket entries, {@code null} marks an empty slot. The last slot
+	 * holds the overflow bucket.
+	 */
+	private final AtomicReferenceArray<Entry> entries;
+
+
+	/**
+	 * The packed bucket states, parallel to the entries.
+	 */
+	private final AtomicLongArray states;
+
+
+	/**
+	 * The hash table mask.
+	 */
+	private final int mask;
+
+
+	/**
+	 * The maximum number of keys.
+	 */
+	private final int maxKeys;
+
+
+	/**
+	 * The number of keys.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+
+	/**
+	 * Creates a new token bucket table.
+	 *
+	 * @param maxKeys       The maximum number of keys. Must be positive.
+	 * @param overflowLimit The rate limit of the overflow bucket. Must not
+	 *                      be {@code null}.
+	 */
+	TokenBucketTable(final int maxKeys, final RateLimit overflowLimit) {
+
+		this(maxKeys, new Entry(null, overflowLimit));
+	}
+
+
+	/**
+	 * Creates a new token bucket table.
+	 *
+	 * @param maxKeys  The maximum number of keys. Must be positive.
+	 * @param overflow The overflow bucket entry. Must not be {@code null}.
+	 */
+	private TokenBucketTable(final int maxKeys, final Entry overflow) {
+
+		if (maxKeys < 1)
+			throw new IllegalArgumentException("The maximum number of keys must be positive");
+
+		this.maxKeys = maxKeys;
+
+		final int length = IntHashSet.tableSizeFor(maxKeys);
+
+		mask = length - 1;
+
+		entries = new AtomicReferenceArray<Entry>(length + 1);
+		states = new AtomicLongArray(length + 1);
+
+		entries.set(length, overflow);
+	}
+
+
+	/**
+	 * Finds the bucket slot of the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The slot, -1 if the key has no bucket.
+	 */
+	int find(final Object key) {
+
+		for (int i = IntHashSet.mix(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+
+			final Entry e = entries.get(i);
+
+			if (e == null)
+				return -1;
+
+			if (e.key.equals(key))
+				return i;
+		}
+	}
+
+
+	/**
+	 * Adds a bucket for the specified key, if it has none.
+	 *
+	 * @param key   The key. Must not be {@code null}.
+	 * @param limit The rate limit of the bucket. Must not be
+	 *              {@code null}.
+	 *
+	 * @return The slot of the key's bucket, or the overflow slot if the
+	 *         maximum number of keys is reached.
+	 */
+	int add(final Object key, final RateLimit limit) {
+
+		final Entry entry = new Entry(key, limit);
+
+		for (int i = IntHashSet.mix(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+
+			Entry e = entries.get(i);
+
+			if (e == null) {
+
+				if (size.incrementAndGet() > maxKeys) {
+					size.decrementAndGet();
+					return overflowSlot();
+				}
+
+				if (entries.compareAndSet(i, null, entry))
+					return i;
+
+				// Lost the race for the slot
+				size.decrementAndGet();
+				e = entries.get(i);
+			}
+
+			if (e.key.equals(key))
+				return i;
+		}
+	}
+
+
+	/**
+	 * Returns the slot of the overflow bucket.
+	 *
+	 * @return The overflow slot.
+	 */
+	int overflowSlot() {
+
+		return mask + 1;
+	}
+
+
+	/**
+	 * Returns the number of keys with a bucket.
+	 *
+	 * @return The number of keys.
+	 */
+	int size() {
+
+		return size.get();
+	}
+
+
+	/**
+	 * Returns a copy of this table without the idle buckets, which have
+	 * refilled to capacity and are thus the same as new buckets. Tokens
+	 * taken from this table while it's being copied may be lost.
+	 *
+	 * @param now The current time in milliseconds, non-negative and
+	 *            monotonic.
+	 *
+	 * @return The new table.
+	 */
+	TokenBucketTable evictIdle(final long now) {
+
+		final TokenBucketTable copy = new TokenBucketTable(maxKeys, entries.get(overflowSlot()));
+
+		for (int i=0; i <= mask; i++) {
+
+			final Entry e = entries.get(i);
+
+			if (e == null)
+				continue;
+
+			final long state = states.get(i);
+
+			if (isFull(e, state, now))
+				continue;
+
+			int j = IntHashSet.mix(e.key.hashCode()) & copy.mask;
+
+			while (copy.entries.get(j) != null)
+				j = (j + 1) & copy.mask;
+
+			copy.entries.set(j, e);
+			copy.states.set(j, state);
+			copy.size.incrementAndGet();
+		}
+
+		copy.states.set(copy.overflowSlot(), states.get(overflowSlot()));
+
+		return copy;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified bucket is refilled to
+	 * capacity.
+	 *
+	 * @param e     The bucket entry.
+	 * @param state The packed bucket state.
+	 * @param now   The current time in milliseconds.
+	 *
+	 * @return {@code true} if the bucket is full.
+	 */
+	private static boolean isFull(final Entry e, final long state, final long now) {
+
+		if (state == 0L)
+			return true;
+
+		final long elapsed = now - ((state >>> TOKEN_BITS) - 1);
+
+		final long tokens = state & TOKEN_MASK;
+
+		return tokens >= e.capacity || elapsed > 0 && tokens + (long)(elapsed * e.unitsPerMilli) >= e.capacity;
+	}
+
+
+	/**
+	 * Tries to take a token from the bucket in the specified slot.
+	 *
+	 * @param slot The bucket slot.
+	 * @param now  The current time in milliseconds, non-negative and
+	 *             monotonic.
+	 *
+	 * @return Zero if a token was taken, else the time in milliseconds
+	 *         until a token is available.
+	 */
+	long acquire(final int slot, final long now) {
+
+		final Entry e = entries.get(slot);
+
+		while (true) {
+
+			final long state = states.get(slot);
+
+			long time;
+			long tokens;
+
+			if (state == 0L) {
+				time = now;
+				tokens = e.capacity;
+			}
+			else {
+				time = (state >>> TOKEN_BITS) - 1;
+				tokens = state & TOKEN_MASK;
+			}
+
+			// Refill with the whole units accrued since the last
+			// refill, the time of any fraction is carried over
+			final long elapsed = now - time;
+
+			if (elapsed > 0) {
+
+				final long accrued = (long)(elapsed * e.unitsPerMilli);
+
+				if (tokens + accrued >= e.capacity) {
+					tokens = e.capacity;
+					time = now;
+				}
+				else if (accrued > 0) {
+					tokens += accrued;
+					time = Math.min(now, time + (long)Math.ceil(accrued / e.unitsPerMilli));
+				}
+			}
+
+			if (tokens < UNITS_PER_TOKEN) {
+
+				final double wait = (UNITS_PER_TOKEN - tokens) / e.unitsPerMilli - Math.max(0L, now - time);
+
+				return Math.max(1L, (long)Math.ceil(wait));
+			}
+
+			final long update = ((time + 1) << TOKEN_BITS) | (tokens - UNITS_PER_TOKEN);
+
+			if (states.compareAndSet(slot, state, update))
+				return 0L;
+		}
+	}
+}
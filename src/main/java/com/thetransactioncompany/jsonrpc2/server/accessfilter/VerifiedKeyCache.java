@@ -0,0 +1,94 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.SecureRandom;
+
+
+/**
+ * Bounded cache of verified API keys and their allowed methods. The keys are
+ * not held in the clear, the cache is keyed by a {@link KeyTagger tag} of
+ * each key, computed with a random secret chosen when the cache is created.
+ *
+ * <p>The cache is thread-safe, see {@link BoundedCache}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class VerifiedKeyCache {
+
+
+	/**
+	 * The key tagger.
+	 */
+	private final KeyTagger tagger;
+
+
+	/**
+	 * The cached allowed methods, by key tag.
+	 */
+	private final BoundedCache<KeyTagger.Tag,MethodPermissions> cache;
+
+
+	/**
+	 * Creates a new verified API key cache with a random secret.
+	 *
+	 * @param capacity The maximum number of cached keys, rounded up to a
+	 *                 power of two. Must be positive and not exceed 2^30.
+	 */
+	VerifiedKeyCache(final int capacity) {
+
+		this(capacity, new SecureRandom());
+	}
+
+
+	/**
+	 * Creates a new verified API key cache with a secret from the
+	 * specified source.
+	 *
+	 * @param capacity The maximum number of cached keys, rounded up to a
+	 *                 power of two. Must be positive and not exceed 2^30.
+	 * @param random   The secret source. Must not be {@code null}.
+	 */
+	VerifiedKeyCache(final int capacity, final SecureRandom random) {
+
+		cache = new BoundedCache<KeyTagger.Tag,MethodPermissions>(capacity);
+		tagger = new KeyTagger(random);
+	}
+
+
+	/**
+	 * Computes the tag of the specified API key.
+	 *
+	 * @param key The API key value. Must not be {@code null}.
+	 *
+	 * @return The tag.
+	 */
+	KeyTagger.Tag tag(final String key) {
+
+		return tagger.tag(key);
+	}
+
+
+	/**
+	 * Gets the cached allowed methods for the specified key tag.
+	 *
+	 * @param tag The key tag. Must not be {@code null}.
+	 *
+	 * @return The allowed methods, {@code null} if not cached.
+	 */
+	MethodPermissions get(final KeyTagger.Tag tag) {
+
+		return cache.get(tag);
+	}
+
+
+	/**
+	 * Caches the allowed methods for the specified key tag.
+	 *
+	 * @param tag         The key tag. Must not be {@code null}.
+	 * @param permissions The allowed methods. Must not be {@code null}.
+	 */
+	void put(final KeyTagger.Tag tag, final MethodPermissions permissions) {
+
+		cache.put(tag, permissions);
+	}
+}
@@ -0,0 +1,212 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.cert.X509Certificate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Access filter pinning the X.509 client certificates by SHA-256
+ * fingerprint. Unlike a required principal DN, which any CA in the trust
+ * store can issue, a fingerprint matches only the exact certificate.
+ *
+ * <p>The client certificate chain is obtained from the
+ * {@link #CERTIFICATE_ATTRIBUTE servlet request attribute}, requests without
+ * a servlet request or a certificate are denied with
+ * {@link AccessDeniedError#CLIENT_CERT_REQUIRED}. The fingerprint of the
+ * leaf certificate must be pinned, else the request is denied with
+ * {@link AccessDeniedError#CLIENT_CERT_NOT_PINNED}.
+ *
+ * <p>The fingerprints are kept in a bounded cache keyed by certificate
+ * instance, so certificates reused across the requests of a TLS session
+ * are hashed only once.
+ *
+ * <p>This filter complements {@link HTTPSFilter} and always runs after it in
+ * an adaptively ordered {@link AccessFilterChain}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class X509CertPinningFilter implements OrderedAccessFilter {
+
+
+	/**
+	 * The servlet request attribute holding the client certificate
+	 * chain, leaf first.
+	 */
+	public static final String CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+
+
+	/**
+	 * The default capacity of the certificate fingerprint cache.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+
+	/**
+	 * The filters to run before this one.
+	 */
+	private static final Collection<Class<? extends AccessFilter>> RUN_AFTER =
+		Collections.<Class<? extends AccessFilter>>singleton(HTTPSFilter.class);
+
+
+	/**
+	 * The pinned fingerprints, as lower case hexadecimal strings.
+	 */
+	private Set<String> fingerprints;
+
+
+	/**
+	 * The fingerprints of recently seen certificates, by instance.
+	 */
+	private FingerprintCache cache;
+
+
+	/**
+	 * Parses the specified certificate fingerprint.
+	 *
+	 * @param fingerprint The hexadecimal SHA-256 fingerprint, in upper or
+	 *                    lower case, with optional colons between the
+	 *                    bytes. May be {@code null}.
+	 *
+	 * @return The lower case hexadecimal fingerprint without colons,
+	 *         {@code null} if invalid.
+	 */
+	public static String parseFingerprint(final String fingerprint) {
+
+		if (fingerprint == null)
+			return null;
+
+		byte[] digest = APIKeyDigest.parseHex(fingerprint.replace(":", ""));
+
+		return digest != null ? APIKeyDigest.toHex(digest) : null;
+	}
+
+
+	/**
+	 * Initialises this certificate pinning filter.
+	 *
+	 * @param fingerprints The pinned hexadecimal SHA-256 certificate
+	 *                     fingerprints, with optional colons between the
+	 *                     bytes. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed or a
+	 *                                  fingerprint is invalid.
+	 */
+	public void init(final Set<String> fingerprints) {
+
+		init(fingerprints, DEFAULT_CACHE_SIZE);
+	}
+
+
+	/**
+	 * Initialises this certificate pinning filter.
+	 *
+	 * @param fingerprints The pinned hexadecimal SHA-256 certificate
+	 *                     fingerprints, with optional colons between the
+	 *                     bytes. Must not be {@code null}.
+	 * @param cacheSize    The capacity of the certificate fingerprint
+	 *                     cache, zero to disable caching.
+	 *
+	 * @throws IllegalArgumentException If a null argument is passed, a
+	 *                                  fingerprint is invalid or the
+	 *                                  cache size is negative.
+	 */
+	public void init(final Set<String> fingerprints, final int cacheSize) {
+
+		if (fingerprints == null)
+			throw new IllegalArgumentException("The pinned fingerprints must not be null");
+
+		if (cacheSize < 0)
+			throw new IllegalArgumentException("The fingerprint cache size must not be negative");
+
+		Set<String> parsed = new HashSet<String>(fingerprints.size() * 4 / 3 + 1);
+
+		for (String fingerprint: fingerprints) {
+
+			String hex = parseFingerprint(fingerprint);
+
+			if (hex == null)
+				throw new IllegalArgumentException("Invalid SHA-256 certificate fingerprint: " + fingerprint);
+
+			parsed.add(hex);
+		}
+
+		this.fingerprints = Collections.unmodifiableSet(parsed);
+		this.cache = new FingerprintCache(cacheSize);
+	}
+
+
+	/**
+	 * Gets the pinned certificate fingerprints.
+	 *
+	 * @return The lower case hexadecimal SHA-256 fingerprints, empty set
+	 *         if none.
+	 */
+	public Set<String> getFingerprints() {
+
+		return fingerprints;
+	}
+
+
+	/**
+	 * Gets the fingerprint of the specified certificate.
+	 *
+	 * @param cert The certificate. Must not be {@code null}.
+	 *
+	 * @return The lower case hexadecimal SHA-256 fingerprint,
+	 *         {@code null} if the certificate couldn't be encoded.
+	 */
+	String fingerprint(final X509Certificate cert) {
+
+		return cache.get(cert);
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter() {
+
+		return RUN_AFTER;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	public AccessFilterResult filter(final JSONRPC2Request request,
+	                                 final MessageContext messageCtx) {
+
+		final HttpServletRequest httpRequest = messageCtx.getHttpServletRequest();
+
+		if (httpRequest == null)
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
+
+		final Object attribute = httpRequest.getAttribute(CERTIFICATE_ATTRIBUTE);
+
+		if (! (attribute instanceof X509Certificate[]) || ((X509Certificate[])attribute).length == 0)
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
+
+		final X509Certificate leaf = ((X509Certificate[])attribute)[0];
+
+		if (leaf == null)
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
+
+		final String fingerprint = fingerprint(leaf);
+
+		if (fingerprint != null && fingerprints.contains(fingerprint))
+			return AccessFilterResult.ACCESS_ALLOWED;
+
+		return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_NOT_PINNED);
+	}
+}
@@ -3,8 +3,10 @@ package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 import java.security.Principal;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import com.unboundid.ldap.sdk.DN;
-import com.unboundid.ldap.sdk.LDAPException;
 
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
@@ -13,13 +15,34 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 
 /**
  * Access filter ensuring HTTPS requests carry an X.509 client certificate with
- * optional specified principal (subject DN).
+ * optional specified principal (subject DN). The principals may also be
+ * authorised for selected JSON-RPC 2.0 methods with a
+ * {@link PrincipalMethodMap}, by exact DN or DN suffix.
+ *
+ * <p>This filter complements {@link HTTPSFilter} and always runs after it in
+ * an adaptively ordered {@link AccessFilterChain}.
  *
- * <p>This filter complements {@link HTTPSFilter}.
+ * <p>The parsed client principal DNs are kept in a bounded cache keyed by
+ * the principal name, invalid names included, so that clients repeating
+ * their certificate over keep-alive and pooled connections skip the DN
+ * parsing and normalisation.
  *
  * @author Vladimir Dzhuvinov
  */
-public class X509ClientCertFilter implements AccessFilter {
+public class X509ClientCertFilter implements OrderedAccessFilter {
+	
+	
+	/**
+	 * The filters to run before this one.
+	 */
+	private static final Collection<Class<? extends AccessFilter>> RUN_AFTER =
+		Collections.<Class<? extends AccessFilter>>singleton(HTTPSFilter.class);
+	
+	
+	/**
+	 * The default capacity of the parsed client principal DN cache.
+	 */
+	public static final int DEFAULT_DN_CACHE_SIZE = 1024;
 
 
 	/**
@@ -36,6 +59,19 @@ public class X509ClientCertFilter implements AccessFilter {
 	private DN certPrincipal;
 	
 	
+	/**
+	 * If defined requires the X.509 client certificate subject to be
+	 * mapped to the requested method.
+	 */
+	private PrincipalMethodMap principalMap;
+	
+	
+	/**
+	 * The parsed client principal DNs.
+	 */
+	private DNCache dnCache;
+	
+	
 	/**
 	 * Initialises this X.509 client certificate filter.
 	 *
@@ -47,8 +83,58 @@ public class X509ClientCertFilter implements AccessFilter {
 	 */
 	public void init(final boolean requireCert, final DN certPrincipal) {
 	
+		init(requireCert, certPrincipal, DEFAULT_DN_CACHE_SIZE);
+	}
+	
+	
+	/**
+	 * Initialises this X.509 client certificate filter.
+	 *
+	 * @param requireCert   If {@code true} a X.509 certificate must be 
+	 *                      presented for an incoming request.
+	 * @param certPrincipal If defined (and other argument is {@code true})
+	 *                      requires the X.509 client certificate subject to
+	 *                      match the specified distinguished name (DN).
+	 * @param dnCacheSize   The capacity of the parsed client principal DN
+	 *                      cache, zero to disable caching.
+	 *
+	 * @throws IllegalArgumentException If the DN cache size is negative.
+	 */
+	public void init(final boolean requireCert, final DN certPrincipal, final int dnCacheSize) {
+		
+		init(requireCert, certPrincipal, null, dnCacheSize);
+	}
+	
+	
+	/**
+	 * Initialises this X.509 client certificate filter.
+	 *
+	 * @param requireCert   If {@code true} a X.509 certificate must be 
+	 *                      presented for an incoming request.
+	 * @param certPrincipal If defined (and other argument is {@code true})
+	 *                      requires the X.509 client certificate subject to
+	 *                      match the specified distinguished name (DN).
+	 * @param principalMap  If defined (and other argument is {@code true})
+	 *                      requires the X.509 client certificate subject to
+	 *                      be allowed the requested JSON-RPC 2.0 method by
+	 *                      the specified map.
+	 * @param dnCacheSize   The capacity of the parsed client principal DN
+	 *                      cache, zero to disable caching.
+	 *
+	 * @throws IllegalArgumentException If the DN cache size is negative.
+	 */
+	public void init(final boolean requireCert, 
+	                 final DN certPrincipal, 
+	                 final PrincipalMethodMap principalMap,
+	                 final int dnCacheSize) {
+		
+		if (dnCacheSize < 0)
+			throw new IllegalArgumentException("The DN cache size must not be negative");
+		
 		this.requireCert = requireCert;
 		this.certPrincipal = certPrincipal;
+		this.principalMap = principalMap;
+		this.dnCache = new DNCache(dnCacheSize);
 	}
 	
 	
@@ -77,6 +163,27 @@ public class X509ClientCertFilter implements AccessFilter {
 	}
 	
 	 
+	/**
+	 * Returns the configured map of X.509 certificate principals to their
+	 * allowed JSON-RPC 2.0 methods.
+	 *
+	 * @return The principal method map, {@code null} if none.
+	 */
+	public PrincipalMethodMap getPrincipalMap() {
+		
+		return principalMap;
+	}
+	
+	
+	/**
+	 * @inheritDoc
+	 */
+	public Collection<Class<? extends AccessFilter>> getRunAfter() {
+		
+		return RUN_AFTER;
+	}
+	
+	
 	/**
 	 * @inheritDoc
 	 */
@@ -89,16 +196,16 @@ public class X509ClientCertFilter implements AccessFilter {
 		
 		// Cert required but missing -> deny access
 		if (requireCert && messageCtx.getPrincipal() == null)
-			return new AccessFilterResult(AccessDeniedError.CLIENT_CERT_REQUIRED);
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_CERT_REQUIRED);
 		
 		// Cert required and found, no particular principal DN required -> allow access
-		if (requireCert && certPrincipal == null && messageCtx.getPrincipal() != null)
+		if (requireCert && certPrincipal == null && principalMap == null && messageCtx.getPrincipal() != null)
 			return AccessFilterResult.ACCESS_ALLOWED;
 		
 		
-		// Cert with particular principal required
+		// Cert with particular or mapped principal required
 		
-		if (requireCert && certPrincipal != null) {
+		if (requireCert) {
 		
 			for (final Principal clientPrincipal: messageCtx.getPrincipals()) {
 			
@@ -110,21 +217,21 @@ public class X509ClientCertFilter implements AccessFilter {
 				if (name == null)
 					continue;
 					
-				DN dn = null;
+				DN dn = dnCache.get(name);
 				
-				try {
-					dn = new DN(name);
+				if (dn == null)
+					return AccessFilterResult.denied(AccessDeniedError.INVALID_CLIENT_PRINCIPAL_DN);
 				
-				} catch (LDAPException e) {
-			
-					return new AccessFilterResult(AccessDeniedError.INVALID_CLIENT_PRINCIPAL_DN);
-				}
+				if (certPrincipal != null && ! dn.equals(certPrincipal))
+					continue;
+				
+				if (principalMap != null && ! principalMap.allows(dn, request.getMethod()))
+					continue;
 				
-				if (dn.equals(certPrincipal))
-					return AccessFilterResult.ACCESS_ALLOWED;
+				return AccessFilterResult.ACCESS_ALLOWED;
 			}
 		}
 		
-		return new AccessFilterResult(AccessDeniedError.CLIENT_PRINCIPAL_DENIED);
+		return AccessFilterResult.denied(AccessDeniedError.CLIENT_PRINCIPAL_DENIED);
 	}
 }
@@ -0,0 +1,125 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the API key client certificate binding.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyBindingTest extends TestCase {
+
+
+	private static MessageContext principalContext(final String principal) {
+
+		return new MessageContext("localhost", "127.0.0.1", true, principal);
+	}
+
+
+	private static MessageContext certContext(final String pem)
+		throws Exception {
+
+		X509Certificate cert = X509CertPinningFilterTest.parseCertificate(pem);
+
+		return new MessageContext(X509CertPinningFilterTest.createHTTPRequest(new X509Certificate[]{cert}));
+	}
+
+
+	public void testPrincipal()
+		throws Exception {
+
+		APIKeyBinding binding = new APIKeyBinding(Collections.singleton(new DN("cn=SSO Gateway,o=Acme")),
+		                                          Collections.<String>emptySet());
+
+		assertEquals(Collections.singleton(new DN("cn=SSO Gateway,o=Acme")), binding.getPrincipals());
+		assertTrue(binding.getFingerprints().isEmpty());
+
+		DNCache dnCache = new DNCache(16);
+		FingerprintCache fingerprintCache = new FingerprintCache(16);
+
+		assertTrue(binding.matches(principalContext("cn=SSO Gateway,o=Acme"), dnCache, fingerprintCache));
+		assertTrue(binding.matches(principalContext("CN=SSO Gateway, O=Acme"), dnCache, fingerprintCache));
+
+		assertFalse(binding.matches(principalContext("cn=Other,o=Acme"), dnCache, fingerprintCache));
+		assertFalse(binding.matches(principalContext("invalid"), dnCache, fingerprintCache));
+		assertFalse(binding.matches(principalContext(null), dnCache, fingerprintCache));
+		assertFalse(binding.matches(new MessageContext(), dnCache, fingerprintCache));
+	}
+
+
+	public void testFingerprint()
+		throws Exception {
+
+		APIKeyBinding binding = new APIKeyBinding(Collections.<DN>emptySet(),
+		                                          Collections.singleton(X509CertPinningFilterTest.CERT_1_FINGERPRINT));
+
+		assertEquals(Collections.singleton(X509CertPinningFilter.parseFingerprint(X509CertPinningFilterTest.CERT_1_FINGERPRINT)),
+		             binding.getFingerprints());
+
+		DNCache dnCache = new DNCache(0);
+		FingerprintCache fingerprintCache = new FingerprintCache(0);
+
+		assertTrue(binding.matches(certContext(X509CertPinningFilterTest.CERT_1), dnCache, fingerprintCache));
+		assertFalse(binding.matches(certContext(X509CertPinningFilterTest.CERT_2), dnCache, fingerprintCache));
+
+		assertFalse(binding.matches(new MessageContext(X509CertPinningFilterTest.createHTTPRequest(null)), dnCache, fingerprintCache));
+		assertFalse(binding.matches(principalContext("cn=client1,o=Acme"), dnCache, fingerprintCache));
+	}
+
+
+	public void testEquality()
+		throws Exception {
+
+		APIKeyBinding b1 = new APIKeyBinding(Collections.singleton(new DN("cn=a,o=Acme")),
+		                                     Collections.singleton(X509CertPinningFilterTest.CERT_1_FINGERPRINT));
+		APIKeyBinding b2 = new APIKeyBinding(Collections.singleton(new DN("CN=a,O=Acme")),
+		                                     Collections.singleton(X509CertPinningFilterTest.CERT_1_FINGERPRINT.toLowerCase()));
+		APIKeyBinding b3 = new APIKeyBinding(Collections.singleton(new DN("cn=a,o=Acme")),
+		                                     Collections.<String>emptySet());
+
+		assertEquals(b1, b2);
+		assertEquals(b1.hashCode(), b2.hashCode());
+		assertFalse(b1.equals(b3));
+	}
+
+
+	public void testInvalid() {
+
+		try {
+			new APIKeyBinding(Collections.<DN>emptySet(), Collections.<String>emptySet());
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+
+		try {
+			new APIKeyBinding(Collections.<DN>emptySet(), Collections.singleton("bdce56"));
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+
+		try {
+			new APIKeyBinding(null, Collections.<String>emptySet());
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the API key digest utilities.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyDigestTest extends TestCase {
+
+
+	private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+
+	public void testSHA256() {
+
+		byte[] digest = APIKeyDigest.sha256("abc");
+
+		assertEquals(APIKeyDigest.LENGTH, digest.length);
+		assertEquals(ABC_SHA256, APIKeyDigest.toHex(digest));
+		assertEquals(ABC_SHA256, new APIKey("abc").getSHA256Digest());
+	}
+
+
+	public void testParseHex() {
+
+		byte[] digest = APIKeyDigest.parseHex(ABC_SHA256);
+
+		assertTrue(APIKeyDigest.constantTimeEquals(APIKeyDigest.sha256("abc"), digest));
+
+		// Upper case
+		digest = APIKeyDigest.parseHex(ABC_SHA256.toUpperCase());
+
+		assertTrue(APIKeyDigest.constantTimeEquals(APIKeyDigest.sha256("abc"), digest));
+
+		assertNull(APIKeyDigest.parseHex(null));
+		assertNull(APIKeyDigest.parseHex("abc"));
+		assertNull(APIKeyDigest.parseHex(ABC_SHA256.substring(2)));
+		assertNull(APIKeyDigest.parseHex("zz" + ABC_SHA256.substring(2)));
+	}
+
+
+	public void testConstantTimeEqualsBytes() {
+
+		assertTrue(APIKeyDigest.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 3}));
+		assertFalse(APIKeyDigest.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 4}));
+		assertFalse(APIKeyDigest.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2}));
+	}
+
+
+	public void testConstantTimeEqualsStrings() {
+
+		assertTrue(APIKeyDigest.constantTimeEquals("secret", "secret"));
+		assertTrue(APIKeyDigest.constantTimeEquals("", ""));
+		assertFalse(APIKeyDigest.constantTimeEquals("secret", "secreT"));
+		assertFalse(APIKeyDigest.constantTimeEquals("secret", "secretsecret"));
+		assertFalse(APIKeyDigest.constantTimeEquals("secret", "sec"));
+		assertFalse(APIKeyDigest.constantTimeEquals("secret", ""));
+		assertFalse(APIKeyDigest.constantTimeEquals("", "secret"));
+	}
+}
@@ -0,0 +1,179 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the API key extractors.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyExtractorTest extends TestCase {
+
+
+	/**
+	 * Creates an HTTP servlet request with the specified headers.
+	 */
+	static HttpServletRequest createHTTPRequest(final Map<String,String> headers) {
+	
+		InvocationHandler handler = new InvocationHandler() {
+		
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			
+				if (method.getName().equals("getHeader")) {
+				
+					// Header names are case-insensitive
+					for (Map.Entry<String,String> en: headers.entrySet()) {
+					
+						if (en.getKey().equalsIgnoreCase((String)args[0]))
+							return en.getValue();
+					}
+				}
+				
+				return null;
+			}
+		};
+		
+		return (HttpServletRequest)Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+		                                                  new Class<?>[]{HttpServletRequest.class},
+		                                                  handler);
+	}
+	
+	
+	public void testNamedParam() {
+	
+		APIKeyExtractor extractor = new NamedParamAPIKeyExtractor("apiKey");
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", "9cd19267");
+		
+		assertEquals("9cd19267", extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		params.put("apiKey", 123);
+		assertNull(extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		params.remove("apiKey");
+		assertNull(extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		List<Object> positional = new ArrayList<Object>();
+		positional.add("9cd19267");
+		assertNull(extractor.extract(new JSONRPC2Request("m", positional, 0), new MessageContext()));
+		
+		assertNull(extractor.extract(new JSONRPC2Request("m", 0), new MessageContext()));
+	}
+	
+	
+	public void testNamedParamNull() {
+	
+		try {
+			new NamedParamAPIKeyExtractor(null);
+			fail();
+			
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testPositionalParam() {
+	
+		PositionalParamAPIKeyExtractor extractor = new PositionalParamAPIKeyExtractor(1);
+		
+		assertEquals(1, extractor.getPosition());
+		
+		List<Object> params = new ArrayList<Object>();
+		params.add("value");
+		
+		assertNull(extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		params.add("9cd19267");
+		assertEquals("9cd19267", extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		params.set(1, 123);
+		assertNull(extractor.extract(new JSONRPC2Request("m", params, 0), new MessageContext()));
+		
+		Map<String,Object> named = new HashMap<String,Object>();
+		named.put("apiKey", "9cd19267");
+		assertNull(extractor.extract(new JSONRPC2Request("m", named, 0), new MessageContext()));
+		
+		try {
+			new PositionalParamAPIKeyExtractor(-1);
+			fail();
+			
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testHeader() {
+	
+		HeaderAPIKeyExtractor extractor = new HeaderAPIKeyExtractor("X-API-Key");
+		
+		assertEquals("X-API-Key", extractor.getHeaderName());
+		assertNull(extractor.getScheme());
+		
+		Map<String,String> headers = new HashMap<String,String>();
+		headers.put("x-api-key", " 9cd19267 ");
+		
+		HttpServletRequest httpRequest = createHTTPRequest(headers);
+		
+		assertEquals("9cd19267", extractor.extract(httpRequest));
+		
+		MessageContext ctx = new MessageContext(httpRequest);
+		assertEquals("9cd19267", extractor.extract(new JSONRPC2Request("m", 0), ctx));
+		
+		headers.put("x-api-key", "  ");
+		assertNull(extractor.extract(httpRequest));
+		
+		headers.clear();
+		assertNull(extractor.extract(httpRequest));
+		
+		// No HTTP request
+		assertNull(extractor.extract((HttpServletRequest)null));
+		assertNull(extractor.extract(new JSONRPC2Request("m", 0), new MessageContext()));
+	}
+	
+	
+	public void testHeaderWithScheme() {
+	
+		HeaderAPIKeyExtractor extractor = new HeaderAPIKeyExtractor("Authorization", "Bearer");
+		
+		assertEquals("Bearer", extractor.getScheme());
+		
+		Map<String,String> headers = new HashMap<String,String>();
+		HttpServletRequest httpRequest = createHTTPRequest(headers);
+		
+		headers.put("Authorization", "Bearer 9cd19267");
+		assertEquals("9cd19267", extractor.extract(httpRequest));
+		
+		headers.put("Authorization", "bearer 9cd19267");
+		assertEquals("9cd19267", extractor.extract(httpRequest));
+		
+		headers.put("Authorization", "Basic dXNlcjpwYXNz");
+		assertNull(extractor.extract(httpRequest));
+		
+		headers.put("Authorization", "Bearer9cd19267");
+		assertNull(extractor.extract(httpRequest));
+		
+		headers.put("Authorization", "Bearer");
+		assertNull(extractor.extract(httpRequest));
+		
+		headers.put("Authorization", "Bearer ");
+		assertNull(extractor.extract(httpRequest));
+	}
+}
@@ -0,0 +1,133 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the API key file parser.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyFileTest extends TestCase {
+
+
+	private File file;
+
+
+	public void setUp()
+		throws IOException {
+
+		file = File.createTempFile("api-keys", ".txt");
+		file.deleteOnExit();
+	}
+
+
+	public void tearDown() {
+
+		file.delete();
+	}
+
+
+	static void write(final File file, final String content)
+		throws IOException {
+
+		FileOutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+
+		} finally {
+			out.close();
+		}
+	}
+
+
+	public void testLoad()
+		throws IOException {
+
+		write(file, "# Comment\n" +
+		            "\n" +
+		            "f70defbe = sso.login sso.logout\n" +
+		            "08d1e641=sso.logout  sso.login\n" +
+		            "2b0e8f5c=billing.* *.get\n");
+
+		Map<APIKey,Set<String>> map = APIKeyFile.load(file, false);
+
+		assertEquals(3, map.size());
+
+		Set<String> methods = map.get(new APIKey("f70defbe"));
+
+		assertEquals(2, methods.size());
+		assertTrue(methods.contains("sso.login"));
+		assertTrue(methods.contains("sso.logout"));
+
+		// Equal method sets are shared
+		assertSame(methods, map.get(new APIKey("08d1e641")));
+
+		assertTrue(map.get(new APIKey("2b0e8f5c")).contains("billing.*"));
+
+		try {
+			map.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+
+	public void testLoadHashed()
+		throws IOException {
+
+		write(file, new APIKey("k1").getSHA256Digest() + "=*\n");
+
+		assertEquals(1, APIKeyFile.load(file, true).size());
+
+		write(file, "k1=*\n");
+
+		try {
+			APIKeyFile.load(file, true);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("line 1"));
+		}
+	}
+
+
+	public void testInvalidLines()
+		throws IOException {
+
+		for (String content: new String[]{"k1\n", "=sso.login\n", "k1=\n", "k1=*\nk1=*\n", "k1=*a??????????????\n"}) {
+
+			write(file, content);
+
+			try {
+				APIKeyFile.load(file, false);
+				fail(content);
+			} catch (IOException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testMissingFile() {
+
+		file.delete();
+
+		try {
+			APIKeyFile.load(file, false);
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.unboundid.ldap.sdk.DN;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the API key file watcher.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyFileWatcherTest extends TestCase {
+
+
+	private File file;
+
+
+	private APIKeyFilter filter;
+
+
+	public void setUp()
+		throws IOException {
+
+		file = File.createTempFile("api-keys", ".txt");
+		file.deleteOnExit();
+
+		APIKeyFileTest.write(file, "k1=sso.login\n");
+
+		filter = new APIKeyFilter();
+		filter.init(APIKeyFile.load(file, false), new HashSet<String>());
+	}
+
+
+	public void tearDown() {
+
+		file.delete();
+	}
+
+
+	private boolean allowed(final String method, final String apiKey) {
+
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", apiKey);
+
+		return filter.filter(new JSONRPC2Request(method, params, 0), new MessageContext()).accessAllowed();
+	}
+
+
+	public void testReload()
+		throws IOException {
+
+		APIKeyFileWatcher watcher = new APIKeyFileWatcher(file, filter);
+
+		assertTrue(watcher.reload().isEmpty());
+
+		APIKeyFileTest.write(file, "k1=sso.logout\nk2=*\n");
+
+		APIKeyMapDiff diff = watcher.reload();
+
+		assertEquals(1, diff.getAdded().size());
+		assertEquals(1, diff.getChanged().size());
+		assertTrue(allowed("sso.logout", "k1"));
+		assertFalse(allowed("sso.login", "k1"));
+		assertTrue(allowed("sso.login", "k2"));
+
+		// An invalid file leaves the keys in effect
+		APIKeyFileTest.write(file, "k3\n");
+
+		try {
+			watcher.reload();
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+
+		assertTrue(allowed("sso.login", "k2"));
+	}
+
+
+	public void testReloadRemovingBoundKey()
+		throws Exception {
+
+		Map<APIKey,APIKeyBinding> bindings = new HashMap<APIKey,APIKeyBinding>();
+		bindings.put(new APIKey("k1"), new APIKeyBinding(Collections.singleton(new DN("cn=SSO Gateway,o=Acme")),
+		                                                 Collections.<String>emptySet()));
+
+		filter.init(APIKeyFile.load(file, false),
+		            new HashSet<String>(),
+		            new NamedParamAPIKeyExtractor(APIKeyFilter.DEFAULT_API_KEY_PARAMETER_NAME),
+		            false,
+		            0,
+		            bindings);
+
+		APIKeyFileWatcher watcher = new APIKeyFileWatcher(file, filter);
+
+		APIKeyFileTest.write(file, "k2=*\n");
+
+		try {
+			watcher.reload();
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		assertEquals(Collections.singleton(new APIKey("k1")), filter.getAPIKeyMap().keySet());
+	}
+
+
+	public void testWatch()
+		throws Exception {
+
+		APIKeyFileWatcher watcher = new APIKeyFileWatcher(file, filter, 10L);
+		watcher.start();
+
+		try {
+			assertTrue(watcher.isStarted());
+
+			APIKeyFileTest.write(file, "k1=sso.login\nk2=sso.login\n");
+
+			// Change detection may be polled, depending on the platform
+			for (int i=0; i < 300 && ! allowed("sso.login", "k2"); i++)
+				Thread.sleep(100L);
+
+			assertTrue(allowed("sso.login", "k2"));
+			assertTrue(allowed("sso.login", "k1"));
+
+		} finally {
+			watcher.stop();
+		}
+
+		assertFalse(watcher.isStarted());
+	}
+}
@@ -5,6 +5,8 @@ import java.util.*;
 
 import junit.framework.TestCase;
 
+import com.unboundid.ldap.sdk.DN;
+
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
@@ -143,4 +145,600 @@ public class APIKeyFilterTest extends TestCase {
 		
 		assertTrue(result.accessAllowed());
 	}
+	
+	
+	public void testDenyDueToNonStringAPIKey() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		
+		filter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", 12345L);
+		JSONRPC2Request req = new JSONRPC2Request("sso.login", params, 0);
+		
+		AccessFilterResult result = filter.filter(req, new MessageContext());
+		
+		assertEquals(AccessDeniedError.MISSING_API_KEY, result.getAccessDeniedError());
+		
+		params.put("apiKey", null);
+		req = new JSONRPC2Request("sso.login", params, 0);
+		
+		result = filter.filter(req, new MessageContext());
+		
+		assertEquals(AccessDeniedError.MISSING_API_KEY, result.getAccessDeniedError());
+	}
+
+	
+	public void testDenyDueToPositionalParams() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		
+		filter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		List<Object> params = new ArrayList<Object>();
+		params.add("9cd19267");
+		JSONRPC2Request req = new JSONRPC2Request("sso.login", params, 0);
+		
+		AccessFilterResult result = filter.filter(req, new MessageContext());
+		
+		assertEquals(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM, result.getAccessDeniedError());
+	}
+	
+	
+	public void testKeyMapIndexedAtInit() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		
+		Map<APIKey,Set<String>> keyMap = getAPIKeyMap();
+		filter.init(keyMap, getExemptedMethods());
+		
+		assertSame(keyMap, filter.getAPIKeyMap());
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", "7cf1beda");
+		JSONRPC2Request req = new JSONRPC2Request("any.method", params, 0);
+		
+		assertTrue(filter.filter(req, new MessageContext()).accessAllowed());
+		
+		// Custom param name
+		filter.init(keyMap, getExemptedMethods(), "key");
+		
+		params = new HashMap<String,Object>();
+		params.put("key", "7cf1beda");
+		req = new JSONRPC2Request("any.method", params, 0);
+		
+		assertTrue(filter.filter(req, new MessageContext()).accessAllowed());
+	}
+	
+	
+	public void testGlobPatterns() {
+		
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("k1"), new HashSet<String>(Arrays.asList("billing.*", "*.get", "sso.login")));
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(keyMap, getExemptedMethods());
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", "k1");
+		
+		for (String method: Arrays.asList("billing.invoice.get", "billing.pay", "users.get", "sso.login")) {
+			
+			JSONRPC2Request req = new JSONRPC2Request(method, params, 0);
+			assertTrue(method, filter.filter(req, new MessageContext()).accessAllowed());
+		}
+
+		for (String method: Arrays.asList("sso.logout", "users.getAll", "billing")) {
+			
+			JSONRPC2Request req = new JSONRPC2Request(method, params, 0);
+			assertEquals(method, AccessDeniedError.API_KEY_DENIED, filter.filter(req, new MessageContext()).getAccessDeniedError());
+		}
+	}
+	
+	
+	private static Map<APIKey,Set<String>> toHashedKeyMap(final Map<APIKey,Set<String>> keyMap) {
+		
+		Map<APIKey,Set<String>> hashed = new HashMap<APIKey,Set<String>>();
+		
+		for (Map.Entry<APIKey,Set<String>> en: keyMap.entrySet())
+			hashed.put(new APIKey(en.getKey().getSHA256Digest()), en.getValue());
+		
+		return hashed;
+	}
+
+	
+	public void testHashedKeys() {
+		
+		for (int cacheSize: new int[]{0, 1, 4096}) {
+			
+			APIKeyFilter filter = new APIKeyFilter();
+			
+			filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), "apiKey", true, cacheSize);
+			
+			assertTrue(filter.hasHashedKeys());
+			
+			// Repeat to hit the cache
+			for (int i=0; i < 3; i++) {
+				
+				Map<String,Object> params = new HashMap<String,Object>();
+				params.put("apiKey", "9cd19267");
+				
+				assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), new MessageContext()).accessAllowed());
+				
+				assertEquals(AccessDeniedError.API_KEY_DENIED, 
+				             filter.filter(new JSONRPC2Request("sso.listUsers", params, 0), new MessageContext()).getAccessDeniedError());
+				
+				params.put("apiKey", "7cf1beda");
+				
+				assertTrue(filter.filter(new JSONRPC2Request("sso.listUsers", params, 0), new MessageContext()).accessAllowed());
+				
+				// The digest itself must not be accepted as key
+				params.put("apiKey", new APIKey("7cf1beda").getSHA256Digest());
+				
+				assertEquals(AccessDeniedError.API_KEY_DENIED, 
+				             filter.filter(new JSONRPC2Request("sso.login", params, 0), new MessageContext()).getAccessDeniedError());
+				
+				params.put("apiKey", "no-such-key");
+				
+				assertEquals(AccessDeniedError.API_KEY_DENIED, 
+				             filter.filter(new JSONRPC2Request("sso.login", params, 0), new MessageContext()).getAccessDeniedError());
+			}
+		}
+	}
+	
+	
+	public void testHashedKeysInvalidDigest() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		
+		try {
+			filter.init(getAPIKeyMap(), getExemptedMethods(), "apiKey", true, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		filter.init(getAPIKeyMap(), getExemptedMethods(), "apiKey", false, 0);
+		assertFalse(filter.hasHashedKeys());
+	}
+	
+	
+	public void testPositionalParamExtractor() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new PositionalParamAPIKeyExtractor(0), false, 0);
+		
+		assertNull(filter.getAPIKeyParameterName());
+		assertTrue(filter.getAPIKeyExtractor() instanceof PositionalParamAPIKeyExtractor);
+		
+		List<Object> params = new ArrayList<Object>();
+		params.add("9cd19267");
+		params.add("alice");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), new MessageContext()).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(new JSONRPC2Request("sso.listUsers", params, 0), new MessageContext());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, result.getAccessDeniedError());
+		
+		// No params
+		result = filter.filter(new JSONRPC2Request("sso.login", 0), new MessageContext());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, result.getAccessDeniedError());
+		
+		// Exempted
+		assertTrue(filter.filter(new JSONRPC2Request("ws.getName", 0), new MessageContext()).accessAllowed());
+	}
+	
+	
+	public void testHeaderExtractor() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new HeaderAPIKeyExtractor("Authorization", "Bearer"), false, 0);
+		
+		Map<String,String> headers = new HashMap<String,String>();
+		headers.put("Authorization", "Bearer 9cd19267");
+		MessageContext ctx = new MessageContext(APIKeyExtractorTest.createHTTPRequest(headers));
+		
+		// Any params type
+		List<Object> params = new ArrayList<Object>();
+		params.add("alice");
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), ctx).accessAllowed());
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", 0), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(new JSONRPC2Request("sso.listUsers", 0), ctx);
+		assertEquals(AccessDeniedError.API_KEY_DENIED, result.getAccessDeniedError());
+		
+		result = filter.filter(new JSONRPC2Request("sso.login", 0), new MessageContext());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, result.getAccessDeniedError());
+	}
+	
+	
+	public void testCheckBeforeParsing() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), new HashSet<String>(), new HeaderAPIKeyExtractor("X-API-Key"), false, 0);
+		
+		Map<String,String> headers = new HashMap<String,String>();
+		
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.check(null, APIKeyExtractorTest.createHTTPRequest(headers)).getAccessDeniedError());
+		
+		headers.put("X-API-Key", "unknown");
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.check(null, APIKeyExtractorTest.createHTTPRequest(headers)).getAccessDeniedError());
+		
+		headers.put("X-API-Key", "9cd19267");
+		assertTrue(filter.check(null, APIKeyExtractorTest.createHTTPRequest(headers)).accessAllowed());
+		assertTrue(filter.check("sso.login", APIKeyExtractorTest.createHTTPRequest(headers)).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.check("sso.listUsers", APIKeyExtractorTest.createHTTPRequest(headers)).getAccessDeniedError());
+		
+		// With exempted methods an unknown method defers to the filter
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new HeaderAPIKeyExtractor("X-API-Key"), false, 0);
+		headers.clear();
+		assertTrue(filter.check(null, APIKeyExtractorTest.createHTTPRequest(headers)).accessAllowed());
+		assertTrue(filter.check("ws.getName", APIKeyExtractorTest.createHTTPRequest(headers)).accessAllowed());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.check("sso.login", APIKeyExtractorTest.createHTTPRequest(headers)).getAccessDeniedError());
+		
+		// Requires a header extractor
+		filter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		try {
+			filter.check(null, APIKeyExtractorTest.createHTTPRequest(headers));
+			fail();
+		
+		} catch (IllegalStateException e) {
+			// ok
+		}
+	}
+	
+	
+	static AccessFilterResult call(final APIKeyFilter filter, final String method, final String apiKey) {
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", apiKey);
+		
+		return filter.filter(new JSONRPC2Request(method, params, 0), new MessageContext());
+	}
+	
+	
+	public void testUpdate() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+		
+		// Remove one, change one, add one
+		newMap.remove(new APIKey("b9f89662"));
+		newMap.put(new APIKey("9cd19267"), Collections.singleton("sso.listUsers"));
+		newMap.put(new APIKey("4f1d0e22"), Collections.singleton("billing.*"));
+		
+		APIKeyMapDiff diff = filter.update(newMap);
+		
+		assertEquals(Collections.singleton(new APIKey("4f1d0e22")), diff.getAdded().keySet());
+		assertEquals(Collections.singleton(new APIKey("9cd19267")), diff.getChanged().keySet());
+		assertEquals(Collections.singleton(new APIKey("b9f89662")), diff.getRemoved());
+		
+		assertSame(newMap, filter.getAPIKeyMap());
+		
+		assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "sso.login", "b9f89662").getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "sso.login", "9cd19267").getAccessDeniedError());
+		assertTrue(call(filter, "sso.listUsers", "9cd19267").accessAllowed());
+		assertTrue(call(filter, "billing.charge", "4f1d0e22").accessAllowed());
+		assertTrue(call(filter, "sso.listUsers", "7cf1beda").accessAllowed());
+		assertTrue(call(filter, "ws.getName", null).accessAllowed());
+		
+		assertTrue(filter.update(newMap).isEmpty());
+	}
+	
+	
+	private static AccessFilterResult call(final APIKeyFilter filter, 
+	                                       final String method, 
+	                                       final String apiKey,
+	                                       final String principal) {
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", apiKey);
+		
+		return filter.filter(new JSONRPC2Request(method, params, 0), 
+		                     new MessageContext("localhost", "127.0.0.1", true, principal));
+	}
+	
+	
+	private static Map<APIKey,APIKeyBinding> getBindings()
+		throws Exception {
+		
+		return Collections.singletonMap(new APIKey("9cd19267"), 
+		                                new APIKeyBinding(Collections.singleton(new DN("cn=SSO Gateway,o=Acme")), 
+		                                                  Collections.<String>emptySet()));
+	}
+	
+	
+	public void testBoundKeys()
+		throws Exception {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), false, 0, getBindings());
+		
+		assertEquals(getBindings(), filter.getBindings());
+		
+		assertTrue(call(filter, "sso.login", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+		
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.login", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.login", "9cd19267", null).getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             call(filter, "sso.listUsers", "9cd19267", "cn=SSO Gateway,o=Acme").getAccessDeniedError());
+		
+		// Key two has the same methods, but is not bound
+		assertTrue(call(filter, "sso.login", "b9f89662", "cn=Other,o=Acme").accessAllowed());
+		assertTrue(call(filter, "sso.login", "b9f89662", null).accessAllowed());
+		
+		// Exempted methods need no key
+		assertTrue(call(filter, "ws.getName", null, null).accessAllowed());
+	}
+	
+	
+	public void testBoundHashedKeys()
+		throws Exception {
+		
+		Map<APIKey,APIKeyBinding> bindings = Collections.singletonMap(new APIKey(new APIKey("9cd19267").getSHA256Digest()), 
+		                                                              getBindings().get(new APIKey("9cd19267")));
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), true, 16, bindings);
+		
+		// Repeat to hit the verified key cache
+		for (int i=0; i < 3; i++) {
+			
+			assertTrue(call(filter, "sso.login", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+			assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+			             call(filter, "sso.login", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+			assertTrue(call(filter, "sso.login", "b9f89662", "cn=Other,o=Acme").accessAllowed());
+		}
+	}
+	
+	
+	public void testBoundHashedKeysIgnoreCase()
+		throws Exception {
+		
+		String digest = new APIKey("9cd19267").getSHA256Digest();
+		
+		Map<APIKey,APIKeyBinding> bindings = Collections.singletonMap(new APIKey(digest.toUpperCase(Locale.ROOT)), 
+		                                                              getBindings().get(new APIKey("9cd19267")));
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), true, 0, bindings);
+		
+		assertEquals(Collections.singleton(new APIKey(digest)), filter.getBindings().keySet());
+		
+		assertTrue(call(filter, "sso.login", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.login", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+	}
+	
+	
+	public void testFailedReInitKeepsState()
+		throws Exception {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), false, 0, getBindings());
+		
+		// Not a digest
+		Map<APIKey,Set<String>> invalid = Collections.singletonMap(new APIKey("9cd19267"), Collections.singleton("sso.login"));
+		
+		try {
+			filter.init(invalid, getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), true, 16, 
+			            Collections.<APIKey,APIKeyBinding>emptyMap());
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+		
+		assertFalse(filter.hasHashedKeys());
+		assertEquals(getBindings(), filter.getBindings());
+		assertEquals(getAPIKeyMap(), filter.getAPIKeyMap());
+		
+		// Updates still apply in plain mode, with the bindings
+		Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+		newMap.put(new APIKey("9cd19267"), Collections.singleton("sso.listUsers"));
+		filter.update(newMap);
+		
+		assertTrue(call(filter, "sso.listUsers", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.listUsers", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+	}
+	
+	
+	public void testBindingWithoutKey()
+		throws Exception {
+		
+		Map<APIKey,APIKeyBinding> bindings = Collections.singletonMap(new APIKey("no-such-key"), 
+		                                                              getBindings().get(new APIKey("9cd19267")));
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		
+		try {
+			filter.init(getAPIKeyMap(), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), false, 0, bindings);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok, without the plain key in the message
+			assertFalse(e.getMessage().contains("no-such-key"));
+		}
+		
+		bindings = Collections.singletonMap(new APIKey(new APIKey("no-such-key").getSHA256Digest()), 
+		                                    getBindings().get(new APIKey("9cd19267")));
+		
+		try {
+			filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), true, 0, bindings);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+	}
+	
+	
+	public void testUpdateRemovingBoundKey()
+		throws Exception {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), false, 0, getBindings());
+		
+		Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+		newMap.remove(new APIKey("9cd19267"));
+		
+		try {
+			filter.update(newMap);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+		
+		// The current map remains in effect
+		assertEquals(getAPIKeyMap(), filter.getAPIKeyMap());
+		assertTrue(call(filter, "sso.login", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.login", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+	}
+	
+	
+	public void testUpdateBoundKeys()
+		throws Exception {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), false, 0, getBindings());
+		
+		// Change the bound key
+		Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+		newMap.put(new APIKey("9cd19267"), Collections.singleton("sso.listUsers"));
+		
+		filter.update(newMap);
+		
+		assertTrue(call(filter, "sso.listUsers", "9cd19267", "cn=SSO Gateway,o=Acme").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             call(filter, "sso.listUsers", "9cd19267", "cn=Other,o=Acme").getAccessDeniedError());
+	}
+	
+	
+	public void testUpdateHashedKeys() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), "apiKey", true, 16);
+		
+		// Cache the key
+		assertTrue(call(filter, "sso.login", "9cd19267").accessAllowed());
+		
+		Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+		newMap.remove(new APIKey("9cd19267"));
+		newMap.put(new APIKey("4f1d0e22"), Collections.singleton("*"));
+		
+		filter.update(toHashedKeyMap(newMap));
+		
+		// The removed key must not linger in the cache
+		assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "sso.login", "9cd19267").getAccessDeniedError());
+		assertTrue(call(filter, "sso.login", "b9f89662").accessAllowed());
+		assertTrue(call(filter, "sso.login", "4f1d0e22").accessAllowed());
+	}
+	
+	
+	public void testRepeatedUpdates() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		// Each update retires a method set, compiled afresh now and then
+		for (int i=0; i < 100; i++) {
+			
+			Map<APIKey,Set<String>> newMap = getAPIKeyMap();
+			newMap.put(new APIKey("9cd19267"), Collections.singleton("app.method" + i));
+			
+			filter.update(newMap);
+			
+			assertTrue(call(filter, "app.method" + i, "9cd19267").accessAllowed());
+			assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "app.method" + (i - 1), "9cd19267").getAccessDeniedError());
+			assertTrue(call(filter, "sso.login", "b9f89662").accessAllowed());
+			assertTrue(call(filter, "app.method" + i, "7cf1beda").accessAllowed());
+			assertTrue(call(filter, "ws.getName", null).accessAllowed());
+		}
+	}
+	
+	
+	public void testUpdateFailureKeepsCurrentKeys() {
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(toHashedKeyMap(getAPIKeyMap()), getExemptedMethods(), "apiKey", true, 0);
+		
+		Map<APIKey,Set<String>> newMap = toHashedKeyMap(getAPIKeyMap());
+		newMap.put(new APIKey("not-a-digest"), Collections.singleton("*"));
+		
+		try {
+			filter.update(newMap);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		assertEquals(3, filter.getAPIKeyMap().size());
+		assertTrue(call(filter, "sso.login", "9cd19267").accessAllowed());
+	}
+	
+	
+	public void testStore() {
+		
+		final Map<APIKey,Set<String>> keys = getAPIKeyMap();
+		
+		final boolean[] fail = {false};
+		
+		APIKeyStore store = new APIKeyStore() {
+			
+			public Set<String> getMethods(final String key)
+				throws APIKeyStoreException {
+				
+				if (fail[0])
+					throw new APIKeyStoreException("Store down");
+				
+				return keys.get(new APIKey(key));
+			}
+		};
+		
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(store, getExemptedMethods(), new NamedParamAPIKeyExtractor("apiKey"), 0, 0L, 0L);
+		
+		assertSame(store, filter.getAPIKeyStore());
+		assertTrue(filter.getAPIKeyMap().isEmpty());
+		
+		assertTrue(call(filter, "sso.login", "9cd19267").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "sso.listUsers", "9cd19267").getAccessDeniedError());
+		assertTrue(call(filter, "sso.listUsers", "7cf1beda").accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, call(filter, "sso.login", "no-such-key").getAccessDeniedError());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, call(filter, "sso.login", null).getAccessDeniedError());
+		assertTrue(call(filter, "ws.getName", null).accessAllowed());
+		
+		fail[0] = true;
+		
+		assertEquals(AccessDeniedError.API_KEY_STORE_UNAVAILABLE, call(filter, "sso.login", "9cd19267").getAccessDeniedError());
+		assertTrue(call(filter, "ws.getName", null).accessAllowed());
+		
+		try {
+			filter.update(keys);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+		
+		// Back to in-memory keys
+		filter.init(keys, getExemptedMethods());
+		assertNull(filter.getAPIKeyStore());
+	}
 }
@@ -0,0 +1,62 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the API key map difference.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyMapDiffTest extends TestCase {
+
+
+	public void testCompute() {
+
+		Map<APIKey,Set<String>> oldMap = new HashMap<APIKey,Set<String>>();
+		oldMap.put(new APIKey("k1"), Collections.singleton("sso.login"));
+		oldMap.put(new APIKey("k2"), Collections.singleton("sso.login"));
+		oldMap.put(new APIKey("k3"), Collections.singleton("sso.login"));
+
+		Map<APIKey,Set<String>> newMap = new HashMap<APIKey,Set<String>>();
+		newMap.put(new APIKey("k1"), Collections.singleton("sso.login"));
+		newMap.put(new APIKey("k2"), Collections.singleton("sso.logout"));
+		newMap.put(new APIKey("k4"), Collections.singleton("*"));
+
+		APIKeyMapDiff diff = APIKeyMapDiff.compute(oldMap, newMap);
+
+		assertEquals(Collections.singletonMap(new APIKey("k4"), Collections.singleton("*")), diff.getAdded());
+		assertEquals(Collections.singletonMap(new APIKey("k2"), Collections.singleton("sso.logout")), diff.getChanged());
+		assertEquals(Collections.singleton(new APIKey("k3")), diff.getRemoved());
+		assertFalse(diff.isEmpty());
+		assertEquals("1 added, 1 changed, 1 removed", diff.toString());
+
+		try {
+			diff.getRemoved().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+
+	public void testComputeEqual() {
+
+		Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+		map.put(new APIKey("k1"), Collections.singleton("sso.login"));
+
+		assertTrue(APIKeyMapDiff.compute(map, new HashMap<APIKey,Set<String>>(map)).isEmpty());
+
+		APIKeyMapDiff diff = APIKeyMapDiff.compute(map, new HashMap<APIKey,Set<String>>());
+
+		assertEquals(Collections.singleton(new APIKey("k1")), diff.getRemoved());
+		assertTrue(diff.getAdded().isEmpty());
+	}
+}
@@ -0,0 +1,304 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the API key store lookup cache.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class APIKeyStoreCacheTest extends TestCase {
+
+
+	/**
+	 * In-memory store counting the lookups.
+	 */
+	private static class CountingStore implements APIKeyStore {
+
+
+		final Map<String,Set<String>> keys = new ConcurrentHashMap<String,Set<String>>();
+
+
+		final AtomicInteger lookups = new AtomicInteger();
+
+
+		volatile boolean fail = false;
+
+
+		public Set<String> getMethods(final String key)
+			throws APIKeyStoreException {
+
+			lookups.incrementAndGet();
+
+			if (fail)
+				throw new APIKeyStoreException("Store down");
+
+			return keys.get(key);
+		}
+	}
+
+
+	/**
+	 * Cache with a manual clock.
+	 */
+	private static class ClockedCache extends APIKeyStoreCache {
+
+
+		long now = 0L;
+
+
+		ClockedCache(final APIKeyStore store, final int capacity, final long ttl, final long negativeTTL) {
+
+			super(store, capacity, ttl, negativeTTL, 1000L);
+		}
+
+
+		long nanoTime() {
+
+			return now;
+		}
+	}
+
+
+	public void testReadThrough()
+		throws APIKeyStoreException {
+
+		CountingStore store = new CountingStore();
+		store.keys.put("k1", Collections.singleton("sso.login"));
+
+		ClockedCache cache = new ClockedCache(store, 16, 1000L, 100L);
+
+		for (int i=0; i < 3; i++) {
+			MethodPermissions permissions = cache.get("k1");
+			assertTrue(permissions.allows(MethodSymbolTable.UNKNOWN, "sso.login"));
+			assertFalse(permissions.allows(MethodSymbolTable.UNKNOWN, "sso.logout"));
+		}
+
+		assertEquals(1, store.lookups.get());
+
+		// Expired
+		cache.now = 1000000000L;
+		cache.get("k1");
+		assertEquals(2, store.lookups.get());
+	}
+
+
+	public void testNegativeCaching()
+		throws APIKeyStoreException {
+
+		CountingStore store = new CountingStore();
+
+		ClockedCache cache = new ClockedCache(store, 16, 1000L, 100L);
+
+		assertNull(cache.get("k1"));
+		assertNull(cache.get("k1"));
+		assertEquals(1, store.lookups.get());
+
+		// The key appears in the store, seen after the negative TTL
+		store.keys.put("k1", Collections.singleton("*"));
+
+		cache.now = 99000000L;
+		assertNull(cache.get("k1"));
+
+		cache.now = 100000000L;
+		assertTrue(cache.get("k1").allowsAny());
+		assertEquals(2, store.lookups.get());
+
+		// Negative caching disabled
+		cache = new ClockedCache(store, 16, 1000L, 0L);
+		store.lookups.set(0);
+		cache.get("k2");
+		cache.get("k2");
+		assertEquals(2, store.lookups.get());
+	}
+
+
+	public void testFailureNotCached() {
+
+		CountingStore store = new CountingStore();
+		store.fail = true;
+
+		APIKeyStoreCache cache = new APIKeyStoreCache(store, 16, 1000L, 1000L, 1000L);
+
+		for (int i=0; i < 2; i++) {
+			try {
+				cache.get("k1");
+				fail();
+			} catch (APIKeyStoreException e) {
+				assertEquals("Store down", e.getMessage());
+			}
+		}
+
+		assertEquals(2, store.lookups.get());
+	}
+
+
+	public void testInvalidPatterns() {
+
+		CountingStore store = new CountingStore();
+		store.keys.put("k1", Collections.singleton("*a??????????????"));
+
+		try {
+			new APIKeyStoreCache(store, 16, 1000L, 1000L, 1000L).get("k1");
+			fail();
+		} catch (APIKeyStoreException e) {
+			// ok
+		}
+	}
+
+
+	public void testCachingDisabled()
+		throws APIKeyStoreException {
+
+		CountingStore store = new CountingStore();
+		store.keys.put("k1", Collections.singleton("*"));
+
+		APIKeyStoreCache cache = new APIKeyStoreCache(store, 0, 1000L, 1000L, 1000L);
+
+		cache.get("k1");
+		cache.get("k1");
+		assertEquals(2, store.lookups.get());
+	}
+
+
+	public void testConcurrentMissesLoadOnce()
+		throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AtomicInteger lookups = new AtomicInteger();
+
+		APIKeyStore slowStore = new APIKeyStore() {
+
+			public Set<String> getMethods(final String key)
+				throws APIKeyStoreException {
+
+				lookups.incrementAndGet();
+
+				try {
+					release.await();
+
+				} catch (InterruptedException e) {
+
+					throw new APIKeyStoreException("Interrupted");
+				}
+
+				return Collections.singleton("*");
+			}
+		};
+
+		final APIKeyStoreCache cache = new APIKeyStoreCache(slowStore, 16, 60000L, 1000L, 10000L);
+
+		final int threads = 8;
+
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		final AtomicInteger allowed = new AtomicInteger();
+
+		for (int i=0; i < threads; i++) {
+
+			new Thread() {
+
+				public void run() {
+
+					try {
+						if (cache.get("k1").allowsAny())
+							allowed.incrementAndGet();
+
+					} catch (APIKeyStoreException e) {
+
+						// counted as not allowed
+					}
+
+					done.countDown();
+				}
+			}.start();
+		}
+
+		// Let all threads reach the pending lookup
+		Thread.sleep(200L);
+
+		release.countDown();
+
+		assertTrue(done.await(10L, TimeUnit.SECONDS));
+
+		assertEquals(threads, allowed.get());
+		assertEquals(1, lookups.get());
+	}
+
+
+	public void testWaitTimeout()
+		throws Exception {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		APIKeyStore slowStore = new APIKeyStore() {
+
+			public Set<String> getMethods(final String key)
+				throws APIKeyStoreException {
+
+				started.countDown();
+
+				try {
+					release.await();
+
+				} catch (InterruptedException e) {
+
+					throw new APIKeyStoreException("Interrupted");
+				}
+
+				return Collections.singleton("*");
+			}
+		};
+
+		final APIKeyStoreCache cache = new APIKeyStoreCache(slowStore, 16, 60000L, 1000L, 100L);
+
+		final CountDownLatch done = new CountDownLatch(1);
+
+		new Thread() {
+
+			public void run() {
+
+				try {
+					cache.get("k1");
+
+				} catch (APIKeyStoreException e) {
+
+					// ignore
+				}
+
+				done.countDown();
+			}
+		}.start();
+
+		assertTrue(started.await(10L, TimeUnit.SECONDS));
+
+		// The lookup in progress doesn't complete in time
+		try {
+			cache.get("k1");
+			fail();
+
+		} catch (APIKeyStoreException e) {
+
+			assertTrue(e.getMessage().startsWith("Timed out"));
+		}
+
+		release.countDown();
+
+		assertTrue(done.await(10L, TimeUnit.SECONDS));
+
+		assertTrue(cache.get("k1").allowsAny());
+	}
+}
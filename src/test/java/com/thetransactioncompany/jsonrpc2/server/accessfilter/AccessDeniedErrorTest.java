@@ -22,11 +22,17 @@ public class AccessDeniedErrorTest extends TestCase {
 		assertNotNull(AccessDeniedError.CLIENT_CERT_REQUIRED);
 		assertNotNull(AccessDeniedError.INVALID_CLIENT_PRINCIPAL_DN);
 		assertNotNull(AccessDeniedError.CLIENT_PRINCIPAL_DENIED);
+		assertNotNull(AccessDeniedError.CLIENT_CERT_NOT_PINNED);
+		assertNotNull(AccessDeniedError.CLIENT_CERT_REVOKED);
 		assertNotNull(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM);
 		assertNotNull(AccessDeniedError.MISSING_API_KEY);
+		assertNotNull(AccessDeniedError.API_KEY_STORE_UNAVAILABLE);
 		assertNotNull(AccessDeniedError.API_KEY_DENIED);
+		assertNotNull(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH);
+		assertNotNull(AccessDeniedError.RATE_LIMIT_EXCEEDED);
+		assertNotNull(AccessDeniedError.QUOTA_EXCEEDED);
 		
-		assertEquals(8, AccessDeniedError.values().length);
+		assertEquals(14, AccessDeniedError.values().length);
 	}
 	
 	
@@ -37,9 +43,15 @@ public class AccessDeniedErrorTest extends TestCase {
 		assertEquals(-31110, AccessDeniedError.CLIENT_CERT_REQUIRED.code);
 		assertEquals(-31111, AccessDeniedError.INVALID_CLIENT_PRINCIPAL_DN.code);
 		assertEquals(-31112, AccessDeniedError.CLIENT_PRINCIPAL_DENIED.code);
+		assertEquals(-31113, AccessDeniedError.CLIENT_CERT_NOT_PINNED.code);
+		assertEquals(-31114, AccessDeniedError.CLIENT_CERT_REVOKED.code);
 		assertEquals(-31120, AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM.code);
 		assertEquals(-31121, AccessDeniedError.MISSING_API_KEY.code);
+		assertEquals(-31122, AccessDeniedError.API_KEY_STORE_UNAVAILABLE.code);
 		assertEquals(-31123, AccessDeniedError.API_KEY_DENIED.code);
+		assertEquals(-31124, AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH.code);
+		assertEquals(-31130, AccessDeniedError.RATE_LIMIT_EXCEEDED.code);
+		assertEquals(-31131, AccessDeniedError.QUOTA_EXCEEDED.code);
 	}
 	
 	
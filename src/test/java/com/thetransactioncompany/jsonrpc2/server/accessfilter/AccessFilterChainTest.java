@@ -136,4 +136,120 @@ public class AccessFilterChainTest extends TestCase {
 		assertNotNull(result);
 		assertTrue(result.accessAllowed());
 	}
+	
+	
+	public void testReplaceAll()
+		throws Exception {
+		
+		AccessFilterChain chain = new AccessFilterChain();
+		
+		HTTPSFilter httpsFilter = new HTTPSFilter();
+		httpsFilter.init(true);
+		chain.add(httpsFilter);
+		
+		HostFilter hostFilter = new HostFilter();
+		hostFilter.init("192.168.0.1");
+		
+		List<AccessFilter> filters = new ArrayList<AccessFilter>();
+		filters.add(hostFilter);
+		
+		chain.replaceAll(filters);
+		
+		assertEquals(1, chain.getAccessFilters().size());
+		assertSame(hostFilter, chain.getAccessFilters().get(0));
+		
+		// Later changes to the source list must not leak into the chain
+		filters.add(httpsFilter);
+		assertEquals(1, chain.getAccessFilters().size());
+		
+		JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		
+		// HTTPS no longer required
+		AccessFilterResult result = chain.filter(req, new MessageContext(null, "192.168.0.1", false));
+		assertTrue(result.accessAllowed());
+		
+		result = chain.filter(req, new MessageContext(null, "192.168.0.2", false));
+		assertEquals(AccessDeniedError.CLIENT_IP_DENIED, result.getAccessDeniedError());
+		
+		try {
+			chain.replaceAll(Arrays.asList(hostFilter, null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		// Failed replace leaves the chain intact
+		assertSame(hostFilter, chain.getAccessFilters().get(0));
+	}
+	
+	
+	public void testSnapshotIsUnmodifiable()
+		throws Exception {
+		
+		AccessFilterChain chain = new AccessFilterChain();
+		
+		List<AccessFilter> snapshot = chain.getAccessFilters();
+		
+		HTTPSFilter httpsFilter = new HTTPSFilter();
+		httpsFilter.init(true);
+		chain.add(httpsFilter);
+		
+		assertTrue(snapshot.isEmpty());
+		assertEquals(1, chain.getAccessFilters().size());
+		
+		try {
+			chain.getAccessFilters().add(httpsFilter);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testConcurrentSwap()
+		throws Exception {
+		
+		final AccessFilterChain chain = new AccessFilterChain();
+		
+		// Both chains deny the same request, with different errors
+		final HTTPSFilter httpsFilter = new HTTPSFilter();
+		httpsFilter.init(true);
+		
+		final HostFilter hostFilter = new HostFilter();
+		hostFilter.init("10.0.0.1");
+		
+		final List<AccessFilter> chainA = Arrays.asList((AccessFilter)httpsFilter, hostFilter);
+		final List<AccessFilter> chainB = Arrays.asList((AccessFilter)hostFilter, httpsFilter);
+		
+		chain.replaceAll(chainA);
+		
+		final JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		final MessageContext mctx = new MessageContext(null, "192.168.0.1", false);
+		
+		boolean failed = false;
+		int iterations = 0;
+		
+		Thread swapper = new Thread() {
+			public void run() {
+				for (int i=0; i < 10000; i++)
+					chain.replaceAll(i % 2 == 0 ? chainB : chainA);
+			}
+		};
+		
+		swapper.start();
+		
+		while (swapper.isAlive() || iterations < 1000) {
+			
+			AccessFilterResult result = chain.filter(req, mctx);
+			
+			if (result.accessAllowed())
+				failed = true;
+			
+			iterations++;
+		}
+		
+		swapper.join();
+		
+		assertFalse(failed);
+	}
 }
@@ -3,6 +3,10 @@ package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 import junit.framework.TestCase;
 
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
 
 /**
  * Tests the access filter result class.
@@ -38,10 +42,64 @@ public class AccessFilterResultTest extends TestCase {
 	}
 	
 	
+	public void testAccessDeniedWithErrorData() {
+		
+		AccessFilterResult result = 
+			new AccessFilterResult(AccessDeniedError.RATE_LIMIT_EXCEEDED, "data");
+		
+		assertTrue(result.accessDenied());
+		assertEquals(AccessDeniedError.RATE_LIMIT_EXCEEDED, result.getAccessDeniedError());
+		assertEquals("data", result.getErrorData());
+		
+		assertNull(new AccessFilterResult(AccessDeniedError.HTTPS_REQUIRED).getErrorData());
+		assertNull(AccessFilterResult.ACCESS_ALLOWED.getErrorData());
+	}
+	
+	
 	public void testConstant() {
 	
 		assertTrue(AccessFilterResult.ACCESS_ALLOWED.accessAllowed());
 		assertFalse(AccessFilterResult.ACCESS_ALLOWED.accessDenied());
 		assertNull(AccessFilterResult.ACCESS_ALLOWED.getAccessDeniedError());
 	}
+	
+	
+	public void testCanonicalDenied() {
+		
+		for (AccessDeniedError error: AccessDeniedError.values()) {
+			
+			AccessFilterResult result = AccessFilterResult.denied(error);
+			
+			assertTrue(result.accessDenied());
+			assertFalse(result.accessAllowed());
+			assertEquals(error, result.getAccessDeniedError());
+			
+			assertSame(result, AccessFilterResult.denied(error));
+		}
+	}
+
+	
+	public void testCanonicalDeniedNullError() {
+		
+		try {
+			AccessFilterResult.denied(null);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testFiltersReturnCanonicalDenied() {
+		
+		HTTPSFilter filter = new HTTPSFilter();
+		filter.init(true);
+		
+		JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		MessageContext ctx = new MessageContext("localhost", "127.0.0.1", false);
+		
+		assertSame(AccessFilterResult.denied(AccessDeniedError.HTTPS_REQUIRED), filter.filter(req, ctx));
+		assertSame(filter.filter(req, ctx), filter.filter(req, ctx));
+	}
 }
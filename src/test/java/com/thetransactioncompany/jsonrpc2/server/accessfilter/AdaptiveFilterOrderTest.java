@@ -0,0 +1,266 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the adaptive filter order.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class AdaptiveFilterOrderTest extends TestCase {
+
+
+	/**
+	 * Slow filter which always allows access.
+	 */
+	private static class SlowAllowFilter implements AccessFilter {
+
+		int calls = 0;
+
+		public AccessFilterResult filter(final JSONRPC2Request request,
+		                                 final MessageContext messageCtx) {
+
+			calls++;
+
+			long until = System.nanoTime() + 50000;
+
+			while (System.nanoTime() < until) {
+				// spin
+			}
+
+			return AccessFilterResult.ACCESS_ALLOWED;
+		}
+	}
+
+
+	/**
+	 * Fast filter which always denies access.
+	 */
+	private static class FastDenyFilter implements AccessFilter {
+
+		public AccessFilterResult filter(final JSONRPC2Request request,
+		                                 final MessageContext messageCtx) {
+
+			return AccessFilterResult.denied(AccessDeniedError.CLIENT_IP_DENIED);
+		}
+	}
+
+
+	/**
+	 * Fast deny filter which must run after the slow allow filter.
+	 */
+	private static class ConstrainedDenyFilter extends FastDenyFilter implements OrderedAccessFilter {
+
+		public Collection<Class<? extends AccessFilter>> getRunAfter() {
+
+			return Collections.<Class<? extends AccessFilter>>singleton(SlowAllowFilter.class);
+		}
+	}
+
+
+	public void testConstructorValidation() {
+
+		try {
+			new AdaptiveFilterOrder(new AccessFilter[0], 0, 1000L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			new AdaptiveFilterOrder(new AccessFilter[0], 1, -1L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testOrderByRank() {
+
+		AccessFilter a = new FastDenyFilter();
+		AccessFilter b = new FastDenyFilter();
+		AccessFilter c = new FastDenyFilter();
+
+		AccessFilter[] ordered = AdaptiveFilterOrder.order(new AccessFilter[]{a, b, c}, new double[]{3.0, 1.0, 2.0});
+
+		assertSame(b, ordered[0]);
+		assertSame(c, ordered[1]);
+		assertSame(a, ordered[2]);
+	}
+
+
+	public void testOrderStableForEqualRank() {
+
+		AccessFilter a = new FastDenyFilter();
+		AccessFilter b = new FastDenyFilter();
+
+		double inf = Double.POSITIVE_INFINITY;
+
+		AccessFilter[] ordered = AdaptiveFilterOrder.order(new AccessFilter[]{a, b}, new double[]{inf, inf});
+
+		assertSame(a, ordered[0]);
+		assertSame(b, ordered[1]);
+	}
+
+
+	public void testOrderConstraints()
+		throws Exception {
+
+		HTTPSFilter httpsFilter = new HTTPSFilter();
+		httpsFilter.init(true);
+
+		X509ClientCertFilter certFilter = new X509ClientCertFilter();
+		certFilter.init(true, null);
+
+		AccessFilter other = new FastDenyFilter();
+
+		// Cert filter ranks best but must follow the HTTPS filter
+		AccessFilter[] ordered = AdaptiveFilterOrder.order(new AccessFilter[]{other, httpsFilter, certFilter}, new double[]{2.0, 3.0, 1.0});
+
+		assertSame(other, ordered[0]);
+		assertSame(httpsFilter, ordered[1]);
+		assertSame(certFilter, ordered[2]);
+
+		// Constraint doesn't apply if no HTTPS filter is chained
+		ordered = AdaptiveFilterOrder.order(new AccessFilter[]{other, certFilter}, new double[]{2.0, 1.0});
+
+		assertSame(certFilter, ordered[0]);
+		assertSame(other, ordered[1]);
+	}
+
+
+	public void testOrderKeyCountingFiltersAfterAPIKeyFilter() {
+
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+
+		RateLimitFilter rateLimitFilter = new RateLimitFilter();
+
+		QuotaFilter quotaFilter = new QuotaFilter();
+
+		AccessFilter other = new FastDenyFilter();
+
+		// Rate limit filter ranks best but must follow the API key filter
+		AccessFilter[] ordered = AdaptiveFilterOrder.order(new AccessFilter[]{other, apiKeyFilter, rateLimitFilter}, new double[]{2.0, 3.0, 1.0});
+
+		assertSame(other, ordered[0]);
+		assertSame(apiKeyFilter, ordered[1]);
+		assertSame(rateLimitFilter, ordered[2]);
+
+		// Quota filter ranks best but must follow both
+		ordered = AdaptiveFilterOrder.order(new AccessFilter[]{apiKeyFilter, rateLimitFilter, quotaFilter, other}, new double[]{3.0, 4.0, 1.0, 2.0});
+
+		assertSame(other, ordered[0]);
+		assertSame(apiKeyFilter, ordered[1]);
+		assertSame(rateLimitFilter, ordered[2]);
+		assertSame(quotaFilter, ordered[3]);
+	}
+
+
+	public void testReorderRequiresSamples() {
+
+		AdaptiveFilterOrder order = new AdaptiveFilterOrder(new AccessFilter[]{new FastDenyFilter()}, 1, 1000000L);
+
+		assertFalse(order.reorder());
+	}
+
+
+	public void testReorderCheapDenyingFilterFirst() {
+
+		SlowAllowFilter slow = new SlowAllowFilter();
+		FastDenyFilter fast = new FastDenyFilter();
+
+		AdaptiveFilterOrder order = new AdaptiveFilterOrder(new AccessFilter[]{slow, fast}, 1, 1000000L);
+
+		JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		MessageContext mctx = new MessageContext();
+
+		for (int i=0; i < AdaptiveFilterOrder.MIN_SAMPLES; i++) {
+
+			AccessFilterResult result = order.filter(req, mctx);
+			assertEquals(AccessDeniedError.CLIENT_IP_DENIED, result.getAccessDeniedError());
+		}
+
+		assertTrue(order.reorder());
+
+		assertSame(fast, order.getFilters()[0]);
+		assertSame(slow, order.getFilters()[1]);
+
+		// Slow filter no longer reached
+		int calls = slow.calls;
+		order.filter(req, mctx);
+		assertEquals(calls, slow.calls);
+
+		// Statistics reset
+		assertFalse(order.reorder());
+	}
+
+
+	public void testReorderHonoursConstraints() {
+
+		SlowAllowFilter slow = new SlowAllowFilter();
+		ConstrainedDenyFilter fast = new ConstrainedDenyFilter();
+
+		AdaptiveFilterOrder order = new AdaptiveFilterOrder(new AccessFilter[]{slow, fast}, 1, 1000000L);
+
+		JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		MessageContext mctx = new MessageContext();
+
+		for (int i=0; i < AdaptiveFilterOrder.MIN_SAMPLES; i++)
+			order.filter(req, mctx);
+
+		assertTrue(order.reorder());
+
+		assertSame(slow, order.getFilters()[0]);
+		assertSame(fast, order.getFilters()[1]);
+	}
+
+
+	public void testChainAdaptiveOrdering() {
+
+		SlowAllowFilter slow = new SlowAllowFilter();
+		FastDenyFilter fast = new FastDenyFilter();
+
+		AccessFilterChain chain = new AccessFilterChain();
+		chain.add(slow);
+		chain.add(fast);
+
+		assertFalse(chain.isAdaptiveOrdering());
+
+		// Reorder as soon as there are enough samples
+		chain.enableAdaptiveOrdering(1, 0L);
+		assertTrue(chain.isAdaptiveOrdering());
+
+		JSONRPC2Request req = new JSONRPC2Request("ws.getTime", 0);
+		MessageContext mctx = new MessageContext();
+
+		for (int i=0; i < AdaptiveFilterOrder.MIN_SAMPLES; i++)
+			chain.filter(req, mctx);
+
+		assertSame(fast, chain.getAccessFilters().get(0));
+		assertSame(slow, chain.getAccessFilters().get(1));
+
+		// Modification restarts from the configured order
+		FastDenyFilter other = new FastDenyFilter();
+		chain.add(other);
+
+		assertTrue(chain.isAdaptiveOrdering());
+		assertSame(slow, chain.getAccessFilters().get(0));
+		assertSame(fast, chain.getAccessFilters().get(1));
+		assertSame(other, chain.getAccessFilters().get(2));
+
+		chain.disableAdaptiveOrdering();
+		assertFalse(chain.isAdaptiveOrdering());
+		assertNull(chain.getAdaptiveOrder());
+		assertSame(slow, chain.getAccessFilters().get(0));
+	}
+}
@@ -0,0 +1,110 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the bounded cache.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class BoundedCacheTest extends TestCase {
+
+
+	public void testPutGet() {
+
+		BoundedCache<String,Integer> cache = new BoundedCache<String,Integer>(100);
+
+		assertEquals(128, cache.capacity());
+
+		assertNull(cache.get("a"));
+
+		cache.put("a", 1);
+		cache.put("b", 2);
+
+		assertEquals(1, cache.get("a").intValue());
+		assertEquals(2, cache.get("b").intValue());
+		assertNull(cache.get("c"));
+
+		cache.clear();
+
+		assertNull(cache.get("a"));
+	}
+
+
+	public void testBounded() {
+
+		BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(16);
+
+		for (int i=0; i < 1000; i++)
+			cache.put(i, i);
+
+		int cached = 0;
+
+		for (int i=0; i < 1000; i++) {
+
+			Integer v = cache.get(i);
+
+			if (v != null) {
+				assertEquals(i, v.intValue());
+				cached++;
+			}
+		}
+
+		assertTrue(cached > 0);
+		assertTrue(cached <= 16);
+	}
+
+
+	public void testCustomKeyEquals() {
+
+		BoundedCache<String,Integer> cache = new BoundedCache<String,Integer>(1) {
+
+			boolean keyEquals(final String cached, final String key) {
+
+				return cached.equalsIgnoreCase(key);
+			}
+		};
+
+		cache.put("a", 1);
+
+		assertEquals(1, cache.get("a").intValue());
+	}
+
+
+	public void testCustomKeyHash() {
+		
+		BoundedCache<String,Integer> cache = new BoundedCache<String,Integer>(16) {
+			
+			int keyHash(final String key) {
+				
+				return System.identityHashCode(key);
+			}
+			
+			boolean keyEquals(final String cached, final String key) {
+				
+				return cached == key;
+			}
+		};
+		
+		String a = new String("a");
+		
+		cache.put(a, 1);
+		
+		assertEquals(1, cache.get(a).intValue());
+		assertNull(cache.get(new String("a")));
+	}
+	
+	
+	public void testInvalidCapacity() {
+
+		try {
+			new BoundedCache<String,String>(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
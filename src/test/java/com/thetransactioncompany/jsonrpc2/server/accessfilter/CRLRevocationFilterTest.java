@@ -0,0 +1,435 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the CRL revocation filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class CRLRevocationFilterTest extends TestCase {
+
+
+	/**
+	 * CA certificate, CN=Test CA, O=Acme.
+	 */
+	private static final String CA_CERT =
+		"-----BEGIN CERTIFICATE-----\n" +
+		"MIIBmTCCAT+gAwIBAgIUdb6v2zQHduL6SLB7BgSaO9ITLzEwCgYIKoZIzj0EAwIw\n" +
+		"ITEQMA4GA1UEAwwHVGVzdCBDQTENMAsGA1UECgwEQWNtZTAgFw0yNjEwMTcyMjMx\n" +
+		"MDRaGA8yMTI2MDkyMzIyMzEwNFowITEQMA4GA1UEAwwHVGVzdCBDQTENMAsGA1UE\n" +
+		"CgwEQWNtZTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABC6PTjQY1iVq7ZfeX7ae\n" +
+		"ypSySSGnxaRkwet5v2w8aenyAowM6kczpIarIhRJKwTPjzymdBa56pX3B9lQXP6f\n" +
+		"ykmjUzBRMB0GA1UdDgQWBBTm2eyUy+/kt34+5JthWYYdIVN5lDAfBgNVHSMEGDAW\n" +
+		"gBTm2eyUy+/kt34+5JthWYYdIVN5lDAPBgNVHRMBAf8EBTADAQH/MAoGCCqGSM49\n" +
+		"BAMCA0gAMEUCIQCWO39WNEgNUF9mMdHx9CNneMfCB5bEygewQW41CUxuGgIgKU6+\n" +
+		"Zl4Lwq87wDPm7SDVBRJR+vQNT/e1GSpFwGfQYz4=\n" +
+		"-----END CERTIFICATE-----\n";
+
+
+	/**
+	 * Certificate issued by the CA, CN=leaf1, O=Acme, serial 0x1001.
+	 */
+	private static final String LEAF_1 =
+		"-----BEGIN CERTIFICATE-----\n" +
+		"MIIBKjCB0QICEAEwCgYIKoZIzj0EAwIwITEQMA4GA1UEAwwHVGVzdCBDQTENMAsG\n" +
+		"A1UECgwEQWNtZTAgFw0yNjEwMTcyMjMxMDRaGA8yMTI2MDkyMzIyMzEwNFowHzEO\n" +
+		"MAwGA1UEAwwFbGVhZjExDTALBgNVBAoMBEFjbWUwWTATBgcqhkjOPQIBBggqhkjO\n" +
+		"PQMBBwNCAATsbR2FROREVd3JO/p3eYIDMx0KvI+uy+3AjViAYedCfKt738DnnFfQ\n" +
+		"2a/Ao8kBnPZptsa0CbL19L6+TUHlylbRMAoGCCqGSM49BAMCA0gAMEUCIQCeDgvz\n" +
+		"R5XqrTLAhKQxlRj5kHu4hmfBPjxNMLqpvFoyuwIgPEIAefNLopxvi5nhWv7GwbAL\n" +
+		"m2qTKM/QGmod442cTwM=\n" +
+		"-----END CERTIFICATE-----\n";
+
+
+	/**
+	 * Certificate issued by the CA, CN=leaf2, O=Acme, serial 0x1002.
+	 */
+	private static final String LEAF_2 =
+		"-----BEGIN CERTIFICATE-----\n" +
+		"MIIBKzCB0QICEAIwCgYIKoZIzj0EAwIwITEQMA4GA1UEAwwHVGVzdCBDQTENMAsG\n" +
+		"A1UECgwEQWNtZTAgFw0yNjEwMTcyMjMxMDRaGA8yMTI2MDkyMzIyMzEwNFowHzEO\n" +
+		"MAwGA1UEAwwFbGVhZjIxDTALBgNVBAoMBEFjbWUwWTATBgcqhkjOPQIBBggqhkjO\n" +
+		"PQMBBwNCAASJFgnvmd7vNAlLl4cGI4gPz5VtwrIbsuYXyGzwN/ytflNikXvXfeGq\n" +
+		"YRIEcVO8a+dnepYXTidUlQ3bJiscWuPHMAoGCCqGSM49BAMCA0kAMEYCIQCCfyAB\n" +
+		"f57z3KjQNmYyw/S5WP147/CuTwvnKurlyyoYIQIhAM6un9nJQ0PhzQcgwjYoQlW8\n" +
+		"YPxW7FLgTweSmZzly7g+\n" +
+		"-----END CERTIFICATE-----\n";
+
+
+	/**
+	 * CRL of the CA without revoked certificates.
+	 */
+	private static final String EMPTY_CRL =
+		"-----BEGIN X509 CRL-----\n" +
+		"MIG7MGICAQEwCgYIKoZIzj0EAwIwITEQMA4GA1UEAwwHVGVzdCBDQTENMAsGA1UE\n" +
+		"CgwEQWNtZRcNMjYxMDE3MjIzMTA0WhgPMjEyNjA5MjMyMjMxMDRaoA4wDDAKBgNV\n" +
+		"HRQEAwIBATAKBggqhkjOPQQDAgNJADBGAiEA6J1f1G+bfx8o0J6bWlD4WS45mThG\n" +
+		"NWdl1oQ2yif7+fwCIQDBhP3jyEfFQFGfimhHmYMh//xhgrZ/MSfUMQ2myczlnQ==\n" +
+		"-----END X509 CRL-----\n";
+
+
+	/**
+	 * CRL of the CA revoking serial 0x1001.
+	 */
+	static final String REVOKED_CRL =
+		"-----BEGIN X509 CRL-----\n" +
+		"MIHQMHkCAQEwCgYIKoZIzj0EAwIwITEQMA4GA1UEAwwHVGVzdCBDQTENMAsGA1UE\n" +
+		"CgwEQWNtZRcNMjYxMDE3MjIzMTA0WhgPMjEyNjA5MjMyMjMxMDRaMBUwEwICEAEX\n" +
+		"DTI2MTAxNzIyMzEwNFqgDjAMMAoGA1UdFAQDAgECMAoGCCqGSM49BAMCA0cAMEQC\n" +
+		"IGtHyDHFw0q+nEzwKvFsqNy/laJIso5QerqTXIy7JoRcAiAkXOCuP1PDuNqk1khw\n" +
+		"ACGegrSlKZag76XqmWZONgczXg==\n" +
+		"-----END X509 CRL-----\n";
+
+
+	private File file;
+
+
+	private X509Certificate ca;
+
+
+	private X509Certificate leaf1;
+
+
+	private X509Certificate leaf2;
+
+
+	public void setUp()
+		throws IOException, CertificateException {
+
+		file = File.createTempFile("crl", ".pem");
+
+		ca = X509CertPinningFilterTest.parseCertificate(CA_CERT);
+		leaf1 = X509CertPinningFilterTest.parseCertificate(LEAF_1);
+		leaf2 = X509CertPinningFilterTest.parseCertificate(LEAF_2);
+	}
+
+
+	public void tearDown() {
+
+		file.delete();
+	}
+
+
+	private static AccessFilterResult call(final CRLRevocationFilter filter, final Object chain) {
+
+		return filter.filter(new JSONRPC2Request("users.list", 0),
+		                     new MessageContext(X509CertPinningFilterTest.createHTTPRequest(chain)));
+	}
+
+
+	/**
+	 * Rewrites the CRL file, with a newer modification time.
+	 */
+	private void rewrite(final String content)
+		throws IOException {
+
+		long lastModified = file.lastModified();
+
+		APIKeyFileTest.write(file, content);
+
+		// Coarse file system timestamps
+		assertTrue(file.setLastModified(lastModified + 2000L));
+	}
+
+
+	public void testRevoked()
+		throws IOException {
+
+		APIKeyFileTest.write(file, REVOKED_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertEquals(Collections.singletonList(file), filter.getFiles());
+		assertEquals(1, filter.getRevokedCount());
+
+		assertTrue(filter.isRevoked(leaf1));
+		assertFalse(filter.isRevoked(leaf2));
+		assertFalse(filter.isRevoked(ca));
+
+		assertEquals(AccessDeniedError.CLIENT_CERT_REVOKED,
+		             call(filter, new X509Certificate[]{leaf1, ca}).getAccessDeniedError());
+		assertTrue(call(filter, new X509Certificate[]{leaf2, ca}).accessAllowed());
+		assertTrue(call(filter, new X509Certificate[]{leaf2}).accessAllowed());
+
+		// The CA itself isn't revoked
+		assertTrue(call(filter, new X509Certificate[]{ca}).accessAllowed());
+	}
+
+
+	public void testEmptyCRL()
+		throws IOException {
+
+		APIKeyFileTest.write(file, EMPTY_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertEquals(0, filter.getRevokedCount());
+
+		assertTrue(call(filter, new X509Certificate[]{leaf1, ca}).accessAllowed());
+		assertTrue(call(filter, new X509Certificate[]{leaf2, ca}).accessAllowed());
+	}
+
+
+	/**
+	 * Encodes a DER element.
+	 */
+	private static byte[] der(final int tag, final byte[] ... values)
+		throws IOException {
+
+		ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+		for (byte[] v: values)
+			value.write(v);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+
+		if (value.size() > 0xff) {
+			out.write(0x82);
+			out.write(value.size() >> 8);
+		} else if (value.size() > 0x7f) {
+			out.write(0x81);
+		}
+
+		out.write(value.size());
+		value.writeTo(out);
+		return out.toByteArray();
+	}
+
+
+	/**
+	 * Encodes a CRL entry, with an optional certificate issuer.
+	 */
+	private static byte[] crlEntry(final int serial, final X500Principal issuer)
+		throws IOException {
+
+		byte[] serialNumber = der(0x02, BigInteger.valueOf(serial).toByteArray());
+		byte[] revocationDate = der(0x17, "261017000000Z".getBytes("US-ASCII"));
+
+		if (issuer == null)
+			return der(0x30, serialNumber, revocationDate);
+
+		byte[] certificateIssuer = der(0x30,
+			der(0x06, new byte[]{0x55, 0x1d, 0x1d}),
+			der(0x01, new byte[]{(byte)0xff}),
+			der(0x04, der(0x30, der(0xa4, issuer.getEncoded()))));
+
+		return der(0x30, serialNumber, revocationDate, der(0x30, certificateIssuer));
+	}
+
+
+	public void testIndirectCRL()
+		throws IOException {
+
+		X500Principal crlIssuer = new X500Principal("CN=CRL Issuer, O=Acme");
+
+		byte[] alg = der(0x30, der(0x06, new byte[]{0x2a, (byte)0x86, 0x48, (byte)0xce, 0x3d, 0x04, 0x03, 0x02}));
+
+		// The certificate issuer carries over to the following entries
+		byte[] tbs = der(0x30,
+			der(0x02, new byte[]{1}),
+			alg,
+			crlIssuer.getEncoded(),
+			der(0x17, "261017000000Z".getBytes("US-ASCII")),
+			der(0x30,
+				crlEntry(0x2000, null),
+				crlEntry(0x0fff, ca.getSubjectX500Principal()),
+				crlEntry(0x1001, null),
+				crlEntry(0x1002, crlIssuer),
+				crlEntry(0x1003, null)));
+
+		// The signature isn't verified
+		byte[] crl = der(0x30, tbs, alg, der(0x03, new byte[]{0, 0}));
+
+		OutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(crl);
+
+		} finally {
+			out.close();
+		}
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertEquals(5, filter.getRevokedCount());
+
+		// 0x1001 by the CA, 0x1002 by the CRL issuer
+		assertTrue(filter.isRevoked(leaf1));
+		assertFalse(filter.isRevoked(leaf2));
+	}
+
+
+	public void testMultipleFiles()
+		throws IOException {
+
+		File other = File.createTempFile("crl", ".pem");
+
+		try {
+			APIKeyFileTest.write(file, EMPTY_CRL);
+			APIKeyFileTest.write(other, REVOKED_CRL);
+
+			CRLRevocationFilter filter = new CRLRevocationFilter();
+			filter.init(Arrays.asList(file, other));
+
+			assertEquals(1, filter.getRevokedCount());
+			assertTrue(filter.isRevoked(leaf1));
+			assertFalse(filter.isRevoked(leaf2));
+
+		} finally {
+			other.delete();
+		}
+	}
+
+
+	public void testReload()
+		throws IOException {
+
+		APIKeyFileTest.write(file, EMPTY_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertTrue(call(filter, new X509Certificate[]{leaf1}).accessAllowed());
+
+		// Unchanged
+		assertFalse(filter.reload());
+
+		rewrite(REVOKED_CRL);
+
+		assertTrue(filter.reload());
+
+		assertEquals(1, filter.getRevokedCount());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REVOKED,
+		             call(filter, new X509Certificate[]{leaf1}).getAccessDeniedError());
+
+		assertFalse(filter.reload());
+	}
+
+
+	public void testReloadInvalidKeepsCurrent()
+		throws IOException {
+
+		APIKeyFileTest.write(file, REVOKED_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		rewrite("-----BEGIN X509 CRL-----\ninvalid\n-----END X509 CRL-----\n");
+
+		try {
+			filter.reload();
+			fail();
+
+		} catch (IOException e) {
+
+			// ok
+		}
+
+		assertEquals(1, filter.getRevokedCount());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REVOKED,
+		             call(filter, new X509Certificate[]{leaf1}).getAccessDeniedError());
+	}
+
+
+	public void testBackgroundReload()
+		throws Exception {
+
+		APIKeyFileTest.write(file, EMPTY_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertFalse(filter.isReloading());
+
+		filter.startReload(10L);
+
+		try {
+			assertTrue(filter.isReloading());
+
+			rewrite(REVOKED_CRL);
+
+			for (int i=0; i < 500 && filter.getRevokedCount() == 0; i++)
+				Thread.sleep(10L);
+
+			assertTrue(filter.isRevoked(leaf1));
+
+		} finally {
+			filter.stopReload();
+		}
+
+		assertFalse(filter.isReloading());
+	}
+
+
+	public void testInitErrors()
+		throws IOException {
+
+		try {
+			new CRLRevocationFilter().init(null);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+
+		file.delete();
+
+		try {
+			new CRLRevocationFilter().init(Collections.singletonList(file));
+			fail();
+
+		} catch (IOException e) {
+
+			// ok
+		}
+	}
+
+
+	public void testMissingCertificate()
+		throws IOException {
+
+		APIKeyFileTest.write(file, REVOKED_CRL);
+
+		CRLRevocationFilter filter = new CRLRevocationFilter();
+		filter.init(Collections.singletonList(file));
+
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED, call(filter, null).getAccessDeniedError());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED, call(filter, new X509Certificate[0]).getAccessDeniedError());
+
+		// No servlet request
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED,
+		             filter.filter(new JSONRPC2Request("users.list", 0), new MessageContext()).getAccessDeniedError());
+	}
+
+
+	public void testRunAfter() {
+
+		assertTrue(new CRLRevocationFilter().getRunAfter().contains(HTTPSFilter.class));
+	}
+}
@@ -1,12 +1,16 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.io.File;
+
 import java.util.*;
 
 import junit.framework.TestCase;
 
 import com.unboundid.ldap.sdk.DN;
 
+import com.thetransactioncompany.util.PropertyParseException;
+
 
 /**
  * Tests the composite filter configuration class.
@@ -92,6 +96,7 @@ public class CompositeFilterConfigurationTest extends TestCase {
 		assertTrue(config.https.require);
 		assertFalse(config.https.requireClientCert);
 		assertNull(config.https.clientCertPrincipal);
+		assertEquals(X509ClientCertFilter.DEFAULT_DN_CACHE_SIZE, config.https.clientCertDNCacheSize);
 		
 		assertEquals("*", config.hosts.allow);
 		
@@ -103,4 +108,702 @@ public class CompositeFilterConfigurationTest extends TestCase {
 		
 		assertTrue(config.apiKeys.map.isEmpty());
 	}
+	
+	
+	public void testParseCIDRHosts()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.hosts.allow", "10.0.0.0/8 2001:db8::/32 localhost");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals("10.0.0.0/8 2001:db8::/32 localhost", config.hosts.allow);
+		assertEquals(0, config.hosts.refreshInterval);
+	}
+	
+	
+	public void testParseHostsRefreshInterval()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.hosts.allow", "localhost");
+		props.setProperty("access.hosts.refreshInterval", "300");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(300, config.hosts.refreshInterval);
+		assertEquals(HostResolution.DEFAULT_MAX_THREADS, config.hosts.resolveThreads);
+		assertEquals(HostResolution.DEFAULT_TIMEOUT, config.hosts.resolveTimeout);
+		assertFalse(config.hosts.ignoreUnresolved);
+	}
+	
+	
+	public void testParseHostsResolution()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.hosts.resolveThreads", "4");
+		props.setProperty("access.hosts.resolveTimeout", "2500");
+		props.setProperty("access.hosts.ignoreUnresolved", "true");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(4, config.hosts.resolveThreads);
+		assertEquals(2500L, config.hosts.resolveTimeout);
+		assertTrue(config.hosts.ignoreUnresolved);
+	}
+
+	
+	public void testParseInvalidCIDRHosts() {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.hosts.allow", "10.0.0.0/40");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testParseSharedAPIKeyMethodSets()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.apiKeys.map.key1", "sso.login sso.logout");
+		props.setProperty("access.apiKeys.map.key2", "sso.logout sso.login");
+		props.setProperty("access.apiKeys.map.key3", "sso.login");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		Set<String> methods1 = config.apiKeys.map.get(new APIKey("key1"));
+		Set<String> methods2 = config.apiKeys.map.get(new APIKey("key2"));
+		Set<String> methods3 = config.apiKeys.map.get(new APIKey("key3"));
+		
+		assertEquals(2, methods1.size());
+		assertSame(methods1, methods2);
+		assertNotSame(methods1, methods3);
+		
+		try {
+			methods1.add("sso.getSession");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testParseAPIKeyMethodPatterns()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.apiKeys.map.key1", "billing.* *.get");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.apiKeys.map.get(new APIKey("key1")).contains("billing.*"));
+		assertTrue(config.apiKeys.map.get(new APIKey("key1")).contains("*.get"));
+		
+		props.setProperty("access.apiKeys.map.key2", "*a??????????????");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.map.key2", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseHashedAPIKeys()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertFalse(config.apiKeys.hashed);
+		assertEquals(APIKeyFilter.DEFAULT_VERIFIED_KEY_CACHE_SIZE, config.apiKeys.verifiedKeyCacheSize);
+		
+		String digest = new APIKey("secret").getSHA256Digest();
+		
+		props.setProperty("access.apiKeys.hashed", "true");
+		props.setProperty("access.apiKeys.verifiedKeyCacheSize", "100");
+		props.setProperty("access.apiKeys.map." + digest, "sso.login");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.apiKeys.hashed);
+		assertEquals(100, config.apiKeys.verifiedKeyCacheSize);
+		assertTrue(config.apiKeys.map.get(new APIKey(digest)).contains("sso.login"));
+		
+		props.setProperty("access.apiKeys.map.not-a-digest", "sso.login");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.map.not-a-digest", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseClientCertDNCacheSize()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		props.setProperty("access.https.clientCertDNCacheSize", "0");
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(0, config.https.clientCertDNCacheSize);
+		
+		props.setProperty("access.https.clientCertDNCacheSize", "-1");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.clientCertDNCacheSize", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParsePrincipalMap()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertNull(config.https.principalMap);
+		
+		props.setProperty("access.https.principalMap.sso.dn", "cn=SSO Gateway,ou=services,o=Acme");
+		props.setProperty("access.https.principalMap.sso.methods", "sso.*");
+		props.setProperty("access.https.principalMap.partners.dnSuffix", "ou=Partners,o=Acme");
+		props.setProperty("access.https.principalMap.partners.methods", "billing.get billing.list");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		PrincipalMethodMap map = config.https.principalMap;
+		
+		assertEquals(1, map.getPrincipals().size());
+		assertEquals(1, map.getSuffixes().size());
+		assertEquals(new HashSet<String>(Arrays.asList("billing.get", "billing.list")), 
+		             map.getSuffixes().get(new DN("ou=Partners,o=Acme")));
+		
+		assertTrue(map.allows(new DN("cn=SSO Gateway,ou=services,o=Acme"), "sso.login"));
+		assertTrue(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme"), "billing.list"));
+		assertFalse(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme"), "sso.login"));
+		
+		// Both DN and suffix
+		props.setProperty("access.https.principalMap.sso.dnSuffix", "o=Acme");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.principalMap.sso.dnSuffix", e.getPropertyKey());
+		}
+		
+		props.remove("access.https.principalMap.sso.dnSuffix");
+		
+		// Missing methods
+		props.remove("access.https.principalMap.sso.methods");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.principalMap.sso.methods", e.getPropertyKey());
+		}
+		
+		// Invalid DN
+		props.setProperty("access.https.principalMap.sso.methods", "sso.*");
+		props.setProperty("access.https.principalMap.sso.dn", "not a DN");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.principalMap.sso.dn", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParsePinnedCerts()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.https.pinnedCerts.isEmpty());
+		
+		props.setProperty("access.https.pinnedCerts", 
+		                  X509CertPinningFilterTest.CERT_1_FINGERPRINT + " " +
+		                  "5f0c0c8f9d0b1e2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d6e7f8091e2");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(2, config.https.pinnedCerts.size());
+		assertTrue(config.https.pinnedCerts.contains("bdce5691e0d23bf0615539993771ff806e36e3770bbcb675c8ec4b75c2fea9ff"));
+		assertTrue(config.https.pinnedCerts.contains("5f0c0c8f9d0b1e2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d6e7f8091e2"));
+		
+		props.setProperty("access.https.pinnedCerts", "bdce56");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.pinnedCerts", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseCRLFiles()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.https.crlFiles.isEmpty());
+		assertEquals(CompositeFilterConfiguration.HTTPS.DEFAULT_CRL_RELOAD_INTERVAL, config.https.crlReloadInterval);
+		
+		props.setProperty("access.https.crlFiles", " /etc/pki/crl/ca.crl  /etc/pki/crl/sub-ca.crl ");
+		props.setProperty("access.https.crlReloadInterval", "0");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(2, config.https.crlFiles.size());
+		assertEquals(new File("/etc/pki/crl/ca.crl"), config.https.crlFiles.get(0));
+		assertEquals(new File("/etc/pki/crl/sub-ca.crl"), config.https.crlFiles.get(1));
+		assertEquals(0, config.https.crlReloadInterval);
+		
+		props.setProperty("access.https.crlReloadInterval", "-1");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.https.crlReloadInterval", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseAPIKeyFile()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertNull(config.apiKeys.file);
+		assertTrue(config.apiKeys.watchFile);
+		
+		props.setProperty("access.apiKeys.file", "/etc/json-rpc/api-keys.txt");
+		props.setProperty("access.apiKeys.watchFile", "false");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(new File("/etc/json-rpc/api-keys.txt"), config.apiKeys.file);
+		assertFalse(config.apiKeys.watchFile);
+		
+		// Either file or map
+		props.setProperty("access.apiKeys.map.key1", "sso.login");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.file", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseAPIKeyIndexFile()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertNull(config.apiKeys.indexFile);
+		
+		props.setProperty("access.apiKeys.indexFile", "/var/lib/json-rpc/api-keys.idx");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(new File("/var/lib/json-rpc/api-keys.idx"), config.apiKeys.indexFile);
+		
+		// Either index file or map
+		props.setProperty("access.apiKeys.map.key1", "sso.login");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.indexFile", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseAPIKeyBindings()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.apiKeys.bindings.isEmpty());
+		
+		props.setProperty("access.apiKeys.bindDN.key1", "cn=SSO Gateway,o=Acme | cn=SSO Backup,o=Acme");
+		props.setProperty("access.apiKeys.bindCert.key1", X509CertPinningFilterTest.CERT_1_FINGERPRINT);
+		props.setProperty("access.apiKeys.bindCert.key2", 
+		                  "5f0c0c8f9d0b1e2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d6e7f8091e2");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(2, config.apiKeys.bindings.size());
+		
+		APIKeyBinding binding = config.apiKeys.bindings.get(new APIKey("key1"));
+		assertEquals(new HashSet<DN>(Arrays.asList(new DN("cn=SSO Gateway,o=Acme"), new DN("cn=SSO Backup,o=Acme"))), 
+		             binding.getPrincipals());
+		assertEquals(Collections.singleton("bdce5691e0d23bf0615539993771ff806e36e3770bbcb675c8ec4b75c2fea9ff"), 
+		             binding.getFingerprints());
+		
+		binding = config.apiKeys.bindings.get(new APIKey("key2"));
+		assertTrue(binding.getPrincipals().isEmpty());
+		assertEquals(1, binding.getFingerprints().size());
+		
+		// Invalid fingerprint
+		props.setProperty("access.apiKeys.bindCert.key2", "bdce56");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.bindCert.key2", e.getPropertyKey());
+		}
+		
+		props.remove("access.apiKeys.bindCert.key2");
+		
+		// Not with an index file
+		props.setProperty("access.apiKeys.indexFile", "/var/lib/json-rpc/api-keys.idx");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.indexFile", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseAPIKeyStoreCache()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(APIKeyFilter.DEFAULT_STORE_CACHE_SIZE, config.apiKeys.storeCacheSize);
+		assertEquals(60L, config.apiKeys.storeCacheTTL);
+		assertEquals(5L, config.apiKeys.storeNegativeCacheTTL);
+		assertEquals(5L, config.apiKeys.storeTimeout);
+		
+		props.setProperty("access.apiKeys.storeCacheSize", "1000");
+		props.setProperty("access.apiKeys.storeCacheTTL", "300");
+		props.setProperty("access.apiKeys.storeNegativeCacheTTL", "0");
+		props.setProperty("access.apiKeys.storeTimeout", "2");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(1000, config.apiKeys.storeCacheSize);
+		assertEquals(300L, config.apiKeys.storeCacheTTL);
+		assertEquals(0L, config.apiKeys.storeNegativeCacheTTL);
+		assertEquals(2L, config.apiKeys.storeTimeout);
+		
+		for (String name: new String[]{"access.apiKeys.storeCacheSize", "access.apiKeys.storeCacheTTL", "access.apiKeys.storeNegativeCacheTTL", "access.apiKeys.storeTimeout"}) {
+			
+			Properties p = (Properties)props.clone();
+			p.setProperty(name, "-1");
+			
+			try {
+				new CompositeFilterConfiguration(p);
+				fail();
+			
+			} catch (PropertyParseException e) {
+				assertEquals(name, e.getPropertyKey());
+			}
+		}
+	}
+	
+	
+	public void testParseAPIKeySource()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(CompositeFilterConfiguration.APIKeys.Source.PARAM, config.apiKeys.source);
+		assertEquals("apiKey", ((NamedParamAPIKeyExtractor)config.apiKeys.createAPIKeyExtractor()).getParameterName());
+		
+		props.setProperty("access.apiKeys.source", "position");
+		props.setProperty("access.apiKeys.position", "2");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(CompositeFilterConfiguration.APIKeys.Source.POSITION, config.apiKeys.source);
+		assertEquals(2, ((PositionalParamAPIKeyExtractor)config.apiKeys.createAPIKeyExtractor()).getPosition());
+		
+		props.setProperty("access.apiKeys.source", "header");
+		props.setProperty("access.apiKeys.headerName", "Authorization");
+		props.setProperty("access.apiKeys.headerScheme", "Bearer");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(CompositeFilterConfiguration.APIKeys.Source.HEADER, config.apiKeys.source);
+		HeaderAPIKeyExtractor extractor = (HeaderAPIKeyExtractor)config.apiKeys.createAPIKeyExtractor();
+		assertEquals("Authorization", extractor.getHeaderName());
+		assertEquals("Bearer", extractor.getScheme());
+		
+		props.setProperty("access.apiKeys.source", "cookie");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.source", e.getPropertyKey());
+		}
+		
+		props.setProperty("access.apiKeys.source", "position");
+		props.setProperty("access.apiKeys.position", "-1");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.apiKeys.position", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseRateLimits()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertFalse(config.rateLimits.enable);
+		
+		props.setProperty("access.rateLimit.enable", "true");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.rateLimits.enable);
+		assertEquals(new RateLimit(CompositeFilterConfiguration.RateLimits.DEFAULT_RATE, 
+		                           CompositeFilterConfiguration.RateLimits.DEFAULT_BURST), 
+		             config.rateLimits.defaultLimit);
+		assertEquals(RateLimitFilter.DEFAULT_MAX_KEYS, config.rateLimits.maxKeys);
+		assertTrue(config.rateLimits.overrides.isEmpty());
+		
+		props.setProperty("access.rateLimit.rate", "0.5");
+		props.setProperty("access.rateLimit.burst", "5");
+		props.setProperty("access.rateLimit.maxKeys", "1000");
+		props.setProperty("access.rateLimit.key.k1", "100 200");
+		props.setProperty("access.rateLimit.key.k2", " 50 ");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(new RateLimit(0.5, 5), config.rateLimits.defaultLimit);
+		assertEquals(1000, config.rateLimits.maxKeys);
+		assertEquals(new RateLimit(100, 200), config.rateLimits.overrides.get(new APIKey("k1")));
+		assertEquals(new RateLimit(50, 5), config.rateLimits.overrides.get(new APIKey("k2")));
+		
+		String[][] invalid = {
+			{"access.rateLimit.rate", "0"},
+			{"access.rateLimit.burst", "0"},
+			{"access.rateLimit.maxKeys", "0"},
+			{"access.rateLimit.key.k3", "fast"},
+			{"access.rateLimit.key.k3", "1 2 3"},
+			{"access.rateLimit.key.k3", "-1"}
+		};
+		
+		for (String[] prop: invalid) {
+			
+			Properties p = (Properties)props.clone();
+			p.setProperty(prop[0], prop[1]);
+			
+			try {
+				new CompositeFilterConfiguration(p);
+				fail(prop[0] + "=" + prop[1]);
+			
+			} catch (PropertyParseException e) {
+				assertEquals(prop[0], e.getPropertyKey());
+			}
+		}
+		
+		// Only validated API keys are limited
+		props.setProperty("access.apiKeys.require", "false");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.rateLimit.enable", e.getPropertyKey());
+		}
+	}
+	
+	
+	public void testParseIPRateLimits()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertFalse(config.ipRateLimits.enable);
+		assertEquals(CompositeFilterConfiguration.IPRateLimits.DEFAULT_LIMIT, config.ipRateLimits.limit);
+		assertEquals(CompositeFilterConfiguration.IPRateLimits.DEFAULT_WINDOW, config.ipRateLimits.window);
+		assertEquals(IPRateLimitFilter.DEFAULT_MAX_ADDRESSES, config.ipRateLimits.maxAddresses);
+		assertEquals(IPRateLimitFilter.DEFAULT_IPV6_PREFIX_LENGTH, config.ipRateLimits.ipv6PrefixLength);
+		
+		props.setProperty("access.ipRateLimit.enable", "true");
+		props.setProperty("access.ipRateLimit.limit", "100");
+		props.setProperty("access.ipRateLimit.window", "10");
+		props.setProperty("access.ipRateLimit.maxAddresses", "1000");
+		props.setProperty("access.ipRateLimit.ipv6PrefixLength", "56");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.ipRateLimits.enable);
+		assertEquals(100, config.ipRateLimits.limit);
+		assertEquals(10, config.ipRateLimits.window);
+		assertEquals(1000, config.ipRateLimits.maxAddresses);
+		assertEquals(56, config.ipRateLimits.ipv6PrefixLength);
+		
+		String[][] invalid = {
+			{"access.ipRateLimit.limit", "0"},
+			{"access.ipRateLimit.window", "-1"},
+			{"access.ipRateLimit.maxAddresses", "0"},
+			{"access.ipRateLimit.ipv6PrefixLength", "0"},
+			{"access.ipRateLimit.ipv6PrefixLength", "129"},
+			{"access.ipRateLimit.limit", "many"}
+		};
+		
+		for (String[] prop: invalid) {
+			
+			Properties p = (Properties)props.clone();
+			p.setProperty(prop[0], prop[1]);
+			
+			try {
+				new CompositeFilterConfiguration(p);
+				fail(prop[0] + "=" + prop[1]);
+			
+			} catch (PropertyParseException e) {
+				assertEquals(prop[0], e.getPropertyKey());
+			}
+		}
+	}
+	
+	
+	public void testParseQuotas()
+		throws Exception {
+		
+		Properties props = getMinimalConfigProperties();
+		
+		CompositeFilterConfiguration config = new CompositeFilterConfiguration(props);
+		
+		assertFalse(config.quotas.enable);
+		
+		props.setProperty("access.quota.enable", "true");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.quota.file", e.getPropertyKey());
+		}
+		
+		props.setProperty("access.quota.file", "/tmp/quota.dat");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertTrue(config.quotas.enable);
+		assertEquals(new File("/tmp/quota.dat"), config.quotas.file);
+		assertEquals(new Quota(Quota.UNLIMITED, Quota.UNLIMITED), config.quotas.defaultQuota);
+		assertEquals(QuotaFilter.DEFAULT_MAX_KEYS, config.quotas.maxKeys);
+		assertTrue(config.quotas.overrides.isEmpty());
+		
+		props.setProperty("access.quota.daily", "100");
+		props.setProperty("access.quota.monthly", "2000");
+		props.setProperty("access.quota.maxKeys", "1000");
+		props.setProperty("access.quota.key.k1", "500 10000");
+		props.setProperty("access.quota.key.k2", " 50 ");
+		
+		config = new CompositeFilterConfiguration(props);
+		
+		assertEquals(new Quota(100, 2000), config.quotas.defaultQuota);
+		assertEquals(1000, config.quotas.maxKeys);
+		assertEquals(new Quota(500, 10000), config.quotas.overrides.get(new APIKey("k1")));
+		assertEquals(new Quota(50, 2000), config.quotas.overrides.get(new APIKey("k2")));
+		
+		String[][] invalid = {
+			{"access.quota.daily", "-1"},
+			{"access.quota.monthly", "-1"},
+			{"access.quota.maxKeys", "0"},
+			{"access.quota.key.k3", "many"},
+			{"access.quota.key.k3", "1 2 3"},
+			{"access.quota.key.k3", "-1"}
+		};
+		
+		for (String[] prop: invalid) {
+			
+			Properties p = (Properties)props.clone();
+			p.setProperty(prop[0], prop[1]);
+			
+			try {
+				new CompositeFilterConfiguration(p);
+				fail(prop[0] + "=" + prop[1]);
+			
+			} catch (PropertyParseException e) {
+				assertEquals(prop[0], e.getPropertyKey());
+			}
+		}
+		
+		// Only validated API keys are counted
+		props.setProperty("access.apiKeys.require", "false");
+		
+		try {
+			new CompositeFilterConfiguration(props);
+			fail();
+		
+		} catch (PropertyParseException e) {
+			assertEquals("access.quota.enable", e.getPropertyKey());
+		}
+	}
 }
@@ -1,10 +1,15 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.*;
 
 import junit.framework.TestCase;
 
+import org.h2.jdbcx.JdbcDataSource;
+
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
 
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
@@ -90,4 +95,358 @@ public class CompositeFilterTest extends TestCase {
 		assertTrue("Access must be denied", result.accessDenied());
 		assertEquals(AccessDeniedError.MISSING_API_KEY, result.getAccessDeniedError());
 	}
+	
+	
+	public void testHostRefreshLifecycle()
+		throws Exception {
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.hosts.allow", "localhost");
+		props.setProperty("access.hosts.refreshInterval", "60");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		HostFilter hostFilter = (HostFilter)filter.getAccessFilters().get(0);
+		assertTrue(hostFilter.isRefreshing());
+		
+		// Re-init stops the previous refresh
+		filter.init(new CompositeFilterConfiguration(props));
+		assertFalse(hostFilter.isRefreshing());
+		
+		HostFilter newHostFilter = (HostFilter)filter.getAccessFilters().get(0);
+		assertTrue(newHostFilter.isRefreshing());
+		
+		filter.shutdown();
+		assertFalse(newHostFilter.isRefreshing());
+	}
+	
+	
+	public void testCRLReloadLifecycle()
+		throws Exception {
+		
+		File file = File.createTempFile("crl", ".pem");
+		file.deleteOnExit();
+		
+		APIKeyFileTest.write(file, CRLRevocationFilterTest.REVOKED_CRL);
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.https.crlFiles", file.getPath());
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		CRLRevocationFilter crlFilter = null;
+		
+		for (AccessFilter f: filter.getAccessFilters()) {
+			
+			if (f instanceof CRLRevocationFilter)
+				crlFilter = (CRLRevocationFilter)f;
+		}
+		
+		assertNotNull(crlFilter);
+		assertEquals(1, crlFilter.getRevokedCount());
+		assertTrue(crlFilter.isReloading());
+		
+		filter.shutdown();
+		assertFalse(crlFilter.isReloading());
+		
+		file.delete();
+	}
+	
+	
+	public void testRateLimit()
+		throws Exception {
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.rateLimit.enable", "true");
+		props.setProperty("access.rateLimit.rate", "0.01");
+		props.setProperty("access.rateLimit.burst", "2");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		assertTrue(filter.getAccessFilters().get(filter.getAccessFilters().size() - 1) instanceof RateLimitFilter);
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		JSONRPC2Request req = new JSONRPC2Request("sso.login", params, 0);
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(req, mctx).accessAllowed());
+		assertTrue(filter.filter(req, mctx).accessAllowed());
+		assertEquals(AccessDeniedError.RATE_LIMIT_EXCEEDED, filter.filter(req, mctx).getAccessDeniedError());
+	}
+	
+	
+	public void testIPRateLimit()
+		throws Exception {
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.ipRateLimit.enable", "true");
+		props.setProperty("access.ipRateLimit.limit", "2");
+		props.setProperty("access.ipRateLimit.window", "3600");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		assertTrue(filter.getAccessFilters().get(1) instanceof IPRateLimitFilter);
+		
+		// Limited before the API key is checked
+		JSONRPC2Request req = new JSONRPC2Request("sso.login", new HashMap<String,Object>(), 0);
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertEquals(AccessDeniedError.MISSING_API_KEY, filter.filter(req, mctx).getAccessDeniedError());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, filter.filter(req, mctx).getAccessDeniedError());
+		assertEquals(AccessDeniedError.RATE_LIMIT_EXCEEDED, filter.filter(req, mctx).getAccessDeniedError());
+	}
+	
+	
+	public void testQuota()
+		throws Exception {
+		
+		File file = File.createTempFile("quota", ".dat");
+		file.delete();
+		file.deleteOnExit();
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.quota.enable", "true");
+		props.setProperty("access.quota.file", file.getPath());
+		props.setProperty("access.quota.daily", "1");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		assertTrue(filter.getAccessFilters().get(filter.getAccessFilters().size() - 1) instanceof QuotaFilter);
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		JSONRPC2Request req = new JSONRPC2Request("sso.login", params, 0);
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(req, mctx).accessAllowed());
+		assertEquals(AccessDeniedError.QUOTA_EXCEEDED, filter.filter(req, mctx).getAccessDeniedError());
+		
+		// Re-initialised, the counter file is shared by the old and 
+		// the new filter and the counts carry over
+		QuotaFilter oldQuotaFilter = (QuotaFilter)filter.getAccessFilters().get(filter.getAccessFilters().size() - 1);
+		
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		assertEquals(AccessDeniedError.QUOTA_EXCEEDED, filter.filter(req, mctx).getAccessDeniedError());
+		
+		// Requests still on the old filter are allowed
+		assertTrue(oldQuotaFilter.filter(req, mctx).accessAllowed());
+		
+		filter.shutdown();
+		file.delete();
+	}
+	
+	
+	public void testInitFileError()
+		throws Exception {
+		
+		File file = File.createTempFile("quota", ".dat");
+		file.deleteOnExit();
+		
+		APIKeyFileTest.write(file, "Not a quota file\n");
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		List<AccessFilter> filters = filter.getAccessFilters();
+		
+		props.setProperty("access.quota.enable", "true");
+		props.setProperty("access.quota.file", file.getPath());
+		
+		try {
+			filter.init(new CompositeFilterConfiguration(props));
+			fail();
+		
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		
+		// Previous chain still in effect
+		assertEquals(filters, filter.getAccessFilters());
+		
+		filter.shutdown();
+		file.delete();
+	}
+	
+	
+	public void testAPIKeyFile()
+		throws Exception {
+		
+		File file = File.createTempFile("api-keys", ".txt");
+		file.deleteOnExit();
+		
+		APIKeyFileTest.write(file, "f70defbe-b881-41f8-8138-bea52b6e1b9c=sso.login\n");
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		
+		for (String name: props.stringPropertyNames()) {
+			
+			if (name.startsWith("access.apiKeys.map."))
+				props.remove(name);
+		}
+		
+		props.setProperty("access.apiKeys.file", file.getPath());
+		props.setProperty("access.apiKeys.watchFile", "false");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), mctx).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(new JSONRPC2Request("sso.logout", params, 0), mctx).getAccessDeniedError());
+		
+		filter.shutdown();
+		file.delete();
+	}
+	
+	
+	public void testAPIKeyIndexFile()
+		throws Exception {
+		
+		File file = File.createTempFile("api-keys", ".idx");
+		file.deleteOnExit();
+		
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe-b881-41f8-8138-bea52b6e1b9c"), Collections.singleton("sso.login"));
+		
+		MappedKeyIndex.write(keyMap, false, file);
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		
+		for (String name: props.stringPropertyNames()) {
+			
+			if (name.startsWith("access.apiKeys.map."))
+				props.remove(name);
+		}
+		
+		props.setProperty("access.apiKeys.indexFile", file.getPath());
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), mctx).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(new JSONRPC2Request("sso.logout", params, 0), mctx).getAccessDeniedError());
+		
+		filter.shutdown();
+		file.delete();
+	}
+	
+	
+	public void testAPIKeyBindings()
+		throws Exception {
+		
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.https.clientCertPrincipal", "");
+		props.setProperty("access.apiKeys.bindDN.f70defbe-b881-41f8-8138-bea52b6e1b9c", "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		CompositeFilter filter = new CompositeFilter();
+		filter.init(new CompositeFilterConfiguration(props));
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		
+		MessageContext bound = new MessageContext("localhost", 
+		                                          "127.0.0.1", 
+		                                          true,
+		                                          "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		MessageContext other = new MessageContext("localhost", 
+		                                          "127.0.0.1", 
+		                                          true,
+		                                          "cn=Jane Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), bound).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_CLIENT_CERT_MISMATCH, 
+		             filter.filter(new JSONRPC2Request("sso.login", params, 0), other).getAccessDeniedError());
+		
+		filter.shutdown();
+	}
+	
+	
+	public void testAPIKeyStore()
+		throws Exception {
+		
+		APIKeyStore store = new APIKeyStore() {
+			
+			public Set<String> getMethods(final String key) {
+				
+				return key.equals("stored-key") ? Collections.singleton("sso.*") : null;
+			}
+		};
+		
+		CompositeFilter filter = new CompositeFilter();
+		
+		// Bindings and hashing not supported by the store
+		Properties props = CompositeFilterConfigurationTest.getAllConfigPropertiesSet();
+		props.setProperty("access.apiKeys.bindDN.f70defbe-b881-41f8-8138-bea52b6e1b9c", "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		try {
+			filter.init(new CompositeFilterConfiguration(props), store);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+		
+		try {
+			filter.init(new CompositeFilterConfiguration(CompositeFilterConfigurationTest.getAllConfigPropertiesSet()), 
+			            new JDBCAPIKeyStore(new JdbcDataSource(), "SELECT methods FROM api_keys WHERE api_key = ?", true));
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+		
+		filter.init(new CompositeFilterConfiguration(CompositeFilterConfigurationTest.getAllConfigPropertiesSet()), store);
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("api_key", "stored-key");
+		MessageContext mctx = new MessageContext("localhost", 
+		                                         "127.0.0.1", 
+		                                         true,
+		                                         "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("sso.login", params, 0), mctx).accessAllowed());
+		
+		// The configured map is not used
+		params.put("api_key", "f70defbe-b881-41f8-8138-bea52b6e1b9c");
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(new JSONRPC2Request("sso.login", params, 0), mctx).getAccessDeniedError());
+		
+		filter.shutdown();
+	}
 }
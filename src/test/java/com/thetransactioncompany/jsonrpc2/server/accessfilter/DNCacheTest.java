@@ -0,0 +1,79 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the parsed principal DN cache.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class DNCacheTest extends TestCase {
+
+
+	public void testGet()
+		throws LDAPException {
+
+		DNCache cache = new DNCache(16);
+
+		DN dn = cache.get("cn=admin,ou=people,dc=wonderland,dc=net");
+
+		assertEquals(new DN("cn=admin,ou=people,dc=wonderland,dc=net"), dn);
+
+		// Cached
+		assertSame(dn, cache.get("cn=admin,ou=people,dc=wonderland,dc=net"));
+
+		// Different name, equal DN
+		assertEquals(dn, cache.get("CN=admin, ou=people,dc=wonderland,dc=net"));
+	}
+
+
+	public void testInvalid() {
+
+		DNCache cache = new DNCache(16);
+
+		assertNull(cache.get("not a DN"));
+		assertNull(cache.get("not a DN"));
+	}
+
+
+	public void testEviction()
+		throws LDAPException {
+
+		DNCache cache = new DNCache(1);
+
+		for (int i=0; i < 100; i++)
+			assertEquals(new DN("cn=user" + i + ",dc=net"), cache.get("cn=user" + i + ",dc=net"));
+	}
+
+
+	public void testDisabled()
+		throws LDAPException {
+
+		DNCache cache = new DNCache(0);
+
+		DN dn = cache.get("cn=admin,dc=net");
+
+		assertEquals(new DN("cn=admin,dc=net"), dn);
+		assertNotSame(dn, cache.get("cn=admin,dc=net"));
+		assertNull(cache.get("not a DN"));
+	}
+
+
+	public void testNegativeCapacity() {
+
+		try {
+			new DNCache(-1);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+}
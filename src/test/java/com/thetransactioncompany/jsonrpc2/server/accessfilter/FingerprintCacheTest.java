@@ -0,0 +1,64 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.security.cert.X509Certificate;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the certificate fingerprint cache.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class FingerprintCacheTest extends TestCase {
+
+
+	public void testCachedByInstance()
+		throws Exception {
+
+		FingerprintCache cache = new FingerprintCache(16);
+
+		X509Certificate cert = X509CertPinningFilterTest.parseCertificate(X509CertPinningFilterTest.CERT_1);
+
+		String fingerprint = cache.get(cert);
+
+		assertEquals(X509CertPinningFilter.parseFingerprint(X509CertPinningFilterTest.CERT_1_FINGERPRINT), fingerprint);
+
+		// Not hashed again
+		assertSame(fingerprint, cache.get(cert));
+
+		// An equal certificate is another instance, hashed again
+		X509Certificate copy = X509CertPinningFilterTest.parseCertificate(X509CertPinningFilterTest.CERT_1);
+
+		assertEquals(fingerprint, cache.get(copy));
+	}
+
+
+	public void testDisabled()
+		throws Exception {
+
+		FingerprintCache cache = new FingerprintCache(0);
+
+		X509Certificate cert = X509CertPinningFilterTest.parseCertificate(X509CertPinningFilterTest.CERT_1);
+
+		String fingerprint = cache.get(cert);
+
+		assertEquals(X509CertPinningFilter.parseFingerprint(X509CertPinningFilterTest.CERT_1_FINGERPRINT), fingerprint);
+		assertNotSame(fingerprint, cache.get(cert));
+	}
+
+
+	public void testNegativeCapacity() {
+
+		try {
+			new FingerprintCache(-1);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+}
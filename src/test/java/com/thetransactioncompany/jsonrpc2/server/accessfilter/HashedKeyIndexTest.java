@@ -0,0 +1,94 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the hashed API key index.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class HashedKeyIndexTest extends TestCase {
+
+
+	public void testPutGet() {
+
+		HashedKeyIndex index = new HashedKeyIndex(1);
+
+		for (int i=0; i < 1000; i++)
+			index.put(APIKeyDigest.sha256("key-" + i), i % 2 == 0 ? MethodPermissions.ANY : MethodPermissions.NONE);
+
+		assertEquals(1000, index.size());
+
+		for (int i=0; i < 1000; i++)
+			assertSame(i % 2 == 0 ? MethodPermissions.ANY : MethodPermissions.NONE, index.get(APIKeyDigest.sha256("key-" + i)));
+
+		assertNull(index.get(APIKeyDigest.sha256("key-1000")));
+		assertNull(index.get(new byte[3]));
+	}
+
+
+	public void testReplace() {
+
+		HashedKeyIndex index = new HashedKeyIndex(10);
+
+		index.put(APIKeyDigest.sha256("key"), MethodPermissions.NONE);
+		index.put(APIKeyDigest.sha256("key"), MethodPermissions.ANY);
+
+		assertEquals(1, index.size());
+		assertSame(MethodPermissions.ANY, index.get(APIKeyDigest.sha256("key")));
+	}
+
+
+	public void testInvalidDigest() {
+
+		try {
+			new HashedKeyIndex(10).put(new byte[16], MethodPermissions.ANY);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+	
+	
+	public void testRemove() {
+		
+		HashedKeyIndex index = new HashedKeyIndex(1);
+		
+		for (int i=0; i < 1000; i++)
+			index.put(APIKeyDigest.sha256("key-" + i), MethodPermissions.ANY);
+		
+		for (int i=0; i < 1000; i += 2)
+			assertTrue(index.remove(APIKeyDigest.sha256("key-" + i)));
+		
+		assertFalse(index.remove(APIKeyDigest.sha256("key-0")));
+		assertFalse(index.remove(new byte[3]));
+		
+		assertEquals(500, index.size());
+		
+		// Remaining entries stay reachable after the backward shifts
+		for (int i=0; i < 1000; i++)
+			assertEquals(i % 2 == 0 ? null : MethodPermissions.ANY, index.get(APIKeyDigest.sha256("key-" + i)));
+	}
+	
+	
+	public void testCopy() {
+		
+		HashedKeyIndex index = new HashedKeyIndex(10);
+		index.put(APIKeyDigest.sha256("key-1"), MethodPermissions.ANY);
+		
+		HashedKeyIndex copy = new HashedKeyIndex(index);
+		copy.remove(APIKeyDigest.sha256("key-1"));
+		copy.put(APIKeyDigest.sha256("key-2"), MethodPermissions.NONE);
+		
+		assertEquals(1, index.size());
+		assertSame(MethodPermissions.ANY, index.get(APIKeyDigest.sha256("key-1")));
+		assertNull(index.get(APIKeyDigest.sha256("key-2")));
+		
+		assertEquals(1, copy.size());
+		assertNull(copy.get(APIKeyDigest.sha256("key-1")));
+		assertSame(MethodPermissions.NONE, copy.get(APIKeyDigest.sha256("key-2")));
+	}
+}
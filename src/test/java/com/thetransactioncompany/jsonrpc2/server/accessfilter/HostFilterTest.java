@@ -1,8 +1,12 @@
 package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import junit.framework.TestCase;
 
 import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
@@ -56,4 +60,219 @@ public class HostFilterTest extends TestCase {
 		assertEquals(AccessDeniedError.CLIENT_IP_DENIED,
 		             result.getAccessDeniedError());
 	}
+	
+	
+	public void testNoPartialMatch()
+		throws UnknownHostException {
+		
+		HostFilter filter = new HostFilter();
+		filter.init("10.0.0.12 10.0.0.100");
+		
+		assertTrue(filter.isAllowedIP("10.0.0.12"));
+		assertTrue(filter.isAllowedIP("10.0.0.100"));
+		
+		assertFalse(filter.isAllowedIP("10.0.0.1"));
+		assertFalse(filter.isAllowedIP("10.0.0.10"));
+		assertFalse(filter.isAllowedIP("0.0.1"));
+		assertFalse(filter.isAllowedIP(""));
+		assertFalse(filter.isAllowedIP("not-an-ip"));
+	}
+
+	
+	public void testIPv6()
+		throws UnknownHostException {
+		
+		HostFilter filter = new HostFilter();
+		filter.init("2001:db8::1 ::1 192.168.0.1");
+		
+		assertTrue(filter.isAllowedIP("2001:db8::1"));
+		assertTrue(filter.isAllowedIP("2001:0db8:0000:0000:0000:0000:0000:0001"));
+		assertTrue(filter.isAllowedIP("2001:DB8::1"));
+		assertTrue(filter.isAllowedIP("0:0:0:0:0:0:0:1"));
+		assertTrue(filter.isAllowedIP("::1%lo"));
+		assertTrue(filter.isAllowedIP("::ffff:192.168.0.1"));
+		
+		assertFalse(filter.isAllowedIP("2001:db8::2"));
+		assertFalse(filter.isAllowedIP("2001:db8::"));
+		assertFalse(filter.isAllowedIP("::"));
+		
+		JSONRPC2Request req = new JSONRPC2Request("users.list", 0);
+		
+		AccessFilterResult result = filter.filter(req, new MessageContext(null, "2001:db8:0:0::1"));
+		assertTrue(result.accessAllowed());
+		
+		result = filter.filter(req, new MessageContext(null, "2001:db8:0:0::2"));
+		assertTrue(result.accessDenied());
+	}
+	
+	
+	public void testManyHosts()
+		throws UnknownHostException {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for (int i=0; i < 2000; i++)
+			sb.append("10.1." + (i / 256) + "." + (i % 256) + " ");
+		
+		HostFilter filter = new HostFilter();
+		filter.init(sb.toString());
+		
+		for (int i=0; i < 2000; i++)
+			assertTrue(filter.isAllowedIP("10.1." + (i / 256) + "." + (i % 256)));
+		
+		assertFalse(filter.isAllowedIP("10.1.200.1"));
+		assertFalse(filter.isAllowedIP("10.2.0.0"));
+	}
+	
+	
+	public void testAllowAny()
+		throws UnknownHostException {
+		
+		HostFilter filter = new HostFilter();
+		filter.init("*");
+		
+		assertEquals("*", filter.getResolvedAllowedIPs());
+		
+		assertTrue(filter.isAllowedIP("10.0.0.1"));
+		assertTrue(filter.isAllowedIP("2001:db8::1"));
+	}
+	
+	
+	public void testCIDR()
+		throws UnknownHostException {
+		
+		HostFilter filter = new HostFilter();
+		filter.init("10.0.0.0/8 192.168.1.128/25 172.16.5.5/32 2001:db8::/32 127.0.0.1");
+		
+		assertTrue(filter.isAllowedIP("10.0.0.0"));
+		assertTrue(filter.isAllowedIP("10.20.30.40"));
+		assertTrue(filter.isAllowedIP("10.255.255.255"));
+		assertTrue(filter.isAllowedIP("192.168.1.128"));
+		assertTrue(filter.isAllowedIP("192.168.1.255"));
+		assertTrue(filter.isAllowedIP("172.16.5.5"));
+		assertTrue(filter.isAllowedIP("127.0.0.1"));
+		assertTrue(filter.isAllowedIP("2001:db8::1"));
+		assertTrue(filter.isAllowedIP("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+		assertTrue(filter.isAllowedIP("::ffff:10.1.2.3"));
+		
+		assertFalse(filter.isAllowedIP("11.0.0.0"));
+		assertFalse(filter.isAllowedIP("9.255.255.255"));
+		assertFalse(filter.isAllowedIP("192.168.1.127"));
+		assertFalse(filter.isAllowedIP("172.16.5.4"));
+		assertFalse(filter.isAllowedIP("2001:db9::"));
+		assertFalse(filter.isAllowedIP("2001:db7:ffff:ffff:ffff:ffff:ffff:ffff"));
+		
+		assertTrue(filter.getResolvedAllowedIPs().contains("10.0.0.0/8"));
+	}
+
+	
+	public void testInvalidCIDR() {
+		
+		String[] invalid = { "10.0.0.0/33", "10.0.0.0/", "/8", "2001:db8::/129", "10.0.0/8", "10.0.0.0/x" };
+		
+		for (String cidr: invalid) {
+			
+			try {
+				new HostFilter().init(cidr);
+				fail("Expected exception for " + cidr);
+			
+			} catch (UnknownHostException e) {
+				// ok
+			}
+		}
+	}
+	
+	
+	/**
+	 * Host resolver stub with switchable address mappings.
+	 */
+	private static class StubResolver implements HostResolver {
+		
+		final Map<String,String> hosts = new ConcurrentHashMap<String,String>();
+		
+		public InetAddress[] resolve(final String host)
+			throws UnknownHostException {
+			
+			String ip = hosts.get(host);
+			
+			if (ip == null)
+				throw new UnknownHostException(host);
+			
+			return new InetAddress[]{ InetAddress.getByName(ip) };
+		}
+	}
+
+	
+	public void testRefresh()
+		throws UnknownHostException {
+		
+		StubResolver resolver = new StubResolver();
+		resolver.hosts.put("app.example.com", "10.0.0.1");
+		resolver.hosts.put("db.example.com", "10.0.0.2");
+		
+		HostFilter filter = new HostFilter();
+		filter.init("app.example.com db.example.com 192.168.0.1", resolver);
+		
+		assertTrue(filter.isAllowedIP("10.0.0.1"));
+		assertTrue(filter.isAllowedIP("10.0.0.2"));
+		assertTrue(filter.isAllowedIP("192.168.0.1"));
+		
+		// No change
+		assertFalse(filter.refresh());
+		
+		// IP change
+		resolver.hosts.put("app.example.com", "10.0.0.3");
+		
+		assertTrue(filter.refresh());
+		assertFalse(filter.isAllowedIP("10.0.0.1"));
+		assertTrue(filter.isAllowedIP("10.0.0.3"));
+		assertTrue(filter.isAllowedIP("10.0.0.2"));
+		assertTrue(filter.isAllowedIP("192.168.0.1"));
+		
+		// Resolution failure keeps last known IP
+		resolver.hosts.remove("db.example.com");
+		
+		assertFalse(filter.refresh());
+		assertTrue(filter.isAllowedIP("10.0.0.2"));
+	}
+	
+	
+	public void testBackgroundRefresh()
+		throws Exception {
+		
+		StubResolver resolver = new StubResolver();
+		resolver.hosts.put("app.example.com", "10.0.0.1");
+		
+		HostFilter filter = new HostFilter();
+		filter.init("app.example.com", resolver);
+		
+		assertFalse(filter.isRefreshing());
+		
+		filter.startRefresh(10);
+		assertTrue(filter.isRefreshing());
+		
+		resolver.hosts.put("app.example.com", "10.0.0.2");
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		
+		while (! filter.isAllowedIP("10.0.0.2") && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		
+		assertTrue(filter.isAllowedIP("10.0.0.2"));
+		assertFalse(filter.isAllowedIP("10.0.0.1"));
+		
+		filter.stopRefresh();
+		assertFalse(filter.isRefreshing());
+	}
+	
+	
+	public void testRefreshAllowAny()
+		throws UnknownHostException {
+		
+		HostFilter filter = new HostFilter();
+		filter.init("*", new StubResolver());
+		
+		assertFalse(filter.refresh());
+		assertTrue(filter.isAllowedIP("10.0.0.1"));
+	}
 }
@@ -0,0 +1,136 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the concurrent host name resolution.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class HostResolutionTest extends TestCase {
+
+
+	/**
+	 * Resolver stub: "hang.*" names block until released, "bad.*" names
+	 * fail, all other names resolve to 10.0.0.1.
+	 */
+	private static class StubResolver implements HostResolver {
+	
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		public InetAddress[] resolve(final String host)
+			throws UnknownHostException {
+			
+			if (host.startsWith("hang.")) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+			
+			if (host.startsWith("bad."))
+				throw new UnknownHostException(host);
+			
+			return new InetAddress[]{ InetAddress.getByName("10.0.0.1") };
+		}
+	}
+
+
+	public void testResolveAll() {
+	
+		List<String> hosts = new ArrayList<String>();
+		
+		for (int i=0; i < 100; i++)
+			hosts.add("host" + i + ".example.com");
+		
+		HostResolution result = HostResolution.resolve(hosts, new StubResolver(), 8, 5000);
+		
+		assertTrue(result.isComplete());
+		assertEquals(100, result.getResolvedHosts().size());
+		assertTrue(result.getFailedHosts().isEmpty());
+		assertTrue(result.getTimedOutHosts().isEmpty());
+		assertEquals("", result.describeUnresolved());
+	}
+	
+	
+	public void testEmpty() {
+	
+		HostResolution result = HostResolution.resolve(new ArrayList<String>(), new StubResolver(), 8, 5000);
+		
+		assertTrue(result.isComplete());
+		assertTrue(result.getResolvedHosts().isEmpty());
+	}
+	
+	
+	public void testFailuresAndTimeouts() {
+	
+		StubResolver resolver = new StubResolver();
+		
+		List<String> hosts = Arrays.asList("a.example.com", "bad.example.com", "hang.example.com", "b.example.com");
+		
+		long start = System.currentTimeMillis();
+		
+		HostResolution result = HostResolution.resolve(hosts, resolver, 4, 200);
+		
+		assertTrue(System.currentTimeMillis() - start < 3000);
+		
+		resolver.release.countDown();
+		
+		assertFalse(result.isComplete());
+		
+		assertEquals(2, result.getResolvedHosts().size());
+		assertTrue(result.getResolvedHosts().containsKey("a.example.com"));
+		assertTrue(result.getResolvedHosts().containsKey("b.example.com"));
+		
+		assertEquals(1, result.getFailedHosts().size());
+		assertTrue(result.getFailedHosts().containsKey("bad.example.com"));
+		
+		assertEquals(Collections.singleton("hang.example.com"), result.getTimedOutHosts());
+		
+		assertTrue(result.describeUnresolved().contains("bad.example.com"));
+		assertTrue(result.describeUnresolved().contains("hang.example.com"));
+	}
+	
+	
+	public void testHostFilterLenientInit()
+		throws UnknownHostException {
+	
+		StubResolver resolver = new StubResolver();
+		
+		HostFilter filter = new HostFilter();
+		
+		HostResolution result = filter.init("a.example.com bad.example.com 192.168.0.1", resolver, 4, 1000);
+		
+		assertFalse(result.isComplete());
+		assertSame(result, filter.getHostResolution());
+		
+		assertTrue(filter.isAllowedIP("10.0.0.1"));
+		assertTrue(filter.isAllowedIP("192.168.0.1"));
+	}
+	
+	
+	public void testHostFilterStrictInit() {
+	
+		HostFilter filter = new HostFilter();
+		
+		try {
+			filter.init("a.example.com bad.example.com bad.example.org", new StubResolver());
+			fail();
+			
+		} catch (UnknownHostException e) {
+		
+			assertTrue(e.getMessage().contains("bad.example.com"));
+			assertTrue(e.getMessage().contains("bad.example.org"));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the IP address parser.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class IPAddressParserTest extends TestCase {
+
+
+	public void testIPv4() {
+	
+		long[] out = new long[2];
+		
+		assertEquals(IPAddressParser.IPV4, IPAddressParser.parse("192.168.0.1", out));
+		assertEquals(0xc0a80001L, out[0]);
+		
+		assertEquals(IPAddressParser.IPV4, IPAddressParser.parse("0.0.0.0", out));
+		assertEquals(0L, out[0]);
+		
+		assertEquals(IPAddressParser.IPV4, IPAddressParser.parse("255.255.255.255", out));
+		assertEquals(0xffffffffL, out[0]);
+	}
+	
+	
+	public void testInvalidIPv4() {
+	
+		long[] out = new long[2];
+		
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse(null, out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3.4.5", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3.4.", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1..3.4", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("256.0.0.1", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3.a", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3.1000", out));
+	}
+	
+	
+	public void testIPv6() {
+	
+		long[] out = new long[2];
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("2001:db8::1", out));
+		assertEquals(0x20010db800000000L, out[0]);
+		assertEquals(1L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("1:2:3:4:5:6:7:8", out));
+		assertEquals(0x0001000200030004L, out[0]);
+		assertEquals(0x0005000600070008L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("::", out));
+		assertEquals(0L, out[0]);
+		assertEquals(0L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("fe80::", out));
+		assertEquals(0xfe80000000000000L, out[0]);
+		assertEquals(0L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("1:2:3:4:5:6:7::", out));
+		assertEquals(0x0005000600070000L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("::2:3:4:5:6:7:8", out));
+		assertEquals(0x0000000200030004L, out[0]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("[fe80::1%eth0]", out));
+		assertEquals(0xfe80000000000000L, out[0]);
+		assertEquals(1L, out[1]);
+		
+		assertEquals(IPAddressParser.IPV6, IPAddressParser.parse("64:ff9b::192.0.2.33", out));
+		assertEquals(0x0064ff9b00000000L, out[0]);
+		assertEquals(0xc0000221L, out[1]);
+	}
+	
+	
+	public void testIPv4MappedIPv6() {
+	
+		long[] out = new long[2];
+		
+		assertEquals(IPAddressParser.IPV4, IPAddressParser.parse("::ffff:192.168.0.1", out));
+		assertEquals(0xc0a80001L, out[0]);
+		
+		assertEquals(IPAddressParser.IPV4, IPAddressParser.parse("::ffff:c0a8:1", out));
+		assertEquals(0xc0a80001L, out[0]);
+	}
+	
+	
+	public void testInvalidIPv6() {
+	
+		long[] out = new long[2];
+		
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse(":", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse(":::", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1::2::3", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1:2:3:4:5:6:7", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1:2:3:4:5:6:7:8:9", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1:2:3:4:5:6:7:8::", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1:2:3:4:5:6:7:", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse(":1:2:3:4:5:6:7", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("12345::1", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("g::1", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1::2.3.4", out));
+		assertEquals(IPAddressParser.INVALID, IPAddressParser.parse("1.2.3.4::1", out));
+	}
+}
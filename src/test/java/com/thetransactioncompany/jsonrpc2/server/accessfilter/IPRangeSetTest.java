@@ -0,0 +1,107 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the IP range set.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class IPRangeSetTest extends TestCase {
+
+
+	public void testEmpty() {
+	
+		IPRangeSet set = new IPRangeSet.Builder().build();
+		
+		assertTrue(set.isEmpty());
+		assertFalse(set.containsIPv4(0L));
+		assertFalse(set.containsIPv6(0L, 0L));
+	}
+	
+	
+	public void testMergeIPv4() {
+	
+		IPRangeSet set = new IPRangeSet.Builder()
+			.addIPv4(0x0a000000L, 8)      // 10.0.0.0/8
+			.addIPv4(0x0a010000L, 16)     // 10.1.0.0/16, contained
+			.addIPv4(0x0b000000L, 8)      // 11.0.0.0/8, adjacent
+			.addIPv4(0xc0a80000L, 24)     // 192.168.0.0/24
+			.build();
+		
+		assertFalse(set.isEmpty());
+		
+		assertFalse(set.containsIPv4(0x09ffffffL));
+		assertTrue(set.containsIPv4(0x0a000000L));
+		assertTrue(set.containsIPv4(0x0affffffL));
+		assertTrue(set.containsIPv4(0x0b000000L));
+		assertTrue(set.containsIPv4(0x0bffffffL));
+		assertFalse(set.containsIPv4(0x0c000000L));
+		assertTrue(set.containsIPv4(0xc0a800ffL));
+		assertFalse(set.containsIPv4(0xc0a80100L));
+	}
+	
+	
+	public void testFullRanges() {
+	
+		IPRangeSet set = new IPRangeSet.Builder()
+			.addIPv4(0x01020304L, 0)
+			.addIPv6(0x20010db800000000L, 0L, 0)
+			.build();
+		
+		assertTrue(set.containsIPv4(0L));
+		assertTrue(set.containsIPv4(0xffffffffL));
+		assertTrue(set.containsIPv6(0L, 0L));
+		assertTrue(set.containsIPv6(-1L, -1L));
+	}
+	
+	
+	public void testIPv6HighAddresses() {
+	
+		IPRangeSet set = new IPRangeSet.Builder()
+			.addIPv6(0xfe80000000000000L, 0L, 10)     // fe80::/10
+			.addIPv6(0x20010db800000000L, 0L, 64)     // 2001:db8::/64
+			.addIPv6(0x20010db800000001L, 0x8000000000000000L, 65)
+			.build();
+		
+		assertTrue(set.containsIPv6(0xfe80000000000000L, 1L));
+		assertTrue(set.containsIPv6(0xfebfffffffffffffL, -1L));
+		assertFalse(set.containsIPv6(0xfec0000000000000L, 0L));
+		
+		assertTrue(set.containsIPv6(0x20010db800000000L, -1L));
+		assertFalse(set.containsIPv6(0x20010db800000001L, 0L));
+		assertTrue(set.containsIPv6(0x20010db800000001L, 0x8000000000000000L));
+		assertTrue(set.containsIPv6(0x20010db800000001L, -1L));
+		assertFalse(set.containsIPv6(0x20010db800000002L, 0L));
+	}
+	
+	
+	public void testManyRanges() {
+	
+		IPRangeSet.Builder builder = new IPRangeSet.Builder();
+		
+		// 10.x.y.0/24 for every even y
+		for (int x=0; x < 200; x++) {
+			for (int y=0; y < 256; y += 2)
+				builder.addIPv4(0x0a000000L | (x << 16) | (y << 8), 24);
+		}
+		
+		IPRangeSet set = builder.build();
+		
+		Random rand = new Random(42);
+		
+		for (int i=0; i < 10000; i++) {
+		
+			int x = rand.nextInt(256);
+			int y = rand.nextInt(256);
+			long addr = 0x0a000000L | (x << 16) | (y << 8) | rand.nextInt(256);
+			
+			assertEquals(x < 200 && y % 2 == 0, set.containsIPv4(addr));
+		}
+	}
+}
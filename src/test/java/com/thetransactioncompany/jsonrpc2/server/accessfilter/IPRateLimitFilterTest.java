@@ -0,0 +1,156 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the client IP address rate limit filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class IPRateLimitFilterTest extends TestCase {
+
+
+	/**
+	 * IP rate limit filter with a manual clock.
+	 */
+	private static class ClockedIPRateLimitFilter extends IPRateLimitFilter {
+
+
+		long now = 0;
+
+
+		long currentTimeMillis() {
+
+			return now;
+		}
+	}
+
+
+	private static final JSONRPC2Request REQUEST = new JSONRPC2Request("ws.getName", 0);
+
+
+	public void testInit() {
+
+		IPRateLimitFilter filter = new IPRateLimitFilter();
+		filter.init(100, 60000L);
+
+		assertEquals(100, filter.getLimit());
+		assertEquals(60000L, filter.getWindowMillis());
+		assertEquals(IPRateLimitFilter.DEFAULT_MAX_ADDRESSES, filter.getCapacity());
+
+		try {
+			filter.init(0, 60000L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testLimit() {
+
+		ClockedIPRateLimitFilter filter = new ClockedIPRateLimitFilter();
+		filter.init(2, 10000L, 100);
+
+		MessageContext ctx = new MessageContext("localhost", "192.168.0.1");
+
+		assertTrue(filter.filter(REQUEST, ctx).accessAllowed());
+		assertTrue(filter.filter(REQUEST, ctx).accessAllowed());
+
+		AccessFilterResult result = filter.filter(REQUEST, ctx);
+
+		assertEquals(AccessDeniedError.RATE_LIMIT_EXCEEDED, result.getAccessDeniedError());
+
+		// Next window at 10 s, then half of the previous count
+		assertEquals(Collections.singletonMap(RateLimitFilter.RETRY_AFTER, 15L), result.getErrorData());
+
+		// Other addresses are counted apart
+		assertTrue(filter.check(new MessageContext("localhost", "192.168.0.2")).accessAllowed());
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::1")).accessAllowed());
+
+		filter.now = 15000L;
+		assertTrue(filter.filter(REQUEST, ctx).accessAllowed());
+		assertFalse(filter.filter(REQUEST, ctx).accessAllowed());
+	}
+
+
+	public void testIPv6Notations() {
+
+		ClockedIPRateLimitFilter filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100);
+
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::1")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "2001:DB8:0:0:0:0:0:1")).accessAllowed());
+
+		assertTrue(filter.check(new MessageContext("localhost", "10.0.0.1")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "::ffff:10.0.0.1")).accessAllowed());
+	}
+
+
+	public void testIPv6Prefix() {
+
+		ClockedIPRateLimitFilter filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100);
+
+		assertEquals(IPRateLimitFilter.DEFAULT_IPV6_PREFIX_LENGTH, filter.getIPv6PrefixLength());
+
+		// Same /64, counted together
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8:0:1::1")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "2001:db8:0:1:abcd::2")).accessAllowed());
+
+		// Other /64
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8:0:2::1")).accessAllowed());
+
+		filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100, 48);
+
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8:0:1::1")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "2001:db8:0:2::1")).accessAllowed());
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8:1::1")).accessAllowed());
+
+		filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100, 128);
+
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::1")).accessAllowed());
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::2")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "2001:db8::1")).accessAllowed());
+
+		filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100, 120);
+
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::1")).accessAllowed());
+		assertFalse(filter.check(new MessageContext("localhost", "2001:db8::ff")).accessAllowed());
+		assertTrue(filter.check(new MessageContext("localhost", "2001:db8::100")).accessAllowed());
+
+		for (int length: new int[]{0, 129}) {
+
+			try {
+				filter.init(1, 10000L, 100, length);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testMissingOrInvalidAddressNotLimited() {
+
+		ClockedIPRateLimitFilter filter = new ClockedIPRateLimitFilter();
+		filter.init(1, 10000L, 100);
+
+		for (int i=0; i < 10; i++) {
+			assertTrue(filter.check(new MessageContext()).accessAllowed());
+			assertTrue(filter.check(new MessageContext("localhost", "not-an-ip")).accessAllowed());
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the JDBC API key store against an embedded H2 database.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class JDBCAPIKeyStoreTest extends TestCase {
+
+
+	private static final String QUERY = "SELECT methods FROM api_keys WHERE api_key = ?";
+
+
+	private DataSource dataSource;
+
+
+	private void execute(final String sql, final String ... params)
+		throws SQLException {
+
+		Connection con = dataSource.getConnection();
+
+		try {
+			PreparedStatement stmt = con.prepareStatement(sql);
+
+			try {
+				for (int i=0; i < params.length; i++)
+					stmt.setString(i + 1, params[i]);
+
+				stmt.executeUpdate();
+
+			} finally {
+				stmt.close();
+			}
+
+		} finally {
+			con.close();
+		}
+	}
+
+
+	public void setUp()
+		throws SQLException {
+
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:" + getName() + ";DB_CLOSE_DELAY=-1");
+		dataSource = ds;
+
+		execute("CREATE TABLE api_keys (api_key VARCHAR(64) PRIMARY KEY, methods VARCHAR(4096))");
+		execute("INSERT INTO api_keys VALUES (?, ?)", "k1", "sso.login  sso.logout");
+		execute("INSERT INTO api_keys VALUES (?, ?)", "k2", "billing.*");
+		execute("INSERT INTO api_keys VALUES (?, ?)", new APIKey("k3").getSHA256Digest(), "*");
+	}
+
+
+	public void tearDown()
+		throws SQLException {
+
+		execute("DROP TABLE api_keys");
+	}
+
+
+	public void testGetMethods()
+		throws APIKeyStoreException {
+
+		JDBCAPIKeyStore store = new JDBCAPIKeyStore(dataSource, QUERY, false);
+
+		assertEquals(QUERY, store.getQuery());
+		assertFalse(store.hasHashedKeys());
+
+		Set<String> methods = store.getMethods("k1");
+
+		assertEquals(2, methods.size());
+		assertTrue(methods.contains("sso.login"));
+		assertTrue(methods.contains("sso.logout"));
+
+		assertTrue(store.getMethods("k2").contains("billing.*"));
+
+		assertNull(store.getMethods("no-such-key"));
+		assertNull(store.getMethods("k3"));
+	}
+
+
+	public void testHashedKeys()
+		throws APIKeyStoreException {
+
+		JDBCAPIKeyStore store = new JDBCAPIKeyStore(dataSource, QUERY, true);
+
+		assertTrue(store.getMethods("k3").contains("*"));
+		assertNull(store.getMethods("k1"));
+	}
+
+
+	public void testQueryTimeout()
+		throws APIKeyStoreException {
+
+		assertEquals(JDBCAPIKeyStore.DEFAULT_QUERY_TIMEOUT, new JDBCAPIKeyStore(dataSource, QUERY, false).getQueryTimeout());
+
+		JDBCAPIKeyStore store = new JDBCAPIKeyStore(dataSource, QUERY, false, 1);
+
+		assertEquals(1, store.getQueryTimeout());
+		assertTrue(store.getMethods("k1").contains("sso.login"));
+
+		try {
+			new JDBCAPIKeyStore(dataSource, QUERY, false, -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testQueryFailure() {
+
+		JDBCAPIKeyStore store = new JDBCAPIKeyStore(dataSource, "SELECT methods FROM no_such_table WHERE api_key = ?", false);
+
+		try {
+			store.getMethods("k1");
+			fail();
+		} catch (APIKeyStoreException e) {
+			assertTrue(e.getCause() instanceof SQLException);
+		}
+	}
+
+
+	public void testFilter() {
+
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(new JDBCAPIKeyStore(dataSource, QUERY, false),
+		            new HashSet<String>(),
+		            new NamedParamAPIKeyExtractor("apiKey"),
+		            100,
+		            60000L,
+		            5000L);
+
+		Map<String,Object> params = new HashMap<String,Object>();
+		params.put("apiKey", "k2");
+
+		assertTrue(filter.filter(new JSONRPC2Request("billing.charge", params, 0), new MessageContext()).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED,
+		             filter.filter(new JSONRPC2Request("sso.login", params, 0), new MessageContext()).getAccessDeniedError());
+	}
+}
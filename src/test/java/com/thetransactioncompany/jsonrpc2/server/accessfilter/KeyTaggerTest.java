@@ -0,0 +1,72 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the API key tagger.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class KeyTaggerTest extends TestCase {
+
+
+	// Reference key 00 01 02 ... 0f
+	private static final long K0 = 0x0706050403020100L;
+	private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+
+	private static byte[] message(final int length) {
+
+		byte[] msg = new byte[length];
+
+		for (int i=0; i < length; i++)
+			msg[i] = (byte)i;
+
+		return msg;
+	}
+
+
+	private static void assertTag(final long h0, final long h1, final KeyTagger.Tag tag) {
+
+		assertEquals(h0, tag.h0);
+		assertEquals(h1, tag.h1);
+	}
+
+
+	public void testSipHash128Vectors() {
+
+		// SipHash-2-4 128-bit reference vectors, as little-endian words
+		assertTag(0xe6a825ba047f81a3L, 0x930255c71472f66dL, KeyTagger.sipHash128(K0, K1, message(0)));
+		assertTag(0x4ea967520cb6709cL, 0x51ed8529b0b6335fL, KeyTagger.sipHash128(K0, K1, message(3)));
+		assertTag(0x61f55862baa9623bL, 0xb49714f364e2830fL, KeyTagger.sipHash128(K0, K1, message(8)));
+		assertTag(0x11a8b03399e99354L, 0xd9c3cf970fec087eL, KeyTagger.sipHash128(K0, K1, message(15)));
+		assertTag(0xbb54b067caa4e26eL, 0x77052385bf1533fdL, KeyTagger.sipHash128(K0, K1, message(16)));
+		assertTag(0x4a83502f77d15051L, 0x7cbd3f979a063e50L, KeyTagger.sipHash128(K0, K1, message(63)));
+	}
+
+
+	public void testTagEquals() {
+
+		KeyTagger.Tag tag = new KeyTagger.Tag(1L, 2L);
+
+		assertTrue(tag.equals(new KeyTagger.Tag(1L, 2L)));
+		assertEquals(tag.hashCode(), new KeyTagger.Tag(1L, 2L).hashCode());
+		assertFalse(tag.equals(new KeyTagger.Tag(1L, 3L)));
+		assertFalse(tag.equals(new KeyTagger.Tag(0L, 2L)));
+		assertFalse(tag.equals(null));
+		assertFalse(tag.equals("1"));
+	}
+
+
+	public void testRandomSecretPerInstance() {
+
+		KeyTagger a = new KeyTagger();
+		KeyTagger b = new KeyTagger();
+
+		assertEquals(a.tag("secret"), a.tag("secret"));
+		assertFalse(a.tag("secret").equals(b.tag("secret")));
+	}
+}
@@ -0,0 +1,317 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the memory-mapped API key index.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class MappedKeyIndexTest extends TestCase {
+
+
+	private File file;
+
+
+	public void setUp()
+		throws IOException {
+
+		file = File.createTempFile("api-keys", ".idx");
+		file.deleteOnExit();
+	}
+
+
+	public void tearDown() {
+
+		file.delete();
+	}
+
+
+	private static Set<String> methods(final String ... names) {
+
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+
+	public void testWriteAndOpen()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe"), methods("sso.login", "sso.logout"));
+		keyMap.put(new APIKey("08d1e641"), methods("sso.login", "sso.logout"));
+		keyMap.put(new APIKey("2b0e8f5c"), methods("billing.*", "*.get"));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(3, index.size());
+
+		// Equal method sets are stored once
+		assertEquals(2, index.getMethodSetCount());
+
+		assertEquals(methods("sso.login", "sso.logout"), index.getMethods("f70defbe"));
+		assertEquals(methods("sso.login", "sso.logout"), index.getMethods("08d1e641"));
+		assertEquals(methods("billing.*", "*.get"), index.getMethods("2b0e8f5c"));
+
+		assertEquals(index.lookup("f70defbe"), index.lookup("08d1e641"));
+		assertSame(index.getMethods("f70defbe"), index.getMethods("08d1e641"));
+
+		assertEquals(-1, index.lookup("unknown"));
+		assertNull(index.getMethods("unknown"));
+		assertNull(index.getMethods(""));
+	}
+
+
+	public void testWriteHashed()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey(new APIKey("f70defbe").getSHA256Digest()), methods("sso.login"));
+
+		MappedKeyIndex.write(keyMap, true, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(methods("sso.login"), index.getMethods("f70defbe"));
+		assertNull(index.getMethods(new APIKey("f70defbe").getSHA256Digest()));
+	}
+
+
+	public void testWriteInvalidDigest()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe"), methods("sso.login"));
+
+		try {
+			MappedKeyIndex.write(keyMap, true, file);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+
+
+	public void testEmpty()
+		throws IOException {
+
+		MappedKeyIndex.write(new HashMap<APIKey,Set<String>>(), false, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(0, index.size());
+		assertEquals(0, index.getMethodSetCount());
+		assertNull(index.getMethods("f70defbe"));
+	}
+
+
+	public void testManyKeys()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+
+		for (int i=0; i < 10000; i++)
+			keyMap.put(new APIKey("key-" + i), methods("method." + (i % 10)));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(10000, index.size());
+		assertEquals(10, index.getMethodSetCount());
+
+		for (int i=0; i < 10000; i++)
+			assertEquals(methods("method." + (i % 10)), index.getMethods("key-" + i));
+
+		for (int i=0; i < 10000; i++)
+			assertNull(index.getMethods("other-" + i));
+	}
+
+
+	public void testRewrite()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+
+		for (int i=0; i < 1000; i++)
+			keyMap.put(new APIKey("key-" + i), methods("sso.login"));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		MappedKeyIndex oldIndex = MappedKeyIndex.open(file);
+
+		keyMap.clear();
+		keyMap.put(new APIKey("other"), methods("sso.logout"));
+
+		// A smaller index replaces the file
+		MappedKeyIndex.write(keyMap, false, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(1, index.size());
+		assertNull(index.getMethods("key-1"));
+		assertEquals(methods("sso.logout"), index.getMethods("other"));
+
+		// The open index still maps the replaced file
+		for (int i=0; i < 1000; i++)
+			assertEquals(methods("sso.login"), oldIndex.getMethods("key-" + i));
+
+		// No temporary files left
+		File[] tmpFiles = file.getAbsoluteFile().getParentFile().listFiles();
+
+		for (File f: tmpFiles)
+			assertFalse(f.getName().startsWith("." + file.getName() + "."));
+	}
+
+
+	public void testLookupWithoutEmptySlot()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe"), methods("sso.login"));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		// Corrupt, with all Bloom filter bits set and all slots in use
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(12);
+		final int slots = raf.readInt();
+		final int bloomWords = raf.readInt();
+		raf.seek(MappedKeyIndex.HEADER_SIZE);
+
+		for (int i=0; i < bloomWords; i++)
+			raf.writeLong(-1L);
+
+		for (int i=0; i < slots; i++) {
+			raf.seek(MappedKeyIndex.HEADER_SIZE + bloomWords * 8L + i * (long)MappedKeyIndex.SLOT_SIZE + 16);
+			raf.writeInt(1);
+		}
+
+		raf.close();
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		assertEquals(methods("sso.login"), index.getMethods("f70defbe"));
+		assertNull(index.getMethods("08d1e641"));
+	}
+
+
+	public void testLookupInvalidMethodSetID()
+		throws IOException {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe"), methods("sso.login"));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		for (int id: new int[]{2, -3}) {
+
+			// Corrupt, with all slots pointing to a missing method set
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(12);
+			final int slots = raf.readInt();
+			final int bloomWords = raf.readInt();
+
+			for (int i=0; i < slots; i++) {
+				raf.seek(MappedKeyIndex.HEADER_SIZE + bloomWords * 8L + i * (long)MappedKeyIndex.SLOT_SIZE + 16);
+				raf.writeInt(id);
+			}
+
+			raf.close();
+
+			MappedKeyIndex index = MappedKeyIndex.open(file);
+
+			assertEquals(-1, index.lookup("f70defbe"));
+			assertNull(index.getMethods("f70defbe"));
+
+			APIKeyFilter filter = new APIKeyFilter();
+			filter.init(index, methods("ws.getName"), new NamedParamAPIKeyExtractor("apiKey"));
+
+			assertEquals(AccessDeniedError.API_KEY_DENIED,
+			             APIKeyFilterTest.call(filter, "sso.login", "f70defbe").getAccessDeniedError());
+		}
+	}
+
+
+	public void testOpenInvalidFile()
+		throws IOException {
+
+		APIKeyFileTest.write(file, "f70defbe=sso.login\n");
+
+		try {
+			MappedKeyIndex.open(file);
+			fail();
+
+		} catch (IOException e) {
+
+			assertTrue(e.getMessage().startsWith("Not a key index file"));
+		}
+	}
+
+
+	public void testOpenMissingFile() {
+
+		file.delete();
+
+		try {
+			MappedKeyIndex.open(file);
+			fail();
+
+		} catch (IOException e) {
+
+			// ok
+		}
+	}
+
+
+	public void testFilter()
+		throws Exception {
+
+		Map<APIKey,Set<String>> keyMap = new HashMap<APIKey,Set<String>>();
+		keyMap.put(new APIKey("f70defbe"), methods("sso.login", "billing.*"));
+
+		MappedKeyIndex.write(keyMap, false, file);
+
+		MappedKeyIndex index = MappedKeyIndex.open(file);
+
+		APIKeyFilter filter = new APIKeyFilter();
+		filter.init(index, methods("ws.getName"), new NamedParamAPIKeyExtractor("apiKey"));
+
+		assertSame(index, filter.getMappedKeyIndex());
+		assertNull(filter.getAPIKeyStore());
+		assertTrue(filter.getAPIKeyMap().isEmpty());
+
+		assertTrue(APIKeyFilterTest.call(filter, "sso.login", "f70defbe").accessAllowed());
+		assertTrue(APIKeyFilterTest.call(filter, "billing.charge", "f70defbe").accessAllowed());
+		assertTrue(APIKeyFilterTest.call(filter, "ws.getName", null).accessAllowed());
+
+		assertEquals(AccessDeniedError.API_KEY_DENIED,
+		             APIKeyFilterTest.call(filter, "sso.logout", "f70defbe").getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_DENIED,
+		             APIKeyFilterTest.call(filter, "sso.login", "unknown").getAccessDeniedError());
+
+		try {
+			filter.update(keyMap);
+			fail();
+
+		} catch (IllegalStateException e) {
+
+			// ok
+		}
+	}
+}
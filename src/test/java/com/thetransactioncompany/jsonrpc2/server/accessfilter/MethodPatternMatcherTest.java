@@ -0,0 +1,121 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the method pattern matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class MethodPatternMatcherTest extends TestCase {
+
+
+	public void testIsPattern() {
+
+		assertTrue(MethodPatternMatcher.isPattern("*"));
+		assertTrue(MethodPatternMatcher.isPattern("billing.*"));
+		assertTrue(MethodPatternMatcher.isPattern("sso.log??t"));
+		assertFalse(MethodPatternMatcher.isPattern("sso.login"));
+	}
+
+
+	public void testPrefixPattern() {
+
+		MethodPatternMatcher m = MethodPatternMatcher.compile(Arrays.asList("billing.*"));
+
+		assertTrue(m.matches("billing."));
+		assertTrue(m.matches("billing.invoice"));
+		assertTrue(m.matches("billing.invoice.get"));
+		assertFalse(m.matches("billing"));
+		assertFalse(m.matches("billingX"));
+		assertFalse(m.matches("sso.billing.get"));
+		assertFalse(m.matches(""));
+		assertFalse(m.matches(null));
+	}
+
+
+	public void testSuffixPattern() {
+
+		MethodPatternMatcher m = MethodPatternMatcher.compile(Arrays.asList("*.get"));
+
+		assertTrue(m.matches(".get"));
+		assertTrue(m.matches("billing.invoice.get"));
+		assertTrue(m.matches("a.get.get"));
+		assertFalse(m.matches("billing.invoice.getAll"));
+		assertFalse(m.matches("get"));
+	}
+
+
+	public void testQuestionMark() {
+
+		MethodPatternMatcher m = MethodPatternMatcher.compile(Arrays.asList("sso.log??t"));
+
+		assertTrue(m.matches("sso.logout"));
+		assertTrue(m.matches("sso.logXYt"));
+		assertFalse(m.matches("sso.logt"));
+		assertFalse(m.matches("sso.logouts"));
+	}
+
+
+	public void testMultiplePatterns() {
+
+		MethodPatternMatcher m = MethodPatternMatcher.compile(Arrays.asList("billing.*", "*.get", "sso.*.list*", "ws.*"));
+
+		assertTrue(m.matches("billing.invoice.create"));
+		assertTrue(m.matches("users.get"));
+		assertTrue(m.matches("sso.users.listAll"));
+		assertTrue(m.matches("sso.sessions.list"));
+		assertTrue(m.matches("ws.getTime"));
+		assertFalse(m.matches("sso.users.count"));
+		assertFalse(m.matches("users.set"));
+	}
+
+
+	public void testNonASCII() {
+
+		MethodPatternMatcher m = MethodPatternMatcher.compile(Arrays.asList("m\u00e9thode.*", "*.\u00fc"));
+
+		assertTrue(m.matches("m\u00e9thode.x"));
+		assertTrue(m.matches("a.\u00fc"));
+		assertFalse(m.matches("methode.x"));
+		assertFalse(m.matches("a.\u00fd"));
+	}
+
+
+	public void testEquality() {
+
+		MethodPatternMatcher m1 = MethodPatternMatcher.compile(Arrays.asList("a.*", "*.b"));
+		MethodPatternMatcher m2 = MethodPatternMatcher.compile(Arrays.asList("*.b", "a.*", "a.*"));
+
+		assertEquals(m1, m2);
+		assertEquals(m1.hashCode(), m2.hashCode());
+		assertFalse(m1.equals(MethodPatternMatcher.compile(Arrays.asList("a.*"))));
+	}
+
+
+	public void testTooComplex() {
+
+		try {
+			MethodPatternMatcher.compile(Arrays.asList("*a??????????????"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testEmpty() {
+
+		try {
+			MethodPatternMatcher.compile(new HashSet<String>());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
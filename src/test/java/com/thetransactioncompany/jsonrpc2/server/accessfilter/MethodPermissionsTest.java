@@ -0,0 +1,129 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.unboundid.ldap.sdk.DN;
+
+
+/**
+ * Tests the method permissions bitset.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class MethodPermissionsTest extends TestCase {
+
+
+	public void testCompile() {
+
+		MethodSymbolTable symbols = new MethodSymbolTable(0);
+
+		for (int i=0; i < 100; i++)
+			symbols.intern("method." + i);
+
+		MethodPermissions p = MethodPermissions.compile(Arrays.asList("method.3", "method.70", "sso.login"), symbols, true);
+
+		assertFalse(p.allowsAny());
+		assertTrue(p.allows(symbols.get("method.3")));
+		assertTrue(p.allows(symbols.get("method.70")));
+		assertTrue(p.allows(symbols.get("sso.login")));
+		assertFalse(p.allows(symbols.get("method.4")));
+		assertFalse(p.allows(symbols.get("method.99")));
+		assertFalse(p.allows(MethodSymbolTable.UNKNOWN));
+		assertFalse(p.allows(10000));
+	}
+
+
+	public void testAnyMethod() {
+
+		MethodSymbolTable symbols = new MethodSymbolTable(0);
+
+		MethodPermissions p = MethodPermissions.compile(Arrays.asList("*", "sso.login"), symbols, true);
+
+		assertSame(MethodPermissions.ANY, p);
+		assertTrue(p.allows(MethodSymbolTable.UNKNOWN));
+		assertEquals(0, symbols.size());
+
+		// Literal asterisk
+		p = MethodPermissions.compile(Arrays.asList("*"), symbols, false);
+
+		assertFalse(p.allowsAny());
+		assertTrue(p.allows(symbols.get("*")));
+		assertFalse(p.allows(MethodSymbolTable.UNKNOWN));
+	}
+
+
+	public void testNone() {
+
+		MethodPermissions p = MethodPermissions.compile(new HashSet<String>(), new MethodSymbolTable(0), true);
+
+		assertSame(MethodPermissions.NONE, p);
+		assertFalse(p.allows(0));
+		assertFalse(p.allows(MethodSymbolTable.UNKNOWN));
+	}
+
+
+	public void testEquality() {
+
+		MethodSymbolTable symbols = new MethodSymbolTable(0);
+
+		MethodPermissions p1 = MethodPermissions.compile(Arrays.asList("a", "b"), symbols, true);
+		MethodPermissions p2 = MethodPermissions.compile(Arrays.asList("b", "a"), symbols, true);
+		MethodPermissions p3 = MethodPermissions.compile(Arrays.asList("a"), symbols, true);
+
+		assertEquals(p1, p2);
+		assertEquals(p1.hashCode(), p2.hashCode());
+		assertFalse(p1.equals(p3));
+	}
+	
+	
+	public void testBind()
+		throws Exception {
+		
+		MethodPermissions p = MethodPermissions.compile(Arrays.asList("a", "b*"), new MethodSymbolTable(0), true);
+		
+		assertNull(p.getBinding());
+		
+		APIKeyBinding binding = new APIKeyBinding(Collections.singleton(new DN("cn=a,o=Acme")), Collections.<String>emptySet());
+		
+		MethodPermissions bound = p.bind(binding);
+		
+		assertSame(binding, bound.getBinding());
+		assertNull(p.getBinding());
+		
+		// Same methods
+		assertTrue(bound.allows(0, "a"));
+		assertTrue(bound.allows(MethodSymbolTable.UNKNOWN, "bc"));
+		assertFalse(bound.allows(MethodSymbolTable.UNKNOWN, "c"));
+		
+		assertFalse(p.equals(bound));
+		assertEquals(bound, p.bind(binding));
+	}
+	
+	
+	public void testCompileWithoutSymbols() {
+		
+		MethodPermissions p = MethodPermissions.compile(Arrays.asList("sso.login", "billing.*"), null, true);
+		
+		assertTrue(p.allows(MethodSymbolTable.UNKNOWN, "sso.login"));
+		assertTrue(p.allows(MethodSymbolTable.UNKNOWN, "billing.charge"));
+		assertFalse(p.allows(MethodSymbolTable.UNKNOWN, "sso.logout"));
+		assertFalse(p.allows(MethodSymbolTable.UNKNOWN, null));
+		assertFalse(p.allows(0));
+		
+		assertEquals(p, MethodPermissions.compile(Arrays.asList("billing.*", "sso.login"), null, true));
+		assertFalse(p.equals(MethodPermissions.compile(Arrays.asList("sso.login", "billing.*"), new MethodSymbolTable(0), true)));
+	}
+	
+	
+	public void testPatternsOnly() {
+		
+		MethodPermissions p = MethodPermissions.compile(Arrays.asList("billing.*"), new MethodSymbolTable(0), true);
+		
+		assertFalse(p.allows(0));
+		assertTrue(p.allows(MethodSymbolTable.UNKNOWN, "billing.charge"));
+	}
+}
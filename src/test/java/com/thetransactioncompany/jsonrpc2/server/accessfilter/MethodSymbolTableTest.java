@@ -0,0 +1,65 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the method symbol table.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class MethodSymbolTableTest extends TestCase {
+
+
+	public void testInternAndGet() {
+
+		MethodSymbolTable symbols = new MethodSymbolTable(0);
+
+		assertEquals(0, symbols.size());
+		assertEquals(MethodSymbolTable.UNKNOWN, symbols.get("sso.login"));
+		assertEquals(MethodSymbolTable.UNKNOWN, symbols.get(null));
+
+		assertEquals(0, symbols.intern("sso.login"));
+		assertEquals(1, symbols.intern("sso.logout"));
+		assertEquals(0, symbols.intern(new String("sso.login")));
+
+		assertEquals(2, symbols.size());
+
+		assertEquals(0, symbols.get("sso.login"));
+		assertEquals(1, symbols.get("sso.logout"));
+		assertEquals(MethodSymbolTable.UNKNOWN, symbols.get("sso.getSession"));
+	}
+
+
+	public void testGrow() {
+
+		MethodSymbolTable symbols = new MethodSymbolTable(1);
+
+		for (int i=0; i < 10000; i++)
+			assertEquals(i, symbols.intern("method." + i));
+
+		assertEquals(10000, symbols.size());
+
+		for (int i=0; i < 10000; i++)
+			assertEquals(i, symbols.get("method." + i));
+
+		assertEquals(MethodSymbolTable.UNKNOWN, symbols.get("method.10000"));
+	}
+	
+	
+	public void testCopy() {
+		
+		MethodSymbolTable symbols = new MethodSymbolTable(1);
+		symbols.intern("sso.login");
+		
+		MethodSymbolTable copy = new MethodSymbolTable(symbols);
+		
+		assertEquals(0, copy.get("sso.login"));
+		assertEquals(1, copy.intern("sso.logout"));
+		
+		assertEquals(1, symbols.size());
+		assertEquals(MethodSymbolTable.UNKNOWN, symbols.get("sso.logout"));
+	}
+}
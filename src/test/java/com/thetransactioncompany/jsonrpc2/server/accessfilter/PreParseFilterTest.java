@@ -0,0 +1,164 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the pre-parse filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class PreParseFilterTest extends TestCase {
+
+
+	private static Map<APIKey,Set<String>> getAPIKeyMap() {
+	
+		Map<APIKey,Set<String>> map = new HashMap<APIKey,Set<String>>();
+		map.put(new APIKey("9cd19267"), new HashSet<String>(Arrays.asList("sso.login", "sso.logout")));
+		return map;
+	}
+	
+	
+	private static Set<String> getExemptedMethods() {
+	
+		return new HashSet<String>(Arrays.asList("ws.getTime"));
+	}
+	
+	
+	private static byte[] toBytes(final String json)
+		throws Exception {
+	
+		return json.getBytes("UTF-8");
+	}
+	
+	
+	public void testHostFilter()
+		throws Exception {
+	
+		HostFilter hostFilter = new HostFilter();
+		hostFilter.init("127.0.0.1");
+		
+		PreParseFilter filter = new PreParseFilter(hostFilter, null);
+		
+		byte[] body = toBytes("{\"method\":\"sso.login\"}");
+		
+		assertTrue(filter.filter(body, new MessageContext("localhost", "127.0.0.1")).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(body, new MessageContext("localhost", "10.0.0.1"));
+		assertEquals(AccessDeniedError.CLIENT_IP_DENIED, result.getAccessDeniedError());
+		
+		// Unparsable body, host still checked
+		result = filter.filter(toBytes("not json"), new MessageContext("localhost", "10.0.0.1"));
+		assertEquals(AccessDeniedError.CLIENT_IP_DENIED, result.getAccessDeniedError());
+	}
+	
+	
+	public void testNamedParamAPIKey()
+		throws Exception {
+	
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(getAPIKeyMap(), getExemptedMethods());
+		
+		PreParseFilter filter = new PreParseFilter(null, apiKeyFilter);
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":{\"apiKey\":\"9cd19267\"}}"), ctx).accessAllowed());
+		assertTrue(filter.filter(toBytes("{\"method\":\"ws.getTime\"}"), ctx).accessAllowed());
+		
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(toBytes("{\"method\":\"sso.listUsers\",\"params\":{\"apiKey\":\"9cd19267\"}}"), ctx).getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":{\"apiKey\":\"unknown\"}}"), ctx).getAccessDeniedError());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":{}}"), ctx).getAccessDeniedError());
+		assertEquals(AccessDeniedError.API_KEY_REQUIRES_NAMED_PARAM, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\"}"), ctx).getAccessDeniedError());
+		
+		// Deferred to the parser
+		assertTrue(filter.filter(toBytes("[{\"method\":\"sso.login\"}]"), ctx).accessAllowed());
+		assertTrue(filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":{\"apiKey\":\"\\u0039cd19267\"}}"), ctx).accessAllowed());
+	}
+	
+	
+	public void testPositionalParamAPIKey()
+		throws Exception {
+	
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(getAPIKeyMap(), getExemptedMethods(), new PositionalParamAPIKeyExtractor(0), false, 0);
+		
+		PreParseFilter filter = new PreParseFilter(null, apiKeyFilter);
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":[\"9cd19267\",\"alice\"]}"), ctx).accessAllowed());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":[]}"), ctx).getAccessDeniedError());
+	}
+	
+	
+	public void testHeaderAPIKey()
+		throws Exception {
+	
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(getAPIKeyMap(), getExemptedMethods(), new HeaderAPIKeyExtractor("X-API-Key"), false, 0);
+		
+		PreParseFilter filter = new PreParseFilter(null, apiKeyFilter);
+		
+		Map<String,String> headers = new HashMap<String,String>();
+		headers.put("X-API-Key", "9cd19267");
+		MessageContext ctx = new MessageContext(APIKeyExtractorTest.createHTTPRequest(headers));
+		
+		assertTrue(filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":[1]}"), ctx).accessAllowed());
+		assertEquals(AccessDeniedError.API_KEY_DENIED, 
+		             filter.filter(toBytes("{\"method\":\"sso.listUsers\"}"), ctx).getAccessDeniedError());
+		
+		headers.clear();
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\"}"), ctx).getAccessDeniedError());
+	}
+	
+	
+	public void testCustomExtractorDeferred()
+		throws Exception {
+	
+		APIKeyExtractor custom = new APIKeyExtractor() {
+		
+			public String extract(final com.thetransactioncompany.jsonrpc2.JSONRPC2Request request,
+			                      final MessageContext messageCtx) {
+			
+				return null;
+			}
+		};
+		
+		APIKeyFilter apiKeyFilter = new APIKeyFilter();
+		apiKeyFilter.init(getAPIKeyMap(), getExemptedMethods(), custom, false, 0);
+		
+		PreParseFilter filter = new PreParseFilter(null, apiKeyFilter);
+		
+		assertTrue(filter.filter(toBytes("{\"method\":\"sso.login\"}"), new MessageContext()).accessAllowed());
+	}
+	
+	
+	public void testCompositeFilter()
+		throws Exception {
+	
+		CompositeFilter compositeFilter = new CompositeFilter();
+		
+		assertNull(compositeFilter.getPreParseFilter());
+		
+		compositeFilter.init(new CompositeFilterConfiguration(CompositeFilterConfigurationTest.getAllConfigPropertiesSet()));
+		
+		PreParseFilter filter = compositeFilter.getPreParseFilter();
+		
+		MessageContext ctx = new MessageContext("localhost", "127.0.0.1", true, "cn=John Doe,ou=people,cd=company,dc=org");
+		
+		assertTrue(filter.filter(toBytes("{\"method\":\"ws.getTime\"}"), ctx).accessAllowed());
+		assertEquals(AccessDeniedError.MISSING_API_KEY, 
+		             filter.filter(toBytes("{\"method\":\"sso.login\",\"params\":{}}"), ctx).getAccessDeniedError());
+	}
+}
@@ -0,0 +1,132 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the principal method map.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class PrincipalMethodMapTest extends TestCase {
+
+
+	private static Set<String> methods(final String ... names) {
+
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+
+	private static PrincipalMethodMap createMap()
+		throws LDAPException {
+
+		Map<DN,Set<String>> principals = new HashMap<DN,Set<String>>();
+		principals.put(new DN("cn=SSO Gateway,ou=services,o=Acme"), methods("sso.*"));
+		principals.put(new DN("cn=Auditor,ou=Partners,o=Acme"), methods("audit.list"));
+
+		Map<DN,Set<String>> suffixes = new HashMap<DN,Set<String>>();
+		suffixes.put(new DN("ou=Partners,o=Acme"), methods("billing.get", "billing.list"));
+		suffixes.put(new DN("ou=Gold,ou=Partners,o=Acme"), methods("billing.*"));
+		suffixes.put(new DN("o=Other"), methods("*"));
+
+		return new PrincipalMethodMap(principals, suffixes);
+	}
+
+
+	public void testExact()
+		throws LDAPException {
+
+		PrincipalMethodMap map = createMap();
+
+		assertEquals(2, map.getPrincipals().size());
+		assertEquals(3, map.getSuffixes().size());
+
+		assertTrue(map.allows(new DN("cn=SSO Gateway,ou=services,o=Acme"), "sso.login"));
+		assertFalse(map.allows(new DN("cn=SSO Gateway,ou=services,o=Acme"), "billing.get"));
+
+		// Normalised match
+		assertTrue(map.allows(new DN("CN=sso gateway, OU=Services,O=ACME"), "sso.logout"));
+
+		assertFalse(map.allows(new DN("cn=Other Gateway,ou=services,o=Acme"), "sso.login"));
+	}
+
+
+	public void testSuffix()
+		throws LDAPException {
+
+		PrincipalMethodMap map = createMap();
+
+		assertTrue(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme"), "billing.get"));
+		assertFalse(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme"), "billing.charge"));
+
+		// Deeper under the suffix
+		assertTrue(map.allows(new DN("cn=Host,ou=Dept,ou=Partners,o=Acme"), "billing.list"));
+
+		// The suffix itself
+		assertTrue(map.allows(new DN("ou=Partners,o=Acme"), "billing.list"));
+
+		// Longest suffix wins
+		assertTrue(map.allows(new DN("cn=Partner 2,ou=Gold,ou=Partners,o=Acme"), "billing.charge"));
+
+		// Exact DN over suffix
+		assertTrue(map.allows(new DN("cn=Auditor,ou=Partners,o=Acme"), "audit.list"));
+		assertFalse(map.allows(new DN("cn=Auditor,ou=Partners,o=Acme"), "billing.get"));
+
+		assertTrue(map.allows(new DN("cn=Anyone,o=Other"), "any.method"));
+
+		// Not under a suffix
+		assertFalse(map.allows(new DN("o=Acme"), "billing.get"));
+		assertFalse(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme2"), "billing.get"));
+		assertFalse(map.allows(new DN("cn=Partner 1,ou=Partners,o=Acme,c=US"), "billing.get"));
+	}
+
+
+	public void testEmpty()
+		throws LDAPException {
+
+		PrincipalMethodMap map = new PrincipalMethodMap(new HashMap<DN,Set<String>>(), new HashMap<DN,Set<String>>());
+
+		assertFalse(map.allows(new DN("cn=SSO Gateway,ou=services,o=Acme"), "sso.login"));
+	}
+
+
+	public void testManyPrincipals()
+		throws LDAPException {
+
+		Map<DN,Set<String>> principals = new HashMap<DN,Set<String>>();
+
+		for (int i=0; i < 5000; i++)
+			principals.put(new DN("cn=client" + i + ",ou=clients,o=Acme"), methods("method." + (i % 7)));
+
+		PrincipalMethodMap map = new PrincipalMethodMap(principals, new HashMap<DN,Set<String>>());
+
+		for (int i=0; i < 5000; i++) {
+			assertTrue(map.allows(new DN("cn=client" + i + ",ou=clients,o=Acme"), "method." + (i % 7)));
+			assertFalse(map.allows(new DN("cn=client" + i + ",ou=clients,o=Acme"), "method." + ((i + 1) % 7)));
+		}
+	}
+
+
+	public void testNullArguments() {
+
+		try {
+			new PrincipalMethodMap(null, new HashMap<DN,Set<String>>());
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the memory-mapped quota counter file.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class QuotaFileTest extends TestCase {
+
+
+	private File file;
+	
+	
+	public void setUp()
+		throws IOException {
+		
+		file = File.createTempFile("quota", ".dat");
+		file.delete();
+		file.deleteOnExit();
+	}
+	
+	
+	public void tearDown() {
+	
+		file.delete();
+	}
+	
+	
+	public void testCountAndRollOver()
+		throws IOException {
+		
+		QuotaFile qf = new QuotaFile(file, 10);
+		
+		assertEquals(QuotaFile.HEADER_SIZE + 10 * QuotaFile.SLOT_SIZE, file.length());
+		
+		int slot = qf.claim(APIKeyDigest.sha256("k1"));
+		
+		assertEquals(slot, qf.claim(APIKeyDigest.sha256("k1")));
+		
+		assertEquals(QuotaFile.COUNTED, qf.increment(slot, 100, 3, 2, 3));
+		assertEquals(QuotaFile.COUNTED, qf.increment(slot, 100, 3, 2, 3));
+		assertEquals(QuotaFile.DAY_EXCEEDED, qf.increment(slot, 100, 3, 2, 3));
+		
+		assertEquals(2L, qf.getDayCount(slot, 100));
+		assertEquals(2L, qf.getMonthCount(slot, 3));
+		
+		// New day, same month
+		assertEquals(QuotaFile.COUNTED, qf.increment(slot, 101, 3, 2, 3));
+		assertEquals(QuotaFile.MONTH_EXCEEDED, qf.increment(slot, 101, 3, 2, 3));
+		
+		assertEquals(0L, qf.getDayCount(slot, 102));
+		
+		// New month
+		assertEquals(QuotaFile.COUNTED, qf.increment(slot, 131, 4, 2, 3));
+		assertEquals(1L, qf.getMonthCount(slot, 4));
+		
+		// Unlimited
+		for (int i=0; i < 10; i++)
+			assertEquals(QuotaFile.COUNTED, qf.increment(slot, 131, 4, Quota.UNLIMITED, Quota.UNLIMITED));
+		
+		qf.close();
+	}
+	
+	
+	public void testPersistence()
+		throws IOException {
+		
+		QuotaFile qf = new QuotaFile(file, 10);
+		
+		int slot = qf.claim(APIKeyDigest.sha256("k1"));
+		qf.increment(slot, 100, 3, 0, 0);
+		qf.increment(slot, 100, 3, 0, 0);
+		qf.close();
+		
+		// Reopen with fewer requested slots
+		qf = new QuotaFile(file, 5);
+		
+		assertEquals(10, qf.slots());
+		assertEquals(slot, qf.claim(APIKeyDigest.sha256("k1")));
+		assertEquals(2L, qf.getDayCount(slot, 100));
+		assertEquals(2L, qf.getMonthCount(slot, 3));
+		qf.close();
+		
+		try {
+			new QuotaFile(file, 20);
+			fail();
+		
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("The quota file has 10 slots"));
+		}
+	}
+	
+	
+	public void testFull()
+		throws IOException {
+		
+		QuotaFile qf = new QuotaFile(file, 3);
+		
+		assertTrue(qf.claim(APIKeyDigest.sha256("k1")) >= 0);
+		assertTrue(qf.claim(APIKeyDigest.sha256("k2")) >= 0);
+		assertTrue(qf.claim(APIKeyDigest.sha256("k3")) >= 0);
+		assertEquals(-1, qf.claim(APIKeyDigest.sha256("k4")));
+		
+		qf.close();
+	}
+	
+	
+	public void testFind()
+		throws IOException {
+		
+		QuotaFile qf = new QuotaFile(file, 3);
+		
+		assertEquals(-1, qf.find(APIKeyDigest.sha256("k1")));
+		
+		int slot = qf.claim(APIKeyDigest.sha256("k1"));
+		
+		assertEquals(slot, qf.find(APIKeyDigest.sha256("k1")));
+		assertEquals(-1, qf.find(APIKeyDigest.sha256("k2")));
+		
+		// Found no slot to claim
+		assertTrue(qf.claim(APIKeyDigest.sha256("k2")) >= 0);
+		assertTrue(qf.claim(APIKeyDigest.sha256("k3")) >= 0);
+		assertEquals(-1, qf.find(APIKeyDigest.sha256("k4")));
+		
+		qf.close();
+	}
+	
+	
+	public void testOpenShared()
+		throws IOException {
+		
+		QuotaFile qf1 = QuotaFile.open(file, 10);
+		QuotaFile qf2 = QuotaFile.open(new File(file.getParentFile(), "./" + file.getName()), 5);
+		
+		assertSame(qf1, qf2);
+		
+		try {
+			QuotaFile.open(file, 20);
+			fail();
+		
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("The quota file has 10 slots"));
+		}
+		
+		int slot = qf1.claim(APIKeyDigest.sha256("k1"));
+		qf1.increment(slot, 100, 3, 0, 0);
+		
+		// Still open for the other user
+		qf1.close();
+		qf2.increment(slot, 100, 3, 0, 0);
+		assertEquals(2L, qf2.getDayCount(slot, 100));
+		qf2.close();
+		
+		// Closed by the last user, opened anew
+		QuotaFile qf3 = QuotaFile.open(file, 10);
+		assertNotSame(qf1, qf3);
+		assertEquals(2L, qf3.getDayCount(slot, 100));
+		qf3.close();
+	}
+	
+	
+	public void testNotAQuotaFile()
+		throws IOException {
+		
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("Hello, world!".getBytes("UTF-8"));
+		out.close();
+		
+		try {
+			new QuotaFile(file, 10);
+			fail();
+		
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Not a quota file"));
+		}
+	}
+	
+	
+	public void testCalendar() {
+	
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		cal.clear();
+		cal.set(1970, Calendar.JANUARY, 1);
+		
+		// Every day from 1970 to 2100
+		for (int day=0; day < 47847; day++) {
+			
+			int month = cal.get(Calendar.YEAR) * 12 + cal.get(Calendar.MONTH);
+			
+			assertEquals(day, QuotaFile.dayOf(cal.getTimeInMillis()));
+			assertEquals(day, QuotaFile.dayOf(cal.getTimeInMillis() + QuotaFile.MILLIS_PER_DAY - 1));
+			assertEquals(month, QuotaFile.monthOf(day));
+			
+			if (cal.get(Calendar.DAY_OF_MONTH) == 1)
+				assertEquals(day, QuotaFile.firstDayOf(month));
+			
+			cal.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		
+		assertEquals(-1, QuotaFile.dayOf(-1L));
+	}
+}
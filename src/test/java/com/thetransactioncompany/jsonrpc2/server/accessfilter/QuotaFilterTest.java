@@ -0,0 +1,374 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the API key quota filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class QuotaFilterTest extends TestCase {
+
+
+	/**
+	 * Quota filter with a manual clock.
+	 */
+	private static class ClockedQuotaFilter extends QuotaFilter {
+	
+	
+		// 2026-10-17T12:00:00Z
+		long now = 1792238400000L;
+		
+		
+		long currentTimeMillis() {
+		
+			return now;
+		}
+	}
+	
+	
+	private File file;
+	
+	
+	public void setUp()
+		throws IOException {
+		
+		file = File.createTempFile("quota", ".dat");
+		file.delete();
+		file.deleteOnExit();
+	}
+	
+	
+	public void tearDown() {
+	
+		file.delete();
+	}
+	
+	
+	private static JSONRPC2Request request(final String apiKey) {
+	
+		return request("sso.login", apiKey);
+	}
+	
+	
+	private static JSONRPC2Request request(final String method, final String apiKey) {
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		
+		if (apiKey != null)
+			params.put("apiKey", apiKey);
+		
+		return new JSONRPC2Request(method, params, 0);
+	}
+	
+	
+	public void testDailyQuota()
+		throws IOException {
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, new Quota(2, 0), new HashMap<APIKey,Quota>());
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(request("k1"), ctx);
+		
+		assertEquals(AccessDeniedError.QUOTA_EXCEEDED, result.getAccessDeniedError());
+		
+		Map<String,Object> data = new HashMap<String,Object>();
+		data.put(QuotaFilter.PERIOD, "day");
+		data.put(RateLimitFilter.RETRY_AFTER, 12 * 3600L);
+		assertEquals(data, result.getErrorData());
+		
+		assertEquals(2L, filter.getDailyCount("k1"));
+		assertEquals(2L, filter.getMonthlyCount("k1"));
+		
+		// Other keys have their own counters
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		
+		// Next day
+		filter.now += 12 * 3600 * 1000L;
+		assertEquals(0L, filter.getDailyCount("k1"));
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		// No API key, not counted
+		for (int i=0; i < 10; i++)
+			assertTrue(filter.filter(request(null), ctx).accessAllowed());
+		
+		filter.close();
+	}
+	
+	
+	public void testMonthlyQuotaOverride()
+		throws IOException {
+		
+		Map<APIKey,Quota> overrides = new HashMap<APIKey,Quota>();
+		overrides.put(new APIKey("k1"), new Quota(0, 1));
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, new Quota(0, 10), overrides);
+		
+		assertEquals(new Quota(0, 1), filter.getQuota("k1"));
+		assertEquals(new Quota(0, 10), filter.getQuota("k2"));
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(request("k1"), ctx);
+		
+		assertEquals(AccessDeniedError.QUOTA_EXCEEDED, result.getAccessDeniedError());
+		
+		// Until 2026-11-01T00:00:00Z
+		Map<String,Object> data = new HashMap<String,Object>();
+		data.put(QuotaFilter.PERIOD, "month");
+		data.put(RateLimitFilter.RETRY_AFTER, (14 * 24 + 12) * 3600L);
+		assertEquals(data, result.getErrorData());
+		
+		filter.close();
+	}
+	
+	
+	public void testHashedOverrides()
+		throws IOException {
+		
+		Map<APIKey,Quota> overrides = new HashMap<APIKey,Quota>();
+		overrides.put(new APIKey(new APIKey("k1").getSHA256Digest()), new Quota(1, 1));
+		
+		QuotaFilter filter = new QuotaFilter();
+		filter.init(file, 
+		            new Quota(5, 5), 
+		            overrides, 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            true, 
+		            10);
+		
+		assertEquals(new Quota(1, 1), filter.getQuota("k1"));
+		assertEquals(new Quota(5, 5), filter.getQuota("k2"));
+		
+		filter.close();
+	}
+	
+	
+	public void testCountersSurviveRestart()
+		throws IOException {
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, new Quota(3, 0), new HashMap<APIKey,Quota>());
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		filter.close();
+		
+		filter = new ClockedQuotaFilter();
+		filter.init(file, new Quota(3, 0), new HashMap<APIKey,Quota>());
+		
+		assertEquals(2L, filter.getDailyCount("k1"));
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		filter.close();
+	}
+	
+	
+	public void testFull()
+		throws IOException {
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, 
+		            new Quota(0, 0), 
+		            new HashMap<APIKey,Quota>(), 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            false, 
+		            1);
+		
+		MessageContext ctx = new MessageContext();
+		
+		// Room for twice the keys
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(request("k3"), ctx);
+		assertEquals(AccessDeniedError.QUOTA_EXCEEDED, result.getAccessDeniedError());
+		assertNull(result.getErrorData());
+		
+		filter.close();
+	}
+	
+	
+	public void testExemptedMethods()
+		throws IOException {
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, 
+		            new Quota(1, 0), 
+		            new HashMap<APIKey,Quota>(), 
+		            Collections.singleton("ws.getTime"), 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            false, 
+		            1);
+		
+		assertEquals(Collections.singleton("ws.getTime"), filter.getExemptedMethods());
+		
+		MessageContext ctx = new MessageContext();
+		
+		// Keys of exempted methods are not validated and take no slot
+		for (int i=0; i < 10; i++)
+			assertTrue(filter.filter(request("ws.getTime", "random-" + i), ctx).accessAllowed());
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		filter.close();
+	}
+	
+	
+	public void testCountsClaimNoSlot()
+		throws IOException {
+		
+		ClockedQuotaFilter filter = new ClockedQuotaFilter();
+		filter.init(file, 
+		            new Quota(0, 0), 
+		            new HashMap<APIKey,Quota>(), 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            false, 
+		            1);
+		
+		for (int i=0; i < 10; i++) {
+			assertEquals(0L, filter.getDailyCount("k" + i));
+			assertEquals(0L, filter.getMonthlyCount("k" + i));
+		}
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		assertEquals(1L, filter.getDailyCount("k1"));
+		
+		filter.close();
+	}
+	
+	
+	public void testReplaceSharesFile()
+		throws IOException {
+		
+		ClockedQuotaFilter oldFilter = new ClockedQuotaFilter();
+		oldFilter.init(file, new Quota(3, 0), new HashMap<APIKey,Quota>());
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(oldFilter.filter(request("k1"), ctx).accessAllowed());
+		
+		ClockedQuotaFilter newFilter = new ClockedQuotaFilter();
+		newFilter.init(file, new Quota(3, 0), new HashMap<APIKey,Quota>());
+		
+		// Both count in the same mapping
+		assertTrue(oldFilter.filter(request("k1"), ctx).accessAllowed());
+		assertEquals(2L, newFilter.getDailyCount("k1"));
+		
+		oldFilter.close();
+		
+		// Closed, calls in flight are allowed
+		assertTrue(oldFilter.filter(request("k1"), ctx).accessAllowed());
+		assertEquals(0L, oldFilter.getDailyCount("k1"));
+		oldFilter.flush();
+		oldFilter.close();
+		
+		assertTrue(newFilter.filter(request("k1"), ctx).accessAllowed());
+		assertFalse(newFilter.filter(request("k1"), ctx).accessAllowed());
+		assertEquals(3L, newFilter.getDailyCount("k1"));
+		
+		newFilter.close();
+	}
+	
+	
+	public void testRunAfter() {
+		
+		Collection<Class<? extends AccessFilter>> runAfter = new QuotaFilter().getRunAfter();
+		
+		assertEquals(2, runAfter.size());
+		assertTrue(runAfter.contains(APIKeyFilter.class));
+		assertTrue(runAfter.contains(RateLimitFilter.class));
+	}
+	
+	
+	public void testConcurrentCounting()
+		throws Exception {
+		
+		final QuotaFilter filter = new QuotaFilter();
+		filter.init(file, new Quota(1000, 0), new HashMap<APIKey,Quota>());
+		
+		final MessageContext ctx = new MessageContext();
+		
+		Thread[] threads = new Thread[4];
+		
+		for (int i=0; i < threads.length; i++) {
+			
+			threads[i] = new Thread() {
+			
+				public void run() {
+				
+					for (int j=0; j < 500; j++)
+						filter.filter(request("k1"), ctx);
+				}
+			};
+			
+			threads[i].start();
+		}
+		
+		for (Thread t: threads)
+			t.join();
+		
+		assertEquals(1000L, filter.getDailyCount("k1"));
+		
+		filter.close();
+	}
+	
+	
+	public void testInvalidArguments()
+		throws IOException {
+		
+		QuotaFilter filter = new QuotaFilter();
+		
+		try {
+			filter.init(null, new Quota(0, 0), new HashMap<APIKey,Quota>());
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			filter.init(file, null, new HashMap<APIKey,Quota>());
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			filter.init(file, new Quota(0, 0), new HashMap<APIKey,Quota>(), null, new NamedParamAPIKeyExtractor("apiKey"), false, 1);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the quota class.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class QuotaTest extends TestCase {
+
+
+	public void testConstructor() {
+	
+		Quota quota = new Quota(1000, 20000);
+		
+		assertEquals(1000L, quota.getDaily());
+		assertEquals(20000L, quota.getMonthly());
+		assertEquals("1000/day 20000/month", quota.toString());
+		
+		assertEquals("unlimited/day 500/month", new Quota(Quota.UNLIMITED, 500).toString());
+	}
+	
+	
+	public void testEquality() {
+	
+		assertEquals(new Quota(10, 20), new Quota(10, 20));
+		assertEquals(new Quota(10, 20).hashCode(), new Quota(10, 20).hashCode());
+		assertFalse(new Quota(10, 20).equals(new Quota(10, 21)));
+		assertFalse(new Quota(10, 20).equals(new Quota(11, 20)));
+	}
+	
+	
+	public void testInvalid() {
+	
+		try {
+			new Quota(-1, 0);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			new Quota(0, -1);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
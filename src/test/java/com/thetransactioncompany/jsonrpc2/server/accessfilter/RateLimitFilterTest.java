@@ -0,0 +1,276 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the API key rate limit filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class RateLimitFilterTest extends TestCase {
+
+
+	/**
+	 * Rate limit filter with a manual clock.
+	 */
+	private static class ClockedRateLimitFilter extends RateLimitFilter {
+	
+	
+		long now = 0;
+		
+		
+		long currentTimeMillis() {
+		
+			return now;
+		}
+	}
+	
+	
+	private static JSONRPC2Request request(final String apiKey) {
+	
+		return request("sso.login", apiKey);
+	}
+	
+	
+	private static JSONRPC2Request request(final String method, final String apiKey) {
+		
+		Map<String,Object> params = new HashMap<String,Object>();
+		
+		if (apiKey != null)
+			params.put("apiKey", apiKey);
+		
+		return new JSONRPC2Request(method, params, 0);
+	}
+	
+	
+	public void testLimit() {
+	
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 2), new HashMap<APIKey,RateLimit>());
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(request("k1"), ctx);
+		
+		assertEquals(AccessDeniedError.RATE_LIMIT_EXCEEDED, result.getAccessDeniedError());
+		assertEquals(Collections.singletonMap(RateLimitFilter.RETRY_AFTER, 1L), result.getErrorData());
+		
+		// Other keys have their own bucket
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		
+		// Refill
+		filter.now = 1000;
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		// No API key, not limited
+		for (int i=0; i < 10; i++)
+			assertTrue(filter.filter(request(null), ctx).accessAllowed());
+	}
+	
+	
+	public void testRetryAfter() {
+	
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(0.01, 1), new HashMap<APIKey,RateLimit>());
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		
+		AccessFilterResult result = filter.filter(request("k1"), ctx);
+		assertEquals(Collections.singletonMap(RateLimitFilter.RETRY_AFTER, 100L), result.getErrorData());
+		
+		// Shared result for the same hint
+		assertSame(result, filter.filter(request("k1"), ctx));
+		
+		filter.now = 99500;
+		result = filter.filter(request("k1"), ctx);
+		assertEquals(Collections.singletonMap(RateLimitFilter.RETRY_AFTER, 1L), result.getErrorData());
+		
+		// Hint above the cached range
+		filter.init(new RateLimit(0.0001, 1), new HashMap<APIKey,RateLimit>());
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		result = filter.filter(request("k1"), ctx);
+		assertEquals(Collections.singletonMap(RateLimitFilter.RETRY_AFTER, 10000L), result.getErrorData());
+	}
+	
+	
+	public void testOverrides() {
+	
+		Map<APIKey,RateLimit> overrides = new HashMap<APIKey,RateLimit>();
+		overrides.put(new APIKey("vip"), new RateLimit(1, 5));
+		
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 1), overrides);
+		
+		assertEquals(new RateLimit(1, 5), filter.getRateLimit("vip"));
+		assertEquals(new RateLimit(1, 1), filter.getRateLimit("other"));
+		
+		MessageContext ctx = new MessageContext();
+		
+		for (int i=0; i < 5; i++)
+			assertTrue(filter.filter(request("vip"), ctx).accessAllowed());
+		
+		assertFalse(filter.filter(request("vip"), ctx).accessAllowed());
+		
+		assertTrue(filter.filter(request("other"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("other"), ctx).accessAllowed());
+	}
+	
+	
+	public void testHashedOverrides() {
+	
+		Map<APIKey,RateLimit> overrides = new HashMap<APIKey,RateLimit>();
+		overrides.put(new APIKey(new APIKey("vip").getSHA256Digest().toUpperCase()), new RateLimit(1, 5));
+		
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 1), 
+		            overrides, 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            true, 
+		            RateLimitFilter.DEFAULT_MAX_KEYS);
+		
+		assertEquals(new RateLimit(1, 5), filter.getRateLimit("vip"));
+		assertEquals(new RateLimit(1, 1), filter.getRateLimit("other"));
+		
+		MessageContext ctx = new MessageContext();
+		
+		for (int i=0; i < 5; i++)
+			assertTrue(filter.filter(request("vip"), ctx).accessAllowed());
+		
+		assertFalse(filter.filter(request("vip"), ctx).accessAllowed());
+		
+		assertTrue(filter.filter(request("other"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("other"), ctx).accessAllowed());
+	}
+	
+	
+	public void testPositionalExtractor() {
+	
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 1), 
+		            new HashMap<APIKey,RateLimit>(), 
+		            new PositionalParamAPIKeyExtractor(0), 
+		            false, 
+		            10);
+		
+		List<Object> params = new ArrayList<Object>();
+		params.add("k1");
+		
+		MessageContext ctx = new MessageContext();
+		
+		assertTrue(filter.filter(new JSONRPC2Request("m", params, 0), ctx).accessAllowed());
+		assertFalse(filter.filter(new JSONRPC2Request("m", params, 0), ctx).accessAllowed());
+	}
+	
+	
+	public void testExemptedMethods() {
+		
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 1), 
+		            new HashMap<APIKey,RateLimit>(), 
+		            Collections.singleton("ws.getTime"), 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            false, 
+		            1);
+		
+		assertEquals(Collections.singleton("ws.getTime"), filter.getExemptedMethods());
+		
+		MessageContext ctx = new MessageContext();
+		
+		// Keys of exempted methods are not validated and take no bucket
+		for (int i=0; i < 10; i++)
+			assertTrue(filter.filter(request("ws.getTime", "random-" + i), ctx).accessAllowed());
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k1"), ctx).accessAllowed());
+	}
+	
+	
+	public void testEvictIdleBuckets() {
+		
+		ClockedRateLimitFilter filter = new ClockedRateLimitFilter();
+		filter.init(new RateLimit(1, 1), 
+		            new HashMap<APIKey,RateLimit>(), 
+		            new NamedParamAPIKeyExtractor("apiKey"), 
+		            false, 
+		            2);
+		
+		MessageContext ctx = new MessageContext();
+		
+		filter.now = 5000;
+		
+		assertTrue(filter.filter(request("k1"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		
+		// Full and no bucket idle, k3 takes the overflow bucket
+		assertTrue(filter.filter(request("k3"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k4"), ctx).accessAllowed());
+		
+		// k1 refilled, its bucket is evicted for k4
+		filter.now = 6500;
+		assertTrue(filter.filter(request("k2"), ctx).accessAllowed());
+		assertTrue(filter.filter(request("k4"), ctx).accessAllowed());
+		assertFalse(filter.filter(request("k4"), ctx).accessAllowed());
+		
+		// k2 kept its state
+		assertFalse(filter.filter(request("k2"), ctx).accessAllowed());
+	}
+	
+	
+	public void testRunAfterAPIKeyFilter() {
+		
+		assertEquals(Collections.singleton(APIKeyFilter.class), new RateLimitFilter().getRunAfter());
+	}
+	
+	
+	public void testInitNullArguments() {
+	
+		RateLimitFilter filter = new RateLimitFilter();
+		
+		try {
+			filter.init(null, new HashMap<APIKey,RateLimit>());
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			filter.init(new RateLimit(1, 1), null);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			filter.init(new RateLimit(1, 1), new HashMap<APIKey,RateLimit>(), new NamedParamAPIKeyExtractor("apiKey"), false, 0);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		
+		try {
+			filter.init(new RateLimit(1, 1), new HashMap<APIKey,RateLimit>(), null, new NamedParamAPIKeyExtractor("apiKey"), false, 1);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the rate limit class.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class RateLimitTest extends TestCase {
+
+
+	public void testConstructor() {
+	
+		RateLimit limit = new RateLimit(2.5, 10);
+		
+		assertEquals(2.5, limit.getRate());
+		assertEquals(10, limit.getBurst());
+		assertEquals("2.5/s burst 10", limit.toString());
+	}
+	
+	
+	public void testEquality() {
+	
+		assertEquals(new RateLimit(10, 20), new RateLimit(10, 20));
+		assertEquals(new RateLimit(10, 20).hashCode(), new RateLimit(10, 20).hashCode());
+		assertFalse(new RateLimit(10, 20).equals(new RateLimit(10, 21)));
+		assertFalse(new RateLimit(10, 20).equals(new RateLimit(11, 20)));
+	}
+	
+	
+	public void testInvalid() {
+	
+		double[] rates = {0.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY};
+		
+		for (double rate: rates) {
+		
+			try {
+				new RateLimit(rate, 1);
+				fail();
+			
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+		
+		int[] bursts = {0, -1, RateLimit.MAX_BURST + 1};
+		
+		for (int burst: bursts) {
+		
+			try {
+				new RateLimit(1.0, burst);
+				fail();
+			
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+		
+		new RateLimit(1.0, RateLimit.MAX_BURST);
+	}
+}
@@ -0,0 +1,161 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
+
+
+/**
+ * Tests the raw request scanner.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class RequestScannerTest extends TestCase {
+
+
+	private static RequestScanner.Result scan(final RequestScanner scanner, final String json)
+		throws Exception {
+	
+		return scanner.scan(ByteBuffer.wrap(json.getBytes("UTF-8")));
+	}
+	
+	
+	public void testNamedParams()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner("apiKey", -1);
+		
+		RequestScanner.Result r = scan(scanner, 
+			" {\"jsonrpc\":\"2.0\", \"id\" : 1, \"params\" : {\"user\":{\"name\":\"}\\\"\", \"tags\":[1, 2.5e3, true, null]}, " +
+			"\"apiKey\" : \"9cd19267\"}, \"method\":\"sso.login\"}\r\n");
+		
+		assertEquals("sso.login", r.getMethod());
+		assertEquals(JSONRPC2ParamsType.OBJECT, r.getParamsType());
+		assertEquals("9cd19267", r.getAPIKey());
+	}
+	
+	
+	public void testNamedParamsMissingKey()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner("apiKey", -1);
+		
+		RequestScanner.Result r = scan(scanner, "{\"method\":\"sso.login\",\"params\":{\"key\":\"9cd19267\"}}");
+		assertEquals("sso.login", r.getMethod());
+		assertNull(r.getAPIKey());
+		
+		r = scan(scanner, "{\"method\":\"sso.login\",\"params\":{}}");
+		assertEquals(JSONRPC2ParamsType.OBJECT, r.getParamsType());
+		assertNull(r.getAPIKey());
+		
+		// Non-string key
+		r = scan(scanner, "{\"method\":\"sso.login\",\"params\":{\"apiKey\":{\"v\":\"9cd19267\"}}}");
+		assertNull(r.getAPIKey());
+		
+		// Nested key doesn't count
+		r = scan(scanner, "{\"method\":\"sso.login\",\"params\":{\"x\":{\"apiKey\":\"9cd19267\"}}}");
+		assertNull(r.getAPIKey());
+	}
+	
+	
+	public void testNoParams()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner("apiKey", -1);
+		
+		RequestScanner.Result r = scan(scanner, "{\"method\":\"ws.getTime\",\"id\":0,\"jsonrpc\":\"2.0\"}");
+		assertEquals("ws.getTime", r.getMethod());
+		assertEquals(JSONRPC2ParamsType.NO_PARAMS, r.getParamsType());
+		assertNull(r.getAPIKey());
+		
+		r = scan(scanner, "{\"method\":\"sso.login\",\"params\":[\"9cd19267\"]}");
+		assertEquals(JSONRPC2ParamsType.ARRAY, r.getParamsType());
+		assertNull(r.getAPIKey());
+	}
+	
+	
+	public void testPositionalParams()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner(null, 1);
+		
+		RequestScanner.Result r = scan(scanner, "{\"params\":[[1,[2]], \"9cd19267\", {\"a\":\"b\"}],\"method\":\"sso.login\"}");
+		assertEquals(JSONRPC2ParamsType.ARRAY, r.getParamsType());
+		assertEquals("9cd19267", r.getAPIKey());
+		
+		r = scan(scanner, "{\"params\":[\"9cd19267\"],\"method\":\"sso.login\"}");
+		assertNull(r.getAPIKey());
+		
+		r = scan(scanner, "{\"params\":[],\"method\":\"sso.login\"}");
+		assertNull(r.getAPIKey());
+	}
+	
+	
+	public void testUnicode()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner("cl\u00e9", -1);
+		
+		RequestScanner.Result r = scan(scanner, "{\"method\":\"caf\u00e9.get\",\"params\":{\"cl\u00e9\":\"\u00fc\u20ac\"}}");
+		assertEquals("caf\u00e9.get", r.getMethod());
+		assertEquals("\u00fc\u20ac", r.getAPIKey());
+	}
+	
+	
+	public void testDirectBuffer()
+		throws Exception {
+	
+		byte[] json = "xx{\"method\":\"sso.login\",\"params\":{\"apiKey\":\"9cd19267\"}}yy".getBytes("UTF-8");
+		
+		ByteBuffer buf = ByteBuffer.allocateDirect(json.length);
+		buf.put(json);
+		buf.position(2);
+		buf.limit(json.length - 2);
+		
+		RequestScanner.Result r = new RequestScanner("apiKey", -1).scan(buf);
+		
+		assertEquals("sso.login", r.getMethod());
+		assertEquals("9cd19267", r.getAPIKey());
+		
+		assertEquals(2, buf.position());
+		assertEquals(json.length - 2, buf.limit());
+	}
+	
+	
+	public void testUndecided()
+		throws Exception {
+	
+		RequestScanner scanner = new RequestScanner("apiKey", -1);
+		
+		String[] undecided = {
+			"",
+			"   ",
+			"[{\"method\":\"sso.login\"}]",
+			"{}",
+			"{\"id\":1}",
+			"{\"method\":\"sso.login\"",
+			"{\"method\":\"sso.login\"} x",
+			"{\"method\":\"sso\\u002elogin\"}",
+			"{\"meth\\u006fd\":\"sso.login\"}",
+			"{\"method\":1}",
+			"{\"method\":\"a\",\"method\":\"b\"}",
+			"{\"method\":\"a\",\"params\":{},\"params\":{}}",
+			"{\"method\":\"a\",\"params\":null}",
+			"{\"method\":\"a\",\"params\":{\"apiKey\":\"x\\\"y\"}}",
+			"{\"method\":\"a\",\"params\":{\"apiKey\":\"x\",\"apiKey\":\"y\"}}",
+			"{\"method\":\"a\",\"params\":{\"x\":[1,2}}",
+			"{'method':'a'}",
+			"{method:\"a\"}",
+			"{\"method\" \"a\"}",
+			"{\"method\":\"a\",}",
+			"{\"method\":\"a\",\"x\":}"
+		};
+		
+		for (String json: undecided)
+			assertNull(json, scan(scanner, json));
+	}
+}
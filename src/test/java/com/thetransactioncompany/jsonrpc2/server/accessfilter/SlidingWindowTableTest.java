@@ -0,0 +1,130 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the sliding window table.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class SlidingWindowTableTest extends TestCase {
+
+
+	public void testLimitWithinWindow() {
+
+		SlidingWindowTable table = new SlidingWindowTable(3, 1000, 100);
+
+		for (int i=0; i < 3; i++)
+			assertEquals(0L, table.acquireIPv4(0x0a000001L, 100));
+
+		// Next window starts at 1000, then the previous count of 3
+		// must slide out to 2 of 3
+		assertEquals(900L + 334L, table.acquireIPv4(0x0a000001L, 100));
+
+		// Other addresses are counted apart
+		assertEquals(0L, table.acquireIPv4(0x0a000002L, 100));
+		assertEquals(0L, table.acquire(0x20010db800000000L, 1L, 100));
+	}
+
+
+	public void testSlidingWindow() {
+
+		SlidingWindowTable table = new SlidingWindowTable(4, 1000, 100);
+
+		for (int i=0; i < 4; i++)
+			assertEquals(0L, table.acquireIPv4(1L, 999));
+
+		// Half way into the next window the previous count weighs 2
+		assertEquals(0L, table.acquireIPv4(1L, 1500));
+		assertEquals(0L, table.acquireIPv4(1L, 1500));
+
+		long wait = table.acquireIPv4(1L, 1500);
+		assertTrue(wait > 0L);
+
+		assertEquals(0L, table.acquireIPv4(1L, 1500 + wait));
+
+		// Idle for two windows, starts afresh
+		for (int i=0; i < 4; i++)
+			assertEquals(0L, table.acquireIPv4(1L, 5000));
+
+		assertTrue(table.acquireIPv4(1L, 5000) > 0L);
+	}
+
+
+	public void testDeniedRequestsNotCounted() {
+
+		SlidingWindowTable table = new SlidingWindowTable(1, 1000, 100);
+
+		assertEquals(0L, table.acquireIPv4(1L, 0));
+
+		for (int i=0; i < 100; i++)
+			assertTrue(table.acquireIPv4(1L, 500) > 0L);
+
+		assertEquals(0L, table.acquireIPv4(1L, 2000));
+	}
+
+
+	public void testIPv4MappedEqualsIPv4() {
+
+		SlidingWindowTable table = new SlidingWindowTable(1, 1000, 100);
+
+		assertEquals(0L, table.acquireIPv4(0x7f000001L, 0));
+		assertTrue(table.acquire(0L, 0xffff7f000001L, 0) > 0L);
+	}
+
+
+	public void testCapacity() {
+
+		assertEquals(SlidingWindowTable.STRIPES * SlidingWindowTable.PROBES,
+		             new SlidingWindowTable(1, 1000, 1).capacity());
+
+		assertEquals(65536, new SlidingWindowTable(1, 1000, 65536).capacity());
+		assertEquals(131072, new SlidingWindowTable(1, 1000, 65537).capacity());
+	}
+
+
+	public void testBoundedUnderSpray() {
+
+		SlidingWindowTable table = new SlidingWindowTable(5, 60000, 1000);
+
+		// A busy address
+		for (int i=0; i < 5; i++)
+			assertEquals(0L, table.acquireIPv4(1L, 0));
+
+		// Spray of single requests from many addresses, far more
+		// than the table holds
+		for (long ip=2; ip < 200000; ip++)
+			assertEquals(0L, table.acquireIPv4(ip, 1000));
+
+		// The busiest counter is kept over the sprayed ones
+		assertTrue(table.acquireIPv4(1L, 1000) > 0L);
+	}
+
+
+	public void testInvalidArguments() {
+
+		try {
+			new SlidingWindowTable(0, 1000, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			new SlidingWindowTable(1, 0, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			new SlidingWindowTable(1, 1000, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the token bucket table.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class TokenBucketTableTest extends TestCase {
+
+
+	public void testBurstAndRefill() {
+	
+		// 10 per second, one token per 100 ms
+		TokenBucketTable table = new TokenBucketTable(10, new RateLimit(1, 1));
+		
+		int slot = table.add("a", new RateLimit(10, 3));
+		
+		long now = 1000;
+		
+		for (int i=0; i < 3; i++)
+			assertEquals(0L, table.acquire(slot, now));
+		
+		assertEquals(100L, table.acquire(slot, now));
+		
+		// The refill time is kept in whole milliseconds, rounded in
+		// favour of the limit
+		long wait = table.acquire(slot, now + 40);
+		assertTrue("Wait " + wait, wait >= 60L && wait <= 61L);
+		
+		
+		assertEquals(0L, table.acquire(slot, now + 100));
+		assertTrue(table.acquire(slot, now + 100) > 0L);
+		
+		// Refills to the burst size only
+		now += 10000;
+		
+		for (int i=0; i < 3; i++)
+			assertEquals(0L, table.acquire(slot, now));
+		
+		assertTrue(table.acquire(slot, now) > 0L);
+	}
+	
+	
+	public void testSlowRateAccruesFractions() {
+	
+		// One token every 10 seconds
+		TokenBucketTable table = new TokenBucketTable(10, new RateLimit(1, 1));
+		
+		int slot = table.add("a", new RateLimit(0.1, 1));
+		
+		assertEquals(0L, table.acquire(slot, 0));
+		
+		// Frequent polling must not lose the fractional refill
+		long t;
+		
+		for (t=1; t < 20000; t++) {
+		
+			if (table.acquire(slot, t) == 0L)
+				break;
+		}
+		
+		assertTrue("Refilled at " + t, t >= 9999 && t <= 10001);
+	}
+	
+	
+	public void testFindAndAdd() {
+	
+		TokenBucketTable table = new TokenBucketTable(2, new RateLimit(1, 1));
+		
+		assertEquals(-1, table.find("a"));
+		
+		int a = table.add("a", new RateLimit(1, 1));
+		assertEquals(a, table.find("a"));
+		assertEquals(a, table.add("a", new RateLimit(1, 1)));
+		
+		int b = table.add("b", new RateLimit(1, 1));
+		assertTrue(a != b);
+		assertEquals(2, table.size());
+		
+		// Full, further keys overflow
+		assertEquals(table.overflowSlot(), table.add("c", new RateLimit(1, 1)));
+		assertEquals(-1, table.find("c"));
+		assertEquals(2, table.size());
+	}
+	
+	
+	public void testOverflowBucketShared() {
+	
+		TokenBucketTable table = new TokenBucketTable(1, new RateLimit(1, 2));
+		
+		table.add("a", new RateLimit(1, 1));
+		
+		assertEquals(0L, table.acquire(table.add("b", new RateLimit(100, 100)), 0));
+		assertEquals(0L, table.acquire(table.add("c", new RateLimit(100, 100)), 0));
+		assertTrue(table.acquire(table.add("d", new RateLimit(100, 100)), 0) > 0L);
+	}
+	
+	
+	public void testEvictIdle() {
+		
+		TokenBucketTable table = new TokenBucketTable(3, new RateLimit(1, 1));
+		
+		int a = table.add("a", new RateLimit(1, 2));
+		int b = table.add("b", new RateLimit(1, 2));
+		table.add("c", new RateLimit(1, 2));
+		
+		assertEquals(0L, table.acquire(a, 0));
+		assertEquals(0L, table.acquire(b, 0));
+		assertEquals(0L, table.acquire(b, 0));
+		assertEquals(0L, table.acquire(table.overflowSlot(), 0));
+		
+		// a refilled, b not yet, c never used
+		TokenBucketTable copy = table.evictIdle(1000);
+		
+		assertEquals(1, copy.size());
+		assertEquals(-1, copy.find("a"));
+		assertEquals(-1, copy.find("c"));
+		
+		b = copy.find("b");
+		assertTrue(b >= 0);
+		assertEquals(0L, copy.acquire(b, 1000));
+		assertTrue(copy.acquire(b, 1000) > 0L);
+		
+		// Overflow bucket state kept
+		assertTrue(copy.acquire(copy.overflowSlot(), 500) > 0L);
+		
+		// Original unchanged
+		assertEquals(3, table.size());
+	}
+	
+	
+	public void testConcurrentAcquire()
+		throws Exception {
+	
+		final int burst = 10000;
+		
+		// Negligible refill during the test
+		final TokenBucketTable table = new TokenBucketTable(1, new RateLimit(1, 1));
+		final int slot = table.add("a", new RateLimit(0.001, burst));
+		
+		final AtomicInteger granted = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		Thread[] threads = new Thread[8];
+		
+		for (int i=0; i < threads.length; i++) {
+		
+			threads[i] = new Thread(new Runnable() {
+			
+				public void run() {
+				
+					try {
+						start.await();
+					
+					} catch (InterruptedException e) {
+						return;
+					}
+					
+					for (int j=0; j < burst / 2; j++) {
+					
+						if (table.acquire(slot, 0) == 0L)
+							granted.incrementAndGet();
+					}
+				}
+			});
+			
+			threads[i].start();
+		}
+		
+		start.countDown();
+		
+		for (Thread t: threads)
+			t.join();
+		
+		assertEquals(burst, granted.get());
+	}
+}
@@ -0,0 +1,42 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the verified API key cache.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class VerifiedKeyCacheTest extends TestCase {
+
+
+	public void testPutGet() {
+
+		VerifiedKeyCache cache = new VerifiedKeyCache(16);
+
+		MethodPermissions permissions = MethodPermissions.ANY;
+
+		KeyTagger.Tag tag = cache.tag("secret-1");
+
+		assertNull(cache.get(tag));
+
+		cache.put(tag, permissions);
+
+		assertSame(permissions, cache.get(tag));
+		assertSame(permissions, cache.get(cache.tag("secret-1")));
+		assertNull(cache.get(cache.tag("secret-2")));
+	}
+
+
+	public void testRandomSecretPerInstance() {
+
+		VerifiedKeyCache a = new VerifiedKeyCache(16);
+		VerifiedKeyCache b = new VerifiedKeyCache(16);
+
+		assertEquals(a.tag("secret"), a.tag("secret"));
+		assertFalse(a.tag("secret").equals(b.tag("secret")));
+	}
+}
@@ -0,0 +1,204 @@
+package com.thetransactioncompany.jsonrpc2.server.accessfilter;
+
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+
+
+/**
+ * Tests the X.509 client certificate pinning filter.
+ *
+ * @author Vladimir Dzhuvinov
+ * @version $version$ (2026-10-17)
+ */
+public class X509CertPinningFilterTest extends TestCase {
+
+
+	/**
+	 * Self-signed certificate, CN=client1, O=Acme.
+	 */
+	static final String CERT_1 =
+		"-----BEGIN CERTIFICATE-----\n" +
+		"MIIBmjCCAT+gAwIBAgIUXTd4G3zIIqA62Pfp9lmBnV5Iv+owCgYIKoZIzj0EAwIw\n" +
+		"ITEQMA4GA1UEAwwHY2xpZW50MTENMAsGA1UECgwEQWNtZTAgFw0yNjEwMTcyMjMw\n" +
+		"MDFaGA8yMTI2MDkyMzIyMzAwMVowITEQMA4GA1UEAwwHY2xpZW50MTENMAsGA1UE\n" +
+		"CgwEQWNtZTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABCI64DRXnVf6pqpT3KAn\n" +
+		"SRJQYDEczFWmCsiHM9MDc/Nqb0ezbk2Pxx+VGWA0xLtgJ9PmbdaNjL/uDOxkQ+vM\n" +
+		"s1OjUzBRMB0GA1UdDgQWBBSebYMjR6Z1jT+UK/shbdJAe2UevjAfBgNVHSMEGDAW\n" +
+		"gBSebYMjR6Z1jT+UK/shbdJAe2UevjAPBgNVHRMBAf8EBTADAQH/MAoGCCqGSM49\n" +
+		"BAMCA0kAMEYCIQC5oiZLa4ldQdIP42A5ahPxOwm86Bn8QZqVlHpnZvMkIgIhAPm4\n" +
+		"bZqg/zX6KRAqIKbbE5WhpSv+ot+wJhrp0vi53v08\n" +
+		"-----END CERTIFICATE-----\n";
+
+
+	/**
+	 * The SHA-256 fingerprint of certificate 1.
+	 */
+	static final String CERT_1_FINGERPRINT =
+		"BD:CE:56:91:E0:D2:3B:F0:61:55:39:99:37:71:FF:80:6E:36:E3:77:0B:BC:B6:75:C8:EC:4B:75:C2:FE:A9:FF";
+
+
+	/**
+	 * Self-signed certificate, CN=client2, O=Acme.
+	 */
+	static final String CERT_2 =
+		"-----BEGIN CERTIFICATE-----\n" +
+		"MIIBmTCCAT+gAwIBAgIUAcwkLDiK/0DOl+hTmsvrjq40DRYwCgYIKoZIzj0EAwIw\n" +
+		"ITEQMA4GA1UEAwwHY2xpZW50MjENMAsGA1UECgwEQWNtZTAgFw0yNjEwMTcyMjMw\n" +
+		"MDFaGA8yMTI2MDkyMzIyMzAwMVowITEQMA4GA1UEAwwHY2xpZW50MjENMAsGA1UE\n" +
+		"CgwEQWNtZTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABMCRh3ciCDJfZ4h9WRPA\n" +
+		"gQu3pYAHxhq+YezRCu2SiA+nQTTDKmJqZ8xGYuWA2T5VHz1CiPt0qRJeF3CDDnfs\n" +
+		"ftmjUzBRMB0GA1UdDgQWBBRHRJ/cLmv2tTITJoWdquXeN0ebsjAfBgNVHSMEGDAW\n" +
+		"gBRHRJ/cLmv2tTITJoWdquXeN0ebsjAPBgNVHRMBAf8EBTADAQH/MAoGCCqGSM49\n" +
+		"BAMCA0gAMEUCIFYfLhnaGnxqX/QbXpvXC7qN1w5gS0KYDdx2ThNTa2KNAiEAuNCV\n" +
+		"zR+rhEITeueRvnLYArUrLrFglQl5ITWYbmXf+GQ=\n" +
+		"-----END CERTIFICATE-----\n";
+
+
+	/**
+	 * Parses the specified PEM-encoded certificate.
+	 */
+	static X509Certificate parseCertificate(final String pem)
+		throws CertificateException {
+
+		CertificateFactory cf = CertificateFactory.getInstance("X.509");
+
+		return (X509Certificate)cf.generateCertificate(new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+
+	/**
+	 * Creates an HTTP servlet request with the specified client
+	 * certificate chain attribute.
+	 */
+	static HttpServletRequest createHTTPRequest(final Object chain) {
+
+		InvocationHandler handler = new InvocationHandler() {
+
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+
+				if (method.getName().equals("getAttribute") && X509CertPinningFilter.CERTIFICATE_ATTRIBUTE.equals(args[0]))
+					return chain;
+
+				return null;
+			}
+		};
+
+		return (HttpServletRequest)Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+		                                                  new Class<?>[]{HttpServletRequest.class},
+		                                                  handler);
+	}
+
+
+	private static AccessFilterResult call(final X509CertPinningFilter filter, final Object chain) {
+
+		return filter.filter(new JSONRPC2Request("users.list", 0), new MessageContext(createHTTPRequest(chain)));
+	}
+
+
+	public void testParseFingerprint() {
+
+		String hex = "bdce5691e0d23bf0615539993771ff806e36e3770bbcb675c8ec4b75c2fea9ff";
+
+		assertEquals(hex, X509CertPinningFilter.parseFingerprint(CERT_1_FINGERPRINT));
+		assertEquals(hex, X509CertPinningFilter.parseFingerprint(hex.toUpperCase()));
+		assertEquals(hex, X509CertPinningFilter.parseFingerprint(hex));
+
+		assertNull(X509CertPinningFilter.parseFingerprint("bdce56"));
+		assertNull(X509CertPinningFilter.parseFingerprint(null));
+	}
+
+
+	public void testPinned()
+		throws CertificateException {
+
+		X509CertPinningFilter filter = new X509CertPinningFilter();
+		filter.init(Collections.singleton(CERT_1_FINGERPRINT));
+
+		assertEquals(Collections.singleton(X509CertPinningFilter.parseFingerprint(CERT_1_FINGERPRINT)), filter.getFingerprints());
+
+		X509Certificate cert1 = parseCertificate(CERT_1);
+		X509Certificate cert2 = parseCertificate(CERT_2);
+
+		// Repeat, for the cached fingerprints
+		for (int i=0; i < 3; i++) {
+
+			assertTrue(call(filter, new X509Certificate[]{cert1}).accessAllowed());
+			assertTrue(call(filter, new X509Certificate[]{cert1, cert2}).accessAllowed());
+
+			// Only the leaf is checked
+			assertEquals(AccessDeniedError.CLIENT_CERT_NOT_PINNED,
+			             call(filter, new X509Certificate[]{cert2, cert1}).getAccessDeniedError());
+		}
+
+		// Equal certificate, other instance
+		assertTrue(call(filter, new X509Certificate[]{parseCertificate(CERT_1)}).accessAllowed());
+	}
+
+
+	public void testMissingCertificate()
+		throws CertificateException {
+
+		X509CertPinningFilter filter = new X509CertPinningFilter();
+		filter.init(Collections.singleton(CERT_1_FINGERPRINT));
+
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED, call(filter, null).getAccessDeniedError());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED, call(filter, new X509Certificate[0]).getAccessDeniedError());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED, call(filter, "invalid").getAccessDeniedError());
+
+		// No servlet request
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED,
+		             filter.filter(new JSONRPC2Request("users.list", 0), new MessageContext()).getAccessDeniedError());
+	}
+
+
+	public void testCacheDisabled()
+		throws CertificateException {
+
+		X509CertPinningFilter filter = new X509CertPinningFilter();
+		filter.init(new HashSet<String>(Arrays.asList(CERT_1_FINGERPRINT)), 0);
+
+		X509Certificate cert1 = parseCertificate(CERT_1);
+
+		assertTrue(call(filter, new X509Certificate[]{cert1}).accessAllowed());
+		assertTrue(call(filter, new X509Certificate[]{cert1}).accessAllowed());
+		assertEquals(AccessDeniedError.CLIENT_CERT_NOT_PINNED,
+		             call(filter, new X509Certificate[]{parseCertificate(CERT_2)}).getAccessDeniedError());
+	}
+
+
+	public void testInvalidFingerprint() {
+
+		try {
+			new X509CertPinningFilter().init(Collections.singleton("bdce56"));
+			fail();
+
+		} catch (IllegalArgumentException e) {
+
+			// ok
+		}
+	}
+
+
+	public void testRunAfter() {
+
+		assertTrue(new X509CertPinningFilter().getRunAfter().contains(HTTPSFilter.class));
+	}
+}
@@ -2,6 +2,10 @@ package com.thetransactioncompany.jsonrpc2.server.accessfilter;
 
 
 import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.LDAPException;
@@ -107,4 +111,84 @@ public class X509ClientCertFilterTest extends TestCase {
 		result = filter.filter(req, ctx);
 		assertTrue(result.accessAllowed());
 	}
+	
+	
+	public void testCachedPrincipalDN()
+		throws LDAPException {
+		
+		for (int cacheSize: new int[]{0, 1, X509ClientCertFilter.DEFAULT_DN_CACHE_SIZE}) {
+			
+			X509ClientCertFilter filter = new X509ClientCertFilter();
+			filter.init(true, new DN("cn=admin,ou=people,dc=wondlerland,dc=net"), cacheSize);
+			
+			JSONRPC2Request req = new JSONRPC2Request("users.list", 0);
+			
+			MessageContext allowed = new MessageContext(null, "192.168.0.1", true, "CN=admin, ou=people,dc=wondlerland,dc=net");
+			MessageContext denied = new MessageContext(null, "192.168.0.1", true, "cn=bob,ou=people,dc=wondlerland,dc=net");
+			MessageContext invalid = new MessageContext(null, "192.168.0.1", true, "not a DN");
+			
+			// Repeat, for the cached outcomes
+			for (int i=0; i < 3; i++) {
+				
+				assertTrue(filter.filter(req, allowed).accessAllowed());
+				
+				assertEquals(AccessDeniedError.CLIENT_PRINCIPAL_DENIED,
+				             filter.filter(req, denied).getAccessDeniedError());
+				
+				assertEquals(AccessDeniedError.INVALID_CLIENT_PRINCIPAL_DN,
+				             filter.filter(req, invalid).getAccessDeniedError());
+			}
+		}
+	}
+	
+	
+	public void testPrincipalMap()
+		throws LDAPException {
+		
+		Map<DN,Set<String>> principals = new HashMap<DN,Set<String>>();
+		principals.put(new DN("cn=admin,ou=people,dc=wondlerland,dc=net"), Collections.singleton("users.*"));
+		
+		Map<DN,Set<String>> suffixes = new HashMap<DN,Set<String>>();
+		suffixes.put(new DN("ou=partners,dc=wondlerland,dc=net"), Collections.singleton("users.list"));
+		
+		X509ClientCertFilter filter = new X509ClientCertFilter();
+		filter.init(true, null, new PrincipalMethodMap(principals, suffixes), X509ClientCertFilter.DEFAULT_DN_CACHE_SIZE);
+		assertNotNull(filter.getPrincipalMap());
+		
+		MessageContext admin = new MessageContext(null, "192.168.0.1", true, "cn=admin,ou=people,dc=wondlerland,dc=net");
+		MessageContext partner = new MessageContext(null, "192.168.0.1", true, "cn=alice,ou=partners,dc=wondlerland,dc=net");
+		MessageContext other = new MessageContext(null, "192.168.0.1", true, "cn=bob,ou=people,dc=wondlerland,dc=net");
+		
+		assertTrue(filter.filter(new JSONRPC2Request("users.list", 0), admin).accessAllowed());
+		assertTrue(filter.filter(new JSONRPC2Request("users.delete", 0), admin).accessAllowed());
+		assertTrue(filter.filter(new JSONRPC2Request("users.list", 0), partner).accessAllowed());
+		
+		assertEquals(AccessDeniedError.CLIENT_PRINCIPAL_DENIED,
+		             filter.filter(new JSONRPC2Request("users.delete", 0), partner).getAccessDeniedError());
+		assertEquals(AccessDeniedError.CLIENT_PRINCIPAL_DENIED,
+		             filter.filter(new JSONRPC2Request("users.list", 0), other).getAccessDeniedError());
+		assertEquals(AccessDeniedError.CLIENT_CERT_REQUIRED,
+		             filter.filter(new JSONRPC2Request("users.list", 0), 
+		                           new MessageContext(null, "192.168.0.1", true, (String)null)).getAccessDeniedError());
+		
+		// With a required principal as well
+		filter.init(true, new DN("cn=admin,ou=people,dc=wondlerland,dc=net"), new PrincipalMethodMap(principals, suffixes), 0);
+		
+		assertTrue(filter.filter(new JSONRPC2Request("users.list", 0), admin).accessAllowed());
+		assertEquals(AccessDeniedError.CLIENT_PRINCIPAL_DENIED,
+		             filter.filter(new JSONRPC2Request("users.list", 0), partner).getAccessDeniedError());
+	}
+	
+	
+	public void testNegativeDNCacheSize() {
+		
+		try {
+			new X509ClientCertFilter().init(true, null, -1);
+			fail();
+		
+		} catch (IllegalArgumentException e) {
+			
+			// ok
+		}
+	}
 }